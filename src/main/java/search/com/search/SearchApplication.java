@@ -2,11 +2,18 @@ package search.com.search;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import search.com.search.tools.Tools;
 
 @SpringBootApplication
+@EnableScheduling
 public class SearchApplication {
 
 	public static void main(String[] args) {
+		if (args.length > 0 && Tools.isTool(args[0])) {
+			System.exit(Tools.run(args));
+		}
 		SpringApplication.run(SearchApplication.class, args);
 	}
 
@@ -0,0 +1,60 @@
+package search.com.search.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Anillo de hash consistente con nodos virtuales. Cada miembro ocupa virtualNodes posiciones del
+ * anillo y una clave pertenece al primer miembro que aparece en el sentido de las agujas del reloj.
+ * Al entrar o salir un miembro solo cambian de dueño las claves de sus posiciones (~1/n del total).
+ *
+ * Inmutable: cuando cambian los miembros se construye otro anillo.
+ */
+public final class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final int members;
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        for (String member : members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+        this.members = members.size();
+    }
+
+    /**
+     * Miembro dueño de la clave, o null si el anillo está vacío
+     */
+    public String owner(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    public int size() {
+        return members;
+    }
+
+    static long hash(String value) {
+        try {
+            // MD5 reparte bien las posiciones de los nodos virtuales; no se usa por seguridad
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package search.com.search.cache;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.AdminAccess;
+import search.com.search.config.RequestContext;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.consts.ItemChangeType;
+import search.com.search.model.dto.IndexGenerationEvent;
+import search.com.search.model.dto.ItemChangeEvent;
+import search.com.search.model.dto.JournalAppliedEvent;
+import search.com.search.resilience.TimeBudgets;
+
+/**
+ * Caché de resultados repartida entre las réplicas del servicio registradas en Eureka.
+ *
+ * Con app.peer-cache.enabled=true el espacio de claves se reparte entre las instancias vivas con un
+ * {@link ConsistentHashRing}: cada clave (endpoint + parámetros) solo se guarda en su instancia dueña,
+ * así que la memoria de todas las réplicas suma como una sola caché y cada consulta popular llega a
+ * Elasticsearch una vez por TTL en lugar de una vez por réplica. Un fallo en otra instancia se le
+ * reenvía por HTTP (/v1/internal/cache) con lo que queda del presupuesto de la petición (menos
+ * peer-timeout-ms para el viaje) y es ella quien consulta y guarda. Si no se le puede conectar o
+ * responde con un 5xx se consulta aquí sin guardar y se deja de preguntarle durante suspect-ms; un
+ * 400 es que la clave no es válida y se propaga como tal.
+ *
+ * Las entradas llevan etiquetas: los ids de los items que contienen, para que un cambio de stock
+ * invalide solo los resultados donde aparece ese item. Las altas y bajas pueden cambiar cualquier
+ * resultado (y las facetas), así que vacían la caché. Cada instancia difunde a las demás las
+ * invalidaciones de sus propias escrituras; el TTL acota lo que se pierda por el camino. Una carga que
+ * empezó antes de una invalidación no se guarda, porque puede haber leído los datos ya cambiados.
+ *
+ * La invalidación llega cuando la escritura responde, pero las búsquedas no la ven hasta el siguiente
+ * refresh (y las del journal, hasta que se aplican): una carga entre medias lee datos viejos y los
+ * guardaría todo el TTL. Por eso las etiquetas invalidadas quedan pendientes y se invalidan otra vez
+ * cuando IndexGeneration publica una generación leída después de ellas, que ya incluye la escritura. El
+ * journal vuelve a invalidar (y difundir) al aplicar cada lote en Elasticsearch.
+ *
+ * Con la caché llena solo se admiten claves calientes ({@link Loaded#isHot}, según HeavyHitters): una
+ * consulta que aparece una vez no desaloja por LRU a otra de las más repetidas. Mientras quede sitio se
+ * admite todo, porque la señal va un intervalo por detrás y una clave nueva aún no puede ser caliente.
+ *
+ * Los miembros se leen de Eureka cada refresh-ms. Cuando cambian se reconstruye el anillo y se
+ * descartan las entradas locales que ahora pertenecen a otra instancia (con nodos virtuales, ~1/n).
+ */
+@Component
+@Slf4j
+public class PeerCache {
+
+    public static final String ALL = "*";
+    public static final String CACHE_PATH = "/v1/internal/cache";
+    public static final String INVALIDATE_PATH = "/v1/internal/cache/invalidate";
+
+    private final ObjectProvider<DiscoveryClient> discovery;
+    private final ObjectProvider<Registration> registration;
+    private final TimeBudgets budgets;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient http;
+    private final ExecutorService broadcaster;
+
+    private final boolean enabled;
+    private final String serviceId;
+    private final String token;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final int virtualNodes;
+    private final Duration peerTimeout;
+    private final long suspectMillis;
+
+    // LRU por orden de acceso; entries, byTag, bytes y epoch se protegen con el monitor de entries
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<String, Set<String>> byTag = new HashMap<>();
+    private long bytes;
+    private long epoch;   // Invalidaciones aplicadas; una carga solo se guarda si no cambió mientras corría
+
+    private final Map<String, CompletableFuture<Loaded>> loading = new ConcurrentHashMap<>();
+    private final Map<String, Long> suspects = new ConcurrentHashMap<>();
+    // Etiquetas invalidadas cuya escritura quizá aún no ven las búsquedas, con el momento de la invalidación
+    private final Map<String, Long> unsettled = new ConcurrentHashMap<>();
+
+    private volatile Function<String, Loaded> loader;
+    private volatile String self;
+    private volatile Map<String, URI> members = Map.of();
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(List.of(), 1);
+    private volatile Map<String, Object> lastRebalance;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder peerErrors = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder notAdmitted = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+    private final LongAdder invalidationsSent = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
+    private final LongAdder settledInvalidations = new LongAdder();
+
+    public PeerCache(Environment env, ObjectProvider<DiscoveryClient> discovery, ObjectProvider<Registration> registration,
+                     TimeBudgets budgets) {
+        this.discovery = discovery;
+        this.registration = registration;
+        this.budgets = budgets;
+        this.enabled = env.getProperty("app.peer-cache.enabled", Boolean.class, false);
+        this.serviceId = env.getProperty("spring.application.name", "ms-search");
+        this.token = env.getProperty("app.admin.token", "");
+        this.ttlMillis = env.getProperty("app.peer-cache.ttl-ms", Long.class, 30_000L);
+        this.maxEntries = env.getProperty("app.peer-cache.max-entries", Integer.class, 10_000);
+        this.maxBytes = env.getProperty("app.peer-cache.max-mb", Long.class, 64L) * 1024 * 1024;
+        this.virtualNodes = env.getProperty("app.peer-cache.virtual-nodes", Integer.class, 128);
+        this.peerTimeout = Duration.ofMillis(env.getProperty("app.peer-cache.peer-timeout-ms", Long.class, 250L));
+        this.suspectMillis = env.getProperty("app.peer-cache.suspect-ms", Long.class, 5_000L);
+
+        this.http = HttpClient.newBuilder().connectTimeout(peerTimeout).build();
+        this.broadcaster = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "peer-cache-invalidations");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled && !StringUtils.hasText(token)) {
+            log.warn("app.peer-cache.enabled without app.admin.token: peers will reject forwarded requests");
+        }
+    }
+
+    /**
+     * Cómo calcular el valor de una clave en esta instancia (lo registra PeerCachedSearch)
+     */
+    public void register(Function<String, Loaded> loader) {
+        this.loader = loader;
+    }
+
+    public boolean isEnabled() {
+        return enabled && loader != null;
+    }
+
+    /**
+     * JSON del resultado de la clave: de la caché local si esta instancia es la dueña, o de la dueña
+     */
+    public byte[] get(String key) {
+        String owner = ring.owner(key);
+        URI peer = owner == null || owner.equals(self) ? null : members.get(owner);
+        if (peer == null) {
+            return getLocal(key).getJson();
+        }
+
+        long budgetMillis = remainingMillis(key);
+        Long suspectUntil = suspects.get(owner);
+        if ((suspectUntil == null || suspectUntil < System.currentTimeMillis()) && budgetMillis > peerTimeout.toMillis()) {
+            try {
+                HttpResponse<byte[]> response = forward(peer, key, budgetMillis);
+                int status = response.statusCode();
+                if (status == 200) {
+                    forwarded.increment();
+                    return response.body();
+                }
+                if (status == 400) {
+                    throw new IllegalArgumentException("Peer " + owner + " rejected cache key: " + key);
+                }
+                peerErrors.increment();
+                if (status >= 500) {
+                    suspect(owner, key, "HTTP " + status);
+                } else {
+                    log.warn("Peer {} answered HTTP {} for cache key '{}'", owner, status, key);
+                }
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                peerErrors.increment();
+                suspect(owner, key, e.toString());
+            } catch (HttpTimeoutException e) {
+                // Lenta pero viva: agotó el presupuesto de esta petición, no hay motivo para dejar de preguntarle
+                peerErrors.increment();
+                log.warn("Peer {} did not answer cache key '{}' within {} ms", owner, key, budgetMillis);
+            } catch (IOException e) {
+                peerErrors.increment();
+                log.warn("Peer {} failed for cache key '{}': {}", owner, key, e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // La dueña no está disponible: se consulta aquí, sin guardar una clave que no es nuestra
+        misses.increment();
+        return loader.apply(key).getJson();
+    }
+
+    /**
+     * Valor de la clave en la caché de esta instancia; si falta, se calcula una sola vez aunque
+     * lleguen varias peticiones a la vez (también las reenviadas por otras instancias)
+     */
+    public Loaded getLocal(String key) {
+        long startEpoch;
+        synchronized (entries) {
+            startEpoch = epoch;
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.increment();
+                return entry.loaded;
+            }
+            if (entry != null) {
+                remove(key);
+            }
+        }
+        misses.increment();
+
+        CompletableFuture<Loaded> future = new CompletableFuture<>();
+        CompletableFuture<Loaded> running = loading.putIfAbsent(key, future);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Loaded loaded = loader.apply(key);
+            if (loaded.isCacheable()) {
+                put(key, loaded, startEpoch);
+            }
+            future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    /**
+     * Invalidación difundida por otra instancia
+     */
+    public void onInvalidation(Collection<String> tags) {
+        invalidationsReceived.increment();
+        invalidate(tags);
+        unsettle(tags);
+    }
+
+    @EventListener
+    public void onItemChange(ItemChangeEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        invalidateEverywhere(event.getType() == ItemChangeType.UPDATED ? List.of(itemTag(event.getItemId())) : List.of(ALL));
+    }
+
+    @EventListener
+    public void onJournalApplied(JournalAppliedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        invalidateEverywhere(event.isStructural() ? List.of(ALL) : event.getUpdatedItemIds().stream().map(PeerCache::itemTag).toList());
+    }
+
+    /**
+     * Nueva generación visible: las etiquetas invalidadas antes de su lectura se invalidan otra vez,
+     * por si entre la escritura y el refresh se guardó algo leído antes de ella
+     */
+    @EventListener
+    public void onGeneration(IndexGenerationEvent event) {
+        if (!isEnabled() || unsettled.isEmpty()) {
+            return;
+        }
+        List<String> settled = new ArrayList<>();
+        // Si una etiqueta se vuelve a invalidar mientras tanto, su nuevo momento la deja pendiente
+        unsettled.entrySet().removeIf(entry -> entry.getValue() < event.getObservedAt() && settled.add(entry.getKey()));
+        if (settled.isEmpty()) {
+            return;
+        }
+        invalidate(settled);
+        settledInvalidations.increment();
+    }
+
+    public static String itemTag(String itemId) {
+        return "item:" + itemId;
+    }
+
+    @Scheduled(fixedDelayString = "${app.peer-cache.refresh-ms:10000}")
+    public void refreshMembers() {
+        if (!enabled) {
+            return;
+        }
+        Registration me = registration.getIfAvailable();
+        DiscoveryClient client = discovery.getIfAvailable();
+        if (me == null || client == null) {
+            return;
+        }
+        Map<String, URI> current = new TreeMap<>();
+        for (ServiceInstance instance : client.getInstances(serviceId)) {
+            current.put(instance.getInstanceId(), instance.getUri());
+        }
+        current.put(me.getInstanceId(), me.getUri());
+        self = me.getInstanceId();
+
+        if (current.keySet().equals(members.keySet())) {
+            members = current;
+            return;
+        }
+        rebalance(current);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("self", self);
+        stats.put("members", new ArrayList<>(members.keySet()));
+        stats.put("suspects", suspects.entrySet().stream()
+                .filter(suspect -> suspect.getValue() > System.currentTimeMillis()).map(Map.Entry::getKey).toList());
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", bytes);
+            stats.put("tags", byTag.size());
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("forwarded", forwarded.sum());
+        stats.put("servedToPeers", served.sum());
+        stats.put("peerErrors", peerErrors.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("notAdmitted", notAdmitted.sum());
+        stats.put("staleLoadsDiscarded", staleLoads.sum());
+        stats.put("invalidationsSent", invalidationsSent.sum());
+        stats.put("invalidationsReceived", invalidationsReceived.sum());
+        stats.put("unsettledTags", unsettled.size());
+        stats.put("settledInvalidations", settledInvalidations.sum());
+        stats.put("lastRebalance", lastRebalance);
+        return stats;
+    }
+
+    /**
+     * Se invoca al atender una petición reenviada por otra instancia
+     */
+    public void onServedToPeer() {
+        served.increment();
+    }
+
+    @PreDestroy
+    public void close() {
+        broadcaster.shutdownNow();
+    }
+
+    private void rebalance(Map<String, URI> current) {
+        ConsistentHashRing next = new ConsistentHashRing(current.keySet(), virtualNodes);
+        int kept = 0;
+        int moved = 0;
+        synchronized (entries) {
+            for (String key : new ArrayList<>(entries.keySet())) {
+                if (self.equals(next.owner(key))) {
+                    kept++;
+                } else {
+                    remove(key);
+                    moved++;
+                }
+            }
+        }
+        Map<String, Object> rebalance = new LinkedHashMap<>();
+        rebalance.put("timestamp", Instant.now().toString());
+        rebalance.put("membersBefore", members.size());
+        rebalance.put("membersAfter", current.size());
+        rebalance.put("keptEntries", kept);
+        rebalance.put("movedEntries", moved);
+        lastRebalance = rebalance;
+        log.info("Peer cache members changed {} -> {}: kept {} entries, dropped {} now owned by other peers",
+                members.keySet(), current.keySet(), kept, moved);
+
+        members = current;
+        ring = next;
+    }
+
+    /**
+     * Reenvía la clave a su dueña con el presupuesto que le queda a la petición, descontando
+     * peer-timeout-ms para que su respuesta (aunque sea parcial) llegue antes de cortar aquí
+     */
+    private HttpResponse<byte[]> forward(URI peer, String key, long budgetMillis) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(peer.resolve(CACHE_PATH + "?key=" + URLEncoder.encode(key, StandardCharsets.UTF_8)))
+                .timeout(Duration.ofMillis(budgetMillis))
+                .header(AdminAccess.HEADER, token)
+                .header(TimeBudgets.HEADER, String.valueOf(budgetMillis - peerTimeout.toMillis()))
+                .GET()
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private void suspect(String owner, String key, String reason) {
+        suspects.put(owner, System.currentTimeMillis() + suspectMillis);
+        log.warn("Peer {} unavailable for cache key '{}' ({}); skipping it for {} ms", owner, key, reason, suspectMillis);
+    }
+
+    /**
+     * Presupuesto que le queda a la petición en curso, o el del endpoint de la clave si no hay ninguna
+     */
+    private long remainingMillis(String key) {
+        RequestContext context = RequestContext.current();
+        if (context != null) {
+            return TimeUnit.NANOSECONDS.toMillis(context.remainingNanos());
+        }
+        int question = key.indexOf('?');
+        Endpoint endpoint = Endpoint.ofKey(question < 0 ? key : key.substring(0, question));
+        return endpoint != null ? budgets.defaultMillis(endpoint) : peerTimeout.toMillis() * 2;
+    }
+
+    private void invalidateEverywhere(List<String> tags) {
+        invalidate(tags);
+        unsettle(tags);
+        for (Map.Entry<String, URI> member : members.entrySet()) {
+            if (!member.getKey().equals(self)) {
+                broadcaster.execute(() -> sendInvalidation(member.getValue(), tags));
+            }
+        }
+    }
+
+    private void unsettle(Collection<String> tags) {
+        long now = System.currentTimeMillis();
+        tags.forEach(tag -> unsettled.put(tag, now));
+        if (unsettled.size() > maxEntries) {
+            // Demasiadas etiquetas pendientes: se vacía todo en la siguiente generación
+            unsettled.clear();
+            unsettled.put(ALL, now);
+        }
+    }
+
+    private void sendInvalidation(URI peer, List<String> tags) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(peer.resolve(INVALIDATE_PATH))
+                    .timeout(peerTimeout)
+                    .header(AdminAccess.HEADER, token)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(tags)))
+                    .build();
+            http.send(request, HttpResponse.BodyHandlers.discarding());
+            invalidationsSent.increment();
+        } catch (Exception e) {
+            log.debug("Could not send cache invalidation to {}: {}", peer, e.getMessage());
+        }
+    }
+
+    private void invalidate(Collection<String> tags) {
+        synchronized (entries) {
+            epoch++;
+            if (tags.contains(ALL)) {
+                entries.clear();
+                byTag.clear();
+                bytes = 0;
+                return;
+            }
+            for (String tag : tags) {
+                Set<String> keys = byTag.get(tag);
+                if (keys != null) {
+                    for (String key : new ArrayList<>(keys)) {
+                        remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void put(String key, Loaded loaded, long startEpoch) {
+        synchronized (entries) {
+            if (epoch != startEpoch) {
+                staleLoads.increment();
+                return;
+            }
+            remove(key);
+            if (!loaded.isHot() && (entries.size() >= maxEntries || bytes + loaded.getJson().length > maxBytes)) {
+                notAdmitted.increment();
+                return;
+            }
+            entries.put(key, new Entry(loaded, System.currentTimeMillis() + ttlMillis));
+            bytes += loaded.getJson().length;
+            for (String tag : loaded.getTags()) {
+                byTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+            }
+            while ((entries.size() > maxEntries || bytes > maxBytes) && !entries.isEmpty()) {
+                remove(entries.keySet().iterator().next());
+                evicted.increment();
+            }
+        }
+    }
+
+    // Llamar con el monitor de entries
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        bytes -= entry.loaded.getJson().length;
+        for (String tag : entry.loaded.getTags()) {
+            Set<String> keys = byTag.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    byTag.remove(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resultado serializado de una clave, con sus etiquetas, si se puede guardar (no se guardan los
+     * resultados parciales por timeout) y si es caliente (se admite aunque la caché esté llena)
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Loaded {
+        private final byte[] json;
+        private final Set<String> tags;
+        private final boolean cacheable;
+        private final boolean hot;
+
+        public Loaded(byte[] json, Set<String> tags, boolean cacheable) {
+            this(json, tags, cacheable, true);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final Loaded loaded;
+        private final long expiresAt;
+    }
+}
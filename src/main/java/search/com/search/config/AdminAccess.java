@@ -0,0 +1,24 @@
+package search.com.search.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Control de acceso para endpoints de administración.
+ *
+ * Lee el token compartido de la propiedad app.admin.token (variable de entorno APP_ADMIN_TOKEN).
+ * Si no hay token configurado se rechazan todas las peticiones de administración.
+ */
+@Component
+public class AdminAccess {
+
+    public static final String HEADER = "X-Admin-Token";
+
+    @Value("${app.admin.token:}")
+    private String token;
+
+    public boolean isAdmin(String providedToken) {
+        return StringUtils.hasText(token) && token.equals(providedToken);
+    }
+}
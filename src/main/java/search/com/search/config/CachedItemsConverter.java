@@ -0,0 +1,47 @@
+package search.com.search.config;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import search.com.search.model.dto.CachedResponseItems;
+
+/**
+ * Escribe un {@link CachedResponseItems} copiando su JSON tal cual: las respuestas de la caché
+ * repartida ya tienen la forma de ResponseItems (las de raw-source, con el _source de cada hit).
+ */
+public class CachedItemsConverter extends AbstractHttpMessageConverter<CachedResponseItems> {
+
+    public CachedItemsConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return CachedResponseItems.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected CachedResponseItems readInternal(Class<? extends CachedResponseItems> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("CachedResponseItems is write-only", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(CachedResponseItems response, MediaType contentType) {
+        return (long) response.getJson().length;
+    }
+
+    @Override
+    protected void writeInternal(CachedResponseItems response, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(response.getJson());
+    }
+}
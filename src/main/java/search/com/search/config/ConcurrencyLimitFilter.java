@@ -0,0 +1,63 @@
+package search.com.search.config;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.resilience.AdaptiveLimiter;
+import search.com.search.resilience.ConcurrencyLimits;
+
+/**
+ * Aplica el bulkhead del endpoint antes de llegar al controlador. Si el límite adaptativo
+ * está lleno se responde 503 con Retry-After inmediatamente, sin ocupar el hilo esperando.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final ConcurrencyLimits limits;
+
+    @Value("${app.limits.retry-after-seconds:1}")
+    private int retryAfterSeconds;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        Endpoint endpoint = Endpoint.resolve(request.getMethod(), request.getRequestURI());
+        if (endpoint == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        AdaptiveLimiter limiter = limits.forEndpoint(endpoint);
+        if (!limiter.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Service Unavailable\",\"message\":\"Too many concurrent "
+                    + endpoint.bulkhead() + " requests\",\"status\":\"503\"}");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            chain.doFilter(request, response);
+            dropped = response.getStatus() >= 500;
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+}
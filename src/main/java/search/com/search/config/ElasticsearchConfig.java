@@ -40,13 +40,13 @@ public class ElasticsearchConfig {
 
     private ElasticsearchOperations elasticsearchOperations;
 
-    @Bean
-    public ElasticsearchOperations elasticsearchTemplate() {
+    @Bean(destroyMethod = "close")
+    public RestHighLevelClient elasticsearchClient() {
         final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
         credentialsProvider.setCredentials(AuthScope.ANY,
                 new UsernamePasswordCredentials(username, password));
 
-        RestHighLevelClient client = new RestHighLevelClient(
+        return new RestHighLevelClient(
                 RestClient.builder(new HttpHost(clusterEndpoint, 443, "https"))
                         .setHttpClientConfigCallback(new RestClientBuilder.HttpClientConfigCallback() {
                             @Override
@@ -55,7 +55,10 @@ public class ElasticsearchConfig {
                                 return httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
                             }
                         }));
+    }
 
+    @Bean
+    public ElasticsearchOperations elasticsearchTemplate(RestHighLevelClient client) {
         this.elasticsearchOperations = new ElasticsearchRestTemplate(client);
         return this.elasticsearchOperations;
     }
@@ -0,0 +1,137 @@
+package search.com.search.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import search.com.search.model.dto.RawResponseItems;
+
+/**
+ * Escribe un {@link RawResponseItems} con la misma forma JSON que ResponseItems copiando el _source
+ * de cada hit tal cual llega de Elasticsearch: no se crean entidades Items ni pasa por Jackson más
+ * que el id y los campos opcionales (profile, didYouMean).
+ *
+ * Cada item se escribe como {"id":"...", seguido del _source sin su llave de apertura. Los campos que
+ * no estén en el _source se omiten en vez de escribirse como null.
+ */
+public class RawItemsConverter extends AbstractHttpMessageConverter<RawResponseItems> {
+
+    private static final byte[] ITEMS_START = bytes("{\"items\":[");
+    private static final byte[] ID_START = bytes("{\"id\":");
+    private static final byte[] TIMED_OUT = bytes("],\"timedOut\":");
+    private static final byte[] PROFILE = bytes(",\"profile\":");
+    private static final byte[] DID_YOU_MEAN = bytes(",\"didYouMean\":");
+    private static final byte[] NULL = bytes("null");
+
+    private final ObjectMapper objectMapper;
+
+    public RawItemsConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return RawResponseItems.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected RawResponseItems readInternal(Class<? extends RawResponseItems> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("RawResponseItems is write-only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(RawResponseItems response, HttpOutputMessage outputMessage) throws IOException {
+        write(response, outputMessage.getBody());
+    }
+
+    /**
+     * Escribe la respuesta completa en out (también lo usa la herramienta bench-raw)
+     */
+    public void write(RawResponseItems response, OutputStream out) throws IOException {
+        out.write(ITEMS_START);
+        SearchHit[] hits = response.getHits();
+        for (int i = 0; i < hits.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeHit(hits[i], out);
+        }
+        out.write(TIMED_OUT);
+        out.write(bytes(String.valueOf(response.isTimedOut())));
+        if (response.getProfile() != null) {
+            out.write(PROFILE);
+            out.write(objectMapper.writeValueAsBytes(response.getProfile()));
+        }
+        if (response.getDidYouMean() != null) {
+            out.write(DID_YOU_MEAN);
+            out.write(objectMapper.writeValueAsBytes(response.getDidYouMean()));
+        }
+        out.write('}');
+    }
+
+    private static void writeHit(SearchHit hit, OutputStream out) throws IOException {
+        out.write(ID_START);
+        if (hit.getId() == null) {
+            out.write(NULL);
+        } else {
+            out.write('"');
+            out.write(JsonStringEncoder.getInstance().quoteAsUTF8(hit.getId()));
+            out.write('"');
+        }
+
+        BytesReference source = hit.getSourceRef();
+        if (source != null && source.length() > 0 && source.get(0) != '{') {
+            // _source en otro formato (SMILE, CBOR...) o con espacios delante: se convierte con el tipo
+            // real del hit, es el caso raro
+            source = new BytesArray(XContentHelper.convertToJson(source, false, sourceType(source)));
+        }
+        if (source == null || source.length() <= 2) {
+            out.write('}');
+            return;
+        }
+        out.write(',');
+        source.slice(1, source.length() - 1).writeTo(out);
+    }
+
+    /**
+     * Tipo del _source según su cabecera: SMILE empieza por ":)\n", CBOR por un mapa (mayor 5) o la
+     * etiqueta 55799 y YAML por "---"; lo demás es JSON
+     */
+    private static XContentType sourceType(BytesReference source) {
+        int first = source.get(0) & 0xff;
+        if (first == ':' && source.length() >= 3 && source.get(1) == ')' && source.get(2) == '\n') {
+            return XContentType.SMILE;
+        }
+        if ((first & 0xe0) == 0xa0 || first == 0xd9) {
+            return XContentType.CBOR;
+        }
+        if (first == '-' && source.length() >= 3 && source.get(1) == '-' && source.get(2) == '-') {
+            return XContentType.YAML;
+        }
+        return XContentType.JSON;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
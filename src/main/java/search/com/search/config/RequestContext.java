@@ -0,0 +1,181 @@
+package search.com.search.config;
+
+import java.util.function.Supplier;
+
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.dto.SearchProfile;
+
+/**
+ * Estado de la petición HTTP en curso (endpoint y deadline), accesible desde las capas inferiores
+ * sin tener que añadir parámetros a cada método de InnerSearch.
+ */
+public class RequestContext {
+
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    private final Endpoint endpoint;
+    private final long startNanos;
+    private final long deadlineNanos;
+    private final boolean background;
+    private SearchProfile profile;
+    private String preference;
+
+    // Última búsqueda enviada a Elasticsearch, para el slow query log
+    private SearchSourceBuilder lastQuery;
+    private long tookMillis;
+    private long hits = -1;     // -1 mientras ninguna búsqueda haya respondido
+
+    private long responseWriteNanos;    // Inicio de la serialización de la respuesta (solo con profile)
+
+    public RequestContext(Endpoint endpoint, long budgetMillis) {
+        this(endpoint, budgetMillis, false);
+    }
+
+    /**
+     * background: trabajo interno (el calentamiento), sin cliente esperando; sus timeouts no son
+     * señal de un clúster caído y no cuentan en el circuit breaker
+     */
+    public RequestContext(Endpoint endpoint, long budgetMillis, boolean background) {
+        this.endpoint = endpoint;
+        this.startNanos = System.nanoTime();
+        this.deadlineNanos = startNanos + budgetMillis * 1_000_000L;
+        this.background = background;
+    }
+
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Ejecuta body con context como petición en curso, para trabajo que no entra por
+     * RequestContextFilter (p. ej. las lecturas que reenvía otra réplica con su presupuesto)
+     */
+    public static <T> T callWith(RequestContext context, Supplier<T> body) {
+        RequestContext previous = CURRENT.get();
+        CURRENT.set(context);
+        try {
+            return body.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    static void set(RequestContext context) {
+        CURRENT.set(context);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Presupuesto total de la petición (el del endpoint o el de X-Request-Timeout)
+     */
+    public long getBudgetNanos() {
+        return deadlineNanos - startNanos;
+    }
+
+    public boolean isBackground() {
+        return background;
+    }
+
+    public SearchProfile getProfile() {
+        return profile;
+    }
+
+    public SearchProfile enableProfile() {
+        if (profile == null) {
+            profile = new SearchProfile();
+        }
+        return profile;
+    }
+
+    /**
+     * Preference de Elasticsearch derivada de la sesión del cliente, o null si no llegó ninguna
+     */
+    public String getPreference() {
+        return preference;
+    }
+
+    public void setPreference(String preference) {
+        this.preference = preference;
+    }
+
+    /**
+     * Cuerpo de la búsqueda que se va a enviar; se registra antes para que el slow log lo tenga
+     * también cuando la búsqueda agota el tiempo o falla
+     */
+    public void recordQuery(SearchSourceBuilder query) {
+        this.lastQuery = query;
+    }
+
+    /**
+     * Resultado de la última búsqueda que respondió (las búsquedas por ids de un _mget corren en paralelo)
+     */
+    public synchronized void recordResult(long tookMillis, long hits) {
+        this.tookMillis += tookMillis;
+        this.hits = hits;
+    }
+
+    public void markResponseWrite() {
+        this.responseWriteNanos = System.nanoTime();
+    }
+
+    /**
+     * Instante en que empezó a escribirse el cuerpo de la respuesta, o 0 si no se anotó
+     */
+    public long getResponseWriteNanos() {
+        return responseWriteNanos;
+    }
+
+    public SearchSourceBuilder getLastQuery() {
+        return lastQuery;
+    }
+
+    public long getTookMillis() {
+        return tookMillis;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Perfil de la petición actual, o null si no se pidió profile=true
+     */
+    public static SearchProfile currentProfile() {
+        RequestContext context = CURRENT.get();
+        return context != null ? context.profile : null;
+    }
+
+    /**
+     * Anota la duración de una fase desde startNanos; no hace nada si la petición no se está perfilando
+     */
+    public static void recordPhase(String phase, long startNanos) {
+        SearchProfile profile = currentProfile();
+        if (profile != null) {
+            profile.record(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Tiempo que le queda a la petición antes de su deadline (puede ser negativo)
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+}
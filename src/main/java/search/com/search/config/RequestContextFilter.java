@@ -0,0 +1,126 @@
+package search.com.search.config;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.dto.SearchProfile;
+import search.com.search.resilience.TimeBudgets;
+import search.com.search.service.AccessLog;
+import search.com.search.service.HeavyHitters;
+import search.com.search.service.HotQueries;
+import search.com.search.service.SlowQueryLog;
+
+/**
+ * Abre el {@link RequestContext} de cada petición a un endpoint de búsqueda, con su deadline
+ * tomado de la cabecera X-Request-Timeout o del valor por defecto del endpoint. Al terminar
+ * la petición se pasa por el slow query log, se registra en el access log y se cuenta en la muestra
+ * de consultas frecuentes que se usa para calentar el servicio al arrancar y en el top-K de consultas
+ * y filtros. Si el cliente envía
+ * un identificador de sesión se traduce a la preference de sus búsquedas.
+ *
+ * Con profile=true la respuesta se guarda en memoria hasta el final: el perfil va dentro del cuerpo y
+ * no puede incluir su propia serialización, así que esa fase (desde {@link ResponseWriteAdvice} hasta
+ * que el cuerpo está escrito) se añade, con las demás, en la cabecera Server-Timing antes de enviarlo.
+ */
+@Component("requestBudgetFilter")
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@RequiredArgsConstructor
+public class RequestContextFilter extends OncePerRequestFilter {
+
+    static final String SERVER_TIMING = "Server-Timing";
+
+    private final TimeBudgets budgets;
+    private final SlowQueryLog slowQueryLog;
+    private final AccessLog accessLog;
+    private final HotQueries hotQueries;
+    private final HeavyHitters heavyHitters;
+
+    @Value("${app.preference.enabled:true}")
+    private boolean sessionPreference;
+
+    @Value("${app.preference.header:X-Session-Id}")
+    private String sessionHeader;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        Endpoint endpoint = Endpoint.resolve(request.getMethod(), request.getRequestURI());
+        if (endpoint == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        RequestContext context = new RequestContext(endpoint, budgets.resolve(endpoint, request.getHeader(TimeBudgets.HEADER)));
+        if (sessionPreference) {
+            context.setPreference(preferenceFor(request.getHeader(sessionHeader)));
+        }
+        RequestContext.set(context);
+        ContentCachingResponseWrapper buffered = "true".equals(request.getParameter("profile"))
+                ? new ContentCachingResponseWrapper(response) : null;
+        boolean failed = true;
+        try {
+            chain.doFilter(request, buffered != null ? buffered : response);
+            failed = false;
+        } finally {
+            if (buffered != null) {
+                addServerTiming(context, buffered);
+                buffered.copyBodyToResponse();
+            }
+            slowQueryLog.onRequestFinished(context, request.getQueryString());
+            accessLog.onRequestFinished(context, request.getMethod(), request.getRequestURI(),
+                    request.getQueryString(), response.getStatus(), failed);
+            if (!failed) {
+                hotQueries.record(endpoint, request.getQueryString(), response.getStatus());
+                heavyHitters.onRequestFinished(context, request.getQueryString(), response.getStatus());
+            }
+            RequestContext.clear();
+        }
+    }
+
+    private static void addServerTiming(RequestContext context, HttpServletResponse response) {
+        SearchProfile profile = context.getProfile();
+        if (profile == null) {
+            return;
+        }
+        if (context.getResponseWriteNanos() > 0) {
+            profile.record("responseSerialization", System.nanoTime() - context.getResponseWriteNanos());
+        }
+        StringBuilder timing = new StringBuilder();
+        profile.getClientTimingsMs().forEach((phase, millis) -> {
+            if (timing.length() > 0) {
+                timing.append(", ");
+            }
+            timing.append(phase).append(";dur=").append(String.format(Locale.ROOT, "%.3f", millis));
+        });
+        if (timing.length() > 0) {
+            response.setHeader(SERVER_TIMING, timing.toString());
+        }
+    }
+
+    /**
+     * Misma sesión, misma preference: Elasticsearch la hashea para elegir siempre las mismas copias
+     * de cada shard (y otra de las restantes si un nodo sale del clúster). El identificador no se
+     * envía tal cual.
+     */
+    private static String preferenceFor(String sessionId) {
+        if (!StringUtils.hasText(sessionId)) {
+            return null;
+        }
+        return "session-" + Integer.toHexString(sessionId.trim().hashCode());
+    }
+}
@@ -0,0 +1,34 @@
+package search.com.search.config;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Anota en el {@link RequestContext} de una petición perfilada el instante en que el controlador ya
+ * devolvió la respuesta y empieza la serialización del cuerpo; {@link RequestContextFilter} mide desde
+ * ahí hasta que el cuerpo está escrito (fase responseSerialization, en la cabecera Server-Timing).
+ */
+@ControllerAdvice
+public class ResponseWriteAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType contentType,
+                                  Class<? extends HttpMessageConverter<?>> converterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        RequestContext context = RequestContext.current();
+        if (context != null && context.getProfile() != null) {
+            context.markResponseWrite();
+        }
+        return body;
+    }
+}
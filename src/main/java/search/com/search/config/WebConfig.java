@@ -0,0 +1,30 @@
+package search.com.search.config;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Conversores HTTP propios. RawItemsConverter y CachedItemsConverter van los primeros para que las
+ * respuestas con hits en bruto o ya serializadas no lleguen al conversor de Jackson, que serializaría
+ * una lista de items vacía.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ObjectMapper objectMapper;
+
+    public WebConfig(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new RawItemsConverter(objectMapper));
+        converters.add(1, new CachedItemsConverter());
+    }
+}
@@ -0,0 +1,366 @@
+package search.com.search.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.cache.PeerCache;
+import search.com.search.config.AdminAccess;
+import search.com.search.federation.FederatedSearch;
+import search.com.search.journal.MutationJournal;
+import search.com.search.model.dto.SlowQuery;
+import search.com.search.repository.ItemsRouting;
+import search.com.search.resilience.ConcurrencyLimits;
+import search.com.search.resilience.ResiliencePolicies;
+import search.com.search.service.AccessLog;
+import search.com.search.service.CacheStats;
+import search.com.search.service.FacetCounters;
+import search.com.search.service.FuzzyFallback;
+import search.com.search.service.HeavyHitters;
+import search.com.search.service.IndexMaintenance;
+import search.com.search.service.ItemChangeStream;
+import search.com.search.service.SlowQueryLog;
+import search.com.search.service.StockCombiner;
+import search.com.search.service.Warmup;
+
+/**
+ * Endpoints de administración y observabilidad. Requieren la cabecera X-Admin-Token.
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class AdminAPI {
+
+    private final AdminAccess adminAccess;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final ResiliencePolicies resiliencePolicies;
+    private final SlowQueryLog slowQueryLog;
+    private final AccessLog accessLog;
+    private final CacheStats cacheStats;
+    private final ItemsRouting itemsRouting;
+    private final ItemChangeStream changeStream;
+    private final StockCombiner stockCombiner;
+    private final MutationJournal journal;
+    private final Warmup warmup;
+    private final HeavyHitters heavyHitters;
+    private final FuzzyFallback fuzzyFallback;
+    private final IndexMaintenance indexMaintenance;
+    private final PeerCache peerCache;
+    private final FacetCounters facetCounters;
+    private final FederatedSearch federatedSearch;
+
+    /**
+     * Límites de concurrencia actuales, peticiones en curso y rechazos por bulkhead
+     */
+    @GetMapping("/v1/admin/limits")
+    public ResponseEntity<Map<String, Object>> getLimits(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(concurrencyLimits.stats());
+    }
+
+    /**
+     * Tasa de hedging, peticiones de respaldo ganadoras y estado del circuit breaker por endpoint
+     */
+    @GetMapping("/v1/admin/resilience")
+    public ResponseEntity<Map<String, Object>> getResilience(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(resiliencePolicies.stats());
+    }
+
+    /**
+     * Consultas que superaron el umbral de su método, de la más reciente a la más antigua
+     */
+    @GetMapping("/v1/admin/slow-queries")
+    public ResponseEntity<List<SlowQuery>> getSlowQueries(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(slowQueryLog.recent());
+    }
+
+    /**
+     * Registros del access log escritos, descartados por cola llena y descartados por muestreo
+     */
+    @GetMapping("/v1/admin/access-log")
+    public ResponseEntity<Map<String, Object>> getAccessLog(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(accessLog.stats());
+    }
+
+    /**
+     * Tasa de aciertos de la request cache y la query cache de Elasticsearch para el índice
+     */
+    @GetMapping("/v1/admin/cache-stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(cacheStats.stats());
+        } catch (Exception e) {
+            log.error("Could not read cache stats", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Suscriptores del stream de cambios, eventos publicados y suscriptores expulsados por lentos
+     */
+    @GetMapping("/v1/admin/changes")
+    public ResponseEntity<Map<String, Object>> getChanges(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(changeStream.stats());
+    }
+
+    /**
+     * Cambios de stock aceptados, rechazados por falta de stock y volcados a Elasticsearch
+     */
+    @GetMapping("/v1/admin/stock-combiner")
+    public ResponseEntity<Map<String, Object>> getStockCombiner(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(stockCombiner.stats());
+    }
+
+    /**
+     * Estado del journal de escrituras: última secuencia escrita, sincronizada y aplicada, y retraso
+     */
+    @GetMapping("/v1/admin/journal")
+    public ResponseEntity<Map<String, Object>> getJournal(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(journal.stats());
+    }
+
+    /**
+     * Consultas más frecuentes registradas y resultado del último calentamiento
+     */
+    @GetMapping("/v1/admin/warmup")
+    public ResponseEntity<Map<String, Object>> getWarmup(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(warmup.stats());
+    }
+
+    /**
+     * Repite las consultas más frecuentes (por ejemplo, después de un reindexado). 409 si ya hay
+     * un calentamiento en curso.
+     */
+    @PostMapping("/v1/admin/warmup")
+    public ResponseEntity<Map<String, Object>> runWarmup(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Map<String, Object> result = warmup.run();
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(result);
+    }
+
+    /**
+     * Consultas, prefijos de suggest, combinaciones de filtros y consultas sin resultados más
+     * frecuentes de la ventana, con la cuenta estimada y su error máximo
+     */
+    @GetMapping("/v1/admin/heavy-hitters")
+    public ResponseEntity<Map<String, Object>> getHeavyHitters(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token,
+            @RequestParam(name = "k", required = false, defaultValue = "20") int k) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(heavyHitters.stats(k));
+    }
+
+    /**
+     * Búsquedas en dos fases: cuántas se resolvieron con la consulta exacta y cuántas necesitaron la fuzzy
+     */
+    @GetMapping("/v1/admin/two-phase")
+    public ResponseEntity<Map<String, Object>> getTwoPhase(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(fuzzyFallback.stats());
+    }
+
+    /**
+     * Miembros del anillo de la caché repartida, aciertos, reenvíos a otras instancias e invalidaciones
+     */
+    @GetMapping("/v1/admin/peer-cache")
+    public ResponseEntity<Map<String, Object>> getPeerCache(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(peerCache.stats());
+    }
+
+    /**
+     * Estado de los contadores de facetas en memoria: documentos, última reconstrucción y respuestas sin Elasticsearch
+     */
+    @GetMapping("/v1/admin/facet-counters")
+    public ResponseEntity<Map<String, Object>> getFacetCounters(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(facetCounters.stats());
+    }
+
+    /**
+     * Clústeres de la búsqueda federada: peticiones, timeouts, errores y p99 de cada uno, y respuestas parciales
+     */
+    @GetMapping("/v1/admin/federation")
+    public ResponseEntity<Map<String, Object>> getFederation(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(federatedSearch.stats());
+    }
+
+    /**
+     * Muestra actual de la salud de los segmentos de 'items', histórico reciente y último force merge
+     */
+    @GetMapping("/v1/admin/maintenance")
+    public ResponseEntity<Map<String, Object>> getMaintenance(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            indexMaintenance.collect();
+            return ResponseEntity.status(HttpStatus.OK).body(indexMaintenance.stats());
+        } catch (Exception e) {
+            log.error("Could not collect index health", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Última muestra de salud del índice en formato de texto de Prometheus
+     */
+    @GetMapping(value = "/v1/admin/maintenance/metrics", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getMaintenanceMetrics(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(indexMaintenance.metrics());
+    }
+
+    /**
+     * Lanza ya un force merge con only_expunge_deletes, fuera de las ventanas configuradas.
+     * 409 si hay una carga masiva en curso.
+     */
+    @PostMapping("/v1/admin/maintenance/forcemerge")
+    public ResponseEntity<Map<String, Object>> forceMerge(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (indexMaintenance.isBulkLoading()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("task", indexMaintenance.forceMerge()));
+        } catch (Exception e) {
+            log.error("Could not start force merge", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Empieza (active=true) o termina (active=false) una carga masiva: refresh_interval=-1 mientras
+     * dure. 409 si ya había una en curso, o si no había ninguna que terminar.
+     */
+    @PostMapping("/v1/admin/maintenance/bulk-load")
+    public ResponseEntity<Map<String, Object>> bulkLoad(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token,
+            @RequestParam(name = "active") boolean active) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            boolean changed = active ? indexMaintenance.startBulkLoad() : indexMaintenance.endBulkLoad();
+            if (!changed) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(Map.of("bulkLoading", active));
+        } catch (Exception e) {
+            log.error("Could not change bulk load state to {}", active, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Lanza la migración de 'items' a un índice con routing por categoría. Devuelve el id de la
+     * tarea de Elasticsearch; al terminar hay que apuntar el alias 'items' al índice destino.
+     */
+    @PostMapping("/v1/admin/routing/reindex")
+    public ResponseEntity<Map<String, Object>> reindexWithRouting(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token,
+            @RequestParam(name = "dest") String dest) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("task", itemsRouting.reindex(dest)));
+        } catch (Exception e) {
+            log.error("Could not start reindex into {}", dest, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
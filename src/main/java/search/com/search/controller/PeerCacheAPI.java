@@ -0,0 +1,88 @@
+package search.com.search.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.cache.PeerCache;
+import search.com.search.config.AdminAccess;
+import search.com.search.config.RequestContext;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.resilience.CircuitOpenException;
+import search.com.search.resilience.TimeBudgets;
+
+/**
+ * Endpoints entre réplicas para la caché repartida ({@link PeerCache}). Las instancias se
+ * autentican con el mismo X-Admin-Token que los endpoints de administración.
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class PeerCacheAPI {
+
+    private final AdminAccess adminAccess;
+    private final PeerCache peerCache;
+    private final TimeBudgets budgets;
+
+    /**
+     * Resultado (JSON) de una clave de la que esta instancia es dueña; se consulta si no está en caché,
+     * con el presupuesto que le quedaba a la petición original (X-Request-Timeout)
+     */
+    @GetMapping(value = PeerCache.CACHE_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> get(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token,
+            @RequestHeader(value = TimeBudgets.HEADER, required = false) String budget,
+            @RequestParam(name = "key") String key) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!peerCache.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        int question = key.indexOf('?');
+        Endpoint endpoint = question > 0 ? Endpoint.ofKey(key.substring(0, question)) : null;
+        if (endpoint == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        try {
+            RequestContext context = new RequestContext(endpoint, budgets.resolve(endpoint, budget));
+            byte[] json = RequestContext.callWith(context, () -> peerCache.getLocal(key).getJson());
+            peerCache.onServedToPeer();
+            return ResponseEntity.status(HttpStatus.OK).body(json);
+        } catch (CircuitOpenException c) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (IllegalArgumentException i) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (Exception e) {
+            log.error("Could not load cache key '{}' for a peer", key, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Invalidación difundida por otra instancia tras una escritura: lista de etiquetas ("*" = todo)
+     */
+    @PostMapping(PeerCache.INVALIDATE_PATH)
+    public ResponseEntity<Map<String, Object>> invalidate(
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String token,
+            @RequestBody List<String> tags) {
+
+        if (!adminAccess.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        peerCache.onInvalidation(tags);
+        return ResponseEntity.status(HttpStatus.OK).body(Map.of("invalidated", tags.size()));
+    }
+}
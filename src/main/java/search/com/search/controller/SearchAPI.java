@@ -5,16 +5,32 @@ import java.util.HashMap;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
 
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.AdminAccess;
+import search.com.search.config.RequestContext;
 import search.com.search.model.dto.FacetsResponse;
 import search.com.search.model.dto.ItemsDto;
+import search.com.search.model.dto.ItemsMultiGet;
+import search.com.search.model.dto.MultiGetItems;
+import search.com.search.service.IndexGeneration;
+import search.com.search.service.ItemChangeStream;
 import search.com.search.service.InnerSearch;
 import search.com.search.model.dto.ResponseItems;
+import search.com.search.model.dto.SearchProfile;
+import search.com.search.model.dto.Suggestions;
+import search.com.search.resilience.CircuitOpenException;
 
 @RestController
 // Global CORS is now configured via CorsConfig (see search.com.search.config.CorsConfig).
@@ -25,14 +41,29 @@ public class SearchAPI {
 
     private final InnerSearch search;
 
+    private final IndexGeneration indexGeneration;
+
+    private final AdminAccess adminAccess;
+
+
+    private final ItemChangeStream changeStream;
+
+    @Value("${app.http.cache-control.items:no-cache}")
+    private String itemsCacheControl;
+
+    @Value("${app.http.cache-control.facets:no-cache}")
+    private String facetsCacheControl;
+
+    @Value("${app.limits.retry-after-seconds:1}")
+    private int retryAfterSeconds;
 
     @PostMapping("/v1/items")
     public ResponseEntity<Object> addItems(@RequestBody ItemsDto itemDto) {
-        log.info("Received POST request to create item: {}", itemDto);
+        log.debug("Received POST request to create item: {}", itemDto);
         try {
-            log.info("Calling search.addItem...");
+            log.debug("Calling search.addItem...");
             this.search.addItem(itemDto);
-            log.info("Item added successfully, creating response");
+            log.debug("Item added successfully, creating response");
             HashMap<String, String> response = new HashMap<>();
             response.put("message", "Item added successful!");
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
@@ -53,10 +84,34 @@ public class SearchAPI {
         }
     }
 
+    /**
+     * Varios items por id en una sola llamada (carrito, pedidos...)
+     *
+     * @param request ids, campos a devolver (opcional) y realtime (opcional)
+     * @return Items encontrados en el orden pedido, ids que no existen y los que no se pudieron resolver
+     */
+    @PostMapping("/v1/items/_mget")
+    public ResponseEntity<MultiGetItems> multiGetItems(@RequestBody ItemsMultiGet request) {
+        try {
+            MultiGetItems response = this.search.multiGet(request.getIds(), request.getFields(), request.getRealtime());
+            return ResponseEntity.status(HttpStatus.OK).body(response);
+        } catch (CircuitOpenException c) {
+            log.warn("Rejected while Elasticsearch circuit is open: {}", c.getMessage());
+            return unavailable();
+        } catch (IllegalArgumentException i) {
+            log.warn("Invalid multi-get request: {}", i.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (Exception e) {
+            log.error("Error during multi-get", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @DeleteMapping("/v1/items/{itemId}")
-    public ResponseEntity<Object> deleteItems(@PathVariable String itemId) {
+    public ResponseEntity<Object> deleteItems(@PathVariable String itemId,
+                                              @RequestParam(required = false) String category) {
         try {
-            this.search.deleteItem(itemId);
+            this.search.deleteItem(itemId, category);
             HashMap<String, String> response = new HashMap<>();
             response.put("message", "Item deleted successful!");
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
@@ -89,12 +144,27 @@ public class SearchAPI {
             @RequestParam(required = false) String category,
             @RequestParam(required = false) String manufacturer,
             @RequestParam(required = false) String product,
-            @RequestParam(required = false, defaultValue = "1") String page
+            @RequestParam(required = false, defaultValue = "1") String page,
+            WebRequest request
     ) {
 
         try {
+            // Si el cliente ya tiene esta respuesta para la generación actual, no consultamos Elasticsearch.
+            // Sin generación conocida no hay ETag ni 304
+            String etag = this.indexGeneration.etag("items", category, manufacturer, product, page);
+            if (etag != null && request.checkNotModified(etag)) {
+                return null;
+            }
+
             ResponseItems response = this.search.getItems(category, manufacturer, product, page);
-            return ResponseEntity.status(HttpStatus.OK).body(response);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.OK);
+            if (etag != null) {
+                builder.eTag(etag).header(HttpHeaders.CACHE_CONTROL, itemsCacheControl);
+            }
+            return builder.body(response);
+        } catch (CircuitOpenException c) {
+            log.warn("Rejected while Elasticsearch circuit is open: {}", c.getMessage());
+            return unavailable();
         } catch (IllegalArgumentException i) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         } catch (Exception e) {
@@ -102,6 +172,25 @@ public class SearchAPI {
         }
     }
 
+    /**
+     * Stream SSE de altas, cambios y bajas de items, como alternativa a sondear /v1/items.
+     * Se puede filtrar por categoría y fabricante, y reanudar con la cabecera Last-Event-ID
+     * (o el parámetro lastEventId) sin perder eventos.
+     */
+    @GetMapping(value = "/v1/items/_changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamItemChanges(
+            @RequestParam(name = "category", required = false) String category,
+            @RequestParam(name = "manufacturer", required = false) String manufacturer,
+            @RequestParam(name = "lastEventId", required = false) String lastEventIdParam,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventIdHeader) {
+
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        return ResponseEntity.status(HttpStatus.OK)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(changeStream.subscribe(category, manufacturer, lastEventId));
+    }
+
     /**
      * Búsqueda full-text avanzada con fuzzy matching
      * Busca en múltiples campos usando multi_match con tolerancia a errores tipográficos
@@ -109,17 +198,22 @@ public class SearchAPI {
      * @param q         Término de búsqueda
      * @param fuzziness Nivel de tolerancia a errores (opcional, default: "AUTO")
      * @param page      Número de página (opcional, default: "1")
+     * @param profile   Desglose de tiempos y profile API de Elasticsearch (solo administradores)
      * @return Items que coincidan con la búsqueda
      */
-
     @GetMapping("/v1/search")
     public ResponseEntity<ResponseItems> searchItems(
             @RequestParam String q,
             @RequestParam(required = false, defaultValue = "AUTO") String fuzziness,
-            @RequestParam(required = false, defaultValue = "1") String page) {
+            @RequestParam(required = false, defaultValue = "1") String page,
+            @RequestParam(required = false, defaultValue = "false") boolean profile,
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String adminToken) {
 
         try {
-            log.info("Full-text search request: q='{}', fuzziness='{}', page='{}'", q, fuzziness, page);
+            log.debug("Full-text search request: q='{}', fuzziness='{}', page='{}'", q, fuzziness, page);
+            if (profile && !startProfiling(adminToken)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
 
             // Validar parámetro de búsqueda
             if (q == null || q.trim().isEmpty()) {
@@ -131,10 +225,14 @@ public class SearchAPI {
             }
 
             ResponseItems response = this.search.searchFullText(q.trim(), fuzziness, page);
-            log.info("Full-text search completed: found {} items", response.getItems().size());
+            log.debug("Full-text search completed: found {} items", response.size());
+            response.setProfile(finishProfiling());
 
             return ResponseEntity.status(HttpStatus.OK).body(response);
 
+        } catch (CircuitOpenException c) {
+            log.warn("Rejected while Elasticsearch circuit is open: {}", c.getMessage());
+            return unavailable();
         } catch (IllegalArgumentException e) {
             log.error("Invalid search parameters: q='{}', fuzziness='{}', page='{}'", q, fuzziness, page, e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
@@ -158,7 +256,7 @@ public class SearchAPI {
             @RequestParam(required = false, defaultValue = "5") String limit) {
 
         try {
-            log.info("Autocomplete request: q='{}', limit='{}'", q, limit);
+            log.debug("Autocomplete request: q='{}', limit='{}'", q, limit);
 
             // Validar parámetros
             if (q == null || q.trim().isEmpty()) {
@@ -179,16 +277,21 @@ public class SearchAPI {
                 limitInt = 5;
             }
 
-            List<String> suggestions = this.search.getAutocompleteSuggestions(q.trim(), limitInt);
-            log.info("Autocomplete completed: found {} suggestions", suggestions.size());
+            Suggestions result = this.search.getAutocompleteSuggestions(q.trim(), limitInt);
+            List<String> suggestions = result.getSuggestions();
+            log.debug("Autocomplete completed: found {} suggestions", suggestions.size());
 
             HashMap<String, Object> response = new HashMap<>();
             response.put("query", q.trim());
             response.put("suggestions", suggestions);
             response.put("count", suggestions.size());
+            response.put("timedOut", result.isTimedOut());
 
             return ResponseEntity.status(HttpStatus.OK).body(response);
 
+        } catch (CircuitOpenException c) {
+            log.warn("Rejected while Elasticsearch circuit is open: {}", c.getMessage());
+            return unavailable();
         } catch (IllegalArgumentException e) {
             log.error("Invalid suggestion parameters: q='{}', limit='{}'", q, limit, e);
             HashMap<String, String> errorResponse = new HashMap<>();
@@ -213,6 +316,7 @@ public class SearchAPI {
      * @param minPrice     Precio mínimo (opcional)
      * @param maxPrice     Precio máximo (opcional)
      * @param page         Número de página (opcional, default: "1")
+     * @param profile      Desglose de tiempos y profile API de Elasticsearch (solo administradores)
      * @return Items que coincidan con los criterios combinados
      */
     @GetMapping("/v1/search/advanced")
@@ -222,17 +326,26 @@ public class SearchAPI {
             @RequestParam(required = false) String manufacturer,
             @RequestParam(required = false) String minPrice,
             @RequestParam(required = false) String maxPrice,
-            @RequestParam(required = false, defaultValue = "1") String page) {
+            @RequestParam(required = false, defaultValue = "1") String page,
+            @RequestParam(required = false, defaultValue = "false") boolean profile,
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String adminToken) {
 
         try {
-            log.info("Advanced search request: q='{}', category='{}', manufacturer='{}', minPrice='{}', maxPrice='{}', page='{}'",
+            if (profile && !startProfiling(adminToken)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            log.debug("Advanced search request: q='{}', category='{}', manufacturer='{}', minPrice='{}', maxPrice='{}', page='{}'",
                     q, category, manufacturer, minPrice, maxPrice, page);
 
             ResponseItems response = this.search.advancedSearch(q, category, manufacturer, minPrice, maxPrice, page);
-            log.info("Advanced search completed: found {} items", response.getItems().size());
+            log.debug("Advanced search completed: found {} items", response.size());
+            response.setProfile(finishProfiling());
 
             return ResponseEntity.status(HttpStatus.OK).body(response);
 
+        } catch (CircuitOpenException c) {
+            log.warn("Rejected while Elasticsearch circuit is open: {}", c.getMessage());
+            return unavailable();
         } catch (IllegalArgumentException e) {
             log.error("Invalid advanced search parameters", e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
@@ -249,27 +362,48 @@ public class SearchAPI {
      * @param q Filtro opcional de texto para generar facetas contextuales
      * @param category Filtro opcional por categoría para facetas cruzadas
      * @param manufacturer Filtro opcional por fabricante para facetas cruzadas
+     * @param profile Desglose de tiempos y profile API de Elasticsearch (solo administradores)
      * @return FacetsResponse con todas las agregaciones y estadísticas
      */
     @GetMapping("/v1/facets")
     public ResponseEntity<FacetsResponse> getFacets(
             @RequestParam(required = false) String q,
             @RequestParam(required = false) String category,
-            @RequestParam(required = false) String manufacturer) {
+            @RequestParam(required = false) String manufacturer,
+            @RequestParam(required = false, defaultValue = "false") boolean profile,
+            @RequestHeader(value = AdminAccess.HEADER, required = false) String adminToken,
+            WebRequest request) {
 
         try {
-            log.info("Facets request: q='{}', category='{}', manufacturer='{}'", q, category, manufacturer);
+            log.debug("Facets request: q='{}', category='{}', manufacturer='{}'", q, category, manufacturer);
+            if (profile && !startProfiling(adminToken)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+
+            // En modo profile siempre se ejecuta la consulta
+            String etag = this.indexGeneration.etag("facets", q, category, manufacturer);
+            if (!profile && etag != null && request.checkNotModified(etag)) {
+                return null;
+            }
 
             FacetsResponse response = this.search.getFacets(q, category, manufacturer);
 
-            log.info("Facets response generated: {} total documents, {} categories, {} manufacturers, {} price ranges",
+            log.debug("Facets response generated: {} total documents, {} categories, {} manufacturers, {} price ranges",
                     response.getTotalDocuments(),
                     response.getCategories().size(),
                     response.getManufacturers().size(),
                     response.getPriceRanges().size());
+            response.setProfile(finishProfiling());
 
-            return ResponseEntity.status(HttpStatus.OK).body(response);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.OK);
+            if (etag != null) {
+                builder.eTag(etag).header(HttpHeaders.CACHE_CONTROL, facetsCacheControl);
+            }
+            return builder.body(response);
 
+        } catch (CircuitOpenException c) {
+            log.warn("Rejected while Elasticsearch circuit is open: {}", c.getMessage());
+            return unavailable();
         } catch (IllegalArgumentException e) {
             log.error("Invalid facets parameters: q='{}', category='{}', manufacturer='{}'", q, category, manufacturer, e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
@@ -279,4 +413,27 @@ public class SearchAPI {
         }
     }
 
-}
+    private boolean startProfiling(String adminToken) {
+        RequestContext context = RequestContext.current();
+        if (context == null || !adminAccess.isAdmin(adminToken)) {
+            return false;
+        }
+        context.enableProfile();
+        return true;
+    }
+
+    /**
+     * Perfil de la petición para adjuntarlo a la respuesta. La serialización de la respuesta se mide
+     * después, al escribir el cuerpo, y va en la cabecera Server-Timing (ver RequestContextFilter).
+     */
+    private SearchProfile finishProfiling() {
+        return RequestContext.currentProfile();
+    }
+
+    private <T> ResponseEntity<T> unavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .build();
+    }
+
+}
\ No newline at end of file
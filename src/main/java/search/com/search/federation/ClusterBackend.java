@@ -0,0 +1,81 @@
+package search.com.search.federation;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.util.StringUtils;
+
+import lombok.Getter;
+import search.com.search.resilience.LatencyTracker;
+
+/**
+ * Un clúster de Elasticsearch de la búsqueda federada: nombre, cliente, índice y timeout propio,
+ * con sus contadores de peticiones, timeouts y errores.
+ */
+@Getter
+public class ClusterBackend {
+
+    private final String name;
+    private final RestHighLevelClient client;
+    private final String index;
+    private final long timeoutMillis;
+    // El cliente del clúster local es el bean de ElasticsearchConfig: no se cierra aquí
+    private final boolean ownsClient;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyTracker latency = new LatencyTracker(99);
+
+    public ClusterBackend(String name, RestHighLevelClient client, String index, long timeoutMillis, boolean ownsClient) {
+        this.name = name;
+        this.client = client;
+        this.index = index;
+        this.timeoutMillis = timeoutMillis;
+        this.ownsClient = ownsClient;
+    }
+
+    /**
+     * Si es el clúster de ElasticsearchConfig (el único cuyo cliente no es propio)
+     */
+    public boolean isLocal() {
+        return !ownsClient;
+    }
+
+    /**
+     * Backend remoto a partir de su URL (http o https) y, si las hay, credenciales básicas
+     */
+    public static ClusterBackend remote(String name, String url, String user, String password, String index, long timeoutMillis) {
+        URI uri = URI.create(url);
+        boolean https = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : (https ? 443 : 9200);
+        var builder = RestClient.builder(new HttpHost(uri.getHost(), port, https ? "https" : "http"));
+        if (StringUtils.hasText(user)) {
+            BasicCredentialsProvider credentials = new BasicCredentialsProvider();
+            credentials.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(user, password));
+            builder.setHttpClientConfigCallback(http -> http.setDefaultCredentialsProvider(credentials));
+        }
+        return new ClusterBackend(name, new RestHighLevelClient(builder), index, timeoutMillis, true);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("index", index);
+        stats.put("timeoutMs", timeoutMillis);
+        stats.put("requests", requests.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("failures", failures.sum());
+        long p99 = latency.percentileNanos();
+        stats.put("p99Ms", p99 < 0 ? null : TimeUnit.NANOSECONDS.toMillis(p99));
+        return stats;
+    }
+}
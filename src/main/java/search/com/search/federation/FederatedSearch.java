@@ -0,0 +1,205 @@
+package search.com.search.federation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.entities.Items;
+
+/**
+ * Búsqueda federada sobre varios clústeres de Elasticsearch (por ejemplo, uno por región).
+ *
+ * Con app.federation.enabled=true, SearchExecutor envía cada búsqueda de lectura a todos los backends
+ * de app.federation.backends (y al clúster de ElasticsearchConfig si include-local=true) a la vez. Cada
+ * uno tiene su propio timeout (timeout-ms, acotado por el presupuesto de la petición): los que no
+ * responden a tiempo se descartan y la respuesta combinada ({@link ResponseMerger}) se marca como
+ * timed_out, con los clústeres omitidos en _clusters. Solo si no responde ninguno falla la búsqueda.
+ * El routing y la preference de la petición solo se envían al clúster local.
+ */
+@Component
+@Slf4j
+public class FederatedSearch {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final boolean enabled;
+    private final List<ClusterBackend> backends;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder partial = new LongAdder();
+
+    @Autowired
+    public FederatedSearch(Environment env, RestHighLevelClient client, ElasticsearchOperations operations) {
+        this.enabled = env.getProperty("app.federation.enabled", Boolean.class, false);
+        this.backends = new ArrayList<>();
+        if (!enabled) {
+            return;
+        }
+        String index = operations.getIndexCoordinatesFor(Items.class).getIndexName();
+        long defaultTimeout = env.getProperty("app.federation.timeout-ms", Long.class, 800L);
+        if (env.getProperty("app.federation.include-local", Boolean.class, true)) {
+            backends.add(new ClusterBackend(env.getProperty("app.federation.local-name", "local"),
+                    client, index, defaultTimeout, false));
+        }
+        for (int i = 0; env.containsProperty("app.federation.backends[" + i + "].name"); i++) {
+            String prefix = "app.federation.backends[" + i + "].";
+            backends.add(ClusterBackend.remote(env.getProperty(prefix + "name"), env.getProperty(prefix + "url"),
+                    env.getProperty(prefix + "user"), env.getProperty(prefix + "password"),
+                    env.getProperty(prefix + "index", index),
+                    env.getProperty(prefix + "timeout-ms", Long.class, defaultTimeout)));
+        }
+        log.info("Federated search over {} clusters: {}", backends.size(), backends.stream().map(ClusterBackend::getName).toList());
+    }
+
+    /**
+     * Federación sobre backends ya construidos (herramienta bench-federation)
+     */
+    public FederatedSearch(List<ClusterBackend> backends) {
+        this.enabled = true;
+        this.backends = new ArrayList<>(backends);
+    }
+
+    public boolean isEnabled() {
+        return enabled && !backends.isEmpty();
+    }
+
+    /**
+     * Lanza la búsqueda en todos los backends y combina las respuestas que lleguen antes de su
+     * timeout y de budgetNanos. TimeoutException si no llega ninguna a tiempo; la excepción del
+     * primer backend (envuelta en ExecutionException) si todos fallan.
+     */
+    public SearchResponse search(SearchRequest request, long budgetNanos) throws Exception {
+        searches.increment();
+        long start = System.nanoTime();
+        SearchSourceBuilder source = request.source() != null ? request.source() : new SearchSourceBuilder();
+        int from = Math.max(0, source.from());
+        int size = source.size() >= 0 ? source.size() : 10;
+
+        // Scatter: a cada clúster se le piden los from + size primeros
+        List<CompletableFuture<SearchResponse>> futures = new ArrayList<>();
+        for (ClusterBackend backend : backends) {
+            long timeoutMillis = Math.min(backend.getTimeoutMillis(), TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+            SearchSourceBuilder copy = source.shallowCopy().from(0).size(from + size)
+                    .timeout(TimeValue.timeValueMillis(Math.max(1, timeoutMillis)));
+            SearchRequest backendRequest = new SearchRequest(request).indices(backend.getIndex()).source(copy);
+            if (!backend.isLocal()) {
+                // El routing por categoría y la preference de sesión eligen shards y copias del clúster local
+                backendRequest.routing((String) null);
+                backendRequest.preference(null);
+            }
+            backend.getRequests().increment();
+            futures.add(send(backend, backendRequest, timeoutMillis));
+        }
+
+        // Gather: cada backend se espera como mucho hasta su propio deadline
+        List<SearchResponse> responses = new ArrayList<>();
+        Exception firstFailure = null;
+        int timedOut = 0;
+        for (int i = 0; i < backends.size(); i++) {
+            ClusterBackend backend = backends.get(i);
+            long deadline = start + Math.min(TimeUnit.MILLISECONDS.toNanos(backend.getTimeoutMillis()), budgetNanos);
+            CompletableFuture<SearchResponse> future = futures.get(i);
+            try {
+                responses.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                backend.getTimeouts().increment();
+                timedOut++;
+                log.debug("Cluster '{}' did not answer within {} ms", backend.getName(), backend.getTimeoutMillis());
+            } catch (ExecutionException e) {
+                backend.getFailures().increment();
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+                log.warn("Search on cluster '{}' failed: {}", backend.getName(), e.getCause().getMessage());
+            }
+        }
+
+        if (responses.isEmpty()) {
+            if (firstFailure != null) {
+                throw firstFailure;
+            }
+            throw new TimeoutException("No cluster answered in time");
+        }
+        boolean isPartial = responses.size() < backends.size();
+        if (isPartial) {
+            partial.increment();
+        }
+        if (timedOut > 0 || firstFailure != null) {
+            log.debug("Partial federated result: {} of {} clusters", responses.size(), backends.size());
+        }
+        return ResponseMerger.merge(responses, from, size, source.sorts(), isPartial, backends.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("searches", searches.sum());
+        stats.put("partial", partial.sum());
+        Map<String, Object> clusters = new LinkedHashMap<>();
+        for (ClusterBackend backend : backends) {
+            clusters.put(backend.getName(), backend.stats());
+        }
+        stats.put("clusters", clusters);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (ClusterBackend backend : backends) {
+            if (backend.isOwnsClient()) {
+                try {
+                    backend.getClient().close();
+                } catch (IOException e) {
+                    log.warn("Could not close client of cluster '{}'", backend.getName(), e);
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<SearchResponse> send(ClusterBackend backend, SearchRequest request, long timeoutMillis) {
+        RequestOptions options = RequestOptions.DEFAULT.toBuilder()
+                .setRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                        .setSocketTimeout((int) timeoutMillis + CONNECT_TIMEOUT_MILLIS)
+                        .build())
+                .build();
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        RestHighLevelClient client = backend.getClient();
+        Cancellable cancellable = client.searchAsync(request, options, ActionListener.wrap(response -> {
+            backend.getLatency().record(System.nanoTime() - start);
+            future.complete(response);
+        }, future::completeExceptionally));
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                cancellable.cancel();
+            }
+        });
+        return future;
+    }
+}
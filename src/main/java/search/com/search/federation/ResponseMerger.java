@@ -0,0 +1,359 @@
+package search.com.search.federation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchResponseSections;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.range.ParsedRange;
+import org.elasticsearch.search.aggregations.bucket.range.Range;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.DoubleTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedDoubleTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedLongTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.ParsedStats;
+import org.elasticsearch.search.aggregations.metrics.Stats;
+import org.elasticsearch.search.aggregations.metrics.StatsAggregationBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.search.suggest.SortBy;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.search.suggest.term.TermSuggestion;
+
+/**
+ * Combina las respuestas de varios clústeres en una sola, como si vinieran de un único índice.
+ *
+ * Los hits se ordenan por los valores de sort de la petición o, sin sort, por score, y se recorta la
+ * ventana [from, from + size) que pidió el cliente (a cada clúster se le piden los from + size primeros).
+ * Los totales se suman. De las agregaciones se combinan las que usa el servicio: terms (suma por clave,
+ * reordenada y recortada al mayor tamaño recibido), range (suma por rango) y stats; de cualquier otro
+ * tipo se queda la del primer clúster que responde. Las agregaciones combinadas se reconstruyen con el
+ * mismo parser que usa el cliente, así que InnerSearch las lee igual que las de un solo clúster; las
+ * sub-agregaciones de los buckets no se conservan. De las sugerencias term se combinan las opciones de
+ * cada término (frecuencias sumadas, mayor score); de otros tipos se queda la del primer clúster.
+ */
+class ResponseMerger {
+
+    private ResponseMerger() {
+    }
+
+    static SearchResponse merge(List<SearchResponse> responses, int from, int size, List<SortBuilder<?>> sorts,
+                                boolean timedOut, int clusters, long tookMillis) throws IOException {
+        // Hits: orden estable (empates por orden de clúster y posición)
+        List<SearchHit> hits = new ArrayList<>();
+        long total = 0;
+        boolean lowerBound = false;
+        boolean anyTotal = false;
+        float maxScore = Float.NaN;
+        for (SearchResponse response : responses) {
+            SearchHits responseHits = response.getHits();
+            hits.addAll(List.of(responseHits.getHits()));
+            if (responseHits.getTotalHits() != null) {
+                anyTotal = true;
+                total += responseHits.getTotalHits().value;
+                lowerBound |= responseHits.getTotalHits().relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO;
+            }
+            if (!Float.isNaN(responseHits.getMaxScore())) {
+                maxScore = Float.isNaN(maxScore) ? responseHits.getMaxScore() : Math.max(maxScore, responseHits.getMaxScore());
+            }
+        }
+        hits.sort(hitOrder(sorts));
+        List<SearchHit> page = from >= hits.size() ? List.of() : hits.subList(from, Math.min(hits.size(), from + size));
+        TotalHits totalHits = anyTotal
+                ? new TotalHits(total, lowerBound ? TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO : TotalHits.Relation.EQUAL_TO)
+                : null;
+
+        int totalShards = 0;
+        int successfulShards = 0;
+        int skippedShards = 0;
+        List<ShardSearchFailure> failures = new ArrayList<>();
+        Boolean terminatedEarly = null;
+        for (SearchResponse response : responses) {
+            totalShards += response.getTotalShards();
+            successfulShards += response.getSuccessfulShards();
+            skippedShards += response.getSkippedShards();
+            failures.addAll(List.of(response.getShardFailures()));
+            timedOut |= response.isTimedOut();
+            if (response.isTerminatedEarly() != null) {
+                terminatedEarly = Boolean.TRUE.equals(terminatedEarly) || response.isTerminatedEarly();
+            }
+        }
+
+        SearchResponseSections sections = new SearchResponseSections(
+                new SearchHits(page.toArray(new SearchHit[0]), totalHits, maxScore),
+                mergeAggregations(responses), mergeSuggest(responses), timedOut, terminatedEarly, null, 1);
+        return new SearchResponse(sections, null, totalShards, successfulShards, skippedShards, tookMillis,
+                failures.toArray(new ShardSearchFailure[0]),
+                new SearchResponse.Clusters(clusters, responses.size(), clusters - responses.size()));
+    }
+
+    private static Comparator<SearchHit> hitOrder(List<SortBuilder<?>> sorts) {
+        if (sorts == null || sorts.isEmpty()) {
+            return (a, b) -> Float.compare(score(b), score(a));
+        }
+        return (a, b) -> {
+            Object[] left = a.getSortValues();
+            Object[] right = b.getSortValues();
+            for (int i = 0; i < sorts.size() && i < left.length && i < right.length; i++) {
+                if (left[i] == null || right[i] == null) {
+                    if (left[i] != right[i]) {
+                        return left[i] == null ? 1 : -1; // Sin valor, al final en los dos sentidos (missing: _last)
+                    }
+                    continue;
+                }
+                int compare = compareValues(left[i], right[i]);
+                if (compare != 0) {
+                    return sorts.get(i).order() == SortOrder.DESC ? -compare : compare;
+                }
+            }
+            return 0;
+        };
+    }
+
+    private static float score(SearchHit hit) {
+        return Float.isNaN(hit.getScore()) ? Float.NEGATIVE_INFINITY : hit.getScore();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : (a == null ? 1 : -1); // Sin valor, al final (missing: _last)
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Suggest mergeSuggest(List<SearchResponse> responses) {
+        Map<String, List<Suggest.Suggestion>> byName = new LinkedHashMap<>();
+        for (SearchResponse response : responses) {
+            if (response.getSuggest() != null) {
+                for (Suggest.Suggestion suggestion : response.getSuggest()) {
+                    byName.computeIfAbsent(suggestion.getName(), k -> new ArrayList<>()).add(suggestion);
+                }
+            }
+        }
+        if (byName.isEmpty()) {
+            return null;
+        }
+        List merged = new ArrayList<>();
+        for (List<Suggest.Suggestion> parts : byName.values()) {
+            boolean allTerm = parts.stream().allMatch(part -> part instanceof TermSuggestion);
+            merged.add(allTerm && parts.size() > 1 ? mergeTermSuggestion(parts) : parts.get(0));
+        }
+        return new Suggest(merged);
+    }
+
+    /**
+     * Las entradas (un término del texto cada una) se casan por posición; si los clústeres analizan
+     * el texto de otra forma y no tienen las mismas, se queda la del primero
+     */
+    @SuppressWarnings("rawtypes")
+    private static Suggest.Suggestion mergeTermSuggestion(List<Suggest.Suggestion> parts) {
+        TermSuggestion first = (TermSuggestion) parts.get(0);
+        int entries = first.getEntries().size();
+        int size = 0;
+        for (Suggest.Suggestion part : parts) {
+            TermSuggestion suggestion = (TermSuggestion) part;
+            if (suggestion.getEntries().size() != entries) {
+                return first;
+            }
+            for (TermSuggestion.Entry entry : suggestion.getEntries()) {
+                size = Math.max(size, entry.getOptions().size());
+            }
+        }
+
+        TermSuggestion merged = new TermSuggestion(first.getName(), size, first.getSort());
+        for (int i = 0; i < entries; i++) {
+            Map<String, TermSuggestion.Entry.Option> options = new LinkedHashMap<>();
+            for (Suggest.Suggestion part : parts) {
+                for (TermSuggestion.Entry.Option option : ((TermSuggestion) part).getEntries().get(i).getOptions()) {
+                    options.merge(option.getText().string(), option, (a, b) -> new TermSuggestion.Entry.Option(
+                            a.getText(), a.getFreq() + b.getFreq(), Math.max(a.getScore(), b.getScore())));
+                }
+            }
+            List<TermSuggestion.Entry.Option> sorted = new ArrayList<>(options.values());
+            sorted.sort(optionOrder(first.getSort()));
+
+            TermSuggestion.Entry base = first.getEntries().get(i);
+            TermSuggestion.Entry entry = new TermSuggestion.Entry(base.getText(), base.getOffset(), base.getLength());
+            sorted.stream().limit(size).forEach(entry::addOption);
+            merged.addTerm(entry);
+        }
+        return merged;
+    }
+
+    // Mismo orden que Elasticsearch: score o frecuencia de mayor a menor, luego el otro y luego el texto
+    private static Comparator<TermSuggestion.Entry.Option> optionOrder(SortBy sort) {
+        Comparator<TermSuggestion.Entry.Option> byScore = Comparator.comparing(TermSuggestion.Entry.Option::getScore).reversed();
+        Comparator<TermSuggestion.Entry.Option> byFreq = Comparator.comparing(TermSuggestion.Entry.Option::getFreq).reversed();
+        Comparator<TermSuggestion.Entry.Option> primary = sort == SortBy.FREQUENCY ? byFreq.thenComparing(byScore) : byScore.thenComparing(byFreq);
+        return primary.thenComparing(option -> option.getText().string());
+    }
+
+    private static Aggregations mergeAggregations(List<SearchResponse> responses) throws IOException {
+        Map<String, List<Aggregation>> byName = new LinkedHashMap<>();
+        for (SearchResponse response : responses) {
+            if (response.getAggregations() != null) {
+                for (Aggregation aggregation : response.getAggregations()) {
+                    byName.computeIfAbsent(aggregation.getName(), k -> new ArrayList<>()).add(aggregation);
+                }
+            }
+        }
+        if (byName.isEmpty()) {
+            return null;
+        }
+        List<Aggregation> merged = new ArrayList<>();
+        for (Map.Entry<String, List<Aggregation>> entry : byName.entrySet()) {
+            merged.add(mergeAggregation(entry.getKey(), entry.getValue()));
+        }
+        return new Aggregations(merged);
+    }
+
+    private static Aggregation mergeAggregation(String name, List<Aggregation> parts) throws IOException {
+        Aggregation first = parts.get(0);
+        if (parts.size() == 1) {
+            return first;
+        }
+        switch (first.getType()) {
+            case StringTerms.NAME:
+            case LongTerms.NAME:
+            case DoubleTerms.NAME:
+                return parse(first.getType(), name, mergeTerms(parts));
+            case RangeAggregationBuilder.NAME:
+                return parse(first.getType(), name, mergeRanges(parts));
+            case StatsAggregationBuilder.NAME:
+                return parse(first.getType(), name, mergeStats(parts));
+            default:
+                return first;
+        }
+    }
+
+    private static XContentBuilder mergeTerms(List<Aggregation> parts) throws IOException {
+        Map<Object, Long> counts = new LinkedHashMap<>();
+        long otherDocs = 0;
+        long errorBound = 0;
+        int size = 0;
+        for (Aggregation part : parts) {
+            Terms terms = (Terms) part;
+            otherDocs += terms.getSumOfOtherDocCounts();
+            errorBound += Math.max(0, terms.getDocCountError());
+            size = Math.max(size, terms.getBuckets().size());
+            for (Terms.Bucket bucket : terms.getBuckets()) {
+                counts.merge(bucket.getKey(), bucket.getDocCount(), Long::sum);
+            }
+        }
+        // Mismo orden que terms por defecto: documentos de mayor a menor y, a igualdad, por clave
+        List<Map.Entry<Object, Long>> buckets = new ArrayList<>(counts.entrySet());
+        buckets.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? compareValues(a.getKey(), b.getKey())
+                : Long.compare(b.getValue(), a.getValue()));
+
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        builder.startArray("buckets");
+        for (int i = 0; i < buckets.size(); i++) {
+            if (i < size) {
+                builder.startObject().field("key", buckets.get(i).getKey()).field("doc_count", buckets.get(i).getValue()).endObject();
+            } else {
+                otherDocs += buckets.get(i).getValue();
+            }
+        }
+        builder.endArray();
+        builder.field("doc_count_error_upper_bound", errorBound);
+        builder.field("sum_other_doc_count", otherDocs);
+        return builder.endObject();
+    }
+
+    private static XContentBuilder mergeRanges(List<Aggregation> parts) throws IOException {
+        Map<String, Range.Bucket> ranges = new LinkedHashMap<>();
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Aggregation part : parts) {
+            for (Range.Bucket bucket : ((Range) part).getBuckets()) {
+                ranges.putIfAbsent(bucket.getKeyAsString(), bucket);
+                counts.merge(bucket.getKeyAsString(), bucket.getDocCount(), Long::sum);
+            }
+        }
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject().startArray("buckets");
+        for (Map.Entry<String, Range.Bucket> entry : ranges.entrySet()) {
+            builder.startObject().field("key", entry.getKey());
+            double from = ((Number) entry.getValue().getFrom()).doubleValue();
+            double to = ((Number) entry.getValue().getTo()).doubleValue();
+            if (!Double.isInfinite(from)) {
+                builder.field("from", from);
+            }
+            if (!Double.isInfinite(to)) {
+                builder.field("to", to);
+            }
+            builder.field("doc_count", counts.get(entry.getKey())).endObject();
+        }
+        return builder.endArray().endObject();
+    }
+
+    private static XContentBuilder mergeStats(List<Aggregation> parts) throws IOException {
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Aggregation part : parts) {
+            Stats stats = (Stats) part;
+            if (stats.getCount() > 0) {
+                count += stats.getCount();
+                sum += stats.getSum();
+                min = Math.min(min, stats.getMin());
+                max = Math.max(max, stats.getMax());
+            }
+        }
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject().field("count", count);
+        if (count > 0) {
+            builder.field("min", min).field("max", max).field("avg", sum / count).field("sum", sum);
+        } else {
+            builder.nullField("min").nullField("max").nullField("avg").field("sum", 0.0);
+        }
+        return builder.endObject();
+    }
+
+    private static Aggregation parse(String type, String name, XContentBuilder json) throws IOException {
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, BytesReference.bytes(json).streamInput())) {
+            parser.nextToken();
+            switch (type) {
+                case StringTerms.NAME:
+                    return ParsedStringTerms.fromXContent(parser, name);
+                case LongTerms.NAME:
+                    return ParsedLongTerms.fromXContent(parser, name);
+                case DoubleTerms.NAME:
+                    return ParsedDoubleTerms.fromXContent(parser, name);
+                case RangeAggregationBuilder.NAME:
+                    return ParsedRange.fromXContent(parser, name);
+                default:
+                    return ParsedStats.fromXContent(parser, name);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package search.com.search.journal;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import search.com.search.model.consts.Consts;
+
+/**
+ * Marcas de idempotencia que el journal deja en el _source de cada item.
+ *
+ * journal_seq guarda, por cada journal (el id de su directorio), la última secuencia suya aplicada
+ * al documento. Cada réplica del servicio tiene su propio journal y su propia numeración, y un
+ * journal nuevo (volumen vacío) tiene otro id, así que solo se comparan secuencias del mismo journal:
+ * un registro se ignora si ese journal ya aplicó una secuencia igual o mayor, y las marcas de los
+ * demás journals se conservan.
+ */
+final class JournalMarks {
+
+    static final String FIELD = Consts.JOURNAL_SEQ;
+
+    private JournalMarks() {
+    }
+
+    /**
+     * Documento a escribir para un alta o reemplazo, o null si este journal ya lo aplicó
+     */
+    static Map<String, Object> index(Map<String, Object> current, Map<String, Object> doc, String journal, long seq) {
+        Map<String, Long> marks = marks(current);
+        if (marks.getOrDefault(journal, 0L) >= seq) {
+            return null;
+        }
+        marks.put(journal, seq);
+        Map<String, Object> source = new LinkedHashMap<>(doc);
+        source.put(FIELD, marks);
+        return source;
+    }
+
+    /**
+     * Documento con los descuentos que este journal aún no aplicó, o null si ya estaban todos
+     */
+    static Map<String, Object> decrement(Map<String, Object> current, String journal, List<Long> seqs, List<Integer> deltas) {
+        Map<String, Long> marks = marks(current);
+        long last = marks.getOrDefault(journal, 0L);
+        long total = ((Number) current.get(Consts.TOTAL)).longValue();
+        boolean changed = false;
+        for (int i = 0; i < seqs.size(); i++) {
+            if (seqs.get(i) > last) {
+                total -= deltas.get(i);
+                last = seqs.get(i);
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return null;
+        }
+        marks.put(journal, last);
+        Map<String, Object> source = new LinkedHashMap<>(current);
+        source.put(Consts.TOTAL, total);
+        source.put(FIELD, marks);
+        return source;
+    }
+
+    private static Map<String, Long> marks(Map<String, Object> current) {
+        Map<String, Long> marks = new LinkedHashMap<>();
+        Object stored = current == null ? null : current.get(FIELD);
+        if (stored instanceof Map<?, ?> map) {
+            map.forEach((journal, seq) -> marks.put(journal.toString(), ((Number) seq).longValue()));
+        }
+        return marks;
+    }
+}
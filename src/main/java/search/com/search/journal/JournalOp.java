@@ -0,0 +1,10 @@
+package search.com.search.journal;
+
+/**
+ * Operación registrada en el journal de escrituras
+ */
+public enum JournalOp {
+    INDEX,      // Documento completo (altas)
+    DECREMENT,  // Descuento de stock sobre el documento guardado
+    DELETE
+}
@@ -0,0 +1,20 @@
+package search.com.search.journal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import search.com.search.model.entities.Items;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class JournalRecord {
+    private long timestamp;     // Momento en que se aceptó la escritura (epoch ms)
+    private JournalOp op;       // INDEX, DECREMENT o DELETE
+    private String itemId;      // Id del item
+    private String routing;     // Routing del documento (null sin routing por categoría)
+    private Items item;         // Documento completo, solo en INDEX
+    private Integer delta;      // Unidades a descontar, solo en DECREMENT
+}
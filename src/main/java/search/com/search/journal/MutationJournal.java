@@ -0,0 +1,399 @@
+package search.com.search.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.dto.JournalAppliedEvent;
+import search.com.search.model.entities.Items;
+
+/**
+ * Escrituras de items a través de un journal local.
+ *
+ * Con app.journal.enabled=true, addItem/updateItem/deleteItem solo esperan a que la operación
+ * esté en el journal en disco (group commit) y responden; un hilo la aplica después en Elasticsearch
+ * con peticiones _bulk, en orden, reintentando mientras el clúster no esté disponible. La posición
+ * aplicada se guarda en un checkpoint, así que al arrancar se reaplica lo que quedó pendiente
+ * (entrega al menos una vez), y los segmentos ya aplicados se borran. Cada documento guarda en
+ * journal_seq la última secuencia aplicada por cada journal (ver JournalMarks), de modo que reaplicar
+ * un alta o un descuento no lo duplica aunque varias réplicas escriban el mismo item.
+ */
+@Component
+@Slf4j
+public class MutationJournal {
+
+    private static final String INDEX = "items";
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchOperations operations;
+    private final ApplicationEventPublisher events;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final int batchSize;
+    private final long syncTimeoutMillis;
+    private final long retryMillis;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder bulkFailures = new LongAdder();
+
+    private WriteAheadJournal journal;
+    private Thread replayer;
+    private volatile boolean running;
+    private volatile long appliedSeq;
+    private volatile long oldestPendingMillis;
+
+    public MutationJournal(Environment env, RestHighLevelClient client, ElasticsearchOperations operations,
+                           ApplicationEventPublisher events) {
+        this.client = client;
+        this.operations = operations;
+        this.events = events;
+        this.enabled = env.getProperty("app.journal.enabled", Boolean.class, false);
+        this.dir = Path.of(env.getProperty("app.journal.dir", "data/journal"));
+        this.segmentBytes = env.getProperty("app.journal.segment-mb", Integer.class, 64) * 1024 * 1024;
+        this.batchSize = env.getProperty("app.journal.batch-size", Integer.class, 500);
+        this.syncTimeoutMillis = env.getProperty("app.journal.sync-timeout-ms", Long.class, 2000L);
+        this.retryMillis = env.getProperty("app.journal.retry-ms", Long.class, 1000L);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        journal = new WriteAheadJournal(dir, segmentBytes);
+        appliedSeq = journal.readCheckpoint();
+        if (journal.lastSeq() > appliedSeq) {
+            log.info("Replaying {} journaled writes pending from the previous run", journal.lastSeq() - appliedSeq);
+        }
+
+        running = true;
+        replayer = new Thread(this::replayLoop, "journal-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registra la escritura y espera a que esté en disco; a partir de aquí no se pierde
+     */
+    public void append(JournalRecord record) {
+        try {
+            record.setTimestamp(System.currentTimeMillis());
+            long seq = journal.append(mapper.writeValueAsBytes(record));
+            journal.awaitDurable(seq, syncTimeoutMillis);
+            appended.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing to the journal", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the journal", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        long lastSeq = journal.lastSeq();
+        stats.put("journalId", journal.id());
+        stats.put("lastSeq", lastSeq);
+        stats.put("durableSeq", journal.durableSeq());
+        stats.put("appliedSeq", appliedSeq);
+        stats.put("lagRecords", lastSeq - appliedSeq);
+        stats.put("lagMs", oldestPendingMillis == 0 ? 0 : System.currentTimeMillis() - oldestPendingMillis);
+        stats.put("segments", journal.segmentCount());
+        stats.put("appended", appended.sum());
+        stats.put("applied", applied.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("bulkFailures", bulkFailures.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        replayer.interrupt();
+        replayer.join(TimeUnit.SECONDS.toMillis(5));
+        journal.close();
+    }
+
+    private void replayLoop() {
+        WriteAheadJournal.Cursor cursor = new WriteAheadJournal.Cursor(appliedSeq + 1);
+        while (running) {
+            try {
+                List<WriteAheadJournal.Entry> entries = journal.read(cursor, batchSize);
+                if (entries.isEmpty()) {
+                    oldestPendingMillis = 0;
+                    Thread.sleep(10);
+                    continue;
+                }
+
+                List<JournalRecord> records = new ArrayList<>(entries.size());
+                for (WriteAheadJournal.Entry entry : entries) {
+                    records.add(mapper.readValue(entry.getPayload(), JournalRecord.class));
+                }
+                oldestPendingMillis = records.get(0).getTimestamp();
+
+                applyWithRetry(entries, records);
+                announce(records);
+
+                appliedSeq = entries.get(entries.size() - 1).getSeq();
+                journal.writeCheckpoint(appliedSeq);
+                journal.deleteAppliedSegments(appliedSeq);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // Se vuelve a leer desde lo último aplicado
+                log.error("Journal replay failed", e);
+                cursor = new WriteAheadJournal.Cursor(appliedSeq + 1);
+                sleepQuietly(retryMillis);
+            }
+        }
+    }
+
+    /**
+     * Aplica el lote con _bulk conservando el orden de cada item: en cada petición va como mucho una
+     * operación por item (los descuentos consecutivos de un item se juntan en una), y la siguiente
+     * operación de ese item no se envía hasta que la anterior se ha aplicado. Cada ronda lee antes los
+     * documentos con _mget y escribe condicionado a su _seq_no, así que las marcas de JournalMarks se
+     * comprueban sobre lo que hay de verdad en el índice. Los fallos transitorios (409, 429, 5xx o sin
+     * respuesta) se reintentan hasta que pasan; los definitivos (ej. descontar stock de un item que no
+     * existe) se registran y se descartan.
+     */
+    private void applyWithRetry(List<WriteAheadJournal.Entry> entries, List<JournalRecord> records) throws InterruptedException {
+        Map<String, Deque<Unit>> byItem = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            JournalRecord record = records.get(i);
+            Deque<Unit> units = byItem.computeIfAbsent(record.getItemId(), id -> new ArrayDeque<>());
+            Unit last = units.peekLast();
+            if (last != null && last.op == JournalOp.DECREMENT && record.getOp() == JournalOp.DECREMENT) {
+                last.add(entries.get(i).getSeq(), record);
+            } else {
+                units.addLast(new Unit(entries.get(i).getSeq(), record));
+            }
+        }
+
+        while (!byItem.isEmpty() && running) {
+            List<Unit> heads = new ArrayList<>(byItem.size());
+            byItem.values().forEach(units -> heads.add(units.peekFirst()));
+
+            List<Unit> sent = new ArrayList<>(heads.size());
+            BulkRequest bulk = new BulkRequest();
+            BulkResponse response;
+            try {
+                MultiGetResponse current = current(heads);
+                for (int i = 0; i < heads.size(); i++) {
+                    Unit unit = heads.get(i);
+                    DocWriteRequest<?> request = toRequest(unit, current.getResponses()[i]);
+                    if (request != null) {
+                        sent.add(unit);
+                        bulk.add(request);
+                    } else {
+                        done(byItem, unit);
+                    }
+                }
+                response = bulk.numberOfActions() == 0 ? null : client.bulk(bulk, RequestOptions.DEFAULT);
+            } catch (Exception e) {
+                bulkFailures.increment();
+                log.warn("Journal bulk of {} writes failed, retrying: {}", heads.size(), e.getMessage());
+                Thread.sleep(retryMillis);
+                continue;
+            }
+            if (response == null) {
+                continue;
+            }
+
+            boolean retry = false;
+            for (BulkItemResponse item : response.getItems()) {
+                Unit unit = sent.get(item.getItemId());
+                if (!item.isFailed()) {
+                    applied.add(unit.seqs.size());
+                } else if (isTransient(item.status())) {
+                    // Se queda en cabeza: las operaciones posteriores del item esperan a que pase
+                    retry = true;
+                    continue;
+                } else {
+                    skipped.add(unit.seqs.size());
+                    log.error("Dropping journaled {} of item {}: {}", unit.op, unit.itemId, item.getFailureMessage());
+                }
+                remove(byItem, unit);
+            }
+            if (retry) {
+                bulkFailures.increment();
+                Thread.sleep(retryMillis);
+            }
+        }
+        if (!byItem.isEmpty()) {
+            // Parada con operaciones sin aplicar: no se avanza el checkpoint y se reaplican al arrancar
+            throw new InterruptedException("Journal replay stopped");
+        }
+    }
+
+    /**
+     * Los eventos de cambio salen al registrar la escritura; este avisa de que ya está en
+     * Elasticsearch, para quien necesite saber cuándo puede verse (la caché entre réplicas)
+     */
+    private void announce(List<JournalRecord> records) {
+        Set<String> updated = new LinkedHashSet<>();
+        boolean structural = false;
+        for (JournalRecord record : records) {
+            if (record.getOp() == JournalOp.DECREMENT) {
+                updated.add(record.getItemId());
+            } else {
+                structural = true;
+            }
+        }
+        try {
+            events.publishEvent(new JournalAppliedEvent(new ArrayList<>(updated), structural));
+        } catch (RuntimeException e) {
+            log.warn("Journal applied-writes listener failed: {}", e.getMessage());
+        }
+    }
+
+    private MultiGetResponse current(List<Unit> heads) throws IOException {
+        MultiGetRequest request = new MultiGetRequest().realtime(true);
+        heads.forEach(unit -> request.add(new MultiGetRequest.Item(INDEX, unit.itemId).routing(unit.routing)));
+        MultiGetResponse response = client.mget(request, RequestOptions.DEFAULT);
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed()) {
+                throw new IOException("Could not read item " + item.getId() + ": " + item.getFailure().getMessage());
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Escritura de una operación sobre el documento actual, o null si no hay nada que escribir: ya
+     * estaba aplicada (se cuenta como aplicada) o es un descuento de un item que no existe (se descarta)
+     */
+    private DocWriteRequest<?> toRequest(Unit unit, MultiGetItemResponse current) {
+        GetResponse stored = current.getResponse();
+        Map<String, Object> source;
+        switch (unit.op) {
+            case INDEX:
+                Map<String, Object> doc = operations.getElasticsearchConverter().mapObject(unit.item);
+                source = JournalMarks.index(stored.isExists() ? stored.getSourceAsMap() : null, doc,
+                        journal.id(), unit.seqs.get(0));
+                break;
+            case DECREMENT:
+                if (!stored.isExists()) {
+                    skipped.add(unit.seqs.size());
+                    log.error("Dropping journaled {} of item {}: item not found", unit.op, unit.itemId);
+                    unit.dropped = true;
+                    return null;
+                }
+                source = JournalMarks.decrement(stored.getSourceAsMap(), journal.id(), unit.seqs, unit.deltas);
+                break;
+            case DELETE:
+            default:
+                return new DeleteRequest(INDEX, unit.itemId).routing(unit.routing);
+        }
+        if (source == null) {
+            return null;
+        }
+
+        IndexRequest request = new IndexRequest(INDEX).id(unit.itemId).routing(unit.routing).source(source);
+        // Condicionada a la versión leída: si otra escritura se cuela entremedias, 409 y se vuelve a leer
+        return stored.isExists()
+                ? request.setIfSeqNo(stored.getSeqNo()).setIfPrimaryTerm(stored.getPrimaryTerm())
+                : request.opType(DocWriteRequest.OpType.CREATE);
+    }
+
+    private void done(Map<String, Deque<Unit>> byItem, Unit unit) {
+        if (!unit.dropped) {
+            applied.add(unit.seqs.size());
+        }
+        remove(byItem, unit);
+    }
+
+    private static void remove(Map<String, Deque<Unit>> byItem, Unit unit) {
+        Deque<Unit> units = byItem.get(unit.itemId);
+        units.pollFirst();
+        if (units.isEmpty()) {
+            byItem.remove(unit.itemId);
+        }
+    }
+
+    private static boolean isTransient(RestStatus status) {
+        return status == RestStatus.CONFLICT || status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500;
+    }
+
+    /**
+     * Operación a aplicar sobre un item: un registro, o varios descuentos consecutivos juntos
+     */
+    private static class Unit {
+        private final JournalOp op;
+        private final String itemId;
+        private final String routing;
+        private final Items item;
+        private final List<Long> seqs = new ArrayList<>();
+        private final List<Integer> deltas = new ArrayList<>();
+        private boolean dropped;
+
+        Unit(long seq, JournalRecord record) {
+            this.op = record.getOp();
+            this.itemId = record.getItemId();
+            this.routing = record.getRouting();
+            this.item = record.getItem();
+            add(seq, record);
+        }
+
+        void add(long seq, JournalRecord record) {
+            seqs.add(seq);
+            deltas.add(record.getDelta());
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
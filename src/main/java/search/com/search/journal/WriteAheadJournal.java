@@ -0,0 +1,412 @@
+package search.com.search.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Journal de solo escritura en segmentos de tamaño fijo mapeados en memoria.
+ *
+ * Formato de cada registro: [length:int][crc32:int][seq:long][payload]. La longitud se escribe
+ * la última, así que un registro a medias (caída durante la escritura) se detecta al abrir por
+ * longitud 0, CRC o secuencia no consecutiva, y el journal continúa desde el último registro válido.
+ *
+ * Las escrituras solo copian bytes al segmento; un hilo de sync hace force() de todo lo escrito
+ * desde la última vez, de modo que las escrituras concurrentes comparten un único fsync
+ * (group commit). {@link #awaitDurable(long, long)} espera a que un registro esté en disco.
+ */
+@Slf4j
+public class WriteAheadJournal implements Closeable {
+
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+    private static final String SUFFIX = ".wal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String ID = "journal-id";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final String id;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Object lock = new Object();
+    private final Thread syncer;
+
+    private Segment active;
+    private long lastSeq;
+    private long durableSeq;
+    private volatile boolean running = true;
+
+    public WriteAheadJournal(Path dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        this.id = readOrCreateId();
+        recover();
+
+        this.syncer = new Thread(this::syncLoop, "journal-sync");
+        this.syncer.setDaemon(true);
+        this.syncer.start();
+    }
+
+    /**
+     * Añade un registro y devuelve su número de secuencia (todavía no necesariamente en disco)
+     */
+    public long append(byte[] payload) throws IOException {
+        if (payload.length + HEADER_BYTES > segmentBytes) {
+            throw new IOException("Journal record of " + payload.length + " bytes exceeds the segment size");
+        }
+
+        synchronized (lock) {
+            if (!running) {
+                throw new IOException("Journal is closed");
+            }
+            if (active == null || active.position + HEADER_BYTES + payload.length > segmentBytes) {
+                rotate();
+            }
+
+            long seq = lastSeq + 1;
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            int position = active.position;
+            active.buffer.putInt(position + 4, (int) crc.getValue());
+            active.buffer.putLong(position + 8, seq);
+            active.buffer.put(position + HEADER_BYTES, payload);
+            active.buffer.putInt(position, payload.length);
+
+            active.position += HEADER_BYTES + payload.length;
+            active.lastSeq = seq;
+            lastSeq = seq;
+            lock.notifyAll();
+            return seq;
+        }
+    }
+
+    /**
+     * Bloquea hasta que el registro seq esté sincronizado en disco
+     */
+    public void awaitDurable(long seq, long timeoutMillis) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (lock) {
+            while (durableSeq < seq) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (!running || remaining <= 0) {
+                    throw new IOException("Journal sync did not complete in " + timeoutMillis + " ms");
+                }
+                lock.wait(remaining);
+            }
+        }
+    }
+
+    /**
+     * Lee hasta max registros sincronizados a partir del cursor y lo avanza
+     */
+    public List<Entry> read(Cursor cursor, int max) {
+        List<Entry> entries = new ArrayList<>();
+        long durable;
+        synchronized (lock) {
+            durable = durableSeq;
+        }
+
+        while (entries.size() < max && cursor.nextSeq <= durable) {
+            Segment segment;
+            synchronized (lock) {
+                Map.Entry<Long, Segment> floor = segments.floorEntry(cursor.nextSeq);
+                if (floor == null && !segments.isEmpty()) {
+                    // Lo anterior al segmento más antiguo ya se compactó, luego estaba aplicado
+                    floor = segments.firstEntry();
+                    cursor.nextSeq = floor.getKey();
+                }
+                segment = floor != null ? floor.getValue() : null;
+            }
+            if (segment == null) {
+                break;
+            }
+            if (segment.firstSeq != cursor.segmentFirstSeq) {
+                // Primer acceso a este segmento: se busca la posición del siguiente registro
+                cursor.segmentFirstSeq = segment.firstSeq;
+                cursor.position = 0;
+                while (cursor.position < segment.position) {
+                    int length = segment.buffer.getInt(cursor.position);
+                    if (segment.buffer.getLong(cursor.position + 8) >= cursor.nextSeq) {
+                        break;
+                    }
+                    cursor.position += HEADER_BYTES + length;
+                }
+            }
+            if (segment.lastSeq < cursor.nextSeq) {
+                break;
+            }
+
+            int length = segment.buffer.getInt(cursor.position);
+            long seq = segment.buffer.getLong(cursor.position + 8);
+            byte[] payload = new byte[length];
+            segment.buffer.get(cursor.position + HEADER_BYTES, payload);
+
+            entries.add(new Entry(seq, payload));
+            cursor.position += HEADER_BYTES + length;
+            cursor.nextSeq = seq + 1;
+        }
+        return entries;
+    }
+
+    /**
+     * Compactación: borra los segmentos cuyos registros ya están todos aplicados
+     */
+    public int deleteAppliedSegments(long appliedSeq) {
+        List<Segment> removable = new ArrayList<>();
+        synchronized (lock) {
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.lastSeq <= appliedSeq) {
+                    removable.add(segment);
+                }
+            }
+            removable.forEach(segment -> segments.remove(segment.firstSeq));
+        }
+        for (Segment segment : removable) {
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.warn("Could not delete journal segment {}", segment.path, e);
+            }
+        }
+        return removable.size();
+    }
+
+    public long readCheckpoint() throws IOException {
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(checkpoint).trim());
+    }
+
+    public void writeCheckpoint(long appliedSeq) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        Files.writeString(tmp, Long.toString(appliedSeq));
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Identificador de este journal, fijo mientras exista su directorio: las secuencias solo son
+     * comparables entre registros del mismo journal
+     */
+    public String id() {
+        return id;
+    }
+
+    public long lastSeq() {
+        synchronized (lock) {
+            return lastSeq;
+        }
+    }
+
+    public long durableSeq() {
+        synchronized (lock) {
+            return durableSeq;
+        }
+    }
+
+    public int segmentCount() {
+        synchronized (lock) {
+            return segments.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            syncer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+        }
+    }
+
+    private void syncLoop() {
+        while (true) {
+            Segment segment;
+            long target;
+            synchronized (lock) {
+                while (running && lastSeq == durableSeq) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running && lastSeq == durableSeq) {
+                    return;
+                }
+                target = lastSeq;
+                segment = active;
+            }
+
+            // Los segmentos anteriores se sincronizan al rotar; aquí solo el activo
+            segment.buffer.force();
+
+            synchronized (lock) {
+                durableSeq = target;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private String readOrCreateId() throws IOException {
+        Path path = dir.resolve(ID);
+        if (Files.exists(path)) {
+            return Files.readString(path).trim();
+        }
+        String created = UUID.randomUUID().toString();
+        Path tmp = dir.resolve(ID + ".tmp");
+        Files.writeString(tmp, created);
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        return created;
+    }
+
+    private void rotate() throws IOException {
+        if (active != null) {
+            active.buffer.force();
+        }
+        active = openSegment(lastSeq + 1);
+        segments.put(active.firstSeq, active);
+    }
+
+    private Segment openSegment(long firstSeq) throws IOException {
+        Path path = dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentBytes);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(path, firstSeq, channel, buffer);
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+
+        for (Path path : files) {
+            long firstSeq = Long.parseLong(path.getFileName().toString().replace(SUFFIX, ""));
+            if (!segments.isEmpty() && firstSeq != lastSeq + 1) {
+                // Segmento posterior a un registro corrupto: no puede enlazarse con lo anterior
+                log.warn("Discarding journal segment {} after a gap at seq {}", path, lastSeq);
+                Files.deleteIfExists(path);
+                continue;
+            }
+
+            Segment segment = openSegment(firstSeq);
+            segment.lastSeq = firstSeq - 1;
+            while (segment.position + HEADER_BYTES <= segmentBytes) {
+                int length = segment.buffer.getInt(segment.position);
+                if (length <= 0 || segment.position + HEADER_BYTES + length > segmentBytes) {
+                    break;
+                }
+                long seq = segment.buffer.getLong(segment.position + 8);
+                byte[] payload = new byte[length];
+                segment.buffer.get(segment.position + HEADER_BYTES, payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (seq != segment.lastSeq + 1 || (int) crc.getValue() != segment.buffer.getInt(segment.position + 4)) {
+                    log.warn("Journal segment {} has a torn record at offset {}, truncating", path, segment.position);
+                    break;
+                }
+                segment.position += HEADER_BYTES + length;
+                segment.lastSeq = seq;
+            }
+            // Se limpia la cola para que nada de lo que quede tras el último registro válido se relea
+            if (segment.position + 4 <= segmentBytes) {
+                segment.buffer.putInt(segment.position, 0);
+            }
+
+            segments.put(firstSeq, segment);
+            active = segment;
+            lastSeq = segment.lastSeq;
+        }
+        // Si se perdieron todos los segmentos, la numeración sigue después de lo ya aplicado
+        lastSeq = Math.max(lastSeq, readCheckpoint());
+        durableSeq = lastSeq;
+    }
+
+    /**
+     * Registro leído del journal
+     */
+    public static class Entry {
+        private final long seq;
+        private final byte[] payload;
+
+        Entry(long seq, byte[] payload) {
+            this.seq = seq;
+            this.payload = payload;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * Posición de lectura de un consumidor del journal
+     */
+    public static class Cursor {
+        private long nextSeq;
+        private long segmentFirstSeq = -1;
+        private int position;
+
+        public Cursor(long nextSeq) {
+            this.nextSeq = nextSeq;
+        }
+
+        public long getNextSeq() {
+            return nextSeq;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long firstSeq;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private long lastSeq;
+
+        Segment(Path path, long firstSeq, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSeq = firstSeq;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.lastSeq = firstSeq - 1;
+        }
+    }
+}
@@ -14,4 +14,7 @@ public class Consts {
     public static final String MANUFACTURER="manufacturer";
     public static final String TOTAL="total";
     public static final String ID="id";
+    public static final String JOURNAL_SEQ="journal_seq";
+    public static final String CATEGORY_NORMALIZED=CATEGORY+".normalized";
+    public static final String MANUFACTURER_NORMALIZED=MANUFACTURER+".normalized";
 }
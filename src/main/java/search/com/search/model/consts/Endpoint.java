@@ -0,0 +1,79 @@
+package search.com.search.model.consts;
+
+/**
+ * Endpoints públicos del servicio, usados como clave para la configuración por endpoint
+ * (límites de concurrencia, timeouts, muestreo de logs...).
+ */
+public enum Endpoint {
+
+    ITEMS("items", "reads", "getItems"),
+    SEARCH("search", "reads", "searchFullText"),
+    ADVANCED("advanced", "reads", "advancedSearch"),
+    SUGGEST("suggest", "suggest", "getAutocompleteSuggestions"),
+    FACETS("facets", "facets", "getFacets"),
+    MGET("mget", "reads", "multiGet"),
+    WRITE("write", "writes", null);
+
+    private final String key;
+    private final String bulkhead;
+    private final String method;
+
+    Endpoint(String key, String bulkhead, String method) {
+        this.key = key;
+        this.bulkhead = bulkhead;
+        this.method = method;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String bulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Método de InnerSearch que atiende el endpoint (null para escrituras)
+     */
+    public String method() {
+        return method;
+    }
+
+    /**
+     * Endpoint con esa clave (p. ej. la parte de una clave de caché antes de '?'), o null
+     */
+    public static Endpoint ofKey(String key) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.key.equals(key)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resuelve el endpoint a partir del método HTTP y la ruta, o null si no es un endpoint de búsqueda.
+     */
+    public static Endpoint resolve(String method, String path) {
+        if (path == null || !path.startsWith("/v1/")) {
+            return null;
+        }
+        if ("POST".equals(method) && "/v1/items/_mget".equals(path)) {
+            return MGET;
+        }
+        if ("POST".equals(method) || "PATCH".equals(method) || "DELETE".equals(method)) {
+            return path.startsWith("/v1/items") ? WRITE : null;
+        }
+        if (!"GET".equals(method)) {
+            return null;
+        }
+        switch (path) {
+            case "/v1/items": return ITEMS;
+            case "/v1/search": return SEARCH;
+            case "/v1/search/advanced": return ADVANCED;
+            case "/v1/suggest": return SUGGEST;
+            case "/v1/facets": return FACETS;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package search.com.search.model.consts;
+
+/**
+ * Tipo de cambio publicado en el stream /v1/items/_changes
+ */
+public enum ItemChangeType {
+    ADDED,
+    UPDATED,
+    DELETED
+}
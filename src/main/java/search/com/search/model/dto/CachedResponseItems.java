@@ -0,0 +1,31 @@
+package search.com.search.model.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+
+/**
+ * ResponseItems ya serializado, tal como está en la caché repartida (o como lo devolvió la réplica
+ * dueña): CachedItemsConverter escribe los bytes sin volver a pasar por entidades ni por Jackson.
+ */
+@Getter
+public class CachedResponseItems extends ResponseItems {
+
+    @JsonIgnore
+    private final byte[] json;
+
+    public CachedResponseItems(byte[] json) {
+        super(List.of(), false);
+        this.json = json;
+    }
+
+    /**
+     * El número de items no se conoce sin leer el JSON: -1
+     */
+    @Override
+    public int size() {
+        return -1;
+    }
+}
@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -17,4 +19,8 @@ public class FacetsResponse {
     private List<FacetBucket> manufacturers;        // Facetas por fabricante
     private List<PriceRangeBucket> priceRanges;     // Rangos de precio
     private PriceStatistics priceStatistics;       // Estadísticas de precio
+    private boolean timedOut;                       // Agregaciones parciales por agotar el presupuesto de tiempo
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private SearchProfile profile;                  // Solo con profile=true (administradores)
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package search.com.search.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class IndexGenerationEvent {
+    private String token;       // Generación publicada (ver IndexGeneration)
+    private long observedAt;    // Momento de la lectura de _stats que la vio: incluye lo escrito antes
+}
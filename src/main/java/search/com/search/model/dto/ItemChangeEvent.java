@@ -0,0 +1,20 @@
+package search.com.search.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import search.com.search.model.consts.ItemChangeType;
+import search.com.search.model.entities.Items;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(toBuilder = true)
+public class ItemChangeEvent {
+    private long id;                // Secuencia del evento (id SSE, para reanudar con Last-Event-ID)
+    private ItemChangeType type;    // ADDED, UPDATED o DELETED
+    private String itemId;          // Id del item afectado
+    private Items item;             // Estado tras el cambio (el último conocido en los borrados)
+    private String timestamp;       // Momento del cambio (ISO-8601)
+}
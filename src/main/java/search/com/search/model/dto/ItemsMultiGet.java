@@ -0,0 +1,18 @@
+package search.com.search.model.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class ItemsMultiGet {
+    private List<String> ids;
+    private List<String> fields;   // Campos a devolver además del id (opcional, por defecto todos)
+    private Boolean realtime;      // Leer la última versión aunque no se haya refrescado (opcional)
+}
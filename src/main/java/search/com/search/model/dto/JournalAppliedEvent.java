@@ -0,0 +1,13 @@
+package search.com.search.model.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class JournalAppliedEvent {
+    private List<String> updatedItemIds;    // Items con descuentos de stock aplicados
+    private boolean structural;             // Si el lote incluía altas, reemplazos o bajas
+}
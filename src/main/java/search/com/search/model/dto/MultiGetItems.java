@@ -0,0 +1,25 @@
+package search.com.search.model.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class MultiGetItems {
+    private List<Map<String, Object>> items;   // Encontrados, en el orden pedido y con los campos pedidos
+    private List<String> missing;              // Ids que no existen
+    private boolean timedOut;                  // true si algún chunk no respondió dentro del presupuesto
+    private boolean realtime;                  // Si se leyó la última versión aunque no estuviera refrescada
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> unresolved;           // Ids sin respuesta (timeout o fallo del shard): se pueden reintentar
+}
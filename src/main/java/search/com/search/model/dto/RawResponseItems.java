@@ -0,0 +1,30 @@
+package search.com.search.model.dto;
+
+import java.util.List;
+
+import org.elasticsearch.search.SearchHit;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+
+/**
+ * ResponseItems cuyos items no se han convertido a entidades: lleva los hits de Elasticsearch tal
+ * cual, y RawItemsConverter copia su _source directamente a la respuesta con la misma forma JSON.
+ */
+@Getter
+public class RawResponseItems extends ResponseItems {
+
+    @JsonIgnore
+    private final SearchHit[] hits;
+
+    public RawResponseItems(SearchHit[] hits, boolean timedOut) {
+        super(List.of(), timedOut);
+        this.hits = hits;
+    }
+
+    @Override
+    public int size() {
+        return hits.length;
+    }
+}
@@ -2,6 +2,8 @@ package search.com.search.model.dto;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -14,4 +16,23 @@ import search.com.search.model.entities.Items;
 @Setter
 public class ResponseItems {
     private List<Items> items;
+    private boolean timedOut;      // true si el presupuesto de tiempo se agotó y los resultados son parciales
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private SearchProfile profile; // Solo con profile=true (administradores)
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> didYouMean; // Solo si la búsqueda tuvo que recurrir a fuzzy y hay correcciones
+
+    public ResponseItems(List<Items> items, boolean timedOut) {
+        this.items = items;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Número de items de la página (sin depender de cómo estén representados)
+     */
+    public int size() {
+        return items == null ? 0 : items.size();
+    }
 }
@@ -0,0 +1,69 @@
+package search.com.search.model.dto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.search.profile.ProfileResult;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.search.profile.query.QueryProfileShardResult;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Desglose de coste de una petición en modo profile=true: tiempos del lado del servicio
+ * y resultado del profile API de Elasticsearch por shard.
+ */
+@Getter
+@Setter
+public class SearchProfile {
+
+    private Map<String, Double> clientTimingsMs = new LinkedHashMap<>();   // Fases del servicio en ms
+    private Long tookMs;                                                    // "took" de Elasticsearch
+    private Map<String, Object> shards = new LinkedHashMap<>();            // Profile API por shard
+
+    public void record(String phase, long nanos) {
+        clientTimingsMs.merge(phase, nanos / 1_000_000.0, Double::sum);
+    }
+
+    public void addShards(Map<String, ProfileShardResult> results) {
+        if (results == null) {
+            return;
+        }
+        results.forEach((shard, result) -> {
+            List<Object> queries = new ArrayList<>();
+            for (QueryProfileShardResult queryResult : result.getQueryProfileResults()) {
+                Map<String, Object> search = new LinkedHashMap<>();
+                search.put("rewriteTimeMs", queryResult.getRewriteTime() / 1_000_000.0);
+                search.put("query", toMaps(queryResult.getQueryResults()));
+                if (queryResult.getCollectorResult() != null) {
+                    search.put("collectorTimeMs", queryResult.getCollectorResult().getTime() / 1_000_000.0);
+                }
+                queries.add(search);
+            }
+
+            Map<String, Object> shardProfile = new LinkedHashMap<>();
+            shardProfile.put("searches", queries);
+            shardProfile.put("aggregations", toMaps(result.getAggregationProfileResults().getProfileResults()));
+            shards.put(shard, shardProfile);
+        });
+    }
+
+    private static List<Map<String, Object>> toMaps(List<ProfileResult> results) {
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (ProfileResult result : results) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("type", result.getQueryName());
+            map.put("description", result.getLuceneDescription());
+            map.put("timeMs", result.getTime() / 1_000_000.0);
+            map.put("breakdown", result.getTimeBreakdown());
+            if (!result.getProfiledChildren().isEmpty()) {
+                map.put("children", toMaps(result.getProfiledChildren()));
+            }
+            maps.add(map);
+        }
+        return maps;
+    }
+}
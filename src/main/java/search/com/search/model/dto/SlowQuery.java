@@ -0,0 +1,21 @@
+package search.com.search.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SlowQuery {
+    private String timestamp;       // Momento en que terminó la petición (ISO-8601)
+    private String endpoint;        // Endpoint público (ej: "search")
+    private String method;          // Método de InnerSearch (ej: "searchFullText")
+    private String params;          // Query string de la petición
+    private String query;           // Cuerpo JSON enviado a Elasticsearch
+    private Long tookMs;            // "took" reportado por Elasticsearch
+    private Long hits;              // Total de hits
+    private Double serviceTimeMs;   // Tiempo total en el servicio
+}
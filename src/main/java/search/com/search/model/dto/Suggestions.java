@@ -0,0 +1,17 @@
+package search.com.search.model.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class Suggestions {
+    private List<String> suggestions;
+    private boolean timedOut;      // true si se cortó la búsqueda para cumplir el SLO (menos candidatos)
+}
@@ -1,11 +1,15 @@
 package search.com.search.model.entities;
 
+import java.util.Map;
 import java.util.UUID;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -16,6 +20,7 @@ import lombok.ToString;
 import search.com.search.model.consts.Consts;
 
 @Document(indexName = "items", createIndex = true)
+@Setting(settingPath = "/elasticsearch/items-settings.json")
 @Getter
 @Setter
 @AllArgsConstructor
@@ -34,15 +39,25 @@ public class Items {
     @Field(type = FieldType.Text, name = Consts.COLOR, analyzer = "standard")
     private String color;
 
-    @Field(type = FieldType.Keyword, name = Consts.CATEGORY)
+    // Filtros exactos sobre el subcampo en minúsculas; el principal conserva el valor para las facetas
+    @MultiField(
+            mainField = @Field(type = FieldType.Keyword, name = Consts.CATEGORY),
+            otherFields = @InnerField(suffix = "normalized", type = FieldType.Keyword, normalizer = "lowercase_keyword"))
     private String category;
 
     @Field(type = FieldType.Double, name = Consts.PRICE)
     private Double price;
 
-    @Field(type = FieldType.Keyword, name = Consts.MANUFACTURER)
+    // Filtros exactos sobre el subcampo en minúsculas; el principal conserva el valor para las facetas
+    @MultiField(
+            mainField = @Field(type = FieldType.Keyword, name = Consts.MANUFACTURER),
+            otherFields = @InnerField(suffix = "normalized", type = FieldType.Keyword, normalizer = "lowercase_keyword"))
     private String manufacturer;
 
     @Field(type = FieldType.Integer, name = Consts.TOTAL)
     private Integer total;
+
+    // Última secuencia aplicada por cada journal de escrituras (ver MutationJournal); solo en _source
+    @Field(type = FieldType.Object, name = Consts.JOURNAL_SEQ, enabled = false)
+    private Map<String, Long> journalSeq;
 }
@@ -0,0 +1,87 @@
+package search.com.search.repository;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+
+/**
+ * Construcción normalizada de la query de los endpoints de lectura sobre 'items'.
+ *
+ * Solo la parte de texto puntúa (must); los términos exactos y los rangos van siempre en
+ * contexto filter, de modo que no se puntúan y Elasticsearch puede cachearlos en la query
+ * cache del nodo. Los filtros se emiten ordenados por campo y los valores se normalizan a
+ * minúsculas, así la misma combinación de filtros genera siempre el mismo cuerpo y aprovecha
+ * también la request cache de los shards. Los términos son term queries simples: los campos
+ * que admiten mayúsculas se filtran por su subcampo con normalizer (p. ej.
+ * {@code Consts.CATEGORY_NORMALIZED}), no con case_insensitive, que genera una automaton query.
+ */
+public class ItemsQuery {
+
+    private QueryBuilder text;
+    private final Map<String, String> terms = new TreeMap<>();
+    private final Map<String, Double[]> ranges = new TreeMap<>();
+
+    public static ItemsQuery create() {
+        return new ItemsQuery();
+    }
+
+    /**
+     * Parte de texto libre, la única que contribuye al score
+     */
+    public ItemsQuery text(QueryBuilder query) {
+        this.text = query;
+        return this;
+    }
+
+    /**
+     * Filtro de coincidencia exacta; los valores vacíos se ignoran
+     */
+    public ItemsQuery term(String field, String value) {
+        if (!StringUtils.isBlank(value)) {
+            terms.put(field, value.trim().toLowerCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    /**
+     * Filtro de rango cerrado [gte, lte]; cualquiera de los extremos puede ser null
+     */
+    public ItemsQuery range(String field, Double gte, Double lte) {
+        if (gte != null || lte != null) {
+            ranges.put(field, new Double[] { gte, lte });
+        }
+        return this;
+    }
+
+    public QueryBuilder build() {
+        if (text == null && terms.isEmpty() && ranges.isEmpty()) {
+            return QueryBuilders.matchAllQuery();
+        }
+
+        BoolQueryBuilder query = QueryBuilders.boolQuery();
+        if (text != null) {
+            query.must(text);
+        }
+
+        terms.forEach((field, value) -> query.filter(QueryBuilders.termQuery(field, value)));
+
+        ranges.forEach((field, bounds) -> {
+            RangeQueryBuilder range = QueryBuilders.rangeQuery(field);
+            if (bounds[0] != null) {
+                range.gte(bounds[0]);
+            }
+            if (bounds[1] != null) {
+                range.lte(bounds[1]);
+            }
+            query.filter(range);
+        });
+
+        return query;
+    }
+}
@@ -1,22 +1,41 @@
 package search.com.search.repository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.lang.StringUtils;
-import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.routing.RoutingResolver;
 import org.springframework.stereotype.Repository;
 
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RequestContext;
 import search.com.search.model.consts.Consts;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.dto.MultiGetItems;
 import search.com.search.model.dto.ResponseItems;
 import search.com.search.model.entities.Items;
 
@@ -32,7 +51,17 @@ public class ItemsRepository {
             Consts.PRODUCT + ".prefix"
     };
     private final InnerItemsRepository repo;
-    private final ElasticsearchOperations elasticClient;
+    private final SearchExecutor searchExecutor;
+    private final ElasticsearchOperations operations;
+    private final ItemsRouting routing;
+
+    // Búsquedas por ids de multiGet; cada petición tiene como mucho parallelism en vuelo y el bulkhead
+    // de lecturas acota las peticiones, así que no hace falta otro límite
+    private final ExecutorService chunkSearches = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "mget-search");
+        thread.setDaemon(true);
+        return thread;
+    });
 
 
     @SneakyThrows
@@ -42,50 +71,199 @@ public class ItemsRepository {
             String product,
             String page) {
 
-        BoolQueryBuilder querySec = QueryBuilders.boolQuery();
-
-        if (!StringUtils.isEmpty(category)) {
-            querySec.must(QueryBuilders.termQuery(Consts.CATEGORY, category));
-        }
-
-        if (!StringUtils.isEmpty(manufacturer)) {
-            querySec.must(QueryBuilders.termQuery(Consts.MANUFACTURER, manufacturer));
-        }
+        ItemsQuery query = ItemsQuery.create()
+                .term(Consts.CATEGORY_NORMALIZED, category)
+                .term(Consts.MANUFACTURER_NORMALIZED, manufacturer);
 
         if (!StringUtils.isEmpty(product)) {
-            querySec.must(
-                    QueryBuilders.multiMatchQuery(product, products).type(MultiMatchQueryBuilder.Type.BOOL_PREFIX));
+            query.text(QueryBuilders.multiMatchQuery(product, products).type(MultiMatchQueryBuilder.Type.BOOL_PREFIX));
         }
 
-        if (!querySec.hasClauses()) {
-            querySec.must(QueryBuilders.matchAllQuery());
-        }
+        NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder().withQuery(query.build());
 
-        NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder().withQuery(querySec);
+        // Con routing por categoría, filtrar por categoría solo necesita consultar su shard
+        String route = routing.forCategory(category);
+        if (route != null) {
+            queryBuilder.withRoute(route);
+        }
 
         int pageInt = Integer.parseInt(page);
         if (pageInt > 0) {
             queryBuilder.withPageable(PageRequest.of(pageInt - 1, 10));
         }
 
-        SearchHits<Items> result = elasticClient.search(queryBuilder.build(), Items.class);
-        return new ResponseItems(result.getSearchHits().stream().map(SearchHit::getContent).toList());
+        SearchRequest request = searchExecutor.prepare(queryBuilder.build());
+        searchExecutor.rawSource(request);
+        return searchExecutor.toResponseItems(searchExecutor.execute(Endpoint.ITEMS, request));
     }
 
     public Items save(Items item) {
+        if (routing.isEnabled()) {
+            return operations.withRouting(RoutingResolver.just(routing.forCategory(item.getCategory()))).save(item);
+        }
         return repo.save(item);
     }
 
     public Items update(Items item) {
-        return repo.save(item);
+        return save(item);
     }
 
+    /**
+     * Borra el item. Con routing por categoría la categoría es obligatoria para llegar a su shard.
+     */
     public Boolean delete(Items item) {
+        if (routing.isEnabled()) {
+            operations.withRouting(RoutingResolver.just(requiredRoute(item.getCategory())))
+                    .delete(item.getId(), Items.class);
+            return Boolean.TRUE;
+        }
         repo.delete(item);
         return Boolean.TRUE;
     }
-    
-    public Optional<Items> findById(String id) {
+
+    /**
+     * Si multiGet puede leer en realtime: con routing por categoría no se sabe el shard de cada id, y
+     * con búsqueda federada tampoco el clúster, así que cada chunk es una búsqueda por ids
+     */
+    public boolean supportsRealtime() {
+        return !routing.isEnabled() && !searchExecutor.isFederated();
+    }
+
+    /**
+     * Items por id en chunks de chunkSize, como mucho parallelism a la vez: un _mget por chunk o, sin
+     * realtime posible (ver {@link #supportsRealtime()}), una búsqueda por ids por chunk.
+     */
+    @SneakyThrows
+    public MultiGetItems multiGet(List<String> ids, List<String> fields, boolean realtime, int chunkSize, int parallelism) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += chunkSize) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + chunkSize)));
+        }
+        String[] includes = fields.toArray(new String[0]);
+
+        Map<String, Map<String, Object>> found = new HashMap<>();
+        Set<String> unresolved = new HashSet<>();
+        boolean timedOut = false;
+        if (!supportsRealtime()) {
+            realtime = false;
+            List<SearchResponse> responses = searchByIds(chunks, includes, parallelism);
+            for (int i = 0; i < chunks.size(); i++) {
+                SearchResponse response = responses.get(i);
+                if (response == null || response.isTimedOut()) {
+                    timedOut = true;
+                    unresolved.addAll(chunks.get(i));
+                }
+                if (response != null) {
+                    for (org.elasticsearch.search.SearchHit hit : response.getHits().getHits()) {
+                        found.put(hit.getId(), hit.getSourceAsMap());
+                    }
+                }
+            }
+        } else {
+            List<MultiGetResponse> responses = searchExecutor.multiGet(Endpoint.MGET, chunks, includes, realtime, parallelism);
+            for (int i = 0; i < chunks.size(); i++) {
+                MultiGetResponse response = responses.get(i);
+                if (response == null) {
+                    timedOut = true;
+                    unresolved.addAll(chunks.get(i));
+                    continue;
+                }
+                for (MultiGetItemResponse item : response.getResponses()) {
+                    if (item.isFailed()) {
+                        unresolved.add(item.getId());
+                    } else if (item.getResponse().isExists()) {
+                        found.put(item.getId(), item.getResponse().getSourceAsMap());
+                    }
+                }
+            }
+        }
+
+        // Mismo orden que la petición, con el id delante de los campos pedidos
+        List<Map<String, Object>> items = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            Map<String, Object> source = found.get(id);
+            if (source != null) {
+                found.remove(id);
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put(Consts.ID, id);
+                for (String field : fields) {
+                    if (source.containsKey(field)) {
+                        item.put(field, source.get(field));
+                    }
+                }
+                items.add(item);
+            } else if (!unresolved.contains(id)) {
+                missing.add(id);
+            }
+        }
+        return new MultiGetItems(items, missing, timedOut, realtime, ids.stream().filter(unresolved::contains).toList());
+    }
+
+    /**
+     * Una búsqueda por ids por chunk, como mucho parallelism a la vez, cada una con el RequestContext
+     * de la petición (mismo deadline y preference). null para los chunks que no llegan a salir antes
+     * del deadline; el primer error se propaga.
+     */
+    private List<SearchResponse> searchByIds(List<List<String>> chunks, String[] includes, int parallelism) throws Exception {
+        RequestContext context = RequestContext.current();
+        Semaphore inFlight = new Semaphore(parallelism);
+        List<CompletableFuture<SearchResponse>> futures = new ArrayList<>();
+        for (List<String> chunk : chunks) {
+            inFlight.acquire();
+            if (context != null && context.remainingNanos() <= 0) {
+                inFlight.release();
+                futures.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            NativeSearchQuery query = new NativeSearchQueryBuilder()
+                    .withQuery(QueryBuilders.idsQuery().addIds(chunk.toArray(new String[0])))
+                    .withPageable(PageRequest.of(0, chunk.size()))
+                    .build();
+            SearchRequest request = searchExecutor.prepare(query);
+            request.source().fetchSource(includes, null);
+            futures.add(CompletableFuture.supplyAsync(() -> RequestContext.callWith(context, () -> {
+                try {
+                    return searchExecutor.execute(Endpoint.MGET, request);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }), chunkSearches).whenComplete((response, error) -> inFlight.release()));
+        }
+
+        List<SearchResponse> responses = new ArrayList<>();
+        try {
+            for (CompletableFuture<SearchResponse> future : futures) {
+                responses.add(future.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return responses;
+    }
+
+    @PreDestroy
+    public void close() {
+        chunkSearches.shutdownNow();
+    }
+
+    /**
+     * GET realtime del item. Con routing por categoría la categoría es obligatoria: sin ella no se
+     * sabe el shard y habría que recurrir a una búsqueda, que no ve los cambios aún no refrescados.
+     */
+    public Optional<Items> findById(String id, String category) {
+        if (routing.isEnabled()) {
+            return Optional.ofNullable(operations.withRouting(RoutingResolver.just(requiredRoute(category)))
+                    .get(id, Items.class));
+        }
         return repo.findById(id);
     }
+
+    private String requiredRoute(String category) {
+        String route = routing.forCategory(category);
+        if (route == null) {
+            throw new IllegalArgumentException("category is required when routing by category");
+        }
+        return route;
+    }
 }
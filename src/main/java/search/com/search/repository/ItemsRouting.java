@@ -0,0 +1,73 @@
+package search.com.search.repository;
+
+import java.io.InputStream;
+import java.util.Locale;
+
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Routing opcional de los documentos de 'items' por categoría.
+ *
+ * Con app.routing.by-category=true cada documento se indexa con routing = categoría en
+ * minúsculas, y las lecturas que filtran por categoría consultan un único shard en lugar de
+ * todos. Los documentos indexados antes de activarlo están en el shard que les asignó su id,
+ * así que antes hay que migrar el índice con {@link #reindex(String)}.
+ */
+@Component
+@RequiredArgsConstructor
+public class ItemsRouting {
+
+    private static final String INDEX = "items";
+    private static final String ROUTING_SCRIPT =
+            "if (ctx._source.category != null) { ctx._routing = ctx._source.category.trim().toLowerCase() }";
+
+    private final RestHighLevelClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${app.routing.by-category:false}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Clave de routing para una categoría, o null si el routing está desactivado o no hay categoría
+     */
+    public String forCategory(String category) {
+        if (!enabled || StringUtils.isBlank(category)) {
+            return null;
+        }
+        return category.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Copia 'items' en el índice destino asignando el routing por categoría a cada documento.
+     * Se lanza como tarea de Elasticsearch y devuelve su id para seguirla con _tasks.
+     */
+    public String reindex(String destIndex) throws Exception {
+        ObjectNode body = mapper.createObjectNode();
+        body.putObject("source").put("index", INDEX);
+        body.putObject("dest").put("index", destIndex);
+        body.putObject("script").put("lang", "painless").put("source", ROUTING_SCRIPT);
+
+        Request request = new Request("POST", "/_reindex");
+        request.addParameter("wait_for_completion", "false");
+        request.setJsonEntity(mapper.writeValueAsString(body));
+        Response response = client.getLowLevelClient().performRequest(request);
+
+        try (InputStream content = response.getEntity().getContent()) {
+            return mapper.readTree(content).path("task").asText();
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package search.com.search.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RequestContext;
+import search.com.search.federation.FederatedSearch;
+import search.com.search.model.consts.Consts;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.dto.RawResponseItems;
+import search.com.search.model.dto.ResponseItems;
+import search.com.search.model.dto.SearchProfile;
+import search.com.search.model.entities.Items;
+import search.com.search.resilience.CircuitBreaker;
+import search.com.search.resilience.CircuitOpenException;
+import search.com.search.resilience.EndpointResilience;
+import search.com.search.resilience.ResiliencePolicies;
+import search.com.search.resilience.TimeBudgets;
+
+/**
+ * Ejecuta las búsquedas de lectura sobre el índice 'items'.
+ *
+ * Las consultas se siguen construyendo con NativeSearchQueryBuilder; aquí se traducen a un
+ * SearchRequest (query, paginación, agregaciones, routing, preference y timeout) y se envían de forma asíncrona, lo que permite lanzar una petición de respaldo
+ * (hedging) con otra preference cuando la primera supera el percentil de latencia, cancelar la
+ * que pierde, y cortar con un circuit breaker cuando el clúster empieza a fallar. Cada búsqueda
+ * respeta el deadline de la petición (ver {@link RequestContext}). Con la búsqueda federada activa
+ * la petición se reparte entre varios clústeres en lugar de ir solo al de ElasticsearchConfig.
+ */
+@Component
+@Slf4j
+public class SearchExecutor {
+
+    private static final long MIN_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BUDGET_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final String[] RAW_FIELDS = {
+            Consts.PRODUCT, Consts.COLOR, Consts.CATEGORY, Consts.PRICE, Consts.MANUFACTURER, Consts.TOTAL };
+
+    /**
+     * Campos del _source de un item (sin id ni _class)
+     */
+    public static final List<String> ITEM_FIELDS = List.of(RAW_FIELDS);
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchOperations operations;
+    private final ResiliencePolicies policies;
+    private final TimeBudgets budgets;
+    private final FederatedSearch federation;
+    private final String index;
+
+    @Value("${app.search.raw-source.enabled:false}")
+    private boolean rawSource;
+
+    public SearchExecutor(RestHighLevelClient client, ElasticsearchOperations operations,
+                          ResiliencePolicies policies, TimeBudgets budgets, FederatedSearch federation) {
+        this.client = client;
+        this.operations = operations;
+        this.policies = policies;
+        this.budgets = budgets;
+        this.federation = federation;
+        this.index = operations.getIndexCoordinatesFor(Items.class).getIndexName();
+    }
+
+    public SearchRequest prepare(NativeSearchQuery query) {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(query.getQuery())
+                .from((int) query.getPageable().getOffset())
+                .size(query.getPageable().getPageSize());
+
+        if (query.getFilter() != null) {
+            source.postFilter(query.getFilter());
+        }
+        if (query.getAggregations() != null) {
+            query.getAggregations().forEach(source::aggregation);
+        }
+        if (query.getTimeout() != null) {
+            source.timeout(query.getTimeout());
+        }
+        if (query.getTrackTotalHits() != null) {
+            source.trackTotalHits(query.getTrackTotalHits());
+        }
+
+        // Sin preference explícita se usa la de la sesión, para que sus búsquedas caigan en las
+        // mismas copias de shard y reaprovechen sus cachés
+        String preference = query.getPreference();
+        RequestContext context = RequestContext.current();
+        if (preference == null && context != null) {
+            preference = context.getPreference();
+        }
+
+        return new SearchRequest(index)
+                .source(source)
+                .routing(query.getRoute())
+                .preference(preference);
+    }
+
+    /**
+     * En modo raw-source (app.search.raw-source.enabled) pide a Elasticsearch solo los campos de
+     * Items; el id sale de los metadatos del hit. No se aplica en modo profile.
+     */
+    public void rawSource(SearchRequest request) {
+        if (isRawSource()) {
+            request.source().fetchSource(RAW_FIELDS, null);
+        }
+    }
+
+    /**
+     * Respuesta de un listado de items: con los hits tal cual en modo raw-source (se escriben sin
+     * pasar por Items ni Jackson) o convertidos a entidades
+     */
+    public ResponseItems toResponseItems(SearchResponse response) {
+        if (isRawSource()) {
+            return new RawResponseItems(response.getHits().getHits(), response.isTimedOut());
+        }
+        return new ResponseItems(toItems(response), response.isTimedOut());
+    }
+
+    private boolean isRawSource() {
+        return rawSource && RequestContext.currentProfile() == null;
+    }
+
+    public List<Items> toItems(SearchResponse response) {
+        long start = System.nanoTime();
+        List<Items> items = Arrays.stream(response.getHits().getHits())
+                .map(hit -> operations.getElasticsearchConverter().read(Items.class, DocumentAdapters.from(hit)))
+                .collect(Collectors.toList());
+        RequestContext.recordPhase("itemsMapping", start);
+        return items;
+    }
+
+    /**
+     * _mget de los ids por chunks, con como mucho parallelism chunks en vuelo y dentro del presupuesto
+     * de la petición. Devuelve una respuesta por chunk, en el mismo orden, o null para los chunks que
+     * no han terminado a tiempo. Con realtime=true Elasticsearch lee la última versión aunque aún no
+     * se haya refrescado; si no, lo mismo que vería una búsqueda.
+     */
+    public List<MultiGetResponse> multiGet(Endpoint endpoint, List<List<String>> chunks, String[] fields,
+                                           boolean realtime, int parallelism) throws Exception {
+        EndpointResilience policy = policies.forEndpoint(endpoint);
+        CircuitBreaker breaker = policy.getBreaker();
+
+        if (breaker != null && !breaker.allowRequest()) {
+            throw new CircuitOpenException(endpoint.key());
+        }
+        boolean reported = false;
+        try {
+            List<MultiGetResponse> responses = multiGet(endpoint, policy, chunks, fields, realtime, parallelism);
+            if (breaker != null) {
+                if (responses.contains(null)) {
+                    onTimeout(endpoint, breaker);
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+            reported = true;
+            return responses;
+        } catch (ClusterException e) {
+            if (breaker != null) {
+                if (isClusterFailure(e.cause)) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+            reported = true;
+            throw e.cause;
+        } finally {
+            // Interrupciones o excepciones del cliente: fallo, para no dejar ocupado un hueco de prueba
+            if (breaker != null && !reported) {
+                breaker.onFailure();
+            }
+        }
+    }
+
+    private List<MultiGetResponse> multiGet(Endpoint endpoint, EndpointResilience policy, List<List<String>> chunks,
+                                            String[] fields, boolean realtime, int parallelism) throws Exception {
+        long budgetNanos = remainingBudgetNanos(endpoint);
+        long deadline = System.nanoTime() + budgetNanos;
+        RequestOptions options = optionsFor(budgetNanos);
+        RequestContext context = RequestContext.current();
+        FetchSourceContext source = new FetchSourceContext(true, fields, null);
+
+        policy.getRequests().increment();
+        long start = System.nanoTime();
+        Semaphore inFlight = new Semaphore(parallelism);
+        List<CompletableFuture<MultiGetResponse>> futures = new ArrayList<>();
+        for (List<String> chunk : chunks) {
+            if (!inFlight.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                break;
+            }
+            MultiGetRequest request = new MultiGetRequest()
+                    .realtime(realtime)
+                    .preference(context != null ? context.getPreference() : null);
+            for (String id : chunk) {
+                request.add(new MultiGetRequest.Item(index, id).fetchSourceContext(source));
+            }
+            CompletableFuture<MultiGetResponse> future = new CompletableFuture<>();
+            Cancellable cancellable = client.mgetAsync(request, options,
+                    ActionListener.wrap(future::complete, future::completeExceptionally));
+            future.whenComplete((response, error) -> {
+                inFlight.release();
+                if (future.isCancelled()) {
+                    cancellable.cancel();
+                }
+            });
+            futures.add(future);
+        }
+
+        List<MultiGetResponse> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                if (i >= futures.size()) {
+                    responses.add(null);
+                    continue;
+                }
+                try {
+                    responses.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    futures.get(i).cancel(true);
+                    responses.add(null);
+                }
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new ClusterException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+        policy.getLatency().record(System.nanoTime() - start);
+
+        if (responses.contains(null)) {
+            log.warn("Multi-get on '{}' exceeded its {} ms budget", endpoint.key(), TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+        }
+        return responses;
+    }
+
+    /**
+     * Las búsquedas van a varios clústeres (ver {@link FederatedSearch}); los _mget no se federan
+     */
+    public boolean isFederated() {
+        return federation.isEnabled();
+    }
+
+    public SearchResponse execute(Endpoint endpoint, SearchRequest request) throws Exception {
+        EndpointResilience policy = policies.forEndpoint(endpoint);
+        CircuitBreaker breaker = policy.getBreaker();
+
+        if (breaker != null && !breaker.allowRequest()) {
+            throw new CircuitOpenException(endpoint.key());
+        }
+
+        // Cada llamada permitida informa al breaker exactamente una vez; cualquier salida no
+        // clasificada (interrupción, excepción del cliente...) cuenta como fallo en el finally
+        boolean reported = false;
+        long budgetNanos = remainingBudgetNanos(endpoint);
+        long start = System.nanoTime();
+        try {
+            // El presupuesto restante se convierte en timeout de Elasticsearch (con margen para la red)
+            // y en socket timeout del cliente; si ni así llega respuesta, devolvemos un resultado vacío
+            long esTimeoutNanos = budgetNanos - Math.min(BUDGET_MARGIN_NANOS, budgetNanos / 4);
+            if (Boolean.TRUE.equals(request.requestCache())) {
+                // La request cache de los shards usa el cuerpo como clave: timeout fijo del endpoint
+                // para que dos peticiones iguales generen el mismo cuerpo
+                esTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(budgets.defaultMillis(endpoint));
+            }
+            request.source().timeout(TimeValue.timeValueMillis(Math.max(1, TimeUnit.NANOSECONDS.toMillis(esTimeoutNanos))));
+            RequestOptions options = optionsFor(budgetNanos);
+
+            SearchProfile profile = RequestContext.currentProfile();
+            if (profile != null) {
+                // El cliente serializa el cuerpo al enviarlo; aquí se mide ese coste aparte
+                long serializationStart = System.nanoTime();
+                request.source().profile(true);
+                XContentHelper.toXContent(request.source(), XContentType.JSON, false);
+                profile.record("requestSerialization", System.nanoTime() - serializationStart);
+            }
+
+            RequestContext context = RequestContext.current();
+            if (context != null) {
+                context.recordQuery(request.source());
+            }
+
+            policy.getRequests().increment();
+            start = System.nanoTime();
+            SearchResponse response;
+            if (federation.isEnabled()) {
+                response = federation.search(request, budgetNanos);
+            } else {
+                response = policy.isHedgeEnabled()
+                        ? hedged(policy, request, options, budgetNanos)
+                        : await(send(request, options), budgetNanos);
+            }
+            policy.getLatency().record(System.nanoTime() - start);
+            if (context != null) {
+                context.recordResult(response.getTook().millis(),
+                        response.getHits().getTotalHits() != null ? response.getHits().getTotalHits().value : 0);
+            }
+            if (profile != null) {
+                profile.record("httpWait", System.nanoTime() - start);
+                profile.setTookMs(response.getTook().millis());
+                profile.addShards(response.getProfileResults());
+            }
+            if (breaker != null) {
+                breaker.onSuccess();
+            }
+            reported = true;
+            return response;
+        } catch (TimeoutException e) {
+            log.warn("Search on '{}' exceeded its {} ms budget", endpoint.key(), TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+            if (breaker != null) {
+                onTimeout(endpoint, breaker);
+            }
+            reported = true;
+            return timedOutResponse(System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            if (breaker != null) {
+                if (isClusterFailure(cause)) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+            reported = true;
+            throw cause;
+        } finally {
+            if (breaker != null && !reported) {
+                breaker.onFailure();
+            }
+        }
+    }
+
+    private SearchResponse hedged(EndpointResilience policy, SearchRequest request, RequestOptions options,
+                                  long budgetNanos) throws Exception {
+        long start = System.nanoTime();
+        CompletableFuture<SearchResponse> primary = send(request, options);
+        try {
+            return primary.get(Math.min(policy.hedgeDelayNanos(), budgetNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            long remaining = budgetNanos - (System.nanoTime() - start);
+            if (remaining <= 0) {
+                primary.cancel(true);
+                throw e;
+            }
+
+            // La primera petición va lenta: misma consulta hacia otra copia del shard
+            policy.getHedges().increment();
+            SearchRequest copy = new SearchRequest(request).preference("hedge-" + UUID.randomUUID());
+            CompletableFuture<SearchResponse> backup = send(copy, options);
+
+            try {
+                SearchResponse response = await(firstSuccessful(primary, backup), remaining);
+                if (backup.isDone() && !backup.isCompletedExceptionally() && backup.getNow(null) == response) {
+                    policy.getHedgeWins().increment();
+                }
+                return response;
+            } finally {
+                primary.cancel(true);
+                backup.cancel(true);
+            }
+        }
+    }
+
+    private SearchResponse await(CompletableFuture<SearchResponse> future, long budgetNanos) throws Exception {
+        try {
+            return future.get(Math.max(0, budgetNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Un timeout solo cuenta como fallo del clúster si la petición tenía al menos el presupuesto por
+     * defecto del endpoint: con un X-Request-Timeout menor, cualquier cliente podría abrir el breaker.
+     * Tampoco cuentan los del trabajo interno (el calentamiento contra un clúster aún frío)
+     */
+    private void onTimeout(Endpoint endpoint, CircuitBreaker breaker) {
+        RequestContext context = RequestContext.current();
+        if (context == null || !context.isBackground()
+                && context.getBudgetNanos() >= TimeUnit.MILLISECONDS.toNanos(budgets.defaultMillis(endpoint))) {
+            breaker.onFailure();
+        } else {
+            breaker.onIgnored();
+        }
+    }
+
+    private long remainingBudgetNanos(Endpoint endpoint) {
+        RequestContext context = RequestContext.current();
+        long remaining = context != null
+                ? context.remainingNanos()
+                : TimeUnit.MILLISECONDS.toNanos(budgets.defaultMillis(endpoint));
+        return Math.max(MIN_BUDGET_NANOS, remaining);
+    }
+
+    private RequestOptions optionsFor(long budgetNanos) {
+        int socketTimeout = (int) TimeUnit.NANOSECONDS.toMillis(budgetNanos + BUDGET_MARGIN_NANOS);
+        return RequestOptions.DEFAULT.toBuilder()
+                .setRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                        .setSocketTimeout(socketTimeout)
+                        .build())
+                .build();
+    }
+
+    private SearchResponse timedOutResponse(long tookNanos) {
+        InternalSearchResponse empty = new InternalSearchResponse(
+                SearchHits.empty(), InternalAggregations.EMPTY, null, null, true, null, 1);
+        return new SearchResponse(empty, null, 0, 0, 0, TimeUnit.NANOSECONDS.toMillis(tookNanos),
+                ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+    }
+
+    private CompletableFuture<SearchResponse> send(SearchRequest request, RequestOptions options) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        Cancellable cancellable = client.searchAsync(request, options,
+                ActionListener.wrap(future::complete, future::completeExceptionally));
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                cancellable.cancel();
+            }
+        });
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<T> future : List.of(first, second)) {
+            future.whenComplete((value, error) -> {
+                if (error == null) {
+                    result.complete(value);
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(error);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Error devuelto por Elasticsearch en un _mget, para clasificarlo en el breaker
+     */
+    private static class ClusterException extends Exception {
+        private final Exception cause;
+
+        ClusterException(Exception cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+
+    private boolean isClusterFailure(Exception e) {
+        if (e instanceof ElasticsearchStatusException) {
+            RestStatus status = ((ElasticsearchStatusException) e).status();
+            return status.getStatus() >= 500 || status == RestStatus.TOO_MANY_REQUESTS;
+        }
+        return true;
+    }
+}
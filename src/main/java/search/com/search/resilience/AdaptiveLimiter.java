@@ -0,0 +1,106 @@
+package search.com.search.resilience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Límite de concurrencia adaptativo basado en gradiente de latencia.
+ *
+ * Compara la latencia reciente con una media móvil lenta: mientras la latencia se mantiene
+ * el límite crece en sqrt(limit); cuando Elasticsearch se degrada y la latencia sube, el
+ * gradiente baja y el límite se reduce, de modo que el exceso se rechaza en lugar de encolarse.
+ */
+public class AdaptiveLimiter {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_WINDOW = 600;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longRtt;
+    private volatile long lastRtt;
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, double rttTolerance) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * Libera el permiso y ajusta el límite con la latencia observada.
+     *
+     * @param rttNanos duración de la petición
+     * @param dropped  true si la petición falló por el backend (5xx, timeout)
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int inflightAtStart = inflight.getAndDecrement();
+        update(rttNanos, inflightAtStart, dropped);
+    }
+
+    private synchronized void update(long rttNanos, int inflightAtStart, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF_RATIO);
+            limit = (int) estimatedLimit;
+            return;
+        }
+
+        lastRtt = rttNanos;
+        longRtt = longRtt == 0 ? rttNanos : longRtt + (rttNanos - longRtt) / LONG_WINDOW;
+
+        // Tras una sobrecarga sostenida la media lenta queda inflada; la acercamos a la realidad
+        if (longRtt / rttNanos > 2.0) {
+            longRtt *= 0.95;
+        }
+
+        // Si apenas usamos el límite actual no hay señal para hacerlo crecer
+        if (inflightAtStart < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / rttNanos));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("limit", limit);
+        stats.put("inflight", inflight.get());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("lastRttMs", lastRtt / 1_000_000.0);
+        return stats;
+    }
+}
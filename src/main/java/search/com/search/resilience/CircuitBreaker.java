@@ -0,0 +1,148 @@
+package search.com.search.resilience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker por conteo: si en las últimas {@code window} llamadas la tasa de error supera
+ * {@code failureRate}, el circuito se abre durante {@code openMillis} y las peticiones fallan
+ * inmediatamente. Después se dejan pasar unas pocas llamadas de prueba antes de cerrarlo.
+ *
+ * Cada llamada permitida por {@link #allowRequest} debe terminar con onSuccess, onFailure u onIgnored. Si una
+ * prueba no llega a informar, a los openMillis de pasar a HALF_OPEN el circuito se vuelve a abrir en
+ * lugar de quedarse sin huecos de prueba para siempre.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int HALF_OPEN_TRIALS = 3;
+
+    private final int window;
+    private final int minCalls;
+    private final double failureRate;
+    private final long openMillis;
+
+    private final boolean[] outcomes;
+    private int position;
+    private int calls;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private long halfOpenedAt;
+    private int trialsInFlight;
+    private int trialSuccesses;
+
+    private final LongAdder trips = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public CircuitBreaker(int window, int minCalls, double failureRate, long openMillis) {
+        this.window = window;
+        this.minCalls = minCalls;
+        this.failureRate = failureRate;
+        this.openMillis = openMillis;
+        this.outcomes = new boolean[window];
+    }
+
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                rejected.increment();
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenedAt = System.currentTimeMillis();
+            trialsInFlight = 0;
+            trialSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsInFlight >= HALF_OPEN_TRIALS && System.currentTimeMillis() - halfOpenedAt >= openMillis) {
+                // Pruebas que nunca informaron: se cuentan como fallo
+                open();
+                rejected.increment();
+                return false;
+            }
+            if (trialsInFlight >= HALF_OPEN_TRIALS) {
+                rejected.increment();
+                return false;
+            }
+            trialsInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            trialsInFlight--;
+            if (++trialSuccesses >= HALF_OPEN_TRIALS) {
+                reset();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * La llamada terminó sin decir nada de la salud del clúster (ej. timeout por un presupuesto que
+     * pidió el cliente): libera su hueco de prueba sin contar éxito ni fallo
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            trialsInFlight--;
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (calls >= minCalls && failures >= failureRate * calls) {
+            open();
+        }
+    }
+
+    private void record(boolean failed) {
+        if (calls == window) {
+            if (outcomes[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[position] = failed;
+        if (failed) {
+            failures++;
+        }
+        position = (position + 1) % window;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        trips.increment();
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        position = 0;
+        calls = 0;
+        failures = 0;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("failureRate", calls == 0 ? 0.0 : (double) failures / calls);
+        stats.put("trips", trips.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
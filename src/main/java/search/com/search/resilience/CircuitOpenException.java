@@ -0,0 +1,11 @@
+package search.com.search.resilience;
+
+/**
+ * Se lanza sin contactar con Elasticsearch cuando el circuito del endpoint está abierto.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(String endpoint) {
+        super("Elasticsearch circuit open for " + endpoint);
+    }
+}
@@ -0,0 +1,47 @@
+package search.com.search.resilience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import search.com.search.model.consts.Endpoint;
+
+/**
+ * Bulkheads de concurrencia: lecturas, sugerencias, facetas y escrituras tienen cada uno su
+ * propio {@link AdaptiveLimiter}, así una carga pesada de agregaciones no deja sin hilos a /v1/suggest.
+ *
+ * Configuración por bulkhead: app.limits.&lt;bulkhead&gt;.initial|min|max|rtt-tolerance
+ */
+@Component
+public class ConcurrencyLimits {
+
+    private final Map<String, AdaptiveLimiter> limiters = new LinkedHashMap<>();
+
+    public ConcurrencyLimits(Environment env) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            String bulkhead = endpoint.bulkhead();
+            if (limiters.containsKey(bulkhead)) {
+                continue;
+            }
+            String prefix = "app.limits." + bulkhead + ".";
+            limiters.put(bulkhead, new AdaptiveLimiter(
+                    bulkhead,
+                    env.getProperty(prefix + "initial", Integer.class, 20),
+                    env.getProperty(prefix + "min", Integer.class, 4),
+                    env.getProperty(prefix + "max", Integer.class, 200),
+                    env.getProperty(prefix + "rtt-tolerance", Double.class, 1.5)));
+        }
+    }
+
+    public AdaptiveLimiter forEndpoint(Endpoint endpoint) {
+        return limiters.get(endpoint.bulkhead());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        limiters.forEach((name, limiter) -> stats.put(name, limiter.stats()));
+        return stats;
+    }
+}
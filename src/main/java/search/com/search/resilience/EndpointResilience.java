@@ -0,0 +1,52 @@
+package search.com.search.resilience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+
+/**
+ * Políticas de hedging y circuit breaking de un endpoint de lectura, junto a sus contadores.
+ */
+@Getter
+public class EndpointResilience {
+
+    private final boolean hedgeEnabled;
+    private final long minHedgeDelayNanos;
+    private final LatencyTracker latency;
+    private final CircuitBreaker breaker;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    public EndpointResilience(boolean hedgeEnabled, double hedgePercentile, long minHedgeDelayMillis,
+                              CircuitBreaker breaker) {
+        this.hedgeEnabled = hedgeEnabled;
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis);
+        this.latency = new LatencyTracker(hedgePercentile);
+        this.breaker = breaker;
+    }
+
+    /**
+     * Tiempo a esperar a la primera respuesta antes de lanzar la petición de respaldo
+     */
+    public long hedgeDelayNanos() {
+        return Math.max(minHedgeDelayNanos, latency.percentileNanos());
+    }
+
+    public Map<String, Object> stats() {
+        long total = requests.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", total);
+        stats.put("hedgeEnabled", hedgeEnabled);
+        stats.put("hedgeDelayMs", hedgeDelayNanos() / 1_000_000.0);
+        stats.put("hedges", hedges.sum());
+        stats.put("hedgeWins", hedgeWins.sum());
+        stats.put("hedgeRate", total == 0 ? 0.0 : (double) hedges.sum() / total);
+        stats.put("breaker", breaker != null ? breaker.stats() : "disabled");
+        return stats;
+    }
+}
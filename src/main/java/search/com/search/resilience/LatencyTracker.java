@@ -0,0 +1,46 @@
+package search.com.search.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ventana circular con las últimas latencias de un endpoint. El percentil se recalcula cada
+ * {@code RECOMPUTE_EVERY} muestras para que consultarlo en cada petición no cueste nada.
+ */
+public class LatencyTracker {
+
+    private static final int SIZE = 512;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final long[] samples = new long[SIZE];
+    private final AtomicLong count = new AtomicLong();
+    private final double percentile;
+
+    private volatile long cachedNanos = -1;
+
+    public LatencyTracker(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples[(int) (n % SIZE)] = nanos;
+        if (n % RECOMPUTE_EVERY == RECOMPUTE_EVERY - 1) {
+            recompute(Math.min(n + 1, SIZE));
+        }
+    }
+
+    /**
+     * Percentil configurado en nanosegundos, o -1 si aún no hay suficientes muestras
+     */
+    public long percentileNanos() {
+        return cachedNanos;
+    }
+
+    private void recompute(long filled) {
+        long[] copy = Arrays.copyOf(samples, (int) filled);
+        Arrays.sort(copy);
+        int index = (int) Math.min(copy.length - 1, Math.ceil(percentile / 100.0 * copy.length) - 1);
+        cachedNanos = copy[Math.max(0, index)];
+    }
+}
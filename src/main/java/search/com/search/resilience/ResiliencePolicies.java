@@ -0,0 +1,56 @@
+package search.com.search.resilience;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import search.com.search.model.consts.Endpoint;
+
+/**
+ * Configuración de hedging y circuit breaker para cada endpoint de lectura.
+ *
+ * Propiedades: app.resilience.&lt;endpoint&gt;.hedge.enabled|percentile|min-delay-ms
+ * y app.resilience.&lt;endpoint&gt;.breaker.enabled|window|min-calls|failure-rate|open-ms
+ */
+@Component
+public class ResiliencePolicies {
+
+    private final Map<Endpoint, EndpointResilience> policies = new EnumMap<>(Endpoint.class);
+
+    public ResiliencePolicies(Environment env) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            if (endpoint == Endpoint.WRITE) {
+                continue; // Solo las lecturas son idempotentes
+            }
+            String prefix = "app.resilience." + endpoint.key() + ".";
+
+            CircuitBreaker breaker = null;
+            if (env.getProperty(prefix + "breaker.enabled", Boolean.class, true)) {
+                breaker = new CircuitBreaker(
+                        env.getProperty(prefix + "breaker.window", Integer.class, 50),
+                        env.getProperty(prefix + "breaker.min-calls", Integer.class, 20),
+                        env.getProperty(prefix + "breaker.failure-rate", Double.class, 0.5),
+                        env.getProperty(prefix + "breaker.open-ms", Long.class, 10_000L));
+            }
+
+            policies.put(endpoint, new EndpointResilience(
+                    env.getProperty(prefix + "hedge.enabled", Boolean.class, false),
+                    env.getProperty(prefix + "hedge.percentile", Double.class, 95.0),
+                    env.getProperty(prefix + "hedge.min-delay-ms", Long.class, 20L),
+                    breaker));
+        }
+    }
+
+    public EndpointResilience forEndpoint(Endpoint endpoint) {
+        return policies.get(endpoint);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        policies.forEach((endpoint, policy) -> stats.put(endpoint.key(), policy.stats()));
+        return stats;
+    }
+}
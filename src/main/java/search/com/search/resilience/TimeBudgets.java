@@ -0,0 +1,53 @@
+package search.com.search.resilience;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import search.com.search.model.consts.Endpoint;
+
+/**
+ * Presupuesto de tiempo por defecto de cada endpoint y máximo que puede pedir un cliente
+ * con la cabecera X-Request-Timeout.
+ *
+ * Propiedades: app.budget.&lt;endpoint&gt;.timeout-ms y app.budget.max-timeout-ms
+ */
+@Component
+public class TimeBudgets {
+
+    public static final String HEADER = "X-Request-Timeout";
+
+    private final Map<Endpoint, Long> defaults = new EnumMap<>(Endpoint.class);
+    private final long maxMillis;
+
+    public TimeBudgets(Environment env) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            long fallback = endpoint == Endpoint.SUGGEST ? 150L : 2_000L;
+            defaults.put(endpoint, env.getProperty("app.budget." + endpoint.key() + ".timeout-ms", Long.class, fallback));
+        }
+        this.maxMillis = env.getProperty("app.budget.max-timeout-ms", Long.class, 10_000L);
+    }
+
+    public long defaultMillis(Endpoint endpoint) {
+        return defaults.get(endpoint);
+    }
+
+    /**
+     * Presupuesto para una petición: el de la cabecera si es válido (acotado al máximo), o el del endpoint
+     */
+    public long resolve(Endpoint endpoint, String header) {
+        if (header != null) {
+            try {
+                long requested = Long.parseLong(header.trim());
+                if (requested > 0) {
+                    return Math.min(requested, maxMillis);
+                }
+            } catch (NumberFormatException e) {
+                // Cabecera inválida: usamos el valor por defecto del endpoint
+            }
+        }
+        return defaultMillis(endpoint);
+    }
+}
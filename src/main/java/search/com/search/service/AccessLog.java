@@ -0,0 +1,159 @@
+package search.com.search.service;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RequestContext;
+import search.com.search.model.consts.Endpoint;
+
+/**
+ * Access log de una línea por petición, escrito fuera del hilo de la petición.
+ *
+ * El hilo de la petición solo encola un registro con los datos en bruto (offer sin bloquear);
+ * el formateo y la escritura en el logger "access" los hace un hilo propio. Si la cola está
+ * llena el registro se descarta y se contabiliza. Por endpoint se aplica un muestreo
+ * (app.access-log.sample-rate.&lt;endpoint&gt;), salvo errores y peticiones lentas, que se
+ * registran siempre.
+ */
+@Component
+@Slf4j
+public class AccessLog {
+
+    private static final Logger ACCESS = LoggerFactory.getLogger("access");
+
+    private final Map<Endpoint, Double> sampleRates = new EnumMap<>(Endpoint.class);
+    private final BlockingQueue<Entry> queue;
+    private final SlowQueryLog slowQueryLog;
+    private final Thread writer;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    private volatile boolean running = true;
+
+    public AccessLog(Environment env, SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+        double fallback = env.getProperty("app.access-log.sample-rate.default", Double.class, 1.0);
+        for (Endpoint endpoint : Endpoint.values()) {
+            sampleRates.put(endpoint, env.getProperty("app.access-log.sample-rate." + endpoint.key(), Double.class, fallback));
+        }
+        this.queue = new ArrayBlockingQueue<>(env.getProperty("app.access-log.queue-size", Integer.class, 8192));
+
+        this.writer = new Thread(this::drain, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Se invoca al terminar cada petición; nunca bloquea el hilo que la atiende
+     */
+    public void onRequestFinished(RequestContext context, String method, String path, String queryString,
+                                  int status, boolean failed) {
+        long elapsed = System.nanoTime() - context.getStartNanos();
+        boolean error = failed || status >= 500;
+        boolean slow = slowQueryLog.isSlow(context.getEndpoint(), elapsed);
+
+        if (!error && !slow && !sampled(context.getEndpoint())) {
+            sampledOut.increment();
+            return;
+        }
+
+        Entry entry = new Entry(System.currentTimeMillis(), context.getEndpoint(), method, path, queryString,
+                failed ? 500 : status, elapsed, context.getTookMillis(), context.getHits(), slow);
+        if (!queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("written", written.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("sampledOut", sampledOut.sum());
+        stats.put("sampleRates", sampleRates);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(2));
+    }
+
+    private boolean sampled(Endpoint endpoint) {
+        double rate = sampleRates.get(endpoint);
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry entry = running ? queue.take() : queue.poll();
+                if (entry == null) {
+                    break;
+                }
+                write(entry);
+            } catch (InterruptedException e) {
+                // Al parar se vacía lo que quede en la cola antes de salir
+                running = false;
+            } catch (Exception e) {
+                log.debug("Could not write access log entry", e);
+            }
+        }
+    }
+
+    private void write(Entry entry) {
+        StringBuilder line = new StringBuilder(256)
+                .append("ts=").append(Instant.ofEpochMilli(entry.timestamp))
+                .append(" endpoint=").append(entry.endpoint.key())
+                .append(" method=").append(entry.method)
+                .append(" path=").append(entry.path)
+                .append(" status=").append(entry.status)
+                .append(" durationMs=").append(TimeUnit.NANOSECONDS.toMillis(entry.elapsedNanos))
+                .append(" esTookMs=").append(entry.tookMillis)
+                .append(" hits=").append(entry.hits)
+                .append(" slow=").append(entry.slow);
+        if (entry.queryString != null) {
+            line.append(" query=\"").append(entry.queryString).append('"');
+        }
+
+        if (entry.status >= 500) {
+            ACCESS.warn(line.toString());
+        } else {
+            ACCESS.info(line.toString());
+        }
+        written.increment();
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final long timestamp;
+        private final Endpoint endpoint;
+        private final String method;
+        private final String path;
+        private final String queryString;
+        private final int status;
+        private final long elapsedNanos;
+        private final long tookMillis;
+        private final long hits;
+        private final boolean slow;
+    }
+}
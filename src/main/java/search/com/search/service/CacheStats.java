@@ -0,0 +1,62 @@
+package search.com.search.service;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Aciertos y fallos de la request cache y la query cache del índice 'items', para comparar
+ * el efecto de la preference por sesión (o de cualquier otro cambio) antes y después de una prueba de carga.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheStats {
+
+    private static final String INDEX = "items";
+
+    private final RestHighLevelClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public Map<String, Object> stats() throws Exception {
+        Request request = new Request("GET", "/" + INDEX + "/_stats/request_cache,query_cache");
+        Response response = client.getLowLevelClient().performRequest(request);
+
+        JsonNode indices;
+        try (InputStream body = response.getEntity().getContent()) {
+            indices = mapper.readTree(body).path("indices");
+        }
+
+        // 'items' puede ser un alias: la respuesta viene por índice concreto, se suman todos
+        long[] counts = new long[4];
+        for (JsonNode index : indices) {
+            JsonNode total = index.path("total");
+            counts[0] += total.path("request_cache").path("hit_count").asLong();
+            counts[1] += total.path("request_cache").path("miss_count").asLong();
+            counts[2] += total.path("query_cache").path("hit_count").asLong();
+            counts[3] += total.path("query_cache").path("miss_count").asLong();
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requestCache", hitRate(counts[0], counts[1]));
+        stats.put("queryCache", hitRate(counts[2], counts[3]));
+        return stats;
+    }
+
+    private static Map<String, Object> hitRate(long hits, long misses) {
+        Map<String, Object> cache = new LinkedHashMap<>();
+        cache.put("hits", hits);
+        cache.put("misses", misses);
+        cache.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return cache;
+    }
+}
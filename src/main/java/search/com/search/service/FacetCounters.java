@@ -0,0 +1,483 @@
+package search.com.search.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.range.Range;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.Stats;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.federation.FederatedSearch;
+import search.com.search.model.consts.Consts;
+import search.com.search.model.consts.ItemChangeType;
+import search.com.search.model.dto.ItemChangeEvent;
+import search.com.search.model.entities.Items;
+
+/**
+ * Contadores en memoria de las facetas sin filtros y por categoría, para responder /v1/facets (la
+ * página de inicio) sin agregar todo el índice en cada petición.
+ *
+ * Por cada vista (global y una por categoría) se guardan documentos, documentos por categoría y por
+ * fabricante, documentos por rango de precio y count/suma/mínimo/máximo del precio. Las altas y bajas
+ * de esta instancia los actualizan al momento; los cambios de stock no afectan a las facetas. Cada
+ * rebuild-ms se reconstruyen con una agregación sobre todo el índice, que corrige lo que se haya
+ * desviado (escrituras de otras réplicas o de la herramienta import).
+ *
+ * La agregación se hace sobre un point in time abierto justo después de un _refresh, así que todo lo
+ * escrito antes de empezar a apuntar cambios está en la foto. De los cambios apuntados durante la
+ * reconstrucción solo se vuelven a aplicar los que la foto no incluye: se mira en el mismo point in
+ * time si cada item afectado existe, y se descartan los eventos que ya llevan a ese estado.
+ *
+ * El mínimo y el máximo no se pueden deshacer con contadores: si se borra el item que los marcaba,
+ * esa vista vuelve a consultar Elasticsearch hasta la siguiente reconstrucción.
+ */
+@Component
+@Slf4j
+public class FacetCounters {
+
+    // Rangos de precio de las facetas: los usan la agregación price_ranges, la respuesta y el top-K de filtros
+    public static final String[] BAND_KEYS = { "0-50", "50-100", "100-300", "300-500", "500-1000", "1000-2000", "2000+" };
+    public static final Double[] BAND_FROM = { null, 50.0, 100.0, 300.0, 500.0, 1000.0, 2000.0 };
+    public static final Double[] BAND_TO = { 50.0, 100.0, 300.0, 500.0, 1000.0, 2000.0, null };
+
+    private static final String INDEX = "items";
+    private static final int LOOKUP_CHUNK = 1000;
+    private static final int MAX_LOOKUP_ROUNDS = 5;
+
+    private final RestHighLevelClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final boolean enabled;
+    private final int maxTerms;
+    private final long rebuildTimeoutMillis;
+
+    // Todo el estado se protege con el monitor de this
+    private View global;
+    private Map<String, View> byCategory;
+    private List<ItemChangeEvent> pending;
+    private long lastRebuildMillis;
+    private String lastRebuild;
+
+    private final LongAdder answered = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public FacetCounters(Environment env, RestHighLevelClient client, FederatedSearch federation) {
+        this.client = client;
+        // Los contadores solo ven el clúster local: con búsqueda federada las facetas van siempre a los clústeres
+        this.enabled = env.getProperty("app.facets.memory.enabled", Boolean.class, false) && !federation.isEnabled();
+        this.maxTerms = env.getProperty("app.facets.memory.max-terms", Integer.class, 1000);
+        this.rebuildTimeoutMillis = env.getProperty("app.facets.memory.rebuild-timeout-ms", Long.class, 30_000L);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Contadores de la vista que corresponde a la petición, o null si hay que ir a Elasticsearch
+     * (texto o fabricante en la petición, contadores aún sin construir, categoría desconocida o
+     * mínimo/máximo pendientes de reconstruir)
+     */
+    public synchronized Counts counts(String query, String category, String manufacturer) {
+        if (!enabled || global == null || StringUtils.hasText(query) || StringUtils.hasText(manufacturer)) {
+            return null;
+        }
+        View view = StringUtils.hasText(category) ? byCategory.get(category) : global;
+        if (view == null || view.extremesStale) {
+            fallbacks.increment();
+            return null;
+        }
+        answered.increment();
+        return view.counts();
+    }
+
+    @EventListener
+    public void onItemChange(ItemChangeEvent event) {
+        // Los cambios de stock no mueven ninguna faceta
+        if (!enabled || event.getType() == ItemChangeType.UPDATED || event.getItem() == null) {
+            return;
+        }
+        synchronized (this) {
+            if (pending != null) {
+                pending.add(event);
+            }
+            if (global != null) {
+                apply(global, byCategory, event);
+                applied.increment();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.facets.memory.rebuild-ms:300000}", initialDelayString = "${app.facets.memory.initial-delay-ms:5000}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        String pit = null;
+        try {
+            // Lo escrito antes de empezar a apuntar cambios queda visible en el point in time
+            client.getLowLevelClient().performRequest(new Request("POST", "/" + INDEX + "/_refresh"));
+            pit = openPointInTime();
+
+            SearchSourceBuilder source = new SearchSourceBuilder().size(0).trackTotalHits(true)
+                    .timeout(TimeValue.timeValueMillis(rebuildTimeoutMillis))
+                    .pointInTimeBuilder(new PointInTimeBuilder(pit))
+                    .aggregation(AggregationBuilders.terms("categories").field(Consts.CATEGORY).size(maxTerms)
+                            .subAggregation(manufacturers())
+                            .subAggregation(priceRanges())
+                            .subAggregation(AggregationBuilders.stats("price_stats").field(Consts.PRICE)))
+                    .aggregation(manufacturers())
+                    .aggregation(priceRanges())
+                    .aggregation(AggregationBuilders.stats("price_stats").field(Consts.PRICE));
+            SearchResponse response = client.search(pointInTimeRequest(source), RequestOptions.DEFAULT);
+            if (response.isTimedOut()) {
+                throw new IllegalStateException("facet rebuild timed out");
+            }
+
+            View rebuiltGlobal = view(response.getHits().getTotalHits().value, response.getAggregations());
+            Map<String, View> rebuiltCategories = new HashMap<>();
+            Terms categories = response.getAggregations().get("categories");
+            for (Terms.Bucket bucket : categories.getBuckets()) {
+                View view = view(bucket.getDocCount(), bucket.getAggregations());
+                view.categories.put(bucket.getKeyAsString(), new long[] { bucket.getDocCount() });
+                rebuiltGlobal.categories.put(bucket.getKeyAsString(), new long[] { bucket.getDocCount() });
+                rebuiltCategories.put(bucket.getKeyAsString(), view);
+            }
+
+            // Existencia en la foto de cada item con cambios apuntados; los cambios siguen llegando
+            // mientras se consulta, así que se repite hasta que no quede ninguno sin mirar
+            Map<String, Boolean> inSnapshot = new HashMap<>();
+            for (int round = 0; ; round++) {
+                Set<String> unchecked = new LinkedHashSet<>();
+                synchronized (this) {
+                    for (ItemChangeEvent event : pending) {
+                        if (!inSnapshot.containsKey(event.getItemId())) {
+                            unchecked.add(event.getItemId());
+                        }
+                    }
+                    if (unchecked.isEmpty()) {
+                        replay(rebuiltGlobal, rebuiltCategories, pending, inSnapshot);
+                        global = rebuiltGlobal;
+                        byCategory = rebuiltCategories;
+                        pending = null;
+                        lastRebuildMillis = (System.nanoTime() - start) / 1_000_000;
+                        lastRebuild = Instant.now().toString();
+                        break;
+                    }
+                }
+                if (round == MAX_LOOKUP_ROUNDS) {
+                    throw new IllegalStateException("items kept changing during the facet rebuild");
+                }
+                Set<String> found = existing(pit, unchecked);
+                unchecked.forEach(id -> inSnapshot.put(id, found.contains(id)));
+            }
+            log.debug("Facet counters rebuilt in {} ms: {} docs, {} categories", lastRebuildMillis,
+                    rebuiltGlobal.docs, rebuiltCategories.size());
+        } catch (Exception e) {
+            synchronized (this) {
+                pending = null;
+            }
+            log.warn("Could not rebuild facet counters: {}", e.getMessage());
+        } finally {
+            if (pit != null) {
+                closePointInTime(pit);
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", global != null);
+        stats.put("docs", global != null ? global.docs : null);
+        stats.put("categories", byCategory != null ? byCategory.size() : null);
+        stats.put("answered", answered.sum());
+        stats.put("fallbacks", fallbacks.sum());
+        stats.put("appliedChanges", applied.sum());
+        stats.put("replayedChanges", replayed.sum());
+        stats.put("skippedChanges", skipped.sum());
+        stats.put("lastRebuild", lastRebuild);
+        stats.put("lastRebuildMs", lastRebuildMillis);
+        return stats;
+    }
+
+    /**
+     * Aplica sobre la reconstrucción los cambios que la foto no incluye. Por item, los eventos
+     * alternan alta y baja: se descarta el prefijo más largo que termina en el estado que tiene en la
+     * foto (presente o no) y se aplica el resto.
+     */
+    private void replay(View global, Map<String, View> byCategory, List<ItemChangeEvent> events,
+                        Map<String, Boolean> inSnapshot) {
+        Map<String, List<ItemChangeEvent>> byItem = new LinkedHashMap<>();
+        for (ItemChangeEvent event : events) {
+            byItem.computeIfAbsent(event.getItemId(), id -> new ArrayList<>()).add(event);
+        }
+        for (Map.Entry<String, List<ItemChangeEvent>> item : byItem.entrySet()) {
+            List<ItemChangeEvent> changes = item.getValue();
+            boolean present = inSnapshot.get(item.getKey());
+            int included = 0;
+            for (int i = 0; i < changes.size(); i++) {
+                if ((changes.get(i).getType() != ItemChangeType.DELETED) == present) {
+                    included = i + 1;
+                }
+            }
+            for (int i = included; i < changes.size(); i++) {
+                apply(global, byCategory, changes.get(i));
+            }
+            skipped.add(included);
+            replayed.add(changes.size() - included);
+        }
+    }
+
+    private String openPointInTime() throws IOException {
+        Request request = new Request("POST", "/" + INDEX + "/_pit");
+        request.addParameter("keep_alive", rebuildTimeoutMillis + "ms");
+        Response response = client.getLowLevelClient().performRequest(request);
+        try (InputStream body = response.getEntity().getContent()) {
+            return mapper.readTree(body).path("id").asText();
+        }
+    }
+
+    private void closePointInTime(String pit) {
+        try {
+            Request request = new Request("DELETE", "/_pit");
+            request.setJsonEntity(mapper.createObjectNode().put("id", pit).toString());
+            client.getLowLevelClient().performRequest(request);
+        } catch (Exception e) {
+            // Caduca solo al pasar keep_alive
+            log.debug("Could not close point in time: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Búsqueda sobre el point in time: sin índices (van en el id) y sin minimizar viajes entre clústeres
+     */
+    private SearchRequest pointInTimeRequest(SearchSourceBuilder source) {
+        SearchRequest request = new SearchRequest().source(source);
+        request.setCcsMinimizeRoundtrips(false);
+        return request;
+    }
+
+    /**
+     * Cuáles de los ids existen en el point in time
+     */
+    private Set<String> existing(String pit, Set<String> ids) throws IOException {
+        Set<String> found = new HashSet<>();
+        List<String> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + LOOKUP_CHUNK));
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(QueryBuilders.idsQuery().addIds(chunk.toArray(new String[0])))
+                    .size(chunk.size())
+                    .fetchSource(false)
+                    .pointInTimeBuilder(new PointInTimeBuilder(pit));
+            for (SearchHit hit : client.search(pointInTimeRequest(source), RequestOptions.DEFAULT).getHits()) {
+                found.add(hit.getId());
+            }
+        }
+        return found;
+    }
+
+    private static void apply(View global, Map<String, View> byCategory, ItemChangeEvent event) {
+        Items item = event.getItem();
+        int sign = event.getType() == ItemChangeType.DELETED ? -1 : 1;
+        global.add(item, sign);
+        if (item.getCategory() != null) {
+            View view = byCategory.get(item.getCategory());
+            if (view == null && sign > 0) {
+                view = new View();
+                byCategory.put(item.getCategory(), view);
+            }
+            if (view != null) {
+                view.add(item, sign);
+            }
+        }
+    }
+
+    private AggregationBuilder manufacturers() {
+        return AggregationBuilders.terms("manufacturers").field(Consts.MANUFACTURER).size(maxTerms);
+    }
+
+    /**
+     * Agregación price_ranges con los rangos de precio de las facetas
+     */
+    public static RangeAggregationBuilder priceRanges() {
+        RangeAggregationBuilder ranges = AggregationBuilders.range("price_ranges").field(Consts.PRICE);
+        for (int i = 0; i < BAND_KEYS.length; i++) {
+            if (BAND_FROM[i] == null) {
+                ranges.addUnboundedTo(BAND_KEYS[i], BAND_TO[i]);
+            } else if (BAND_TO[i] == null) {
+                ranges.addUnboundedFrom(BAND_KEYS[i], BAND_FROM[i]);
+            } else {
+                ranges.addRange(BAND_KEYS[i], BAND_FROM[i], BAND_TO[i]);
+            }
+        }
+        return ranges;
+    }
+
+    private static View view(long docs, Aggregations aggregations) {
+        View view = new View();
+        view.docs = docs;
+        Terms manufacturers = aggregations.get("manufacturers");
+        for (Terms.Bucket bucket : manufacturers.getBuckets()) {
+            view.manufacturers.put(bucket.getKeyAsString(), new long[] { bucket.getDocCount() });
+        }
+        Range ranges = aggregations.get("price_ranges");
+        for (Range.Bucket bucket : ranges.getBuckets()) {
+            view.bands[band(bucket.getKeyAsString())] = bucket.getDocCount();
+        }
+        Stats stats = aggregations.get("price_stats");
+        view.priceCount = stats.getCount();
+        view.priceSum = stats.getCount() > 0 ? stats.getSum() : 0;
+        view.min = stats.getCount() > 0 ? stats.getMin() : Double.POSITIVE_INFINITY;
+        view.max = stats.getCount() > 0 ? stats.getMax() : Double.NEGATIVE_INFINITY;
+        return view;
+    }
+
+    private static int band(String key) {
+        for (int i = 0; i < BAND_KEYS.length; i++) {
+            if (BAND_KEYS[i].equals(key)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown price band: " + key);
+    }
+
+    /**
+     * Índice del rango de precio en el que cae price
+     */
+    public static int bandOf(double price) {
+        for (int i = 0; i < BAND_KEYS.length; i++) {
+            if ((BAND_FROM[i] == null || price >= BAND_FROM[i]) && (BAND_TO[i] == null || price < BAND_TO[i])) {
+                return i;
+            }
+        }
+        return BAND_KEYS.length - 1;
+    }
+
+    /**
+     * Contadores de una vista. Solo se tocan con el monitor de FacetCounters.
+     */
+    private static class View {
+        private long docs;
+        private final Map<String, long[]> categories = new HashMap<>();
+        private final Map<String, long[]> manufacturers = new HashMap<>();
+        private final long[] bands = new long[BAND_KEYS.length];
+        private long priceCount;
+        private double priceSum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private boolean extremesStale;
+
+        void add(Items item, int sign) {
+            docs += sign;
+            count(categories, item.getCategory(), sign);
+            count(manufacturers, item.getManufacturer(), sign);
+            Double price = item.getPrice();
+            if (price != null) {
+                bands[bandOf(price)] += sign;
+                priceCount += sign;
+                priceSum += sign * price;
+                if (sign > 0) {
+                    min = Math.min(min, price);
+                    max = Math.max(max, price);
+                } else if (priceCount == 0) {
+                    min = Double.POSITIVE_INFINITY;
+                    max = Double.NEGATIVE_INFINITY;
+                } else if (price <= min || price >= max) {
+                    extremesStale = true;
+                }
+            }
+        }
+
+        Counts counts() {
+            Counts counts = new Counts();
+            counts.docs = docs;
+            counts.categories = sorted(categories);
+            counts.manufacturers = sorted(manufacturers);
+            counts.bands = bands.clone();
+            counts.priceCount = priceCount;
+            counts.priceSum = priceSum;
+            counts.min = priceCount > 0 ? min : null;
+            counts.max = priceCount > 0 ? max : null;
+            return counts;
+        }
+
+        private static void count(Map<String, long[]> counts, String key, int sign) {
+            if (key == null) {
+                return;
+            }
+            long[] count = counts.computeIfAbsent(key, k -> new long[1]);
+            count[0] += sign;
+            if (count[0] <= 0) {
+                counts.remove(key);
+            }
+        }
+
+        // Mismo orden que las agregaciones terms: documentos de mayor a menor y, a igualdad, por clave
+        private static LinkedHashMap<String, Long> sorted(Map<String, long[]> counts) {
+            LinkedHashMap<String, Long> sorted = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                    .sorted((a, b) -> a.getValue()[0] != b.getValue()[0]
+                            ? Long.compare(b.getValue()[0], a.getValue()[0])
+                            : a.getKey().compareTo(b.getKey()))
+                    .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()[0]));
+            return sorted;
+        }
+    }
+
+    /**
+     * Copia de los contadores de una vista para construir la respuesta de facetas
+     */
+    @Getter
+    public static class Counts {
+        private long docs;
+        private LinkedHashMap<String, Long> categories;
+        private LinkedHashMap<String, Long> manufacturers;
+        private long[] bands;
+        private long priceCount;
+        private double priceSum;
+        private Double min;
+        private Double max;
+    }
+}
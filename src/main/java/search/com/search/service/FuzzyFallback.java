@@ -0,0 +1,123 @@
+package search.com.search.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.term.TermSuggestion;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import search.com.search.model.consts.Consts;
+import search.com.search.model.consts.Endpoint;
+
+/**
+ * Política de la búsqueda en dos fases de searchFullText y advancedSearch.
+ *
+ * Con app.search.two-phase.enabled=true el texto se busca primero sin fuzziness, que no expande
+ * términos y es lo que necesitan la mayoría de consultas (bien escritas). Solo si esa fase trae
+ * menos de min-hits resultados se lanza la consulta fuzzy de siempre, y con ella un term suggester
+ * sobre product para devolver "quizá quisiste decir". Los contadores permiten ver en
+ * /v1/admin/two-phase cuántas búsquedas necesitan la segunda fase.
+ */
+@Component
+public class FuzzyFallback {
+
+    private static final String SUGGESTION = "did_you_mean";
+
+    private final boolean enabled;
+    private final long minHits;
+    private final boolean suggest;
+
+    private final Map<Endpoint, LongAdder> exact = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> fallback = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> suggested = new EnumMap<>(Endpoint.class);
+
+    public FuzzyFallback(Environment env) {
+        this.enabled = env.getProperty("app.search.two-phase.enabled", Boolean.class, false);
+        this.minHits = env.getProperty("app.search.two-phase.min-hits", Long.class, 3L);
+        this.suggest = env.getProperty("app.search.two-phase.suggest", Boolean.class, true);
+        for (Endpoint endpoint : new Endpoint[] { Endpoint.SEARCH, Endpoint.ADVANCED }) {
+            exact.put(endpoint, new LongAdder());
+            fallback.put(endpoint, new LongAdder());
+            suggested.put(endpoint, new LongAdder());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Decide, con la respuesta de la fase exacta, si hace falta la fuzzy
+     */
+    public boolean needsFallback(Endpoint endpoint, SearchResponse exactResponse) {
+        long hits = exactResponse.getHits().getTotalHits() != null ? exactResponse.getHits().getTotalHits().value : 0;
+        boolean needed = hits < minHits;
+        (needed ? fallback : exact).get(endpoint).increment();
+        return needed;
+    }
+
+    /**
+     * Añade a la petición fuzzy el term suggester para "quizá quisiste decir"
+     */
+    public void addSuggester(SearchRequest request, String text) {
+        if (suggest) {
+            request.source().suggest(new SuggestBuilder()
+                    .addSuggestion(SUGGESTION, SuggestBuilders.termSuggestion(Consts.PRODUCT).text(text).size(1)));
+        }
+    }
+
+    /**
+     * Texto corregido (cada término sustituido por su mejor opción), o lista vacía si no hay correcciones
+     */
+    public List<String> didYouMean(Endpoint endpoint, SearchResponse response) {
+        Suggest suggestions = response.getSuggest();
+        if (suggestions == null || suggestions.getSuggestion(SUGGESTION) == null) {
+            return List.of();
+        }
+        TermSuggestion termSuggestion = suggestions.getSuggestion(SUGGESTION);
+
+        List<String> words = new ArrayList<>();
+        boolean corrected = false;
+        for (TermSuggestion.Entry entry : termSuggestion.getEntries()) {
+            if (entry.getOptions().isEmpty()) {
+                words.add(entry.getText().string());
+            } else {
+                words.add(entry.getOptions().get(0).getText().string());
+                corrected = true;
+            }
+        }
+        if (!corrected) {
+            return List.of();
+        }
+        suggested.get(endpoint).increment();
+        return List.of(String.join(" ", words).toLowerCase(Locale.ROOT));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("minHits", minHits);
+        for (Endpoint endpoint : exact.keySet()) {
+            long exactCount = exact.get(endpoint).sum();
+            long fallbackCount = fallback.get(endpoint).sum();
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("exact", exactCount);
+            counts.put("fallback", fallbackCount);
+            counts.put("fallbackRate", exactCount + fallbackCount == 0 ? 0.0 : (double) fallbackCount / (exactCount + fallbackCount));
+            counts.put("didYouMean", suggested.get(endpoint).sum());
+            stats.put(endpoint.key(), counts);
+        }
+        return stats;
+    }
+}
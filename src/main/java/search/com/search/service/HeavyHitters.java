@@ -0,0 +1,402 @@
+package search.com.search.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RequestContext;
+import search.com.search.model.consts.Endpoint;
+
+/**
+ * Consultas, prefijos y combinaciones de filtros más frecuentes, en memoria constante.
+ *
+ * Cada dimensión se resume con Space-Saving: como mucho capacity contadores; cuando llega una clave
+ * nueva con la tabla llena, sustituye a la de menor cuenta y hereda esa cuenta como error máximo.
+ * La ventana deslizante se forma con varios resúmenes por intervalos (bucket-seconds): al rotar se
+ * descarta el más antiguo, y la consulta suma los de toda la ventana.
+ *
+ * El hilo de la petición solo encola los datos en bruto (sin bloquear, como el access log); el
+ * análisis de parámetros y la actualización de los resúmenes los hace un hilo propio. Al rotar se
+ * publican la suma de la ventana (/v1/admin/heavy-hitters) y el conjunto de claves calientes que
+ * consultan las cachés con {@link #isHot} (PeerCache, para decidir qué admite cuando está llena), así
+ * que ambos van como mucho un intervalo por detrás.
+ */
+@Component
+@Slf4j
+public class HeavyHitters {
+
+    /**
+     * Qué se cuenta
+     */
+    public enum Dimension {
+        QUERY,        // texto de /v1/search y /v1/search/advanced, normalizado
+        PREFIX,       // prefijo de /v1/suggest
+        FILTER,       // category|manufacturer|rango de precio de advanced y facets
+        ZERO_RESULT   // consultas de texto sin resultados
+    }
+
+    // Límite inferior de cada rango de precio de las facetas
+    private static final double[] PRICE_BANDS = Arrays.stream(FacetCounters.BAND_FROM)
+            .mapToDouble(from -> from == null ? 0 : from).toArray();
+
+    private final boolean enabled;
+    private final int capacity;
+    private final int hotSize;
+    private final long bucketMillis;
+    private final BlockingQueue<Sample> queue;
+    private final Thread consumer;
+
+    // Solo los toca el hilo consumidor
+    private final List<Map<Dimension, SpaceSaving>> buckets = new ArrayList<>();
+    private long bucketStart;
+
+    private volatile Map<Dimension, List<Counter>> snapshot = new EnumMap<>(Dimension.class);
+    private volatile Map<Dimension, Set<String>> hot = new EnumMap<>(Dimension.class);
+    private volatile boolean running = true;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public HeavyHitters(Environment env) {
+        this.enabled = env.getProperty("app.heavy-hitters.enabled", Boolean.class, true);
+        this.capacity = env.getProperty("app.heavy-hitters.capacity", Integer.class, 512);
+        this.hotSize = env.getProperty("app.heavy-hitters.hot-size", Integer.class, 50);
+        this.bucketMillis = TimeUnit.SECONDS.toMillis(env.getProperty("app.heavy-hitters.bucket-seconds", Long.class, 60L));
+        int windowBuckets = env.getProperty("app.heavy-hitters.buckets", Integer.class, 15);
+        this.queue = new ArrayBlockingQueue<>(env.getProperty("app.heavy-hitters.queue-size", Integer.class, 8192));
+
+        for (int i = 0; i < windowBuckets; i++) {
+            buckets.add(newBucket());
+        }
+        this.bucketStart = System.currentTimeMillis();
+
+        this.consumer = new Thread(this::drain, "heavy-hitters");
+        this.consumer.setDaemon(true);
+        if (enabled) {
+            this.consumer.start();
+        }
+    }
+
+    /**
+     * Se invoca al terminar cada petición de lectura; nunca bloquea
+     */
+    public void onRequestFinished(RequestContext context, String queryString, int status) {
+        if (!enabled || status >= 400 || context.getEndpoint() == Endpoint.WRITE || context.getEndpoint() == Endpoint.ITEMS
+                || context.getEndpoint() == Endpoint.MGET) {
+            return;
+        }
+        // Sin respuesta de Elasticsearch (ej. 304 por ETag, o timeout) no se sabe cuántos resultados hay: -1
+        long hits = context.getHits();
+        if (!queue.offer(new Sample(context.getEndpoint(), queryString, hits))) {
+            dropped.increment();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Señal de admisión para cachés: la clave (ya normalizada, ver {@link #normalize} y
+     * {@link #filterKey}) está entre las hot-size más frecuentes de la ventana
+     */
+    public boolean isHot(Dimension dimension, String key) {
+        Set<String> keys = hot.get(dimension);
+        return keys != null && keys.contains(key);
+    }
+
+    /**
+     * Normalización de las claves de QUERY y ZERO_RESULT (minúsculas y espacios colapsados)
+     */
+    public static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    public Map<String, Object> stats(int k) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("windowSeconds", TimeUnit.MILLISECONDS.toSeconds(bucketMillis * buckets.size()));
+        stats.put("recorded", recorded.sum());
+        stats.put("dropped", dropped.sum());
+        Map<Dimension, List<Counter>> current = snapshot;
+        for (Dimension dimension : Dimension.values()) {
+            List<Counter> top = current.getOrDefault(dimension, List.of());
+            stats.put(dimension.name().toLowerCase(), top.size() > k ? top.subList(0, k) : top);
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        consumer.interrupt();
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                Sample sample = queue.poll(1, TimeUnit.SECONDS);
+                long now = System.currentTimeMillis();
+                if (now - bucketStart >= bucketMillis) {
+                    rotate(now);
+                }
+                if (sample != null) {
+                    add(sample);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Could not record heavy hitter sample", e);
+            }
+        }
+    }
+
+    private void add(Sample sample) {
+        Map<String, String> params = HotQueries.decode(sample.queryString);
+        Map<Dimension, SpaceSaving> bucket = buckets.get(buckets.size() - 1);
+        String q = normalize(params.get("q"));
+
+        switch (sample.endpoint) {
+            case SEARCH:
+            case ADVANCED:
+                if (!q.isEmpty()) {
+                    bucket.get(Dimension.QUERY).offer(q);
+                    if (sample.hits == 0) {
+                        bucket.get(Dimension.ZERO_RESULT).offer(q);
+                    }
+                }
+                if (sample.endpoint == Endpoint.ADVANCED) {
+                    bucket.get(Dimension.FILTER).offer(filterKey(params));
+                }
+                break;
+            case SUGGEST:
+                if (!q.isEmpty()) {
+                    bucket.get(Dimension.PREFIX).offer(q);
+                }
+                break;
+            case FACETS:
+                bucket.get(Dimension.FILTER).offer(filterKey(params));
+                break;
+            default:
+                return;
+        }
+        recorded.increment();
+    }
+
+    /**
+     * Combinación de filtros: categoría, fabricante y rango de precio redondeado a las bandas de las facetas
+     */
+    public static String filterKey(Map<String, String> params) {
+        return normalize(params.get("category")) + "|" + normalize(params.get("manufacturer")) + "|"
+                + priceBand(params.get("minPrice"), params.get("maxPrice"));
+    }
+
+    private static String priceBand(String min, String max) {
+        if (!StringUtils.hasText(min) && !StringUtils.hasText(max)) {
+            return "";
+        }
+        String from = "0";
+        String to = "+";
+        try {
+            if (StringUtils.hasText(min)) {
+                double value = Double.parseDouble(min);
+                for (double band : PRICE_BANDS) {
+                    if (band <= value) {
+                        from = String.valueOf((long) band);
+                    }
+                }
+            }
+            if (StringUtils.hasText(max)) {
+                double value = Double.parseDouble(max);
+                for (int i = PRICE_BANDS.length - 1; i >= 0; i--) {
+                    if (PRICE_BANDS[i] >= value) {
+                        to = String.valueOf((long) PRICE_BANDS[i]);
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return "invalid";
+        }
+        return from + "-" + to;
+    }
+
+    private void rotate(long now) {
+        buckets.remove(0);
+        buckets.add(newBucket());
+        bucketStart = now;
+
+        // Suma de la ventana y conjunto de claves calientes, publicados para lecturas sin lock
+        Map<Dimension, List<Counter>> merged = new EnumMap<>(Dimension.class);
+        Map<Dimension, Set<String>> hotKeys = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : Dimension.values()) {
+            Map<String, Counter> sum = new HashMap<>();
+            for (Map<Dimension, SpaceSaving> bucket : buckets) {
+                for (Counter counter : bucket.get(dimension).counters()) {
+                    sum.merge(counter.key, new Counter(counter.key, counter.count, counter.error),
+                            (a, b) -> new Counter(a.key, a.count + b.count, a.error + b.error));
+                }
+            }
+            List<Counter> top = new ArrayList<>(sum.values());
+            top.sort(Comparator.comparingLong(Counter::getCount).reversed());
+            if (top.size() > capacity) {
+                top = new ArrayList<>(top.subList(0, capacity));
+            }
+            merged.put(dimension, top);
+
+            Set<String> keys = new HashSet<>();
+            for (int i = 0; i < Math.min(hotSize, top.size()); i++) {
+                keys.add(top.get(i).key);
+            }
+            hotKeys.put(dimension, keys);
+        }
+        snapshot = merged;
+        hot = hotKeys;
+    }
+
+    private Map<Dimension, SpaceSaving> newBucket() {
+        Map<Dimension, SpaceSaving> bucket = new EnumMap<>(Dimension.class);
+        for (Dimension dimension : Dimension.values()) {
+            bucket.put(dimension, new SpaceSaving(capacity));
+        }
+        return bucket;
+    }
+
+    /**
+     * Resumen Space-Saving de un intervalo. No es thread-safe: solo lo usa el hilo consumidor.
+     *
+     * Los contadores se agrupan en una lista de cubos ordenada por cuenta (stream-summary): cada
+     * incremento mueve el contador al cubo siguiente y el mínimo está siempre en el primer cubo,
+     * así que offer es O(1) también con la tabla llena.
+     */
+    static class SpaceSaving {
+        private final int capacity;
+        private final Map<String, Node> nodes;
+        private Bucket smallest;
+
+        SpaceSaving(int capacity) {
+            this.capacity = capacity;
+            this.nodes = new HashMap<>(capacity * 2);
+        }
+
+        void offer(String key) {
+            Node node = nodes.get(key);
+            if (node == null) {
+                if (nodes.size() < capacity) {
+                    node = new Node(new Counter(key, 0, 0));
+                } else {
+                    // Sustituye al mínimo: la clave nueva puede haber aparecido hasta min veces antes
+                    node = smallest.nodes.iterator().next();
+                    nodes.remove(node.counter.key);
+                    node.counter = new Counter(key, node.counter.count, node.counter.count);
+                }
+                nodes.put(key, node);
+            }
+            increment(node);
+        }
+
+        List<Counter> counters() {
+            List<Counter> counters = new ArrayList<>(nodes.size());
+            nodes.values().forEach(node -> counters.add(node.counter));
+            return counters;
+        }
+
+        private void increment(Node node) {
+            Bucket current = node.bucket;
+            long target = node.counter.count + 1;
+            Bucket next = current != null ? current.next : smallest;
+            if (next == null || next.count != target) {
+                Bucket created = new Bucket(target);
+                created.prev = current;
+                created.next = next;
+                if (next != null) {
+                    next.prev = created;
+                }
+                if (current != null) {
+                    current.next = created;
+                } else {
+                    smallest = created;
+                }
+                next = created;
+            }
+            if (current != null) {
+                current.nodes.remove(node);
+                if (current.nodes.isEmpty()) {
+                    unlink(current);
+                }
+            }
+            node.counter.count = target;
+            node.bucket = next;
+            next.nodes.add(node);
+        }
+
+        private void unlink(Bucket bucket) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                smallest = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.prev = bucket.prev;
+            }
+        }
+
+        private static class Node {
+            private Counter counter;
+            private Bucket bucket;
+
+            Node(Counter counter) {
+                this.counter = counter;
+            }
+        }
+
+        private static class Bucket {
+            private final long count;
+            private final Set<Node> nodes = new LinkedHashSet<>();
+            private Bucket prev;
+            private Bucket next;
+
+            Bucket(long count) {
+                this.count = count;
+            }
+        }
+    }
+
+    /**
+     * Clave y cuenta estimada; la cuenta real está entre count - error y count
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Counter {
+        private final String key;
+        private long count;
+        private final long error;
+    }
+
+    @AllArgsConstructor
+    private static class Sample {
+        private final Endpoint endpoint;
+        private final String queryString;
+        private final long hits;
+    }
+}
@@ -0,0 +1,200 @@
+package search.com.search.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.consts.Endpoint;
+
+/**
+ * Muestra de las consultas más frecuentes de search, advanced, suggest y facets, para repetirlas
+ * al arrancar (ver {@link Warmup}).
+ *
+ * Cada petición correcta suma uno a su clave (endpoint + parámetros ordenados). Cada decay-ms los
+ * contadores se dividen a la mitad y se olvidan los que llegan a cero, así que la muestra refleja el
+ * tráfico reciente; si se alcanza max-tracked no entran claves nuevas hasta el siguiente decay. Las
+ * top-n más frecuentes se guardan en app.warmup.file en cada decay y al parar, y se cargan al arrancar.
+ */
+@Component
+@Slf4j
+public class HotQueries {
+
+    private static final Set<Endpoint> RECORDED = EnumSet.of(Endpoint.SEARCH, Endpoint.ADVANCED, Endpoint.SUGGEST, Endpoint.FACETS);
+    // Parámetros que no cambian la consulta a Elasticsearch
+    private static final Set<String> IGNORED_PARAMS = Set.of("profile", "lastEventId");
+
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final int maxTracked;
+    private final int topN;
+    private final Path file;
+
+    public HotQueries(Environment env) {
+        this.enabled = env.getProperty("app.warmup.record", Boolean.class, true);
+        this.maxTracked = env.getProperty("app.warmup.max-tracked", Integer.class, 5000);
+        this.topN = env.getProperty("app.warmup.top-n", Integer.class, 200);
+        String path = env.getProperty("app.warmup.file", "data/warmup/hot-queries.tsv");
+        this.file = StringUtils.hasText(path) ? Path.of(path) : null;
+        load();
+    }
+
+    /**
+     * Se invoca al terminar cada petición (RequestContextFilter)
+     */
+    public void record(Endpoint endpoint, String queryString, int status) {
+        if (!enabled || !RECORDED.contains(endpoint) || (status != 200 && status != 304)) {
+            return;
+        }
+        String key = endpoint.key() + "?" + canonical(queryString);
+        AtomicLong count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= maxTracked) {
+                return;
+            }
+            count = counts.computeIfAbsent(key, k -> new AtomicLong());
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Las n consultas más frecuentes, de más a menos
+     */
+    public List<HotQuery> top(int n) {
+        List<HotQuery> top = new ArrayList<>();
+        counts.forEach((key, count) -> {
+            long value = count.get();
+            if (value > 0) {
+                top.add(parse(key, value));
+            }
+        });
+        top.sort(Comparator.comparingLong(HotQuery::getCount).reversed());
+        return top.size() > n ? new ArrayList<>(top.subList(0, n)) : top;
+    }
+
+    public int tracked() {
+        return counts.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.warmup.decay-ms:600000}", initialDelayString = "${app.warmup.decay-ms:600000}")
+    public void decay() {
+        save();
+        counts.entrySet().removeIf(entry -> entry.getValue().updateAndGet(value -> value / 2) == 0);
+    }
+
+    @PreDestroy
+    public void save() {
+        if (file == null || counts.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (HotQuery query : top(topN)) {
+                    writer.write(query.getCount() + "\t" + query.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save hot queries to {}", file, e);
+        }
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    counts.put(line.substring(tab + 1), new AtomicLong(Long.parseLong(line.substring(0, tab))));
+                }
+            }
+            log.info("Loaded {} hot queries from {}", counts.size(), file);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not load hot queries from {}", file, e);
+        }
+    }
+
+    /**
+     * Parámetros decodificados y ordenados, sin los que no afectan a la consulta
+     */
+    private static String canonical(String queryString) {
+        Map<String, String> params = decode(queryString);
+        StringBuilder out = new StringBuilder();
+        params.forEach((name, value) -> {
+            if (out.length() > 0) {
+                out.append('&');
+            }
+            out.append(name).append('=').append(value.replace("&", " ").replace("\t", " ").replace("\n", " "));
+        });
+        return out.toString();
+    }
+
+    /**
+     * Parámetros de una query string decodificados, sin vacíos ni los que no afectan a la consulta
+     */
+    static Map<String, String> decode(String queryString) {
+        Map<String, String> params = new TreeMap<>();
+        if (!StringUtils.hasText(queryString)) {
+            return params;
+        }
+        for (String pair : queryString.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (!name.isEmpty() && !value.isBlank() && !IGNORED_PARAMS.contains(name)) {
+                params.put(name, value.trim());
+            }
+        }
+        return params;
+    }
+
+    private static HotQuery parse(String key, long count) {
+        int question = key.indexOf('?');
+        Map<String, String> params = new TreeMap<>();
+        for (String pair : key.substring(question + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return new HotQuery(key, key.substring(0, question), params, count);
+    }
+
+    /**
+     * Consulta de la muestra: endpoint (clave de {@link Endpoint}), parámetros y frecuencia
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class HotQuery {
+        private final String key;
+        private final String endpoint;
+        private final Map<String, String> params;
+        private final long count;
+    }
+}
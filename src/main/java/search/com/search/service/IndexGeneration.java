@@ -0,0 +1,180 @@
+package search.com.search.service;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.dto.IndexGenerationEvent;
+
+/**
+ * Token barato de cambios sobre el índice 'items'.
+ *
+ * Sale solo del estado del clúster (los UUID de los índices concretos detrás de 'items' y la suma
+ * de max_seq_no de sus shards primarios), así que todas las réplicas del servicio calculan el mismo
+ * ETag para el mismo contenido. Un estado nuevo no se publica hasta que los primarios hayan hecho al
+ * menos un refresh después de verlo: así una respuesta cacheada con el token nuevo ya incluye esas
+ * escrituras. Cualquier cambio cuenta, no solo que max_seq_no crezca: tras un reindex detrás del
+ * alias el índice nuevo empieza con secuencias más bajas y otro UUID. Las escrituras se reflejan en
+ * el ETag como mucho dos ciclos de app.etag.refresh-ms después.
+ *
+ * Cada generación nueva se anuncia con un IndexGenerationEvent, que marca cuándo son visibles para
+ * las búsquedas las escrituras anteriores a su lectura (lo usa PeerCache para invalidar otra vez).
+ *
+ * Si no se conoce la generación (las estadísticas fallan desde el arranque) o la última lectura
+ * buena es más antigua que app.etag.max-stale-ms, no hay ETag: no se puede prometer que el contenido
+ * no haya cambiado.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IndexGeneration {
+
+    private static final String INDEX = "items";
+
+    private final RestHighLevelClient client;
+    private final ApplicationEventPublisher events;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${app.etag.max-stale-ms:15000}")
+    private long maxStaleMillis = 15000;
+
+    private volatile String published;
+    private volatile long checkedAt;
+    // Estado visto pero quizá aún no visible para las búsquedas, y los refresh que había entonces
+    private String pending;
+    private long pendingObservedAt;
+    private String pendingIndices;
+    private long pendingRefreshes = -1;
+    private boolean failing;
+
+    /**
+     * Token de la generación actual, o null si no se conoce o está desfasada
+     */
+    public String token() {
+        return token(System.currentTimeMillis());
+    }
+
+    String token(long now) {
+        return published == null || now - checkedAt > maxStaleMillis ? null : published;
+    }
+
+    /**
+     * ETag fuerte para una consulta normalizada sobre la generación actual del índice, o null si
+     * ahora no se puede dar (ver token()). Los parámetros nulos o vacíos se tratan igual, y se
+     * ignoran espacios alrededor.
+     */
+    public String etag(String endpoint, String... params) {
+        return etagFor(token(), endpoint, params);
+    }
+
+    static String etagFor(String token, String endpoint, String... params) {
+        if (token == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(endpoint);
+        for (String param : params) {
+            key.append('|').append(param == null ? "" : param.trim());
+        }
+        return "\"" + token + "-" + digest(key.toString(), 12) + "\"";
+    }
+
+    @Scheduled(fixedDelayString = "${app.etag.refresh-ms:5000}")
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        try {
+            Request request = new Request("GET", "/" + INDEX + "/_stats/docs,refresh");
+            request.addParameter("level", "shards");
+            Response response = client.getLowLevelClient().performRequest(request);
+
+            JsonNode indices;
+            try (InputStream body = response.getEntity().getContent()) {
+                indices = mapper.readTree(body).path("indices");
+            }
+
+            // 'items' puede ser un alias: se recorren los índices concretos que devuelva
+            TreeSet<String> uuids = new TreeSet<>();
+            long seqNo = 0;
+            long refreshes = 0;
+            Iterator<Map.Entry<String, JsonNode>> fields = indices.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> index = fields.next();
+                uuids.add(index.getValue().path("uuid").asText(index.getKey()));
+                for (JsonNode copies : index.getValue().path("shards")) {
+                    for (JsonNode copy : copies) {
+                        if (copy.path("routing").path("primary").asBoolean()) {
+                            seqNo += copy.path("seq_no").path("max_seq_no").asLong();
+                            refreshes += copy.path("refresh").path("total").asLong();
+                        }
+                    }
+                }
+            }
+            IndexGenerationEvent published = advance(String.join(",", uuids), seqNo, refreshes, now);
+            if (published != null) {
+                events.publishEvent(published);
+            }
+        } catch (Exception e) {
+            // Sin estadísticas el token deja de valer en cuanto pasa app.etag.max-stale-ms
+            synchronized (this) {
+                if (!failing) {
+                    log.warn("Could not refresh index generation, ETags stop after {} ms: {}", maxStaleMillis, e.getMessage());
+                }
+                failing = true;
+            }
+        }
+    }
+
+    /**
+     * Incorpora una lectura de _stats hecha en now; devuelve la generación si se ha publicado una nueva
+     */
+    synchronized IndexGenerationEvent advance(String indices, long seqNo, long refreshes, long now) {
+        String current = digest(indices, 4) + "." + seqNo;
+        IndexGenerationEvent event = null;
+        if (published == null) {
+            // Al arrancar no hay nada anterior con lo que confundir el contenido
+            published = current;
+            event = new IndexGenerationEvent(current, now);
+        }
+        if (indices.equals(pendingIndices) && refreshes > pendingRefreshes && !pending.equals(published)) {
+            // Ha habido un refresh desde que vimos pending: sus escrituras ya son visibles
+            published = pending;
+            event = new IndexGenerationEvent(pending, pendingObservedAt);
+        }
+        // Los contadores de refresh de otros índices, o reiniciados, no se comparan con los anteriores
+        if (!current.equals(pending) || !indices.equals(pendingIndices) || refreshes < pendingRefreshes) {
+            pending = current;
+            pendingObservedAt = now;
+            pendingIndices = indices;
+            pendingRefreshes = refreshes;
+        }
+        checkedAt = now;
+        failing = false;
+        return event;
+    }
+
+    private static String digest(String key, int bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package search.com.search.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Salud de los segmentos del índice 'items' y mantenimiento programado.
+ *
+ * Las actualizaciones de stock reescriben documentos constantemente, así que se acumulan documentos
+ * borrados y segmentos pequeños que hacen cada búsqueda un poco más lenta. Cada collect-ms se toma una
+ * muestra (segmentos, ratio de borrados, merges) que se guarda en un histórico corto para ver la
+ * deriva. Si la muestra cae dentro de una de las ventanas de poco tráfico (app.maintenance.windows,
+ * p. ej. "02:00-05:00") y el ratio de borrados supera expunge-threshold, se lanza un _forcemerge con
+ * only_expunge_deletes como tarea de Elasticsearch, como mucho una vez cada min-interval-hours.
+ *
+ * Para cargas masivas desde fuera del servicio, {@link #startBulkLoad()} deja el índice con
+ * refresh_interval=-1 y {@link #endBulkLoad()} restaura el valor anterior (o se restaura solo pasados
+ * bulk-max-minutes). El valor original y la hora de inicio se guardan en el _meta del mapping
+ * ('bulk_load'), no en memoria: cualquier instancia puede terminar la carga, y si la que la empezó se
+ * reinicia o desaparece, la siguiente comprobación (o el arranque de otra) la restaura al caducar.
+ * Si el índice ya estaba a -1 al empezar (un import a medias o una carga que se restauró a mano) no se
+ * guarda ese valor, que dejaría el índice sin refrescar al terminar, sino null: el valor por defecto.
+ * Mientras el índice tenga refresh_interval=-1, lo ponga quien lo ponga (también la herramienta
+ * import), no se lanza ningún force merge.
+ */
+@Component
+@Slf4j
+public class IndexMaintenance {
+
+    private static final String INDEX = "items";
+    private static final String BULK_REFRESH_INTERVAL = "-1";
+    private static final String BULK_META = "bulk_load";
+
+    private final RestHighLevelClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final boolean enabled;
+    private final List<LocalTime[]> windows = new ArrayList<>();
+    private final ZoneId zone;
+    private final double expungeThreshold;
+    private final Duration minInterval;
+    private final int maxSegmentsPerShard;
+    private final Duration bulkMaxDuration;
+    private final int historySize;
+
+    private final Deque<Map<String, Object>> history = new ArrayDeque<>();
+    private volatile Map<String, Object> last;
+    private volatile Instant lastForceMerge;
+    private volatile String lastForceMergeTask;
+    private volatile String savedRefreshInterval;
+    private volatile Instant bulkLoadStarted;
+
+    public IndexMaintenance(Environment env, RestHighLevelClient client) {
+        this.client = client;
+        this.enabled = env.getProperty("app.maintenance.enabled", Boolean.class, true);
+        this.zone = ZoneId.of(env.getProperty("app.maintenance.zone", ZoneId.systemDefault().getId()));
+        this.expungeThreshold = env.getProperty("app.maintenance.expunge-threshold", Double.class, 0.10);
+        this.minInterval = Duration.ofHours(env.getProperty("app.maintenance.min-interval-hours", Long.class, 12L));
+        this.maxSegmentsPerShard = env.getProperty("app.maintenance.max-segments-per-shard", Integer.class, 50);
+        this.bulkMaxDuration = Duration.ofMinutes(env.getProperty("app.maintenance.bulk-max-minutes", Long.class, 60L));
+        this.historySize = env.getProperty("app.maintenance.history", Integer.class, 60);
+
+        String configured = env.getProperty("app.maintenance.windows", "");
+        for (String window : configured.split(",")) {
+            if (StringUtils.hasText(window)) {
+                String[] bounds = window.trim().split("-");
+                windows.add(new LocalTime[] { LocalTime.parse(bounds[0].trim()), LocalTime.parse(bounds[1].trim()) });
+            }
+        }
+    }
+
+    /**
+     * Al arrancar se recupera la carga masiva que hubiera guardada en el índice, y se restaura ya si
+     * caducó mientras no había nadie vigilándola
+     */
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        try {
+            expireBulkLoad();
+        } catch (Exception e) {
+            log.warn("Could not check bulk load state on startup: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.maintenance.collect-ms:300000}", initialDelayString = "${app.maintenance.collect-ms:300000}")
+    public void check() {
+        try {
+            // La caducidad de la carga masiva no depende de 'enabled': es lo que evita un índice sin refrescos
+            expireBulkLoad();
+            if (!enabled) {
+                return;
+            }
+            Map<String, Object> sample = collect();
+            if (shouldExpunge(sample)) {
+                forceMerge();
+            }
+        } catch (Exception e) {
+            log.warn("Index maintenance check failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Muestra de la salud de los segmentos del índice, que también se añade al histórico
+     */
+    public Map<String, Object> collect() throws IOException {
+        JsonNode stats = concrete(get("/" + INDEX + "/_stats/docs,segments,merge,refresh").path("indices"));
+        JsonNode settings = concrete(get("/" + INDEX + "/_settings?flat_settings=true&include_defaults=true"));
+        JsonNode primaries = stats.path("primaries");
+        JsonNode total = stats.path("total");
+
+        long docs = primaries.path("docs").path("count").asLong();
+        long deleted = primaries.path("docs").path("deleted").asLong();
+        long segments = primaries.path("segments").path("count").asLong();
+        int shards = Math.max(1, setting(settings, "index.number_of_shards").asInt(1));
+
+        Map<String, Object> sample = new LinkedHashMap<>();
+        sample.put("timestamp", Instant.now().toString());
+        sample.put("docs", docs);
+        sample.put("deletedDocs", deleted);
+        sample.put("deletedRatio", docs + deleted == 0 ? 0.0 : (double) deleted / (docs + deleted));
+        sample.put("segments", segments);
+        sample.put("segmentsPerShard", (double) segments / shards);
+        sample.put("segmentsMemoryBytes", primaries.path("segments").path("memory_in_bytes").asLong());
+        sample.put("mergesCurrent", total.path("merges").path("current").asLong());
+        sample.put("mergesTotal", total.path("merges").path("total").asLong());
+        sample.put("mergesTotalTimeMs", total.path("merges").path("total_time_in_millis").asLong());
+        sample.put("refreshTotal", total.path("refresh").path("total").asLong());
+        sample.put("refreshInterval", setting(settings, "index.refresh_interval").asText("1s"));
+
+        String health = "ok";
+        if ((double) sample.get("deletedRatio") > expungeThreshold || (double) sample.get("segmentsPerShard") > maxSegmentsPerShard) {
+            health = "degraded";
+        }
+        sample.put("health", health);
+
+        synchronized (history) {
+            history.addLast(sample);
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+        }
+        last = sample;
+        return sample;
+    }
+
+    /**
+     * Lanza un _forcemerge con only_expunge_deletes como tarea y devuelve su id
+     */
+    public String forceMerge() throws IOException {
+        Request request = new Request("POST", "/" + INDEX + "/_forcemerge");
+        request.addParameter("only_expunge_deletes", "true");
+        request.addParameter("wait_for_completion", "false");
+        String task = read(client.getLowLevelClient().performRequest(request)).path("task").asText(null);
+        lastForceMerge = Instant.now();
+        lastForceMergeTask = task;
+        log.info("Started force merge (only_expunge_deletes) on '{}': task {}", INDEX, task);
+        return task;
+    }
+
+    /**
+     * Desactiva el refresco periódico para una carga masiva; devuelve false si ya había una en curso
+     */
+    public synchronized boolean startBulkLoad() throws IOException {
+        if (loadBulkState()) {
+            return false;
+        }
+        JsonNode settings = concrete(get("/" + INDEX + "/_settings?flat_settings=true&include_defaults=true"));
+        String original = restorable(setting(settings, "index.refresh_interval").textValue());
+        Instant started = Instant.now();
+
+        // Primero se guarda el valor original: si se cae entre medias, restaurarlo no cambia nada
+        ObjectNode state = mapper.createObjectNode();
+        state.put("refresh_interval", original);
+        state.put("started", started.toString());
+        putBulkState(state);
+        putRefreshInterval(BULK_REFRESH_INTERVAL);
+
+        savedRefreshInterval = original;
+        bulkLoadStarted = started;
+        log.info("Bulk load started: refresh_interval {} -> {}", original != null ? original : "default", BULK_REFRESH_INTERVAL);
+        return true;
+    }
+
+    /**
+     * Restaura el refresh_interval de antes de la carga y refresca el índice; false si no había carga
+     */
+    public synchronized boolean endBulkLoad() throws IOException {
+        if (!loadBulkState()) {
+            return false;
+        }
+        putRefreshInterval(savedRefreshInterval);
+        client.getLowLevelClient().performRequest(new Request("POST", "/" + INDEX + "/_refresh"));
+        // El estado se borra al final, para que un fallo a medias se reintente en la siguiente comprobación
+        putBulkState(null);
+        log.info("Bulk load finished after {}: refresh_interval restored to {}",
+                Duration.between(bulkLoadStarted, Instant.now()), savedRefreshInterval != null ? savedRefreshInterval : "default");
+        savedRefreshInterval = null;
+        bulkLoadStarted = null;
+        return true;
+    }
+
+    public boolean isBulkLoading() {
+        Map<String, Object> sample = last;
+        return bulkLoadStarted != null || (sample != null && BULK_REFRESH_INTERVAL.equals(sample.get("refreshInterval")));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("windows", windows.stream().map(w -> w[0] + "-" + w[1]).toList());
+        stats.put("inWindow", inWindow(LocalTime.now(zone)));
+        stats.put("expungeThreshold", expungeThreshold);
+        stats.put("bulkLoading", isBulkLoading());
+        stats.put("bulkLoadStarted", bulkLoadStarted != null ? bulkLoadStarted.toString() : null);
+        stats.put("lastForceMerge", lastForceMerge != null ? lastForceMerge.toString() : null);
+        stats.put("lastForceMergeTask", lastForceMergeTask);
+        stats.put("last", last);
+        synchronized (history) {
+            stats.put("history", new ArrayList<>(history));
+        }
+        return stats;
+    }
+
+    /**
+     * Última muestra en formato de texto de Prometheus, para scrapers que no lean JSON
+     */
+    public String metrics() {
+        Map<String, Object> sample = last;
+        StringBuilder out = new StringBuilder();
+        if (sample != null) {
+            sample.forEach((name, value) -> {
+                if (value instanceof Number) {
+                    out.append("search_index_").append(snakeCase(name)).append("{index=\"").append(INDEX).append("\"} ")
+                            .append(value).append('\n');
+                }
+            });
+            out.append("search_index_healthy{index=\"").append(INDEX).append("\"} ")
+                    .append("ok".equals(sample.get("health")) ? 1 : 0).append('\n');
+        }
+        out.append("search_index_bulk_loading{index=\"").append(INDEX).append("\"} ").append(isBulkLoading() ? 1 : 0).append('\n');
+        out.append("search_index_last_force_merge_seconds{index=\"").append(INDEX).append("\"} ")
+                .append(lastForceMerge != null ? lastForceMerge.getEpochSecond() : 0).append('\n');
+        return out.toString();
+    }
+
+    private synchronized void expireBulkLoad() throws IOException {
+        if (loadBulkState() && Duration.between(bulkLoadStarted, Instant.now()).compareTo(bulkMaxDuration) > 0) {
+            log.warn("Bulk load started at {} never finished; restoring refresh_interval", bulkLoadStarted);
+            endBulkLoad();
+        }
+    }
+
+    /**
+     * Lee la carga masiva guardada en el _meta del índice (la haya empezado esta instancia u otra) y
+     * devuelve si hay una en curso
+     */
+    private boolean loadBulkState() throws IOException {
+        JsonNode state = meta().path(BULK_META);
+        if (!state.isObject()) {
+            savedRefreshInterval = null;
+            bulkLoadStarted = null;
+            return false;
+        }
+        savedRefreshInterval = restorable(state.path("refresh_interval").textValue());
+        try {
+            bulkLoadStarted = Instant.parse(state.path("started").asText());
+        } catch (DateTimeParseException e) {
+            // Sin hora de inicio válida se trata como caducada
+            bulkLoadStarted = Instant.EPOCH;
+        }
+        return true;
+    }
+
+    /**
+     * Guarda (o borra, con null) el estado de la carga masiva. PUT _mapping sustituye el _meta entero,
+     * así que se conservan las demás claves que tuviera
+     */
+    private void putBulkState(ObjectNode state) throws IOException {
+        JsonNode current = meta();
+        ObjectNode meta = current.isObject() ? ((ObjectNode) current).deepCopy() : mapper.createObjectNode();
+        if (state == null) {
+            meta.remove(BULK_META);
+        } else {
+            meta.set(BULK_META, state);
+        }
+        ObjectNode body = mapper.createObjectNode();
+        body.set("_meta", meta);
+        Request request = new Request("PUT", "/" + INDEX + "/_mapping");
+        request.setJsonEntity(body.toString());
+        client.getLowLevelClient().performRequest(request);
+    }
+
+    private JsonNode meta() throws IOException {
+        return concrete(get("/" + INDEX + "/_mapping")).path("mappings").path("_meta");
+    }
+
+    private boolean shouldExpunge(Map<String, Object> sample) {
+        if (windows.isEmpty() || !inWindow(LocalTime.now(zone)) || isBulkLoading()) {
+            return false;
+        }
+        if ((long) sample.get("mergesCurrent") > 0 || (double) sample.get("deletedRatio") < expungeThreshold) {
+            return false;
+        }
+        return lastForceMerge == null || Duration.between(lastForceMerge, Instant.now()).compareTo(minInterval) >= 0;
+    }
+
+    private boolean inWindow(LocalTime now) {
+        for (LocalTime[] window : windows) {
+            boolean inside = window[0].isBefore(window[1])
+                    ? !now.isBefore(window[0]) && now.isBefore(window[1])
+                    : !now.isBefore(window[0]) || now.isBefore(window[1]);   // Ventana que cruza la medianoche
+            if (inside) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Valor a restaurar al terminar la carga: null (el valor por defecto) en lugar de -1
+     */
+    static String restorable(String refreshInterval) {
+        return refreshInterval == null || BULK_REFRESH_INTERVAL.equals(refreshInterval.trim()) ? null : refreshInterval;
+    }
+
+    /**
+     * Con null se vuelve al valor por defecto del índice
+     */
+    private void putRefreshInterval(String value) throws IOException {
+        Request request = new Request("PUT", "/" + INDEX + "/_settings");
+        request.setJsonEntity(mapper.createObjectNode().put("index.refresh_interval", value).toString());
+        client.getLowLevelClient().performRequest(request);
+    }
+
+    private JsonNode get(String endpoint) throws IOException {
+        return read(client.getLowLevelClient().performRequest(new Request("GET", endpoint)));
+    }
+
+    private JsonNode read(Response response) throws IOException {
+        try (InputStream body = response.getEntity().getContent()) {
+            return mapper.readTree(body);
+        }
+    }
+
+    /**
+     * Entrada del índice concreto en una respuesta indexada por nombre de índice: 'items' puede ser
+     * un alias (p. ej. tras migrar a 'items_v2'), así que no se busca por el nombre pedido
+     */
+    private static JsonNode concrete(JsonNode byIndex) {
+        return byIndex.elements().hasNext() ? byIndex.elements().next() : MissingNode.getInstance();
+    }
+
+    private static JsonNode setting(JsonNode settings, String key) {
+        JsonNode value = settings.path("settings").path(key);
+        return value.isMissingNode() ? settings.path("defaults").path(key) : value;
+    }
+
+    private static String snakeCase(String name) {
+        return name.replaceAll("([a-z])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,17 +1,18 @@
 package search.com.search.service;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.MultiMatchQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.BucketOrder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -28,10 +29,20 @@ import java.util.Arrays;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RequestContext;
+import search.com.search.journal.JournalOp;
+import search.com.search.journal.JournalRecord;
+import search.com.search.journal.MutationJournal;
 import search.com.search.model.consts.Consts;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.consts.ItemChangeType;
 import search.com.search.model.dto.*;
 import search.com.search.model.entities.Items;
+import search.com.search.repository.ItemsQuery;
 import search.com.search.repository.ItemsRepository;
+import search.com.search.repository.ItemsRouting;
+import search.com.search.repository.SearchExecutor;
+import search.com.search.resilience.CircuitOpenException;
 
 public interface InnerSearch {
 
@@ -39,18 +50,20 @@ public interface InnerSearch {
 
     void updateItem(ItemsDto items, String itemId);
 
-    void deleteItem(String itemId);
+    void deleteItem(String itemId, String category);
 
     ResponseItems getItems(String category, String manufacturer, String product, String page);
 
     ResponseItems searchFullText(String query, String fuzziness, String page);
 
-    List<String> getAutocompleteSuggestions(String prefix, int limit);
+    Suggestions getAutocompleteSuggestions(String prefix, int limit);
 
     ResponseItems advancedSearch(String query, String category, String manufacturer,
                                  String minPrice, String maxPrice, String page);
 
     FacetsResponse getFacets(String query, String category, String manufacturer);
+
+    MultiGetItems multiGet(List<String> ids, List<String> fields, Boolean realtime);
 }
 
 @Service
@@ -62,39 +75,72 @@ class Search implements InnerSearch {
     private ItemsRepository repository;
 
     @Autowired
-    private ElasticsearchOperations elasticClient;
+    private SearchExecutor searchExecutor;
+
+    @Autowired
+    private ApplicationEventPublisher events;
+
+    @Autowired
+    private StockCombiner stockCombiner;
+
+    @Autowired
+    private MutationJournal journal;
+
+    @Autowired
+    private ItemsMapper itemsMapper;
+
+    @Autowired
+    private ItemsRouting routing;
+
+    @Autowired
+    private FuzzyFallback fuzzyFallback;
+
+    @Autowired
+    private FacetCounters facetCounters;
+
+    @Value("${app.budget.suggest.terminate-after:200}")
+    private int suggestTerminateAfter;
+
+    @Value("${app.mget.max-ids:10000}")
+    private int mgetMaxIds;
+
+    @Value("${app.mget.chunk-size:500}")
+    private int mgetChunkSize;
+
+    @Value("${app.mget.parallelism:4}")
+    private int mgetParallelism;
+
+    @Value("${app.mget.realtime:false}")
+    private boolean mgetRealtime;
 
     @Override
     public void addItem(ItemsDto itemDto) {
         // QUITAMOS LA VALIDACIÓN DEL ID - esa línea causaba el NullPointerException
-        if (StringUtils.hasLength(itemDto.getCategory().trim()) &&
-                StringUtils.hasLength(itemDto.getColor().trim()) &&
-                StringUtils.hasLength(itemDto.getManufacturer().trim()) &&
-                StringUtils.hasLength(itemDto.getProduct().trim()) &&
-                itemDto.getPrice() != null &&
-                itemDto.getTotal() != null) {
+        if (itemsMapper.isValid(itemDto)) {
 
             // GENERAR ID AUTOMÁTICAMENTE
             String generatedId = UUID.randomUUID().toString();
 
-            Items item = Items.builder()
-                    .id(generatedId)  // ← Usar ID generado
-                    .category(itemDto.getCategory().trim())
-                    .color(itemDto.getColor().trim())
-                    .manufacturer(itemDto.getManufacturer().trim())
-                    .price(itemDto.getPrice())
-                    .total(itemDto.getTotal())
-                    .product(itemDto.getProduct().trim())
-                    .build();
+            Items item = itemsMapper.toItem(itemDto, generatedId);
 
             try {
-                log.info("Creating new item with ID: {}", generatedId);
-                this.repository.save(item);
-                log.info("Item created successfully");
+                log.debug("Creating new item with ID: {}", generatedId);
+                if (journal.isEnabled()) {
+                    journal.append(JournalRecord.builder()
+                            .op(JournalOp.INDEX)
+                            .itemId(generatedId)
+                            .routing(routing.forCategory(item.getCategory()))
+                            .item(item)
+                            .build());
+                } else {
+                    this.repository.save(item);
+                }
+                log.debug("Item created successfully");
             } catch (Exception e) {
                 log.error("addItem error", e);
                 throw new RuntimeException("Internal error");
             }
+            publish(ItemChangeType.ADDED, item.getId(), item);
 
         } else {
             log.warn("Invalid item data provided");
@@ -104,49 +150,92 @@ class Search implements InnerSearch {
 
     @Override
     public void updateItem(ItemsDto itemDto, String itemId) {
-        if (StringUtils.hasLength(itemId.toString().trim()) && itemDto.getTotal() != null) {
+        if (StringUtils.hasLength(itemId.toString().trim()) && itemDto.getTotal() != null
+                && (!routing.isEnabled() || StringUtils.hasText(itemDto.getCategory()))) {
+            if (stockCombiner.isEnabled()) {
+                // Los descuentos se combinan en memoria y se escriben juntos; la sobreventa se rechaza aquí
+                stockCombiner.decrement(itemId.trim(), itemDto.getCategory(), itemDto.getTotal());
+                return;
+            }
+            String id = itemId.trim();
+            Items item = null;
             try {
-                Optional<Items> itemCopy = this.repository.findById(itemId.toString());
-                if (itemCopy.isEmpty()) {
-                    throw new IllegalArgumentException("Bad request");
+                if (journal.isEnabled()) {
+                    // Se registra sin leer Elasticsearch: si el item no existe, el descuento se
+                    // descarta al aplicarlo
+                    journal.append(JournalRecord.builder()
+                            .op(JournalOp.DECREMENT)
+                            .itemId(id)
+                            .routing(routing.forCategory(itemDto.getCategory()))
+                            .delta(itemDto.getTotal())
+                            .build());
+                } else {
+                    item = decrementStored(id, itemDto);
                 }
 
-                Items item = Items.builder()
-                        .id(itemId.trim())
-                        .total(itemCopy.get().getTotal() - itemDto.getTotal())
-                        .price(itemCopy.get().getPrice())
-                        .category(itemCopy.get().getCategory())
-                        .color(itemCopy.get().getColor())
-                        .manufacturer(itemCopy.get().getManufacturer())
-                        .product(itemCopy.get().getProduct())
-                        .build();
-
-                this.repository.save(item);
-
             } catch (Exception e) {
                 log.error("updateItem", e);
                 throw new RuntimeException("Internal error");
             }
+            publish(ItemChangeType.UPDATED, id, item);
 
         } else {
             throw new IllegalArgumentException("Bad request");
         }
     }
 
-    @Override
-    public void deleteItem(String itemId) {
-        if (StringUtils.hasLength(itemId.toString().trim())) {
-            Items item = Items.builder()
-                    .id(itemId.trim())
-                    .build();
+    /**
+     * Descuento sin journal: lee el item guardado y lo reescribe con el stock nuevo
+     */
+    private Items decrementStored(String id, ItemsDto itemDto) {
+        Optional<Items> itemCopy = this.repository.findById(id, itemDto.getCategory());
+        if (itemCopy.isEmpty()) {
+            throw new IllegalArgumentException("Bad request");
+        }
+
+        Items item = Items.builder()
+                .id(id)
+                .total(itemCopy.get().getTotal() - itemDto.getTotal())
+                .price(itemCopy.get().getPrice())
+                .category(itemCopy.get().getCategory())
+                .color(itemCopy.get().getColor())
+                .manufacturer(itemCopy.get().getManufacturer())
+                .product(itemCopy.get().getProduct())
+                // Se conservan las marcas del journal: si se activa después, no reaplica lo ya escrito
+                .journalSeq(itemCopy.get().getJournalSeq())
+                .build();
+        return this.repository.save(item);
+    }
 
+    @Override
+    public void deleteItem(String itemId, String category) {
+        if (StringUtils.hasLength(itemId.toString().trim())
+                && (!routing.isEnabled() || StringUtils.hasText(category))) {
+            String id = itemId.trim();
+            Items stored = null;
             try {
-                this.repository.delete(item);
+                // Solo los contadores de facetas necesitan los campos del item borrado; el resto
+                // de consumidores del evento se conforman con el id. Con journal no se lee nada:
+                // los contadores se corrigen en la siguiente reconstrucción
+                if (facetCounters.isEnabled() && !journal.isEnabled()) {
+                    stored = this.repository.findById(id, category).orElse(null);
+                }
+
+                if (journal.isEnabled()) {
+                    journal.append(JournalRecord.builder()
+                            .op(JournalOp.DELETE)
+                            .itemId(id)
+                            .routing(routing.forCategory(category))
+                            .build());
+                } else {
+                    this.repository.delete(Items.builder().id(id).category(category).build());
+                }
 
             } catch (Exception e) {
                 log.error("deleteItem error", e);
                 throw new RuntimeException("Internal error");
             }
+            publish(ItemChangeType.DELETED, id, stored);
 
         } else {
             throw new IllegalArgumentException("Bad request");
@@ -166,50 +255,38 @@ class Search implements InnerSearch {
     @Override
     public ResponseItems searchFullText(String query, String fuzziness, String page) {
         try {
-            log.info("Executing full-text search: query='{}', fuzziness='{}', page='{}'", query, fuzziness, page);
+            log.debug("Executing full-text search: query='{}', fuzziness='{}', page='{}'", query, fuzziness, page);
 
             if (StringUtils.isEmpty(query)) {
                 throw new IllegalArgumentException("Query cannot be empty");
             }
 
             // Construir consulta multi_match con fuzzy
-            BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
-
-            // Multi-match query que busca en múltiples campos con fuzzy
-            MultiMatchQueryBuilder multiMatchQuery = QueryBuilders.multiMatchQuery(query)
-                    .field(Consts.PRODUCT, 2.0f)        // Mayor peso al campo product
-                    .field(Consts.COLOR, 1.0f)          // Peso normal al color
-                    .field(Consts.CATEGORY, 1.5f)       // Peso medio a la categoría
-                    .field(Consts.MANUFACTURER, 1.5f)   // Peso medio al fabricante
-                    .type(MultiMatchQueryBuilder.Type.BEST_FIELDS)
-                    .fuzziness(fuzziness)  // Tolerancia a errores tipográficos
-                    .prefixLength(1)       // Mínimo 1 carácter exacto antes de aplicar fuzzy
-                    .maxExpansions(50);    // Máximo 50 términos expandidos
-
-            boolQuery.must(multiMatchQuery);
-
-            // Configurar paginación
-            NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-                    .withQuery(boolQuery);
+            long buildStart = System.nanoTime();
 
             int pageInt = Integer.parseInt(page);
-            if (pageInt > 0) {
-                queryBuilder.withPageable(PageRequest.of(pageInt - 1, 10));
-            }
+            Function<String, SearchRequest> requestFor = level -> {
+                // Multi-match query que busca en múltiples campos (con fuzzy si level no es null)
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                        .withQuery(ItemsQuery.create().text(fullTextQuery(query, level)).build());
+
+                // Configurar paginación
+                if (pageInt > 0) {
+                    queryBuilder.withPageable(PageRequest.of(pageInt - 1, 10));
+                }
+                return searchExecutor.prepare(queryBuilder.build());
+            };
 
             // Ejecutar búsqueda
-            SearchHits<Items> result = elasticClient.search(queryBuilder.build(), Items.class);
-
-            List<Items> items = result.getSearchHits().stream()
-                    .map(SearchHit::getContent)
-                    .collect(Collectors.toList());
-
-            log.info("Full-text search completed: found {} items", items.size());
-            return new ResponseItems(items);
+            ResponseItems response = searchText(Endpoint.SEARCH, query, fuzziness, requestFor, buildStart);
+            log.debug("Full-text search completed: found {} items", response.size());
+            return response;
 
         } catch (NumberFormatException e) {
             log.error("Invalid page number: {}", page, e);
             throw new IllegalArgumentException("Invalid page number: " + page);
+        } catch (CircuitOpenException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during full-text search", e);
             throw new RuntimeException("Full-text search failed", e);
@@ -217,9 +294,9 @@ class Search implements InnerSearch {
     }
 
     @Override
-    public List<String> getAutocompleteSuggestions(String prefix, int limit) {
+    public Suggestions getAutocompleteSuggestions(String prefix, int limit) {
         try {
-            log.info("Getting autocomplete suggestions: prefix='{}', limit={}", prefix, limit);
+            log.debug("Getting autocomplete suggestions: prefix='{}', limit={}", prefix, limit);
 
             if (StringUtils.isEmpty(prefix)) {
                 throw new IllegalArgumentException("Prefix cannot be empty");
@@ -260,13 +337,15 @@ class Search implements InnerSearch {
                     .withQuery(boolQuery)
                     .withPageable(PageRequest.of(0, limit * 2)); // Obtener más resultados para filtrar
 
-            SearchHits<Items> result = elasticClient.search(queryBuilder.build(), Items.class);
+            // terminate_after acota el trabajo por shard para cumplir el SLO aunque haya menos candidatos
+            SearchRequest request = searchExecutor.prepare(queryBuilder.build());
+            request.source().terminateAfter(suggestTerminateAfter);
+            SearchResponse result = searchExecutor.execute(Endpoint.SUGGEST, request);
 
             // Extraer sugerencias únicas
             Set<String> suggestions = new LinkedHashSet<>();
 
-            for (SearchHit<Items> hit : result.getSearchHits()) {
-                Items item = hit.getContent();
+            for (Items item : searchExecutor.toItems(result)) {
 
                 // Agregar producto si coincide con el prefijo
                 if (item.getProduct() != null &&
@@ -301,9 +380,11 @@ class Search implements InnerSearch {
                     .limit(limit)
                     .collect(Collectors.toList());
 
-            log.info("Autocomplete completed: found {} suggestions", result_list.size());
-            return result_list;
+            log.debug("Autocomplete completed: found {} suggestions", result_list.size());
+            return new Suggestions(result_list, result.isTimedOut());
 
+        } catch (CircuitOpenException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during autocomplete search", e);
             throw new RuntimeException("Autocomplete search failed", e);
@@ -314,85 +395,43 @@ class Search implements InnerSearch {
     public ResponseItems advancedSearch(String query, String category, String manufacturer,
                                         String minPrice, String maxPrice, String page) {
         try {
-            log.info("Executing advanced search: query='{}', category='{}', manufacturer='{}', minPrice='{}', maxPrice='{}', page='{}'",
+            log.debug("Executing advanced search: query='{}', category='{}', manufacturer='{}', minPrice='{}', maxPrice='{}', page='{}'",
                     query, category, manufacturer, minPrice, maxPrice, page);
 
-            BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
-
-            // Agregar búsqueda full-text si se proporciona query
-            if (!StringUtils.isEmpty(query)) {
-                MultiMatchQueryBuilder textQuery = QueryBuilders.multiMatchQuery(query)
-                        .field(Consts.PRODUCT, 2.0f)
-                        .field(Consts.COLOR, 1.0f)
-                        .field(Consts.CATEGORY, 1.5f)
-                        .field(Consts.MANUFACTURER, 1.5f)
-                        .type(MultiMatchQueryBuilder.Type.BEST_FIELDS)
-                        .fuzziness("AUTO");
-
-                boolQuery.must(textQuery);
-            }
-
-            // Agregar filtros estructurados
-            if (!StringUtils.isEmpty(category)) {
-                boolQuery.filter(QueryBuilders.termQuery(Consts.CATEGORY, category));
-            }
-
-            if (!StringUtils.isEmpty(manufacturer)) {
-                boolQuery.filter(QueryBuilders.termQuery(Consts.MANUFACTURER, manufacturer));
-            }
-
-            // Agregar filtros de rango de precio
-            if (!StringUtils.isEmpty(minPrice) || !StringUtils.isEmpty(maxPrice)) {
-                RangeQueryBuilder priceQuery = QueryBuilders.rangeQuery(Consts.PRICE);
-
-                if (!StringUtils.isEmpty(minPrice)) {
-                    try {
-                        double min = Double.parseDouble(minPrice);
-                        priceQuery.gte(min);
-                    } catch (NumberFormatException e) {
-                        throw new IllegalArgumentException("Invalid minPrice format: " + minPrice);
-                    }
-                }
-
-                if (!StringUtils.isEmpty(maxPrice)) {
-                    try {
-                        double max = Double.parseDouble(maxPrice);
-                        priceQuery.lte(max);
-                    } catch (NumberFormatException e) {
-                        throw new IllegalArgumentException("Invalid maxPrice format: " + maxPrice);
-                    }
-                }
-
-                boolQuery.filter(priceQuery);
-            }
-
-            // Si no hay criterios de búsqueda, usar match_all
-            if (!boolQuery.hasClauses()) {
-                boolQuery.must(QueryBuilders.matchAllQuery());
-            }
-
-            // Configurar paginación
-            NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-                    .withQuery(boolQuery);
+            long buildStart = System.nanoTime();
 
+            Double min = parsePrice("minPrice", minPrice);
+            Double max = parsePrice("maxPrice", maxPrice);
             int pageInt = Integer.parseInt(page);
-            if (pageInt > 0) {
-                queryBuilder.withPageable(PageRequest.of(pageInt - 1, 10));
-            }
+            Function<String, SearchRequest> requestFor = level -> {
+                // Texto libre (puntúa) y filtros estructurados (contexto filter, cacheables)
+                ItemsQuery itemsQuery = ItemsQuery.create()
+                        .text(textQuery(query, level))
+                        .term(Consts.CATEGORY_NORMALIZED, category)
+                        .term(Consts.MANUFACTURER_NORMALIZED, manufacturer)
+                        .range(Consts.PRICE, min, max);
+
+                // Configurar paginación
+                NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+                        .withQuery(itemsQuery.build());
+                withCategoryRoute(queryBuilder, category);
+
+                if (pageInt > 0) {
+                    queryBuilder.withPageable(PageRequest.of(pageInt - 1, 10));
+                }
+                return searchExecutor.prepare(queryBuilder.build());
+            };
 
             // Ejecutar búsqueda
-            SearchHits<Items> result = elasticClient.search(queryBuilder.build(), Items.class);
-
-            List<Items> items = result.getSearchHits().stream()
-                    .map(SearchHit::getContent)
-                    .collect(Collectors.toList());
-
-            log.info("Advanced search completed: found {} items", items.size());
-            return new ResponseItems(items);
+            ResponseItems response = searchText(Endpoint.ADVANCED, query, "AUTO", requestFor, buildStart);
+            log.debug("Advanced search completed: found {} items", response.size());
+            return response;
 
         } catch (NumberFormatException e) {
             log.error("Invalid page number: {}", page, e);
             throw new IllegalArgumentException("Invalid page number: " + page);
+        } catch (CircuitOpenException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during advanced search", e);
             throw new RuntimeException("Advanced search failed", e);
@@ -402,42 +441,28 @@ class Search implements InnerSearch {
     @Override
     public FacetsResponse getFacets(String query, String category, String manufacturer) {
         try {
-            log.info("Getting facets with filters: query='{}', category='{}', manufacturer='{}'",
+            log.debug("Getting facets with filters: query='{}', category='{}', manufacturer='{}'",
                     query, category, manufacturer);
 
-            // Construir query base con filtros opcionales
-            BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
-
-            // Agregar filtro de texto si se proporciona
-            if (!StringUtils.isEmpty(query)) {
-                MultiMatchQueryBuilder textQuery = QueryBuilders.multiMatchQuery(query)
-                        .field(Consts.PRODUCT, 2.0f)
-                        .field(Consts.COLOR, 1.0f)
-                        .field(Consts.CATEGORY, 1.5f)
-                        .field(Consts.MANUFACTURER, 1.5f)
-                        .type(MultiMatchQueryBuilder.Type.BEST_FIELDS)
-                        .fuzziness("AUTO");
-                boolQuery.must(textQuery);
-            }
-
-            // Agregar filtros estructurados
-            if (!StringUtils.isEmpty(category)) {
-                boolQuery.filter(QueryBuilders.termQuery(Consts.CATEGORY, category));
-            }
-
-            if (!StringUtils.isEmpty(manufacturer)) {
-                boolQuery.filter(QueryBuilders.termQuery(Consts.MANUFACTURER, manufacturer));
+            // Sin texto ni fabricante se responde con los contadores en memoria, si están listos
+            FacetCounters.Counts counts = facetCounters.counts(query, category, manufacturer);
+            if (counts != null) {
+                long facetsStart = System.nanoTime();
+                FacetsResponse response = facetsFromCounts(counts);
+                RequestContext.recordPhase("facetProcessing", facetsStart);
+                return response;
             }
 
-            // Si no hay filtros, usar match_all
-            if (!boolQuery.hasClauses()) {
-                boolQuery.must(QueryBuilders.matchAllQuery());
-            }
+            // Construir query base con filtros opcionales
+            long buildStart = System.nanoTime();
+            ItemsQuery itemsQuery = ItemsQuery.create()
+                    .text(textQuery(query))
+                    .term(Consts.CATEGORY_NORMALIZED, category)
+                    .term(Consts.MANUFACTURER_NORMALIZED, manufacturer);
 
             // Construir query con agregaciones
             NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-                    .withQuery(boolQuery)
-                    .withPageable(PageRequest.of(0, 1)) // No necesitamos documentos, solo agregaciones
+                    .withQuery(itemsQuery.build())
 
                     // Agregación por categorías
                     .addAggregation(AggregationBuilders.terms("categories")
@@ -452,50 +477,189 @@ class Search implements InnerSearch {
                             .order(BucketOrder.count(false)))
 
                     // Agregación de rangos de precio
-                    .addAggregation(AggregationBuilders.range("price_ranges")
-                            .field(Consts.PRICE)
-                            .addUnboundedTo("0-50", 50.0)           // Hasta $50
-                            .addRange("50-100", 50.0, 100.0)       // $50 - $100
-                            .addRange("100-300", 100.0, 300.0)     // $100 - $300
-                            .addRange("300-500", 300.0, 500.0)     // $300 - $500
-                            .addRange("500-1000", 500.0, 1000.0)   // $500 - $1000
-                            .addRange("1000-2000", 1000.0, 2000.0) // $1000 - $2000
-                            .addUnboundedFrom("2000+", 2000.0))     // $2000+
+                    .addAggregation(FacetCounters.priceRanges())
 
                     // Estadísticas de precio
                     .addAggregation(AggregationBuilders.stats("price_stats")
                             .field(Consts.PRICE));
 
-            // Ejecutar query
-            SearchHits<Items> searchResult = elasticClient.search(queryBuilder.build(), Items.class);
+            withCategoryRoute(queryBuilder, category);
+
+            // Ejecutar query: sin documentos (size=0), solo agregaciones, y por tanto
+            // cacheable en la request cache de los shards
+            SearchRequest request = searchExecutor.prepare(queryBuilder.build());
+            request.source().size(0);
+            request.requestCache(true);
+            RequestContext.recordPhase("queryBuild", buildStart);
+            SearchResponse searchResult = searchExecutor.execute(Endpoint.FACETS, request);
             Aggregations aggregations = searchResult.getAggregations();
+            long facetsStart = System.nanoTime();
 
             // Procesar agregaciones
             FacetsResponse response = FacetsResponse.builder()
-                    .totalDocuments(searchResult.getTotalHits())
+                    .totalDocuments(searchResult.getHits().getTotalHits().value)
                     .categories(processCategoryAggregation(aggregations))
                     .manufacturers(processManufacturerAggregation(aggregations))
                     .priceRanges(processPriceRangeAggregation(aggregations))
                     .priceStatistics(processPriceStatistics(aggregations))
+                    .timedOut(searchResult.isTimedOut())
                     .build();
+            RequestContext.recordPhase("facetProcessing", facetsStart);
 
-            log.info("Facets processed successfully: {} categories, {} manufacturers, {} price ranges",
+            log.debug("Facets processed successfully: {} categories, {} manufacturers, {} price ranges",
                     response.getCategories().size(),
                     response.getManufacturers().size(),
                     response.getPriceRanges().size());
 
             return response;
 
+        } catch (CircuitOpenException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error getting facets", e);
             throw new RuntimeException("Facets operation failed", e);
         }
     }
 
+    @Override
+    public MultiGetItems multiGet(List<String> ids, List<String> fields, Boolean realtime) {
+        if (ids == null || ids.isEmpty() || ids.size() > mgetMaxIds) {
+            throw new IllegalArgumentException("Between 1 and " + mgetMaxIds + " ids are required");
+        }
+        List<String> projection = fields == null || fields.isEmpty() ? SearchExecutor.ITEM_FIELDS : fields;
+        for (String field : projection) {
+            if (!SearchExecutor.ITEM_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+
+        // Ids sin repetir y en el orden en que llegan
+        List<String> unique = ids.stream()
+                .filter(StringUtils::hasText)
+                .map(String::trim)
+                .distinct()
+                .collect(Collectors.toList());
+        if (unique.isEmpty()) {
+            throw new IllegalArgumentException("Between 1 and " + mgetMaxIds + " ids are required");
+        }
+
+        // Una lectura realtime pedida expresamente no se degrada en silencio a una búsqueda; la del
+        // valor por defecto sí, y la respuesta lo indica con realtime=false
+        if (Boolean.TRUE.equals(realtime) && !this.repository.supportsRealtime()) {
+            throw new IllegalArgumentException("realtime is not available with routing by category or federated search");
+        }
+
+        log.debug("Multi-get of {} items ({} fields, realtime={})", unique.size(), projection.size(), realtime);
+        return this.repository.multiGet(unique, projection, realtime != null ? realtime : mgetRealtime,
+                mgetChunkSize, mgetParallelism);
+    }
+
+    /**
+     * Publica el cambio ya escrito. Los listeners son síncronos: un fallo en uno de ellos se registra
+     * pero no convierte en error una escritura que ya se ha hecho.
+     */
+    private void publish(ItemChangeType type, String itemId, Items item) {
+        try {
+            events.publishEvent(ItemChangeEvent.builder()
+                    .type(type)
+                    .itemId(itemId)
+                    .item(item)
+                    .build());
+        } catch (Exception e) {
+            log.error("Item change listener failed for {} {}", type, itemId, e);
+        }
+    }
+
+    private void withCategoryRoute(NativeSearchQueryBuilder queryBuilder, String category) {
+        String route = routing.forCategory(category);
+        if (route != null) {
+            queryBuilder.withRoute(route);
+        }
+    }
+
+    private MultiMatchQueryBuilder textQuery(String query) {
+        return textQuery(query, "AUTO");
+    }
+
+    private MultiMatchQueryBuilder textQuery(String query, String fuzziness) {
+        if (StringUtils.isEmpty(query)) {
+            return null;
+        }
+        MultiMatchQueryBuilder textQuery = QueryBuilders.multiMatchQuery(query)
+                .field(Consts.PRODUCT, 2.0f)
+                .field(Consts.COLOR, 1.0f)
+                .field(Consts.CATEGORY, 1.5f)
+                .field(Consts.MANUFACTURER, 1.5f)
+                .type(MultiMatchQueryBuilder.Type.BEST_FIELDS);
+        return fuzziness != null ? textQuery.fuzziness(fuzziness) : textQuery;
+    }
+
+    private MultiMatchQueryBuilder fullTextQuery(String query, String fuzziness) {
+        MultiMatchQueryBuilder multiMatchQuery = QueryBuilders.multiMatchQuery(query)
+                .field(Consts.PRODUCT, 2.0f)        // Mayor peso al campo product
+                .field(Consts.COLOR, 1.0f)          // Peso normal al color
+                .field(Consts.CATEGORY, 1.5f)       // Peso medio a la categoría
+                .field(Consts.MANUFACTURER, 1.5f)   // Peso medio al fabricante
+                .type(MultiMatchQueryBuilder.Type.BEST_FIELDS);
+        if (fuzziness == null) {
+            return multiMatchQuery;
+        }
+        return multiMatchQuery
+                .fuzziness(fuzziness)  // Tolerancia a errores tipográficos
+                .prefixLength(1)       // Mínimo 1 carácter exacto antes de aplicar fuzzy
+                .maxExpansions(50);    // Máximo 50 términos expandidos
+    }
+
+    /**
+     * Ejecuta una búsqueda de texto. requestFor construye la petición para un nivel de fuzziness
+     * (null = exacta). En modo dos fases se lanza primero la exacta y solo si trae pocos resultados
+     * la fuzzy, con sugerencias de corrección (ver {@link FuzzyFallback}).
+     */
+    private ResponseItems searchText(Endpoint endpoint, String query, String fuzziness,
+                                     Function<String, SearchRequest> requestFor, long buildStart) throws Exception {
+        boolean twoPhase = fuzzyFallback.isEnabled() && !StringUtils.isEmpty(query)
+                && fuzziness != null && !"0".equals(fuzziness.trim());
+
+        SearchRequest request = requestFor.apply(twoPhase ? null : fuzziness);
+        searchExecutor.rawSource(request);
+        RequestContext.recordPhase("queryBuild", buildStart);
+        SearchResponse result = searchExecutor.execute(endpoint, request);
+        if (!twoPhase || !fuzzyFallback.needsFallback(endpoint, result)) {
+            return searchExecutor.toResponseItems(result);
+        }
+
+        // Segunda fase con el presupuesto que quede de la petición
+        SearchRequest fuzzyRequest = requestFor.apply(fuzziness);
+        searchExecutor.rawSource(fuzzyRequest);
+        fuzzyFallback.addSuggester(fuzzyRequest, query);
+        SearchResponse fuzzyResult = searchExecutor.execute(endpoint, fuzzyRequest);
+
+        ResponseItems response = searchExecutor.toResponseItems(fuzzyResult);
+        List<String> didYouMean = fuzzyFallback.didYouMean(endpoint, fuzzyResult);
+        if (!didYouMean.isEmpty()) {
+            response.setDidYouMean(didYouMean);
+        }
+        return response;
+    }
+
+    private Double parsePrice(String name, String value) {
+        if (StringUtils.isEmpty(value)) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " format: " + value);
+        }
+    }
+
     private List<FacetBucket> processCategoryAggregation(Aggregations aggregations) {
         List<FacetBucket> buckets = new ArrayList<>();
 
         Terms categoryTerms = aggregations.get("categories");
+        if (categoryTerms == null) {
+            return buckets; // Sin agregación cuando la búsqueda agotó su presupuesto
+        }
         long totalDocs = categoryTerms.getSumOfOtherDocCounts() +
                 categoryTerms.getBuckets().stream().mapToLong(Terms.Bucket::getDocCount).sum();
 
@@ -517,6 +681,9 @@ class Search implements InnerSearch {
         List<FacetBucket> buckets = new ArrayList<>();
 
         Terms manufacturerTerms = aggregations.get("manufacturers");
+        if (manufacturerTerms == null) {
+            return buckets;
+        }
         long totalDocs = manufacturerTerms.getSumOfOtherDocCounts() +
                 manufacturerTerms.getBuckets().stream().mapToLong(Terms.Bucket::getDocCount).sum();
 
@@ -538,6 +705,9 @@ class Search implements InnerSearch {
         List<PriceRangeBucket> buckets = new ArrayList<>();
 
         Range priceRanges = aggregations.get("price_ranges");
+        if (priceRanges == null) {
+            return buckets;
+        }
         long totalDocs = priceRanges.getBuckets().stream().mapToLong(Range.Bucket::getDocCount).sum();
 
         for (Range.Bucket bucket : priceRanges.getBuckets()) {
@@ -564,6 +734,9 @@ class Search implements InnerSearch {
 
     private PriceStatistics processPriceStatistics(Aggregations aggregations) {
         Stats priceStats = aggregations.get("price_stats");
+        if (priceStats == null) {
+            return PriceStatistics.builder().count(0L).build();
+        }
 
         // Obtener valores usando métodos que devuelven Double (objeto) en lugar de double (primitivo)
         Double minValue = convertToDouble(priceStats.getMinAsString());
@@ -587,6 +760,67 @@ class Search implements InnerSearch {
     }
 
 
+    /**
+     * Misma respuesta que las agregaciones de getFacets, construida con los contadores en memoria
+     */
+    private FacetsResponse facetsFromCounts(FacetCounters.Counts counts) {
+        List<PriceRangeBucket> priceRanges = new ArrayList<>();
+        long bandDocs = 0;
+        for (long docs : counts.getBands()) {
+            bandDocs += docs;
+        }
+        for (int i = 0; i < FacetCounters.BAND_KEYS.length; i++) {
+            long docs = counts.getBands()[i];
+            if (docs > 0) {
+                String key = FacetCounters.BAND_KEYS[i];
+                priceRanges.add(PriceRangeBucket.builder()
+                        .key(key)
+                        .from(FacetCounters.BAND_FROM[i])
+                        .to(FacetCounters.BAND_TO[i])
+                        .docCount(docs)
+                        .percentage(Math.round(docs * 100.0 / bandDocs * 100.0) / 100.0)
+                        .displayName(formatPriceRangeDisplayName(key, FacetCounters.BAND_FROM[i], FacetCounters.BAND_TO[i]))
+                        .build());
+            }
+        }
+
+        Double avg = counts.getPriceCount() > 0
+                ? Math.round(counts.getPriceSum() / counts.getPriceCount() * 100.0) / 100.0
+                : null;
+        return FacetsResponse.builder()
+                .totalDocuments(counts.getDocs())
+                .categories(facetBuckets(counts.getCategories(), true))
+                .manufacturers(facetBuckets(counts.getManufacturers(), false))
+                .priceRanges(priceRanges)
+                .priceStatistics(PriceStatistics.builder()
+                        .min(counts.getMin())
+                        .max(counts.getMax())
+                        .avg(avg)
+                        .count(counts.getPriceCount())
+                        .sum(counts.getPriceSum())
+                        .build())
+                .timedOut(false)
+                .build();
+    }
+
+    private List<FacetBucket> facetBuckets(Map<String, Long> counts, boolean categories) {
+        long totalDocs = counts.values().stream().mapToLong(Long::longValue).sum();
+        List<FacetBucket> buckets = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            if (buckets.size() == 50) { // Mismo límite que las agregaciones terms
+                break;
+            }
+            double percentage = totalDocs > 0 ? (entry.getValue() * 100.0) / totalDocs : 0.0;
+            buckets.add(FacetBucket.builder()
+                    .key(entry.getKey())
+                    .displayName(categories ? formatCategoryDisplayName(entry.getKey()) : entry.getKey())
+                    .docCount(entry.getValue())
+                    .percentage(Math.round(percentage * 100.0) / 100.0)
+                    .build());
+        }
+        return buckets;
+    }
+
     private String formatCategoryDisplayName(String category) {
         // Formatear nombres de categorías para mejor visualización
         switch (category.toLowerCase()) {
@@ -642,8 +876,11 @@ class Search implements InnerSearch {
     }
 
     private String formatPriceRangeDisplayName(Range.Bucket bucket) {
-        String key = bucket.getKeyAsString();
+        return formatPriceRangeDisplayName(bucket.getKeyAsString(),
+                convertToDouble(bucket.getFrom()), convertToDouble(bucket.getTo()));
+    }
 
+    private String formatPriceRangeDisplayName(String key, Double from, Double to) {
         switch (key) {
             case "0-50": return "Hasta $50";
             case "50-100": return "$50 - $100";
@@ -654,9 +891,6 @@ class Search implements InnerSearch {
             case "2000+": return "Más de $2,000";
             default:
                 // Generar nombre dinámico si no está en el switch
-                Double from = convertToDouble(bucket.getFrom());
-                Double to = convertToDouble(bucket.getTo());
-
                 if (from != null && to != null) {
                     return String.format("$%.0f - $%.0f", from, to);
                 } else if (from != null) {
@@ -0,0 +1,269 @@
+package search.com.search.service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.consts.ItemChangeType;
+import search.com.search.model.dto.ItemChangeEvent;
+import search.com.search.model.entities.Items;
+
+/**
+ * Reparte los cambios de items a los suscriptores de /v1/items/_changes (SSE).
+ *
+ * Un suscriptor sin eventos no ocupa ningún hilo: solo se programa el envío cuando le llega un
+ * evento que pasa su filtro. Cada suscriptor tiene un buffer acotado; si se llena porque el
+ * cliente no lee al ritmo de los cambios, se le desconecta y deberá reconectar con Last-Event-ID.
+ * Se guarda un histórico corto para poder reanudar sin perder eventos.
+ *
+ * Los ids SSE son "epoch-secuencia": la secuencia solo vale dentro de este proceso, así que un
+ * Last-Event-ID de otra época (de antes de un reinicio o de otra réplica detrás del balanceador)
+ * no se compara con ella y recibe 'reset'.
+ */
+@Component
+@Slf4j
+public class ItemChangeStream {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString(ThreadLocalRandom.current().nextInt(36 * 36 * 36 * 36), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Deque<ItemChangeEvent> history = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders;
+
+    private final int historySize;
+    private final int bufferSize;
+    private final long timeoutMillis;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public ItemChangeStream(Environment env) {
+        this.historySize = env.getProperty("app.changes.history", Integer.class, 1024);
+        this.bufferSize = env.getProperty("app.changes.buffer", Integer.class, 256);
+        this.timeoutMillis = env.getProperty("app.changes.timeout-ms", Long.class, 0L);
+        this.senders = Executors.newFixedThreadPool(env.getProperty("app.changes.sender-threads", Integer.class, 2), r -> {
+            Thread thread = new Thread(r, "item-changes-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Alta de un suscriptor. Si trae lastEventId se le reenvían los eventos posteriores del
+     * histórico; si ya no están, o el id es de otra época, recibe un evento 'reset' para que
+     * recargue el listado completo.
+     */
+    public SseEmitter subscribe(String category, String manufacturer, String lastEventId) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMillis), category, manufacturer, bufferSize);
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onError(e -> subscribers.remove(subscriber));
+
+        synchronized (history) {
+            Long lastSeq = lastEventId == null ? null : sequenceOf(lastEventId);
+            if (lastEventId != null && lastSeq == null) {
+                // Id de otra época: no se sabe qué se ha perdido
+                subscriber.reset = true;
+            } else if (lastSeq != null) {
+                // Hueco en el histórico
+                ItemChangeEvent oldest = history.peekFirst();
+                long last = sequence.get();
+                if (lastSeq > last || (lastSeq < last && (oldest == null || oldest.getId() > lastSeq + 1))) {
+                    subscriber.reset = true;
+                }
+                for (ItemChangeEvent event : history) {
+                    if (event.getId() > lastSeq && subscriber.accepts(event)
+                            && !subscriber.queue.offer(event)) {
+                        // Más pendientes de los que caben en su buffer: que recargue el listado
+                        subscriber.queue.clear();
+                        subscriber.reset = true;
+                        break;
+                    }
+                }
+            }
+            // Registrado dentro del lock: ningún evento se pierde entre el histórico y el alta
+            subscribers.add(subscriber);
+        }
+
+        if (subscriber.reset || !subscriber.queue.isEmpty()) {
+            schedule(subscriber);
+        }
+        return subscriber.emitter;
+    }
+
+    @EventListener
+    public void onItemChange(ItemChangeEvent change) {
+        ItemChangeEvent event;
+        synchronized (history) {
+            event = change.toBuilder()
+                    .id(sequence.incrementAndGet())
+                    .timestamp(change.getTimestamp() != null ? change.getTimestamp() : Instant.now().toString())
+                    .build();
+            history.addLast(event);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+        }
+        published.increment();
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.accepts(event)) {
+                continue;
+            }
+            if (subscriber.queue.offer(event)) {
+                schedule(subscriber);
+            } else {
+                evict(subscriber, "buffer full");
+            }
+        }
+    }
+
+    /**
+     * Comentario SSE periódico para detectar conexiones muertas a través de proxies
+     */
+    @Scheduled(fixedDelayString = "${app.changes.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.queue.isEmpty()) {
+                senders.execute(() -> {
+                    try {
+                        subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+                    } catch (Exception e) {
+                        subscribers.remove(subscriber);
+                    }
+                });
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("lastEventId", eventId(sequence.get()));
+        stats.put("published", published.sum());
+        stats.put("evicted", evicted.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+            subscriber.emitter.complete();
+        }
+        senders.shutdownNow();
+    }
+
+    String eventId(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    /**
+     * Secuencia de un id de esta época, o null si es de otra o no tiene el formato
+     */
+    Long sequenceOf(String eventId) {
+        String prefix = epoch + "-";
+        if (!eventId.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            if (subscriber.reset) {
+                subscriber.reset = false;
+                subscriber.emitter.send(SseEmitter.event().name("reset").data(eventId(sequence.get())));
+            }
+            ItemChangeEvent event;
+            while ((event = subscriber.queue.poll()) != null) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(eventId(event.getId()))
+                        .name(event.getType().name().toLowerCase())
+                        .data(event, MediaType.APPLICATION_JSON));
+            }
+        } catch (IOException | IllegalStateException e) {
+            subscribers.remove(subscriber);
+            return;
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        // Evento llegado entre el último poll y liberar el flag
+        if (!subscriber.queue.isEmpty()) {
+            schedule(subscriber);
+        }
+    }
+
+    private void evict(Subscriber subscriber, String reason) {
+        if (subscribers.remove(subscriber)) {
+            evicted.increment();
+            log.debug("Evicting change subscriber: {}", reason);
+            subscriber.emitter.complete();
+        }
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final String category;
+        private final String manufacturer;
+        private final Queue<ItemChangeEvent> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean reset;
+
+        Subscriber(SseEmitter emitter, String category, String manufacturer, int bufferSize) {
+            this.emitter = emitter;
+            this.category = category;
+            this.manufacturer = manufacturer;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        boolean accepts(ItemChangeEvent event) {
+            Items item = event.getItem();
+            // Las bajas (y los cambios registrados en el journal) pueden llegar solo con el id: se envían
+            // a todos y el cliente ignora los ids que no tenga
+            boolean unknownMatches = item == null || event.getType() == ItemChangeType.DELETED;
+            return matches(category, item != null ? item.getCategory() : null, unknownMatches)
+                    && matches(manufacturer, item != null ? item.getManufacturer() : null, unknownMatches);
+        }
+
+        private static boolean matches(String filter, String value, boolean unknownMatches) {
+            if (filter == null || filter.isBlank()) {
+                return true;
+            }
+            return value == null ? unknownMatches : filter.trim().equalsIgnoreCase(value);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package search.com.search.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import search.com.search.model.dto.ItemsDto;
+import search.com.search.model.entities.Items;
+
+/**
+ * Validación de ItemsDto y conversión a la entidad Items, compartida por la API y la importación masiva
+ */
+@Component
+public class ItemsMapper {
+
+    public boolean isValid(ItemsDto dto) {
+        return dto != null
+                && StringUtils.hasText(dto.getCategory())
+                && StringUtils.hasText(dto.getColor())
+                && StringUtils.hasText(dto.getManufacturer())
+                && StringUtils.hasText(dto.getProduct())
+                && dto.getPrice() != null
+                && dto.getTotal() != null;
+    }
+
+    public Items toItem(ItemsDto dto, String id) {
+        return Items.builder()
+                .id(id)
+                .category(dto.getCategory().trim())
+                .color(dto.getColor().trim())
+                .manufacturer(dto.getManufacturer().trim())
+                .price(dto.getPrice())
+                .total(dto.getTotal())
+                .product(dto.getProduct().trim())
+                .build();
+    }
+}
@@ -0,0 +1,231 @@
+package search.com.search.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.elasticsearch.search.SearchHit;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import search.com.search.cache.PeerCache;
+import search.com.search.cache.PeerCache.Loaded;
+import search.com.search.config.RawItemsConverter;
+import search.com.search.config.RequestContext;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.dto.CachedResponseItems;
+import search.com.search.model.dto.FacetsResponse;
+import search.com.search.model.dto.ItemsDto;
+import search.com.search.model.dto.MultiGetItems;
+import search.com.search.model.dto.RawResponseItems;
+import search.com.search.model.dto.ResponseItems;
+import search.com.search.service.HeavyHitters.Dimension;
+import search.com.search.model.dto.Suggestions;
+import search.com.search.model.entities.Items;
+
+/**
+ * InnerSearch con las lecturas servidas a través de {@link PeerCache} cuando está activada; si no,
+ * o en modo profile, delega sin más en {@link Search}. La clave de cada lectura es el endpoint con
+ * sus parámetros ordenados, y es lo único que necesita la instancia dueña para repetir la consulta.
+ * Los listados de items se devuelven como {@link CachedResponseItems}, con el JSON cacheado tal cual
+ * (sin deshacer raw-source); sugerencias y facetas se leen porque el controlador usa sus campos.
+ * Cada carga lleva la señal de admisión de {@link HeavyHitters}: consulta, prefijo o combinación de
+ * filtros entre las más frecuentes (los listados por categoría se admiten siempre).
+ * Las escrituras y el _mget van siempre directos.
+ */
+@Service
+@Primary
+class PeerCachedSearch implements InnerSearch {
+
+    private final Search search;
+    private final PeerCache cache;
+    private final ObjectMapper mapper;
+    private final RawItemsConverter rawWriter;
+    private final HeavyHitters heavyHitters;
+
+    PeerCachedSearch(Search search, PeerCache cache, ObjectMapper mapper, HeavyHitters heavyHitters) {
+        this.search = search;
+        this.cache = cache;
+        this.heavyHitters = heavyHitters;
+        this.mapper = mapper;
+        this.rawWriter = new RawItemsConverter(mapper);
+    }
+
+    @PostConstruct
+    void register() {
+        cache.register(this::load);
+    }
+
+    @Override
+    public void addItem(ItemsDto items) {
+        search.addItem(items);
+    }
+
+    @Override
+    public void updateItem(ItemsDto items, String itemId) {
+        search.updateItem(items, itemId);
+    }
+
+    @Override
+    public void deleteItem(String itemId, String category) {
+        search.deleteItem(itemId, category);
+    }
+
+    @Override
+    public ResponseItems getItems(String category, String manufacturer, String product, String page) {
+        if (!useCache()) {
+            return search.getItems(category, manufacturer, product, page);
+        }
+        return new CachedResponseItems(cache.get(
+                key(Endpoint.ITEMS, "category", category, "manufacturer", manufacturer, "product", product, "page", page)));
+    }
+
+    @Override
+    public ResponseItems searchFullText(String query, String fuzziness, String page) {
+        if (!useCache()) {
+            return search.searchFullText(query, fuzziness, page);
+        }
+        return new CachedResponseItems(cache.get(key(Endpoint.SEARCH, "q", query, "fuzziness", fuzziness, "page", page)));
+    }
+
+    @Override
+    public Suggestions getAutocompleteSuggestions(String prefix, int limit) {
+        if (!useCache()) {
+            return search.getAutocompleteSuggestions(prefix, limit);
+        }
+        return read(key(Endpoint.SUGGEST, "q", prefix, "limit", String.valueOf(limit)), Suggestions.class);
+    }
+
+    @Override
+    public ResponseItems advancedSearch(String query, String category, String manufacturer,
+                                        String minPrice, String maxPrice, String page) {
+        if (!useCache()) {
+            return search.advancedSearch(query, category, manufacturer, minPrice, maxPrice, page);
+        }
+        return new CachedResponseItems(cache.get(key(Endpoint.ADVANCED, "q", query, "category", category,
+                "manufacturer", manufacturer, "minPrice", minPrice, "maxPrice", maxPrice, "page", page)));
+    }
+
+    @Override
+    public FacetsResponse getFacets(String query, String category, String manufacturer) {
+        if (!useCache()) {
+            return search.getFacets(query, category, manufacturer);
+        }
+        return read(key(Endpoint.FACETS, "q", query, "category", category, "manufacturer", manufacturer), FacetsResponse.class);
+    }
+
+    @Override
+    public MultiGetItems multiGet(List<String> ids, List<String> fields, Boolean realtime) {
+        return search.multiGet(ids, fields, realtime);
+    }
+
+    private boolean useCache() {
+        return cache.isEnabled() && RequestContext.currentProfile() == null;
+    }
+
+    private <T> T read(String key, Class<T> type) {
+        try {
+            return mapper.readValue(cache.get(key), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Repite en esta instancia la lectura de una clave y la serializa, con los ids de sus items como etiquetas
+     */
+    private Loaded load(String key) {
+        int question = key.indexOf('?');
+        Map<String, String> p = new TreeMap<>();
+        for (String pair : key.substring(question + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                p.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        try {
+            switch (key.substring(0, question)) {
+                case "items":
+                    return loaded(search.getItems(p.get("category"), p.get("manufacturer"), p.get("product"),
+                            p.getOrDefault("page", "1")), true);
+                case "search":
+                    return loaded(search.searchFullText(p.get("q"), p.getOrDefault("fuzziness", "AUTO"), p.getOrDefault("page", "1")),
+                            isHot(Dimension.QUERY, HeavyHitters.normalize(p.get("q"))));
+                case "advanced":
+                    return loaded(search.advancedSearch(p.get("q"), p.get("category"), p.get("manufacturer"),
+                            p.get("minPrice"), p.get("maxPrice"), p.getOrDefault("page", "1")),
+                            isHot(Dimension.QUERY, HeavyHitters.normalize(p.get("q"))) || isHot(Dimension.FILTER, HeavyHitters.filterKey(p)));
+                case "suggest":
+                    Suggestions suggestions = search.getAutocompleteSuggestions(p.get("q"), Integer.parseInt(p.getOrDefault("limit", "5")));
+                    return new Loaded(mapper.writeValueAsBytes(suggestions), Set.of(), !suggestions.isTimedOut(),
+                            isHot(Dimension.PREFIX, HeavyHitters.normalize(p.get("q"))));
+                case "facets":
+                    FacetsResponse facets = search.getFacets(p.get("q"), p.get("category"), p.get("manufacturer"));
+                    return new Loaded(mapper.writeValueAsBytes(facets), Set.of(), !facets.isTimedOut(),
+                            isHot(Dimension.FILTER, HeavyHitters.filterKey(p)));
+                default:
+                    throw new IllegalArgumentException("Unknown cache key: " + key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sin HeavyHitters no hay señal y se admite todo, como antes
+     */
+    private boolean isHot(Dimension dimension, String key) {
+        return !heavyHitters.isEnabled() || heavyHitters.isHot(dimension, key);
+    }
+
+    private Loaded loaded(ResponseItems response, boolean hot) throws IOException {
+        Set<String> tags = new LinkedHashSet<>();
+        byte[] json;
+        if (response instanceof RawResponseItems) {
+            for (SearchHit hit : ((RawResponseItems) response).getHits()) {
+                tags.add(PeerCache.itemTag(hit.getId()));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            rawWriter.write((RawResponseItems) response, out);
+            json = out.toByteArray();
+        } else {
+            for (Items item : response.getItems()) {
+                tags.add(PeerCache.itemTag(item.getId()));
+            }
+            json = mapper.writeValueAsBytes(response);
+        }
+        return new Loaded(json, tags, !response.isTimedOut(), hot);
+    }
+
+    /**
+     * Endpoint y parámetros no vacíos, ordenados y codificados
+     */
+    private static String key(Endpoint endpoint, String... pairs) {
+        Map<String, String> params = new TreeMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (StringUtils.hasText(pairs[i + 1])) {
+                params.put(pairs[i], pairs[i + 1].trim());
+            }
+        }
+        StringBuilder key = new StringBuilder(endpoint.key()).append('?');
+        params.forEach((name, value) -> {
+            if (key.charAt(key.length() - 1) != '?') {
+                key.append('&');
+            }
+            key.append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+        });
+        return key.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package search.com.search.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.rolling.SizeAndTimeBasedRollingPolicy;
+import ch.qos.logback.core.util.FileSize;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RequestContext;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.model.dto.SlowQuery;
+
+/**
+ * Registro de consultas lentas por método de InnerSearch.
+ *
+ * Las capturas se guardan en un buffer circular acotado y sin locks (las más antiguas se
+ * sobrescriben) y, si se configura app.slowlog.file, también en un fichero rotativo.
+ *
+ * Umbrales: app.slowlog.threshold-ms.&lt;método&gt; (ej: app.slowlog.threshold-ms.getFacets=500)
+ */
+@Component
+@Slf4j
+public class SlowQueryLog {
+
+    private static final String FILE_LOGGER = "slowlog";
+
+    private final Map<Endpoint, Long> thresholdsNanos = new EnumMap<>(Endpoint.class);
+    private final AtomicReferenceArray<SlowQuery> buffer;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final org.slf4j.Logger fileLog;
+
+    public SlowQueryLog(Environment env) {
+        long fallback = env.getProperty("app.slowlog.threshold-ms.default", Long.class, 1000L);
+        for (Endpoint endpoint : Endpoint.values()) {
+            if (endpoint.method() != null) {
+                long millis = env.getProperty("app.slowlog.threshold-ms." + endpoint.method(), Long.class, fallback);
+                thresholdsNanos.put(endpoint, millis * 1_000_000L);
+            }
+        }
+        this.buffer = new AtomicReferenceArray<>(env.getProperty("app.slowlog.capacity", Integer.class, 256));
+
+        String file = env.getProperty("app.slowlog.file");
+        this.fileLog = StringUtils.hasText(file) ? rollingFileLogger(file) : null;
+    }
+
+    /**
+     * Se invoca al terminar cada petición de búsqueda; solo captura si supera el umbral del método
+     */
+    public void onRequestFinished(RequestContext context, String queryString) {
+        long elapsed = System.nanoTime() - context.getStartNanos();
+        if (!isSlow(context.getEndpoint(), elapsed)) {
+            return;
+        }
+
+        SlowQuery slowQuery = SlowQuery.builder()
+                .timestamp(Instant.now().toString())
+                .endpoint(context.getEndpoint().key())
+                .method(context.getEndpoint().method())
+                .params(queryString)
+                .query(context.getLastQuery() != null ? context.getLastQuery().toString() : null)
+                // Sin respuesta (timeout o error) solo se conoce la consulta
+                .tookMs(context.getHits() >= 0 ? context.getTookMillis() : null)
+                .hits(context.getHits() >= 0 ? context.getHits() : null)
+                .serviceTimeMs(elapsed / 1_000_000.0)
+                .build();
+
+        buffer.set((int) (sequence.getAndIncrement() % buffer.length()), slowQuery);
+
+        if (fileLog != null) {
+            try {
+                fileLog.info(mapper.writeValueAsString(slowQuery));
+            } catch (Exception e) {
+                log.debug("Could not write slow query to file", e);
+            }
+        }
+    }
+
+    public boolean isSlow(Endpoint endpoint, long elapsedNanos) {
+        Long threshold = thresholdsNanos.get(endpoint);
+        return threshold != null && elapsedNanos >= threshold;
+    }
+
+    /**
+     * Capturas retenidas, de la más reciente a la más antigua
+     */
+    public List<SlowQuery> recent() {
+        List<SlowQuery> result = new ArrayList<>();
+        long last = sequence.get();
+        for (long i = last - 1; i >= 0 && i >= last - buffer.length(); i--) {
+            SlowQuery slowQuery = buffer.get((int) (i % buffer.length()));
+            if (slowQuery != null) {
+                result.add(slowQuery);
+            }
+        }
+        return result;
+    }
+
+    private org.slf4j.Logger rollingFileLogger(String file) {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        RollingFileAppender<ILoggingEvent> appender = new RollingFileAppender<>();
+        appender.setContext(context);
+        appender.setName("SLOWLOG");
+        appender.setFile(file);
+
+        SizeAndTimeBasedRollingPolicy<ILoggingEvent> policy = new SizeAndTimeBasedRollingPolicy<>();
+        policy.setContext(context);
+        policy.setParent(appender);
+        policy.setFileNamePattern(file + ".%d{yyyy-MM-dd}.%i.gz");
+        policy.setMaxFileSize(FileSize.valueOf("50MB"));
+        policy.setMaxHistory(7);
+        policy.start();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%msg%n");
+        encoder.start();
+
+        appender.setRollingPolicy(policy);
+        appender.setEncoder(encoder);
+        appender.start();
+
+        Logger logger = context.getLogger(FILE_LOGGER);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+        return logger;
+    }
+}
@@ -0,0 +1,365 @@
+package search.com.search.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.consts.Consts;
+import search.com.search.model.consts.ItemChangeType;
+import search.com.search.model.dto.ItemChangeEvent;
+import search.com.search.model.entities.Items;
+import search.com.search.repository.ItemsRouting;
+
+/**
+ * Combina las variaciones de stock de varios PATCH antes de escribirlas en Elasticsearch.
+ *
+ * Cada cambio se encola y el PATCH espera al vuelco que lo escribe, que llega cada flush-ms (o antes
+ * si hay max-pending cambios en cola). Un vuelco lee el stock real de todos los items afectados con un
+ * único _mget realtime, decide en orden de llegada qué cambios caben (los que dejarían el stock por
+ * debajo de cero se rechazan) y escribe los totales con un único _bulk condicionado al seq_no leído.
+ * Así ningún cambio se confirma al cliente antes de estar escrito, y si otra escritura se adelanta el
+ * item se vuelve a leer y a decidir en lugar de perder los cambios aceptados.
+ *
+ * Los fallos del _bulk se clasifican por item: un conflicto de versión se reintenta en el mismo
+ * vuelco, un 404 rechaza los cambios (el item ya no existe), el resto de 4xx se descarta como
+ * permanente y los 5xx o errores de red fallan la petición sin reintentos en segundo plano.
+ */
+@Component
+@Slf4j
+public class StockCombiner {
+
+    private static final String INDEX = "items";
+    private static final int MAX_ROUNDS = 5;
+
+    private final RestHighLevelClient client;
+    private final ItemsRouting routing;
+    private final ApplicationEventPublisher events;
+    private final ElasticsearchOperations operations;
+
+    private final boolean enabled;
+    private final int maxPending;
+    private final long waitMillis;
+    private final LinkedBlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public StockCombiner(Environment env, RestHighLevelClient client, ItemsRouting routing,
+                         ApplicationEventPublisher events, ElasticsearchOperations operations) {
+        this.client = client;
+        this.routing = routing;
+        this.events = events;
+        this.operations = operations;
+        this.enabled = env.getProperty("app.stock-combiner.enabled", Boolean.class, false);
+        this.maxPending = env.getProperty("app.stock-combiner.max-pending", Integer.class, 100);
+        this.waitMillis = env.getProperty("app.stock-combiner.wait-ms", Long.class, 5000L);
+        if (enabled && env.getProperty("app.journal.enabled", Boolean.class, false)) {
+            // El combinador escribe directamente en Elasticsearch, saltándose el orden del journal
+            throw new IllegalStateException("app.stock-combiner.enabled and app.journal.enabled cannot be used together");
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stock-combiner-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            long flushMillis = env.getProperty("app.stock-combiner.flush-ms", Long.class, 50L);
+            flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Descuenta quantity del stock del item (un valor negativo repone) y espera a que se escriba.
+     * La categoría solo se usa para el routing.
+     *
+     * @throws IllegalArgumentException si el item no existe o no hay stock suficiente
+     * @throws IllegalStateException si el cambio no se ha podido escribir
+     */
+    public void decrement(String itemId, String category, int quantity) {
+        if (closed) {
+            throw new IllegalStateException("Stock combiner is closed");
+        }
+        Op op = new Op(itemId, routing.forCategory(category), quantity);
+        queue.add(op);
+        if (queue.size() >= maxPending) {
+            flusher.execute(this::flush);
+        }
+
+        try {
+            try {
+                op.done.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (queue.remove(op)) {
+                    failed.increment();
+                    throw new IllegalStateException("Stock change for item " + itemId + " was not flushed in time");
+                }
+                // Ya lo está escribiendo un vuelco: su resultado llega con él
+                op.done.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the stock flush", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queue.size());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("conflicts", conflicts.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    /**
+     * Al parar el servicio se dejan de aceptar cambios y se escribe lo que quede en cola
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+    }
+
+    synchronized void flush() {
+        List<Op> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Op>> byItem = new LinkedHashMap<>();
+        for (Op op : drained) {
+            byItem.computeIfAbsent(op.itemId, id -> new ArrayList<>()).add(op);
+        }
+        List<ItemChangeEvent> changes = new ArrayList<>();
+        for (int round = 0; round < MAX_ROUNDS && !byItem.isEmpty(); round++) {
+            byItem = write(byItem, changes);
+        }
+        for (List<Op> ops : byItem.values()) {
+            failed.increment();
+            fail(ops, new IllegalStateException("Too many concurrent writes on item " + ops.get(0).itemId));
+        }
+
+        // Fuera de la escritura: un listener que falla no afecta a cambios ya escritos
+        for (ItemChangeEvent change : changes) {
+            try {
+                events.publishEvent(change);
+            } catch (Exception e) {
+                log.error("Item change listener failed for item {}", change.getItemId(), e);
+            }
+        }
+    }
+
+    /**
+     * Una ronda de lectura + escritura; devuelve los items que han chocado con otra escritura
+     */
+    private Map<String, List<Op>> write(Map<String, List<Op>> byItem, List<ItemChangeEvent> changes) {
+        Map<String, List<Op>> retry = new LinkedHashMap<>();
+
+        MultiGetRequest read = new MultiGetRequest();
+        byItem.forEach((itemId, ops) -> read.add(new MultiGetRequest.Item(INDEX, itemId)
+                .routing(ops.get(0).routing)
+                .fetchSourceContext(new FetchSourceContext(true, new String[] { Consts.TOTAL }, null))));
+        MultiGetResponse current;
+        try {
+            current = client.mget(read, RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            log.warn("Could not read stock for {} items: {}", byItem.size(), e.getMessage());
+            failAll(byItem.values(), "Could not read stock", e);
+            return retry;
+        }
+
+        BulkRequest bulk = new BulkRequest();
+        Map<String, Batch> writing = new LinkedHashMap<>();
+        for (MultiGetItemResponse item : current.getResponses()) {
+            List<Op> ops = byItem.get(item.getId());
+            if (item.isFailed()) {
+                failed.increment();
+                fail(ops, new IllegalStateException("Could not read stock for item " + item.getId()));
+                continue;
+            }
+            GetResponse doc = item.getResponse();
+            Object total = doc.isExists() ? doc.getSourceAsMap().get(Consts.TOTAL) : null;
+            if (!(total instanceof Number)) {
+                rejected.add(ops.size());
+                fail(ops, new IllegalArgumentException("Bad request"));
+                continue;
+            }
+
+            Batch batch = new Batch(ops, ((Number) total).longValue());
+            if (batch.total == ((Number) total).longValue()) {
+                // Nada que escribir: todos rechazados o se compensan entre sí
+                settle(batch);
+                continue;
+            }
+            bulk.add(new UpdateRequest(INDEX, item.getId())
+                    .routing(ops.get(0).routing)
+                    .doc(Map.of(Consts.TOTAL, batch.total))
+                    .setIfSeqNo(doc.getSeqNo())
+                    .setIfPrimaryTerm(doc.getPrimaryTerm())
+                    .fetchSource(true));
+            writing.put(item.getId(), batch);
+        }
+        if (writing.isEmpty()) {
+            return retry;
+        }
+
+        BulkResponse response;
+        try {
+            response = client.bulk(bulk, RequestOptions.DEFAULT);
+            flushes.increment();
+        } catch (Exception e) {
+            log.warn("Could not write stock for {} items: {}", writing.size(), e.getMessage());
+            failAll(writing.values().stream().map(batch -> batch.ops).toList(), "Could not write stock", e);
+            return retry;
+        }
+
+        for (BulkItemResponse item : response.getItems()) {
+            Batch batch = writing.get(item.getId());
+            if (!item.isFailed()) {
+                settle(batch);
+                UpdateResponse updated = item.getResponse();
+                Items changed = operations.getElasticsearchConverter()
+                        .read(Items.class, DocumentAdapters.from(updated.getGetResult()));
+                changes.add(ItemChangeEvent.builder()
+                        .type(ItemChangeType.UPDATED)
+                        .itemId(item.getId())
+                        .item(changed)
+                        .build());
+                continue;
+            }
+
+            RestStatus status = item.getFailure().getStatus();
+            if (status == RestStatus.CONFLICT) {
+                // Otra escritura se ha adelantado: se vuelve a leer y a decidir en la siguiente ronda
+                conflicts.increment();
+                retry.put(item.getId(), batch.ops);
+            } else if (status == RestStatus.NOT_FOUND) {
+                dropped.increment();
+                rejected.add(batch.ops.size());
+                fail(batch.ops, new IllegalArgumentException("Bad request"));
+            } else if (status.getStatus() < 500) {
+                dropped.increment();
+                log.warn("Stock write for item {} rejected by Elasticsearch ({}): {}",
+                        item.getId(), status, item.getFailureMessage());
+                fail(batch.ops, new IllegalStateException("Stock write rejected: " + status));
+            } else {
+                failed.increment();
+                fail(batch.ops, new IllegalStateException("Stock write failed: " + status));
+            }
+        }
+        return retry;
+    }
+
+    private void settle(Batch batch) {
+        for (int i = 0; i < batch.ops.size(); i++) {
+            Op op = batch.ops.get(i);
+            if (batch.fits[i]) {
+                accepted.increment();
+                op.done.complete(null);
+            } else {
+                rejected.increment();
+                op.done.completeExceptionally(new IllegalArgumentException("Insufficient stock for item " + op.itemId));
+            }
+        }
+    }
+
+    private void failAll(Iterable<List<Op>> pending, String message, Exception cause) {
+        for (List<Op> ops : pending) {
+            failed.increment();
+            fail(ops, new IllegalStateException(message, cause));
+        }
+    }
+
+    private static void fail(List<Op> ops, RuntimeException error) {
+        for (Op op : ops) {
+            op.done.completeExceptionally(error);
+        }
+    }
+
+    private static class Op {
+        private final String itemId;
+        private final String routing;
+        private final int quantity;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Op(String itemId, String routing, int quantity) {
+            this.itemId = itemId;
+            this.routing = routing;
+            this.quantity = quantity;
+        }
+    }
+
+    /**
+     * Cambios de un item decididos en orden de llegada sobre el stock leído
+     */
+    private static class Batch {
+        private final List<Op> ops;
+        private final boolean[] fits;
+        private long total;
+
+        Batch(List<Op> ops, long stock) {
+            this.ops = ops;
+            this.fits = new boolean[ops.size()];
+            this.total = stock;
+            for (int i = 0; i < ops.size(); i++) {
+                if (total - ops.get(i).quantity >= 0) {
+                    total -= ops.get(i).quantity;
+                    fits[i] = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package search.com.search.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RequestContext;
+import search.com.search.model.consts.Endpoint;
+import search.com.search.resilience.TimeBudgets;
+import search.com.search.service.HotQueries.HotQuery;
+
+/**
+ * Calentamiento del servicio repitiendo las consultas más frecuentes (ver {@link HotQueries}).
+ *
+ * Al arrancar, la instancia se registra en Eureka como STARTING, se lanzan las top-n consultas
+ * guardadas a través de InnerSearch (con app.warmup.concurrency hilos y como mucho max-seconds) y
+ * después pasa a UP: el tráfico real llega con el JIT, las cachés de Elasticsearch y las cachés del
+ * propio servicio ya calientes. Se puede repetir a mano desde /v1/admin/warmup, por ejemplo después
+ * de un reindexado.
+ *
+ * Cada consulta corre con su propio RequestContext (el presupuesto por defecto de su endpoint) marcado
+ * como trabajo interno: sus timeouts, esperables con las cachés frías, no abren el circuit breaker
+ * antes de que llegue el primer cliente.
+ */
+@Component
+@Slf4j
+public class Warmup {
+
+    private final InnerSearch search;
+    private final HotQueries hotQueries;
+    private final TimeBudgets budgets;
+    private final ObjectProvider<ApplicationInfoManager> eureka;
+
+    private final boolean onStartup;
+    private final int topN;
+    private final int rounds;
+    private final int concurrency;
+    private final long maxMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastRun;
+
+    public Warmup(Environment env, InnerSearch search, HotQueries hotQueries, TimeBudgets budgets,
+                  ObjectProvider<ApplicationInfoManager> eureka) {
+        this.search = search;
+        this.hotQueries = hotQueries;
+        this.budgets = budgets;
+        this.eureka = eureka;
+        this.onStartup = env.getProperty("app.warmup.on-startup", Boolean.class, true);
+        this.topN = env.getProperty("app.warmup.top-n", Integer.class, 200);
+        this.rounds = env.getProperty("app.warmup.rounds", Integer.class, 3);
+        this.concurrency = env.getProperty("app.warmup.concurrency", Integer.class, 4);
+        this.maxMillis = TimeUnit.SECONDS.toMillis(env.getProperty("app.warmup.max-seconds", Long.class, 60L));
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        // Solo en el servicio: un contexto sin servidor web no se registra ni recibe tráfico
+        if (!(event.getApplicationContext() instanceof WebServerApplicationContext)) {
+            return;
+        }
+        // La instancia se registra ya como STARTING (eureka.instance.initial-status), así que no hay
+        // ningún momento en que se anuncie UP antes de calentar
+        ApplicationInfoManager instance = eureka.getIfAvailable();
+        try {
+            if (onStartup) {
+                run();
+            }
+        } finally {
+            if (instance != null) {
+                instance.setInstanceStatus(InstanceStatus.UP);
+            }
+        }
+    }
+
+    /**
+     * Repite las consultas más frecuentes y devuelve el resumen, o null si ya hay otra ejecución en curso
+     */
+    public Map<String, Object> run() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            List<HotQuery> queries = hotQueries.top(topN);
+            LongAdder replayed = new LongAdder();
+            LongAdder failed = new LongAdder();
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+
+            ExecutorService pool = Executors.newFixedThreadPool(concurrency, r -> {
+                Thread thread = new Thread(r, "warmup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int round = 0; round < rounds; round++) {
+                for (HotQuery query : queries) {
+                    pool.execute(() -> {
+                        if (System.nanoTime() > deadline) {
+                            return;
+                        }
+                        try {
+                            replay(query);
+                            replayed.increment();
+                        } catch (Exception e) {
+                            failed.increment();
+                            log.debug("Warmup query {} failed: {}", query.getKey(), e.getMessage());
+                        }
+                    });
+                }
+            }
+            pool.shutdown();
+            boolean completed;
+            try {
+                completed = pool.awaitTermination(maxMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completed = false;
+            }
+            if (!completed) {
+                pool.shutdownNow();
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("queries", queries.size());
+            result.put("rounds", rounds);
+            result.put("replayed", replayed.sum());
+            result.put("failed", failed.sum());
+            result.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            result.put("timedOut", System.nanoTime() > deadline);
+            lastRun = result;
+            log.info("Warmup finished: {}", result);
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("tracked", hotQueries.tracked());
+        stats.put("lastRun", lastRun);
+        stats.put("top", hotQueries.top(20));
+        return stats;
+    }
+
+    private void replay(HotQuery query) {
+        Endpoint endpoint = Endpoint.ofKey(query.getEndpoint());
+        if (endpoint == null) {
+            return;
+        }
+        Map<String, String> p = query.getParams();
+        RequestContext.callWith(new RequestContext(endpoint, budgets.defaultMillis(endpoint), true), () -> {
+            switch (endpoint) {
+                case SEARCH:
+                    return search.searchFullText(p.get("q"), p.getOrDefault("fuzziness", "AUTO"), p.getOrDefault("page", "1"));
+                case ADVANCED:
+                    return search.advancedSearch(p.get("q"), p.get("category"), p.get("manufacturer"),
+                            p.get("minPrice"), p.get("maxPrice"), p.getOrDefault("page", "1"));
+                case SUGGEST:
+                    return search.getAutocompleteSuggestions(p.get("q"), Integer.parseInt(p.getOrDefault("limit", "5")));
+                case FACETS:
+                    return search.getFacets(p.get("q"), p.get("category"), p.get("manufacturer"));
+                default:
+                    return null;
+            }
+        });
+    }
+}
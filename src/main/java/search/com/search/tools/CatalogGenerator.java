@@ -0,0 +1,243 @@
+package search.com.search.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.dto.ItemsDto;
+
+/**
+ * Catálogo sintético y determinista para pruebas a escala.
+ *
+ * El item i depende solo de la semilla y de i, así que dos ejecuciones con la misma semilla generan
+ * exactamente los mismos documentos (con el mismo id) y se pueden generar en paralelo o por tramos.
+ * Categorías y fabricantes siguen una distribución Zipf (unas pocas concentran la mayoría de items),
+ * con un ranking de fabricantes distinto por categoría. Los precios son log-normales con una mediana
+ * propia de cada categoría, de forma que se reparten por todos los rangos de precio de /v1/facets.
+ * Los nombres comparten prefijos (familia + serie + modelo) para que el autocompletado tenga que
+ * elegir entre muchos candidatos.
+ */
+@Slf4j
+public class CatalogGenerator {
+
+    private static final double ZIPF_EXPONENT = 1.1;
+    private static final double PRICE_SIGMA = 0.7;
+    private static final int MAX_STOCK = 500;
+
+    // Categoría, mediana de precio y familias de producto
+    private static final String[][] CATEGORIES = {
+            { "Electronics", "350", "Smartphone", "Tablet", "Smartwatch", "Earbuds" },
+            { "Computers", "900", "Laptop", "Desktop", "Monitor", "Keyboard" },
+            { "Home", "60", "Lamp", "Cushion", "Curtain", "Rug" },
+            { "Kitchen", "45", "Blender", "Toaster", "Kettle", "Frying Pan" },
+            { "Appliances", "600", "Refrigerator", "Washing Machine", "Dishwasher", "Microwave" },
+            { "Sports", "80", "Running Shoes", "Yoga Mat", "Dumbbell", "Bicycle" },
+            { "Toys", "30", "Puzzle", "Building Blocks", "Doll", "Board Game" },
+            { "Books", "18", "Novel", "Cookbook", "Comic", "Travel Guide" },
+            { "Fashion", "55", "Jacket", "Sneakers", "Backpack", "Sunglasses" },
+            { "Beauty", "25", "Shampoo", "Perfume", "Face Cream", "Hair Dryer" },
+            { "Garden", "70", "Lawn Mower", "Hose", "Planter", "Grill" },
+            { "Automotive", "120", "Car Charger", "Dash Cam", "Tire Inflator", "Seat Cover" },
+            { "Gaming", "400", "Console", "Controller", "Gaming Headset", "Gaming Chair" },
+            { "Audio", "250", "Speaker", "Soundbar", "Headphones", "Turntable" },
+            { "Photography", "1100", "Camera", "Lens", "Tripod", "Drone" },
+            { "Office", "35", "Desk Chair", "Notebook", "Printer", "Shredder" },
+            { "Pets", "28", "Dog Bed", "Cat Tree", "Pet Feeder", "Leash" },
+            { "Health", "40", "Thermometer", "Scale", "Massager", "Blood Pressure Monitor" },
+            { "Tools", "95", "Drill", "Screwdriver Set", "Saw", "Tool Box" },
+            { "Luxury", "2600", "Watch", "Handbag", "Necklace", "Fountain Pen" },
+    };
+
+    private static final String[] MANUFACTURERS = {
+            "Apple", "Samsung", "Sony", "LG", "Lenovo", "HP", "Dell", "Asus", "Acer", "Xiaomi",
+            "Philips", "Bosch", "Siemens", "Whirlpool", "Nike", "Adidas", "Puma", "Lego", "Hasbro", "Mattel",
+            "Penguin", "HarperCollins", "Zara", "Levi's", "L'Oreal", "Nivea", "Dyson", "Black+Decker", "Makita", "DeWalt",
+            "Garmin", "Bose", "JBL", "Canon", "Nikon", "Fujifilm", "DJI", "Logitech", "Razer", "Microsoft",
+            "Nintendo", "Panasonic", "Toshiba", "Braun", "Tefal", "Moulinex", "Kenwood", "Decathlon", "Ikea", "Casio",
+            "Rolex", "Omega", "Gucci", "Prada", "Montblanc", "Michelin", "Bosch Automotive", "Purina", "Omron", "Stanley",
+    };
+
+    private static final String[] SERIES = {
+            "Pro", "Max", "Lite", "Air", "Ultra", "Neo", "Prime", "Plus", "Mini", "Edge",
+            "Nova", "Classic", "Sport", "Studio", "Go", "One", "X", "S", "Elite", "Core",
+    };
+
+    private static final String[] COLORS = {
+            "Black", "White", "Silver", "Gray", "Blue", "Red", "Green", "Gold", "Pink", "Beige",
+    };
+
+    private final long seed;
+    private final double[] categoryCdf = zipfCdf(CATEGORIES.length);
+    private final double[] manufacturerCdf = zipfCdf(MANUFACTURERS.length);
+    private final double[] familyCdf = zipfCdf(CATEGORIES[0].length - 2);
+    private final double[] seriesCdf = zipfCdf(SERIES.length);
+    private final int[][] manufacturerRanks = new int[CATEGORIES.length][];
+
+    public CatalogGenerator(long seed) {
+        this.seed = seed;
+        // Ranking de fabricantes propio de cada categoría (fijo para la semilla)
+        Random random = new Random(seed);
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            int[] ranks = new int[MANUFACTURERS.length];
+            for (int i = 0; i < ranks.length; i++) {
+                ranks[i] = i;
+            }
+            for (int i = ranks.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = ranks[i];
+                ranks[i] = ranks[j];
+                ranks[j] = tmp;
+            }
+            manufacturerRanks[c] = ranks;
+        }
+    }
+
+    /**
+     * Item número index del catálogo
+     */
+    public ItemsDto item(long index) {
+        SplittableRandom random = randomFor(index);
+        int category = zipf(categoryCdf, random);
+        String[] definition = CATEGORIES[category];
+        String manufacturer = MANUFACTURERS[manufacturerRanks[category][zipf(manufacturerCdf, random)]];
+
+        // Familias y series repartidas también con sesgo: muchos nombres empiezan igual
+        String family = definition[2 + zipf(familyCdf, random)];
+        String series = SERIES[zipf(seriesCdf, random)];
+        int model = 1 + (int) Math.floor(Math.pow(random.nextDouble(), 2) * 30);
+
+        double median = Double.parseDouble(definition[1]);
+        double price = Math.exp(Math.log(median) + PRICE_SIGMA * gaussian(random));
+        price = Math.max(1, Math.round(price * 100) / 100.0);
+
+        return ItemsDto.builder()
+                .id(String.format("gen-%d-%d", seed, index))
+                .product(manufacturer + " " + family + " " + series + " " + model)
+                .color(COLORS[random.nextInt(COLORS.length)])
+                .category(definition[0])
+                .manufacturer(manufacturer)
+                .price(price)
+                .total(random.nextInt(MAX_STOCK + 1))
+                .build();
+    }
+
+    /**
+     * Escribe los items [0, count) como NDJSON, el formato que acepta la herramienta import
+     */
+    public void writeItems(Path file, long count) throws IOException {
+        ObjectMapper json = new ObjectMapper();
+        long start = System.nanoTime();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < count; i++) {
+                writer.write(json.writeValueAsString(item(i)));
+                writer.newLine();
+                if ((i + 1) % 1_000_000 == 0) {
+                    log.info("Generated {} items ({} items/s)", i + 1, (long) ((i + 1) / ((System.nanoTime() - start) / 1e9)));
+                }
+            }
+        }
+        log.info("Wrote {} items to {}", count, file);
+    }
+
+    /**
+     * Escribe count consultas sobre el catálogo generado, una por línea: {"scenario": ..., "path": ...}.
+     * Un 30% de las búsquedas de texto llevan una errata. El generador de carga las acepta con --workload.
+     */
+    public void writeWorkload(Path file, long catalogSize, long count) throws IOException {
+        ObjectMapper json = new ObjectMapper();
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        Random typos = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < count; i++) {
+                // Las consultas se sacan de items reales del catálogo, con más peso para los primeros
+                ItemsDto item = item((long) (Math.pow(random.nextDouble(), 3) * catalogSize));
+                String[] words = item.getProduct().split(" ");
+                String scenario;
+                String path;
+                int pick = random.nextInt(100);
+                if (pick < 40) {
+                    String text = String.join(" ", Arrays.copyOfRange(words, 1, words.length));
+                    scenario = "suggest";
+                    path = "/v1/suggest?q=" + encode(text.substring(0, 1 + random.nextInt(Math.min(text.length(), 12))).trim()) + "&limit=5";
+                } else if (pick < 65) {
+                    String text = words[1] + (words.length > 3 ? " " + words[2] : "");
+                    if (random.nextInt(10) < 3) {
+                        text = LoadScenario.typo(text, typos);
+                    }
+                    scenario = "search";
+                    path = "/v1/search?q=" + encode(text);
+                } else if (pick < 85) {
+                    scenario = "advanced";
+                    path = "/v1/search/advanced?category=" + encode(item.getCategory())
+                            + (random.nextBoolean() ? "&manufacturer=" + encode(item.getManufacturer()) : "")
+                            + (random.nextBoolean()
+                                    ? "&minPrice=" + (long) (item.getPrice() * 0.5) + "&maxPrice=" + ((long) (item.getPrice() * 1.5) + 1)
+                                    : "");
+                } else {
+                    scenario = "facets";
+                    path = random.nextBoolean() ? "/v1/facets" : "/v1/facets?category=" + encode(item.getCategory());
+                }
+
+                Map<String, String> line = new LinkedHashMap<>();
+                line.put("scenario", scenario);
+                line.put("path", path);
+                writer.write(json.writeValueAsString(line));
+                writer.newLine();
+            }
+        }
+        log.info("Wrote {} queries to {}", count, file);
+    }
+
+    private SplittableRandom randomFor(long index) {
+        // Mezcla de semilla e índice (constante de SplitMix64) para que items contiguos no se parezcan
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+    }
+
+    private static double[] zipfCdf(int n) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 1; k <= n; k++) {
+            sum += 1 / Math.pow(k, ZIPF_EXPONENT);
+            cdf[k - 1] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int zipf(double[] cdf, SplittableRandom random) {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,43 @@
+package search.com.search.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser mínimo de una línea CSV (RFC 4180): separador coma, campos entre comillas dobles
+ * y comillas escapadas duplicándolas. No admite saltos de línea dentro de un campo.
+ */
+final class CsvLine {
+
+    private CsvLine() {
+    }
+
+    static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,274 @@
+package search.com.search.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.federation.ClusterBackend;
+import search.com.search.federation.FederatedSearch;
+import search.com.search.model.consts.Consts;
+import search.com.search.model.dto.ItemsDto;
+import search.com.search.service.FacetCounters;
+
+/**
+ * Mide cómo escala la búsqueda federada con el número de clústeres, sin Elasticsearch.
+ *
+ * Cada clúster es un servidor HTTP local que contesta a _search como lo haría Elasticsearch: una
+ * parte del catálogo de CatalogGenerator (docs items, con su propia semilla), los hits que pida la
+ * petición con scores decrecientes y las agregaciones de /v1/facets calculadas sobre esos items. Cada
+ * respuesta tarda latency-ms más una cola exponencial, y una fracción slow-fraction tarda slow-ms (por
+ * encima de timeout-ms), para ver las respuestas parciales.
+ *
+ * Por cada número de clústeres informa de latencia p50/p99, búsquedas por segundo y porcentaje de
+ * respuestas parciales. Que la respuesta combinada sea correcta lo comprueba ResponseMergerTest.
+ */
+@Slf4j
+public class FederationBenchmark {
+
+    private static final String INDEX = "items";
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final int docs;
+    private final long latencyMillis;
+    private final double slowFraction;
+    private final long slowMillis;
+    private final long timeoutMillis;
+
+    public FederationBenchmark(int docs, long latencyMillis, double slowFraction, long slowMillis, long timeoutMillis) {
+        this.docs = docs;
+        this.latencyMillis = latencyMillis;
+        this.slowFraction = slowFraction;
+        this.slowMillis = slowMillis;
+        this.timeoutMillis = timeoutMillis;
+        // Sin TCP_NODELAY el servidor HTTP del JDK suma ~40 ms por respuesta (Nagle + ACK retrasado)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public void run(List<Integer> clusterCounts, int searches, int concurrency) throws Exception {
+        for (int clusters : clusterCounts) {
+            List<StandIn> standIns = new ArrayList<>();
+            List<ClusterBackend> backends = new ArrayList<>();
+            for (int i = 0; i < clusters; i++) {
+                StandIn standIn = new StandIn(i);
+                standIns.add(standIn);
+                backends.add(ClusterBackend.remote("standin-" + i, "http://127.0.0.1:" + standIn.port(),
+                        null, null, INDEX, timeoutMillis));
+            }
+            FederatedSearch federation = new FederatedSearch(backends);
+            try {
+                measure(clusters, federation, searches, concurrency);
+            } finally {
+                federation.close();
+                standIns.forEach(StandIn::stop);
+            }
+        }
+    }
+
+    private void measure(int clusters, FederatedSearch federation, int searches, int concurrency)
+            throws InterruptedException {
+        long[] latencies = new long[searches];
+        AtomicInteger next = new AtomicInteger();
+        LongAdder partial = new LongAdder();
+        LongAdder failed = new LongAdder();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            pool.execute(() -> {
+                int n;
+                while ((n = next.getAndIncrement()) < searches) {
+                    long searchStart = System.nanoTime();
+                    try {
+                        SearchResponse response = federation.search(request(), TimeUnit.SECONDS.toNanos(10));
+                        latencies[n] = System.nanoTime() - searchStart;
+                        if (response.isTimedOut()) {
+                            partial.increment();
+                        }
+                    } catch (Exception e) {
+                        latencies[n] = System.nanoTime() - searchStart;
+                        failed.increment();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        log.info("clusters={} searches={} p50={} ms p99={} ms {} searches/s partial={}% failed={}",
+                clusters, searches, millis(latencies, 0.50), millis(latencies, 0.99), (long) (searches / seconds),
+                String.format("%.1f", partial.sum() * 100.0 / searches), failed.sum());
+    }
+
+    private static SearchRequest request() {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .from(0)
+                .size(10)
+                .aggregation(AggregationBuilders.terms("categories").field(Consts.CATEGORY).size(50))
+                .aggregation(FacetCounters.priceRanges())
+                .aggregation(AggregationBuilders.stats("price_stats").field(Consts.PRICE));
+        return new SearchRequest(INDEX).source(source);
+    }
+
+    private static long millis(long[] sorted, double percentile) {
+        return TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)]);
+    }
+
+    /**
+     * Clúster de mentira: contesta a POST /items/_search con hits y agregaciones de su parte del catálogo
+     */
+    private class StandIn {
+
+        private final HttpServer server;
+        private final List<ItemsDto> items = new ArrayList<>();
+        private final Map<String, Long> categories = new TreeMap<>();
+        private final byte[] aggregations;
+
+        StandIn(int number) throws IOException {
+            CatalogGenerator generator = new CatalogGenerator(1000 + number);
+            for (int i = 0; i < docs; i++) {
+                items.add(generator.item(i));
+            }
+            this.aggregations = aggregations();
+
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "standin-" + number);
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.createContext("/", exchange -> {
+                try {
+                    JsonNode body = json.readTree(exchange.getRequestBody());
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long delay = random.nextDouble() < slowFraction
+                            ? slowMillis
+                            : latencyMillis + (long) (-Math.log(1 - random.nextDouble()) * latencyMillis / 2);
+                    Thread.sleep(delay);
+
+                    byte[] response = response(body.path("size").asInt(10), body.has("aggregations"), delay);
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    // El cliente cancela las peticiones que superan su timeout
+                } finally {
+                    exchange.close();
+                }
+            });
+            server.start();
+        }
+
+        int port() {
+            return server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private byte[] response(int size, boolean withAggregations, long took) throws IOException {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("took", took);
+            response.put("timed_out", false);
+            response.put("_shards", Map.of("total", 1, "successful", 1, "skipped", 0, "failed", 0));
+            List<Map<String, Object>> hits = new ArrayList<>();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            float score = 10 * (float) random.nextDouble();
+            for (int i = 0; i < Math.min(size, items.size()); i++) {
+                ItemsDto item = items.get(random.nextInt(items.size()));
+                Map<String, Object> hit = new LinkedHashMap<>();
+                hit.put("_index", INDEX);
+                hit.put("_type", "_doc");
+                hit.put("_id", item.getId());
+                hit.put("_score", score);
+                hit.put("_source", item);
+                hits.add(hit);
+                score *= (float) random.nextDouble();
+            }
+            response.put("hits", Map.of("total", Map.of("value", items.size(), "relation", "eq"),
+                    "max_score", hits.isEmpty() ? 0 : hits.get(0).get("_score"), "hits", hits));
+
+            byte[] head = json.writeValueAsBytes(response);
+            if (!withAggregations) {
+                return head;
+            }
+            // Agregaciones precalculadas, añadidas al final del objeto
+            byte[] tail = (",\"aggregations\":" + new String(aggregations, StandardCharsets.UTF_8) + "}").getBytes(StandardCharsets.UTF_8);
+            byte[] out = Arrays.copyOf(head, head.length - 1 + tail.length);
+            System.arraycopy(tail, 0, out, head.length - 1, tail.length);
+            return out;
+        }
+
+        private byte[] aggregations() throws IOException {
+            String[] keys = FacetCounters.BAND_KEYS;
+            long[] bands = new long[keys.length];
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (ItemsDto item : items) {
+                categories.merge(item.getCategory(), 1L, Long::sum);
+                bands[FacetCounters.bandOf(item.getPrice())]++;
+                sum += item.getPrice();
+                min = Math.min(min, item.getPrice());
+                max = Math.max(max, item.getPrice());
+            }
+
+            List<Map<String, Object>> categoryBuckets = new ArrayList<>();
+            categories.entrySet().stream()
+                    .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+                    .forEach(entry -> categoryBuckets.add(Map.of("key", entry.getKey(), "doc_count", entry.getValue())));
+            List<Map<String, Object>> rangeBuckets = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                Map<String, Object> bucket = new LinkedHashMap<>();
+                bucket.put("key", keys[i]);
+                if (FacetCounters.BAND_FROM[i] != null) {
+                    bucket.put("from", FacetCounters.BAND_FROM[i]);
+                }
+                if (FacetCounters.BAND_TO[i] != null) {
+                    bucket.put("to", FacetCounters.BAND_TO[i]);
+                }
+                bucket.put("doc_count", bands[i]);
+                rangeBuckets.add(bucket);
+            }
+
+            // Claves con tipo (typed_keys), como las pide el cliente de alto nivel
+            Map<String, Object> aggregations = new LinkedHashMap<>();
+            aggregations.put("sterms#categories", Map.of("doc_count_error_upper_bound", 0, "sum_other_doc_count", 0,
+                    "buckets", categoryBuckets));
+            aggregations.put("range#price_ranges", Map.of("buckets", rangeBuckets));
+            aggregations.put("stats#price_stats", Map.of("count", items.size(), "min", min, "max", max,
+                    "avg", sum / items.size(), "sum", sum));
+            return json.writeValueAsBytes(aggregations);
+        }
+    }
+}
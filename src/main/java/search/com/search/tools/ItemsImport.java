@@ -0,0 +1,398 @@
+package search.com.search.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.model.dto.ItemsDto;
+import search.com.search.model.entities.Items;
+import search.com.search.repository.ItemsRouting;
+import search.com.search.service.ItemsMapper;
+
+/**
+ * Importación masiva de un catálogo CSV o NDJSON al índice 'items'.
+ *
+ * Uso: java -jar search.jar import &lt;fichero&gt; [--format=csv|ndjson] [--workers=4] [--batch=1000]
+ *
+ * El fichero se lee en streaming y se corta en lotes de líneas; cada lote se valida con las mismas
+ * reglas que POST /v1/items (ItemsMapper) y se envía como _bulk, con varios lotes en paralelo.
+ * Mientras dura la carga el índice queda con refresh_interval=-1 y 0 réplicas, y al terminar se
+ * restauran los valores originales. El avance se guarda en &lt;fichero&gt;.checkpoint: al relanzar
+ * se continúa desde la última línea confirmada. Los ids que no vienen en el fichero se derivan del
+ * nombre del fichero y el número de línea, así que reimportar un lote no duplica documentos.
+ */
+@Slf4j
+public class ItemsImport {
+
+    private static final String INDEX = "items";
+    private static final int MAX_RETRIES = 5;
+
+    private final RestHighLevelClient client;
+    private final ElasticsearchOperations operations;
+    private final ItemsMapper mapper;
+    private final ItemsRouting routing;
+    private final ObjectMapper json = new ObjectMapper();
+
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicBoolean failedBatches = new AtomicBoolean();
+
+    // Lotes terminados pendientes de que se confirmen los anteriores (línea inicial -> final)
+    private final TreeMap<Long, Long> completed = new TreeMap<>();
+    private long confirmedLine;
+
+    public ItemsImport(RestHighLevelClient client, ElasticsearchOperations operations, ItemsMapper mapper,
+                       ItemsRouting routing) {
+        this.client = client;
+        this.operations = operations;
+        this.mapper = mapper;
+        this.routing = routing;
+    }
+
+    public void run(Path file, String format, int workers, int batchSize) throws Exception {
+        Path checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        Properties checkpoint = loadCheckpoint(checkpointFile);
+        confirmedLine = Long.parseLong(checkpoint.getProperty("line", "0"));
+        if (confirmedLine > 0) {
+            log.info("Resuming import of {} after line {}", file, confirmedLine);
+        }
+
+        // Los ajustes originales se guardan en el checkpoint para poder restaurarlos aunque la carga se corte
+        if (!checkpoint.containsKey("refresh_interval")) {
+            Map<String, String> original = readSettings();
+            checkpoint.setProperty("refresh_interval", original.get("refresh_interval"));
+            checkpoint.setProperty("number_of_replicas", original.get("number_of_replicas"));
+            saveCheckpoint(checkpointFile, checkpoint);
+        }
+        putSettings("-1", "0");
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Semaphore inflight = new Semaphore(workers * 2);
+        long start = System.nanoTime();
+        Thread progress = progressReporter(start);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            boolean csv = "csv".equalsIgnoreCase(format);
+            String[] header = null;
+            String line;
+            long lineNumber = 0;
+            long batchStart = 0;
+            List<String> batch = new ArrayList<>(batchSize);
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (csv && header == null) {
+                    header = CsvLine.parse(line).toArray(new String[0]);
+                    markCompleted(lineNumber, lineNumber, checkpointFile, checkpoint);
+                    continue;
+                }
+                if (lineNumber <= confirmedLine) {
+                    continue;
+                }
+                if (batch.isEmpty()) {
+                    batchStart = lineNumber;
+                }
+                batch.add(line);
+
+                if (batch.size() == batchSize) {
+                    submit(pool, inflight, new ArrayList<>(batch), batchStart, header, file, checkpointFile, checkpoint);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(pool, inflight, batch, batchStart, header, file, checkpointFile, checkpoint);
+            }
+
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            progress.interrupt();
+            putSettings(checkpoint.getProperty("refresh_interval"), checkpoint.getProperty("number_of_replicas"));
+            client.getLowLevelClient().performRequest(new Request("POST", "/" + INDEX + "/_refresh"));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("Import finished: {} documents in {} s ({} docs/s), {} rejected",
+                imported.get(), String.format("%.1f", seconds), (long) (imported.get() / Math.max(seconds, 0.001)),
+                rejected.get());
+        if (failedBatches.get()) {
+            throw new IllegalStateException("Some batches failed; run the import again to resume after line " + confirmedLine);
+        }
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    /**
+     * Carga los items [0, count) que devuelve source, sin fichero ni checkpoint: se usa para catálogos
+     * generados, cuyos ids son deterministas, así que relanzar solo sobrescribe lo ya cargado.
+     */
+    public void run(long count, LongFunction<ItemsDto> source, int workers, int batchSize) throws Exception {
+        Map<String, String> original = readSettings();
+        putSettings("-1", "0");
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Semaphore inflight = new Semaphore(workers * 2);
+        long start = System.nanoTime();
+        Thread progress = progressReporter(start);
+        try {
+            for (long first = 0; first < count; first += batchSize) {
+                long from = first;
+                long to = Math.min(count, first + batchSize);
+                inflight.acquire();
+                pool.execute(() -> {
+                    try {
+                        BulkRequest bulk = new BulkRequest();
+                        for (long i = from; i < to; i++) {
+                            ItemsDto dto = source.apply(i);
+                            bulk.add(indexRequest(dto, dto.getId()));
+                        }
+                        send(bulk);
+                    } catch (Exception e) {
+                        failedBatches.set(true);
+                        log.error("Batch starting at item {} failed", from, e);
+                    } finally {
+                        inflight.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            progress.interrupt();
+            putSettings(original.get("refresh_interval"), original.get("number_of_replicas"));
+            client.getLowLevelClient().performRequest(new Request("POST", "/" + INDEX + "/_refresh"));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("Load finished: {} documents in {} s ({} docs/s), {} rejected",
+                imported.get(), String.format("%.1f", seconds), (long) (imported.get() / Math.max(seconds, 0.001)),
+                rejected.get());
+        if (failedBatches.get()) {
+            throw new IllegalStateException("Some batches failed; run it again to complete the load");
+        }
+    }
+
+    private void submit(ExecutorService pool, Semaphore inflight, List<String> lines, long firstLine, String[] header,
+                        Path file, Path checkpointFile, Properties checkpoint) throws InterruptedException {
+        inflight.acquire();
+        pool.execute(() -> {
+            try {
+                BulkRequest bulk = new BulkRequest();
+                for (int i = 0; i < lines.size(); i++) {
+                    long lineNumber = firstLine + i;
+                    IndexRequest request = parse(lines.get(i), header, file, lineNumber);
+                    if (request != null) {
+                        bulk.add(request);
+                    }
+                }
+                if (bulk.numberOfActions() > 0) {
+                    send(bulk);
+                }
+                markCompleted(firstLine, firstLine + lines.size() - 1, checkpointFile, checkpoint);
+            } catch (Exception e) {
+                // El lote no se confirma: el checkpoint no pasa de aquí y se reintentará al relanzar
+                failedBatches.set(true);
+                log.error("Batch starting at line {} failed", firstLine, e);
+            } finally {
+                inflight.release();
+            }
+        });
+    }
+
+    private IndexRequest parse(String line, String[] header, Path file, long lineNumber) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            ItemsDto dto;
+            if (header != null) {
+                List<String> values = CsvLine.parse(line);
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < header.length && i < values.size(); i++) {
+                    row.put(header[i].trim(), values.get(i));
+                }
+                dto = ItemsDto.builder()
+                        .id(row.get("id"))
+                        .product(row.get("product"))
+                        .color(row.get("color"))
+                        .category(row.get("category"))
+                        .manufacturer(row.get("manufacturer"))
+                        .price(row.get("price") != null && !row.get("price").isBlank() ? Double.valueOf(row.get("price")) : null)
+                        .total(row.get("total") != null && !row.get("total").isBlank() ? Integer.valueOf(row.get("total")) : null)
+                        .build();
+            } else {
+                dto = json.readValue(line, ItemsDto.class);
+            }
+
+            if (!mapper.isValid(dto)) {
+                reject(lineNumber, "missing required fields");
+                return null;
+            }
+            String id = dto.getId() != null && !dto.getId().isBlank()
+                    ? dto.getId().trim()
+                    : UUID.nameUUIDFromBytes((file.getFileName() + ":" + lineNumber).getBytes(StandardCharsets.UTF_8)).toString();
+            return indexRequest(dto, id);
+        } catch (Exception e) {
+            reject(lineNumber, e.getMessage());
+            return null;
+        }
+    }
+
+    private IndexRequest indexRequest(ItemsDto dto, String id) {
+        Items item = mapper.toItem(dto, id);
+        return new IndexRequest(INDEX)
+                .id(id)
+                .routing(routing.forCategory(item.getCategory()))
+                .source(operations.getElasticsearchConverter().mapObject(item).toJson(), XContentType.JSON);
+    }
+
+    private void send(BulkRequest bulk) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            BulkResponse response = client.bulk(bulk, RequestOptions.DEFAULT);
+            BulkRequest retry = new BulkRequest();
+            for (BulkItemResponse item : response.getItems()) {
+                if (!item.isFailed()) {
+                    imported.incrementAndGet();
+                } else if (item.status() == RestStatus.TOO_MANY_REQUESTS && attempt < MAX_RETRIES) {
+                    retry.add(bulk.requests().get(item.getItemId()));
+                } else {
+                    rejected.incrementAndGet();
+                    log.warn("Document {} rejected: {}", item.getId(), item.getFailureMessage());
+                }
+            }
+            if (retry.numberOfActions() == 0) {
+                return;
+            }
+            // El clúster está saturado: se espera con backoff exponencial y se reenvía solo lo rechazado
+            Thread.sleep(200L << attempt);
+            bulk = retry;
+        }
+    }
+
+    private void reject(long lineNumber, String reason) {
+        rejected.incrementAndGet();
+        log.warn("Line {} skipped: {}", lineNumber, reason);
+    }
+
+    /**
+     * Avanza el checkpoint hasta la última línea cuyos lotes anteriores están todos confirmados
+     */
+    private synchronized void markCompleted(long firstLine, long lastLine, Path checkpointFile, Properties checkpoint) {
+        completed.put(firstLine, lastLine);
+        boolean advanced = false;
+        while (!completed.isEmpty() && completed.firstKey() <= confirmedLine + 1) {
+            confirmedLine = Math.max(confirmedLine, completed.pollFirstEntry().getValue());
+            advanced = true;
+        }
+        if (advanced) {
+            checkpoint.setProperty("line", Long.toString(confirmedLine));
+            try {
+                saveCheckpoint(checkpointFile, checkpoint);
+            } catch (IOException e) {
+                log.warn("Could not save import checkpoint", e);
+            }
+        }
+    }
+
+    private Thread progressReporter(long start) {
+        Thread thread = new Thread(() -> {
+            long last = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long now = imported.get();
+                log.info("Imported {} documents ({} docs/s, {} docs/s overall), {} rejected",
+                        now, (now - last) / 5, (long) (now / ((System.nanoTime() - start) / 1e9)), rejected.get());
+                last = now;
+            }
+        }, "import-progress");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private Map<String, String> readSettings() throws IOException {
+        Request request = new Request("GET", "/" + INDEX + "/_settings");
+        request.addParameter("include_defaults", "true");
+        request.addParameter("flat_settings", "true");
+        Response response = client.getLowLevelClient().performRequest(request);
+
+        JsonNode settings;
+        try (InputStream body = response.getEntity().getContent()) {
+            // 'items' puede ser un alias: la respuesta viene con el nombre del índice concreto
+            JsonNode byIndex = json.readTree(body);
+            settings = byIndex.elements().hasNext() ? byIndex.elements().next() : MissingNode.getInstance();
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String key : new String[] { "refresh_interval", "number_of_replicas" }) {
+            JsonNode value = settings.path("settings").path("index." + key);
+            if (value.isMissingNode()) {
+                value = settings.path("defaults").path("index." + key);
+            }
+            values.put(key, value.asText());
+        }
+        return values;
+    }
+
+    private void putSettings(String refreshInterval, String replicas) throws IOException {
+        Request request = new Request("PUT", "/" + INDEX + "/_settings");
+        request.setJsonEntity("{\"index\":{\"refresh_interval\":\"" + refreshInterval
+                + "\",\"number_of_replicas\":" + replicas + "}}");
+        client.getLowLevelClient().performRequest(request);
+    }
+
+    private static Properties loadCheckpoint(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    private static void saveCheckpoint(Path file, Properties properties) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var writer = Files.newBufferedWriter(tmp)) {
+            properties.store(writer, "items import checkpoint");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,520 @@
+package search.com.search.tools;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generador de carga HTTP contra cualquier instancia del servicio.
+ *
+ * Uso: java -jar search.jar loadgen --target=http://localhost:8081 --rates=50,100,200 [--duration=60]
+ *      [--warmup=10] [--mix=suggest:40,search:25,advanced:15,facets:15,stock:5] [--slo-ms=250]
+ *      [--report=loadgen.json] [--baseline=anterior.json]
+ *
+ * Modelo abierto: las peticiones se lanzan a un ritmo fijo (--rates, peticiones/s) sin esperar a que
+ * terminen las anteriores, como llegan los usuarios reales. La latencia se mide desde el instante en
+ * que la petición debía salir, no desde que salió, así que si el servicio (o el propio generador) se
+ * retrasa, ese retraso cuenta para todas las peticiones afectadas (corrección de coordinated omission).
+ * Por cada escalón de ritmo se guarda un histograma HDR por escenario; la carga se detiene en el
+ * primer escalón que no cumple el objetivo (p99 por encima de --slo-ms, más de un 1% de errores o un
+ * ritmo conseguido por debajo del 95% del pedido), y el anterior es el throughput máximo.
+ *
+ * El informe JSON se puede pasar como --baseline en la siguiente ejecución para comparar versiones.
+ * Con --workload se repiten las consultas de un fichero generado con la herramienta generate.
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(2);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double MAX_ERROR_RATE = 0.01;
+    private static final double MIN_ACHIEVED_RATIO = 0.95;
+
+    private final URI target;
+    private final Map<LoadScenario, Integer> mix;
+    private final Random random;
+    private final Duration timeout;
+    private final int maxInFlight;
+    private final HttpClient http;
+    private final ObjectMapper json = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final Map<LoadScenario, List<String>> workload = new EnumMap<>(LoadScenario.class);
+
+    public LoadGenerator(URI target, Map<LoadScenario, Integer> mix, long seed, Duration timeout, int maxInFlight) {
+        this.target = target;
+        this.mix = mix;
+        this.random = new Random(seed);
+        this.timeout = timeout;
+        this.maxInFlight = maxInFlight;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "loadgen-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.http = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Mezcla de escenarios en formato "suggest:40,search:25,..." (pesos relativos)
+     */
+    public static Map<LoadScenario, Integer> parseMix(String value) {
+        Map<LoadScenario, Integer> mix = new EnumMap<>(LoadScenario.class);
+        for (String part : value.split(",")) {
+            String[] entry = part.split(":");
+            int weight = entry.length > 1 ? Integer.parseInt(entry[1].trim()) : 1;
+            if (weight > 0) {
+                mix.put(LoadScenario.fromKey(entry[0]), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("Empty scenario mix: " + value);
+        }
+        return mix;
+    }
+
+    /**
+     * Consultas fijas por escenario (fichero de la herramienta generate); los escenarios que no
+     * aparecen en él siguen construyéndose a partir del catálogo
+     */
+    public void loadWorkload(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            lines.filter(line -> !line.isBlank()).forEach(line -> {
+                try {
+                    JsonNode query = json.readTree(line);
+                    workload.computeIfAbsent(LoadScenario.fromKey(query.path("scenario").asText()), k -> new ArrayList<>())
+                            .add(query.path("path").asText());
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Bad workload line: " + line, e);
+                }
+            });
+        }
+        log.info("Workload loaded from {}: {} queries", file, workload.values().stream().mapToInt(List::size).sum());
+    }
+
+    public Map<String, Object> run(List<Integer> rates, Duration duration, Duration warmup, double sloMillis,
+                                   Path report, Path baseline) throws IOException, InterruptedException {
+        Catalog catalog = Catalog.load(http, json, target, timeout);
+        log.info("Catalog sampled from {}: {} items, {} categories, {} manufacturers",
+                target, catalog.ids.size(), catalog.categories.size(), catalog.manufacturers.size());
+
+        List<Map<String, Object>> steps = new ArrayList<>();
+        Map<String, Object> maxThroughput = null;
+        for (int rate : rates) {
+            log.info("Running {} req/s for {} s (+{} s warmup)", rate, duration.toSeconds(), warmup.toSeconds());
+            Map<String, Object> step = runStep(catalog, rate, duration, warmup, sloMillis);
+            steps.add(step);
+            printStep(step);
+            if (!(Boolean) step.get("passed")) {
+                log.info("Stopping: {} req/s does not meet the objective", rate);
+                break;
+            }
+            maxThroughput = new LinkedHashMap<>();
+            maxThroughput.put("rate", rate);
+            maxThroughput.put("achievedRate", step.get("achievedRate"));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("target", target.toString());
+        result.put("startedAt", Instant.now().toString());
+        Map<String, Integer> mixOut = new LinkedHashMap<>();
+        mix.forEach((scenario, weight) -> mixOut.put(scenario.key(), weight));
+        result.put("mix", mixOut);
+        result.put("durationSeconds", duration.toSeconds());
+        result.put("sloP99Ms", sloMillis);
+        result.put("maxThroughput", maxThroughput);
+        result.put("steps", steps);
+
+        if (report != null) {
+            json.writeValue(report.toFile(), result);
+            log.info("Report written to {}", report);
+        }
+        if (baseline != null) {
+            compare(json.readTree(baseline.toFile()), json.valueToTree(result));
+        }
+        return result;
+    }
+
+    private Map<String, Object> runStep(Catalog catalog, int rate, Duration duration, Duration warmup,
+                                        double sloMillis) throws InterruptedException {
+        Map<LoadScenario, Stats> stats = new EnumMap<>(LoadScenario.class);
+        mix.keySet().forEach(scenario -> stats.put(scenario, new Stats()));
+        LoadScenario[] wheel = wheel();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Set<Outstanding> outstanding = ConcurrentHashMap.newKeySet();
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            LoadScenario scenario = wheel[random.nextInt(wheel.length)];
+            boolean measured = intended >= measureFrom;
+            Stats scenarioStats = stats.get(scenario);
+            if (!inFlight.tryAcquire()) {
+                // El generador no da más de sí: se cuenta como error, no se espera (sería modelo cerrado)
+                if (measured) {
+                    scenarioStats.overflow.increment();
+                }
+                continue;
+            }
+
+            List<String> paths = workload.get(scenario);
+            HttpRequest request = (paths != null
+                    ? HttpRequest.newBuilder(target.resolve(paths.get(random.nextInt(paths.size())))).GET()
+                    : scenario.request(target, catalog, random))
+                    .timeout(timeout)
+                    .build();
+            long sent = System.nanoTime();
+            Outstanding pending = new Outstanding(scenarioStats, intended, sent);
+            if (measured) {
+                outstanding.add(pending);
+            }
+            http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long done = System.nanoTime();
+                inFlight.release();
+                if (!measured || !pending.settle(outstanding)) {
+                    return;
+                }
+                // Ninguna petición generada espera un 4xx: 400 o 404 son un fallo del escenario, no un acierto
+                if (error != null || response.statusCode() >= 400) {
+                    scenarioStats.errors.increment();
+                } else {
+                    scenarioStats.ok.increment();
+                }
+                scenarioStats.latency.recordValue(Math.min(HIGHEST_MICROS, (done - intended) / 1000));
+                scenarioStats.service.recordValue(Math.min(HIGHEST_MICROS, (done - sent) / 1000));
+            });
+        }
+
+        // Se esperan las peticiones en vuelo antes de cerrar el escalón; las que no terminan a tiempo
+        // cuentan como errores con la latencia de su timeout, y si llegan después ya no se registran
+        if (!inFlight.tryAcquire(maxInFlight, timeout.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+            log.warn("{} requests still in flight at the end of the {} req/s step", outstanding.size(), rate);
+            for (Outstanding pending : new ArrayList<>(outstanding)) {
+                if (pending.settle(outstanding)) {
+                    long done = pending.sent + timeout.toNanos();
+                    pending.stats.errors.increment();
+                    pending.stats.latency.recordValue(Math.min(HIGHEST_MICROS, (done - pending.intended) / 1000));
+                    pending.stats.service.recordValue(Math.min(HIGHEST_MICROS, timeout.toNanos() / 1000));
+                }
+            }
+        }
+        double seconds = duration.toNanos() / 1e9;
+
+        Histogram all = new Histogram(HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+        long ok = 0;
+        long failed = 0;
+        Map<String, Object> scenarios = new LinkedHashMap<>();
+        for (Map.Entry<LoadScenario, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            all.add(s.latency);
+            ok += s.ok.sum();
+            failed += s.errors.sum() + s.overflow.sum();
+            scenarios.put(entry.getKey().key(), s.summary(seconds));
+        }
+
+        double achieved = ok / seconds;
+        double errorRate = ok + failed == 0 ? 0 : (double) failed / (ok + failed);
+        double p99 = millis(all.getValueAtPercentile(99));
+
+        Map<String, Object> step = new LinkedHashMap<>();
+        step.put("rate", rate);
+        step.put("achievedRate", round(achieved));
+        step.put("errorRate", round(errorRate));
+        step.put("passed", p99 <= sloMillis && errorRate <= MAX_ERROR_RATE && achieved >= rate * MIN_ACHIEVED_RATIO);
+        step.put("all", percentiles(all));
+        step.put("scenarios", scenarios);
+        return step;
+    }
+
+    /**
+     * Ruleta con cada escenario repetido tantas veces como su peso
+     */
+    private LoadScenario[] wheel() {
+        List<LoadScenario> wheel = new ArrayList<>();
+        mix.forEach((scenario, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                wheel.add(scenario);
+            }
+        });
+        return wheel.toArray(new LoadScenario[0]);
+    }
+
+    private void printStep(Map<String, Object> step) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%n%d req/s -> %.1f req/s, errors %.2f%%, %s%n", step.get("rate"),
+                step.get("achievedRate"), (Double) step.get("errorRate") * 100,
+                (Boolean) step.get("passed") ? "OK" : "FAILED"));
+        out.append(String.format("%-10s %8s %8s %9s %9s %9s %9s %9s%n",
+                "scenario", "ok", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        printRow(out, "all", null, null, (Map<?, ?>) step.get("all"));
+        ((Map<?, ?>) step.get("scenarios")).forEach((name, value) -> {
+            Map<?, ?> s = (Map<?, ?>) value;
+            printRow(out, (String) name, s.get("ok"), s.get("errors"), (Map<?, ?>) s.get("latency"));
+        });
+        System.out.print(out);
+    }
+
+    private static void printRow(StringBuilder out, String name, Object ok, Object errors, Map<?, ?> latency) {
+        out.append(String.format("%-10s %8s %8s %9.1f %9.1f %9.1f %9.1f %9.1f%n", name,
+                ok != null ? ok : "", errors != null ? errors : "",
+                latency.get("p50"), latency.get("p90"), latency.get("p99"), latency.get("p999"), latency.get("max")));
+    }
+
+    /**
+     * Diferencias con un informe anterior: throughput máximo y p99 de cada escenario en el mismo ritmo
+     */
+    private void compare(JsonNode before, JsonNode after) {
+        StringBuilder out = new StringBuilder(String.format("%nCompared with %s%n", before.path("startedAt").asText()));
+        out.append(String.format("max throughput: %s -> %s req/s%n",
+                before.path("maxThroughput").path("rate").asText("-"), after.path("maxThroughput").path("rate").asText("-")));
+
+        for (JsonNode step : after.path("steps")) {
+            JsonNode previous = null;
+            for (JsonNode candidate : before.path("steps")) {
+                if (candidate.path("rate").asInt() == step.path("rate").asInt()) {
+                    previous = candidate;
+                }
+            }
+            if (previous == null) {
+                continue;
+            }
+            out.append(String.format("%d req/s p99:", step.path("rate").asInt()));
+            appendDelta(out, "all", previous.path("all"), step.path("all"));
+            JsonNode scenarios = step.path("scenarios");
+            JsonNode previousScenarios = previous.path("scenarios");
+            scenarios.fieldNames().forEachRemaining(name -> appendDelta(out, name,
+                    previousScenarios.path(name).path("latency"), scenarios.path(name).path("latency")));
+            out.append(String.format("%n"));
+        }
+        System.out.print(out);
+    }
+
+    private static void appendDelta(StringBuilder out, String name, JsonNode before, JsonNode after) {
+        if (before.isMissingNode() || after.isMissingNode()) {
+            return;
+        }
+        double previous = before.path("p99").asDouble();
+        double current = after.path("p99").asDouble();
+        out.append(String.format(" %s %.1f->%.1f ms (%+.0f%%)", name, previous, current,
+                previous == 0 ? 0 : (current - previous) * 100 / previous));
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("count", histogram.getTotalCount());
+        out.put("p50", millis(histogram.getValueAtPercentile(50)));
+        out.put("p90", millis(histogram.getValueAtPercentile(90)));
+        out.put("p99", millis(histogram.getValueAtPercentile(99)));
+        out.put("p999", millis(histogram.getValueAtPercentile(99.9)));
+        out.put("max", millis(histogram.getMaxValue()));
+        out.put("mean", round(histogram.getMean() / 1000));
+        return out;
+    }
+
+    private static double millis(long micros) {
+        return round(micros / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static class Stats {
+        // Desde el instante programado (corregida) y desde el envío real (solo tiempo de servicio)
+        private final Histogram latency = new ConcurrentHistogram(HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+        private final Histogram service = new ConcurrentHistogram(HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder overflow = new LongAdder();
+
+        Map<String, Object> summary(double seconds) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("ok", ok.sum());
+            out.put("errors", errors.sum());
+            out.put("overflow", overflow.sum());
+            out.put("throughput", round(ok.sum() / seconds));
+            out.put("latency", percentiles(latency));
+            out.put("serviceTime", percentiles(service));
+            return out;
+        }
+    }
+
+    /**
+     * Petición medida aún sin respuesta; la registra quien la liquide primero (su respuesta o el
+     * cierre del escalón)
+     */
+    private static class Outstanding {
+        private final Stats stats;
+        private final long intended;
+        private final long sent;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        Outstanding(Stats stats, long intended, long sent) {
+            this.stats = stats;
+            this.intended = intended;
+            this.sent = sent;
+        }
+
+        boolean settle(Set<Outstanding> outstanding) {
+            if (!settled.compareAndSet(false, true)) {
+                return false;
+            }
+            outstanding.remove(this);
+            return true;
+        }
+    }
+
+    /**
+     * Muestra del catálogo de la instancia, leída con GET /v1/items antes de generar carga
+     */
+    static class Catalog {
+        private static final int PAGES = 5;
+
+        private final List<String> ids = new ArrayList<>();
+        private final List<String> itemCategories = new ArrayList<>();
+        private final List<String> products = new ArrayList<>();
+        private final List<String> categories = new ArrayList<>();
+        private final List<String> manufacturers = new ArrayList<>();
+        private final List<Double> prices = new ArrayList<>();
+
+        // Secuencia de pulsaciones en curso; solo la usa el hilo que programa las peticiones
+        private String typing = "";
+        private int typed;
+        // Par descuento/reposición en curso
+        private int stockDelta = 1;
+        private int stockItem;
+
+        static Catalog load(HttpClient http, ObjectMapper json, URI target, Duration timeout)
+                throws IOException, InterruptedException {
+            Catalog catalog = new Catalog();
+            Set<String> categories = new LinkedHashSet<>();
+            Set<String> manufacturers = new LinkedHashSet<>();
+            for (int page = 1; page <= PAGES; page++) {
+                HttpResponse<String> response = http.send(HttpRequest.newBuilder(target.resolve("/v1/items?page=" + page))
+                        .timeout(timeout).GET().build(), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    throw new IOException("GET /v1/items returned " + response.statusCode());
+                }
+                JsonNode items = json.readTree(response.body()).path("items");
+                if (items.isEmpty()) {
+                    break;
+                }
+                for (JsonNode item : items) {
+                    catalog.ids.add(item.path("id").asText());
+                    catalog.itemCategories.add(item.path("category").asText(null));
+                    if (item.hasNonNull("product")) {
+                        catalog.products.add(item.get("product").asText());
+                    }
+                    if (item.hasNonNull("category")) {
+                        categories.add(item.get("category").asText());
+                    }
+                    if (item.hasNonNull("manufacturer")) {
+                        manufacturers.add(item.get("manufacturer").asText());
+                    }
+                    if (item.hasNonNull("price")) {
+                        catalog.prices.add(item.get("price").asDouble());
+                    }
+                }
+            }
+            if (catalog.ids.isEmpty() || catalog.products.isEmpty() || categories.isEmpty()) {
+                throw new IllegalStateException("The target has no items to build requests from");
+            }
+            catalog.categories.addAll(categories);
+            catalog.manufacturers.addAll(manufacturers.isEmpty() ? categories : manufacturers);
+            if (catalog.prices.isEmpty()) {
+                catalog.prices.add(100.0);
+            }
+            return catalog;
+        }
+
+        String nextKeystroke(Random random) {
+            if (typed >= typing.length()) {
+                typing = product(random).toLowerCase();
+                typed = 0;
+            }
+            typed++;
+            return typing.substring(0, typed);
+        }
+
+        /**
+         * -1 sobre un item al azar y después +1 sobre el mismo, para que cada par deje su stock igual
+         */
+        int nextStockDelta(Random random) {
+            stockDelta = -stockDelta;
+            if (stockDelta < 0) {
+                stockItem = random.nextInt(ids.size());
+            }
+            return stockDelta;
+        }
+
+        String stockItemId() {
+            return ids.get(stockItem);
+        }
+
+        String stockCategory() {
+            return itemCategories.get(stockItem);
+        }
+
+        String product(Random random) {
+            return products.get(random.nextInt(products.size()));
+        }
+
+        String category(Random random) {
+            return categories.get(random.nextInt(categories.size()));
+        }
+
+        String manufacturer(Random random) {
+            return manufacturers.get(random.nextInt(manufacturers.size()));
+        }
+
+        double price(Random random) {
+            return prices.get(random.nextInt(prices.size()));
+        }
+    }
+}
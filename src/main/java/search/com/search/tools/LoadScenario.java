@@ -0,0 +1,144 @@
+package search.com.search.tools;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Tipos de petición del generador de carga, cada uno sobre una ruta real de SearchAPI.
+ *
+ * Los valores (productos, categorías, fabricantes, ids) salen del catálogo que se lee de la propia
+ * instancia antes de empezar, así que las consultas encuentran resultados como las de un usuario.
+ */
+enum LoadScenario {
+
+    /**
+     * Pulsaciones de autocompletado: prefijos crecientes de un producto ("i", "ip", "iph", ...)
+     */
+    SUGGEST {
+        @Override
+        HttpRequest.Builder request(URI target, LoadGenerator.Catalog catalog, Random random) {
+            return get(target, "/v1/suggest?q=" + encode(catalog.nextKeystroke(random)) + "&limit=5");
+        }
+    },
+
+    /**
+     * Texto libre con una errata en alguna palabra, para que entre la búsqueda fuzzy
+     */
+    SEARCH {
+        @Override
+        HttpRequest.Builder request(URI target, LoadGenerator.Catalog catalog, Random random) {
+            String query = typo(catalog.product(random), random);
+            return get(target, "/v1/search?q=" + encode(query) + "&page=" + (1 + random.nextInt(2)));
+        }
+    },
+
+    /**
+     * Búsqueda avanzada con filtros de categoría, fabricante y rango de precio
+     */
+    ADVANCED {
+        @Override
+        HttpRequest.Builder request(URI target, LoadGenerator.Catalog catalog, Random random) {
+            StringBuilder path = new StringBuilder("/v1/search/advanced?category=")
+                    .append(encode(catalog.category(random)));
+            if (random.nextBoolean()) {
+                path.append("&manufacturer=").append(encode(catalog.manufacturer(random)));
+            }
+            if (random.nextBoolean()) {
+                double price = catalog.price(random);
+                path.append("&minPrice=").append((long) (price * 0.5))
+                        .append("&maxPrice=").append((long) (price * 1.5) + 1);
+            }
+            return get(target, path.toString());
+        }
+    },
+
+    /**
+     * Facetas, con o sin filtro de categoría
+     */
+    FACETS {
+        @Override
+        HttpRequest.Builder request(URI target, LoadGenerator.Catalog catalog, Random random) {
+            return get(target, random.nextBoolean()
+                    ? "/v1/facets"
+                    : "/v1/facets?category=" + encode(catalog.category(random)));
+        }
+    },
+
+    /**
+     * Descuento de stock de una unidad, seguido de la reposición del mismo item para que el catálogo
+     * quede igual después de cada ejecución. Lleva la categoría del item, que es su routing.
+     */
+    STOCK {
+        @Override
+        HttpRequest.Builder request(URI target, LoadGenerator.Catalog catalog, Random random) {
+            ObjectNode body = JsonNodeFactory.instance.objectNode().put("total", catalog.nextStockDelta(random));
+            if (catalog.stockCategory() != null) {
+                body.put("category", catalog.stockCategory());
+            }
+            return HttpRequest.newBuilder(target.resolve("/v1/items/" + encode(catalog.stockItemId())))
+                    .header("Content-Type", "application/json")
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString(body.toString()));
+        }
+    };
+
+    abstract HttpRequest.Builder request(URI target, LoadGenerator.Catalog catalog, Random random);
+
+    String key() {
+        return name().toLowerCase();
+    }
+
+    static LoadScenario fromKey(String key) {
+        return valueOf(key.trim().toUpperCase());
+    }
+
+    private static HttpRequest.Builder get(URI target, String path) {
+        return HttpRequest.newBuilder(target.resolve(path)).GET();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Una errata en la palabra más larga: letra cambiada, omitida, duplicada o dos letras traspuestas
+     */
+    static String typo(String text, Random random) {
+        String[] words = text.split("\\s+");
+        int longest = 0;
+        for (int i = 1; i < words.length; i++) {
+            if (words[i].length() > words[longest].length()) {
+                longest = i;
+            }
+        }
+        String word = words[longest];
+        if (word.length() < 4) {
+            return text;
+        }
+
+        int at = 1 + random.nextInt(word.length() - 2);
+        StringBuilder typo = new StringBuilder(word);
+        switch (random.nextInt(4)) {
+            case 0:
+                typo.setCharAt(at, (char) ('a' + random.nextInt(26)));
+                break;
+            case 1:
+                typo.deleteCharAt(at);
+                break;
+            case 2:
+                typo.insert(at, word.charAt(at));
+                break;
+            default:
+                typo.setCharAt(at, word.charAt(at + 1));
+                typo.setCharAt(at + 1, word.charAt(at));
+                break;
+        }
+        words[longest] = typo.toString();
+        return String.join(" ", words);
+    }
+}
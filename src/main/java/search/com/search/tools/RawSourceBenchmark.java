@@ -0,0 +1,154 @@
+package search.com.search.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.config.RawItemsConverter;
+import search.com.search.model.consts.Consts;
+import search.com.search.model.dto.ItemsDto;
+import search.com.search.model.dto.RawResponseItems;
+import search.com.search.model.dto.ResponseItems;
+import search.com.search.model.entities.Items;
+
+/**
+ * Compara, sin Elasticsearch, el coste de convertir una página de hits en la respuesta JSON:
+ * el camino de siempre (SearchHit → Items con el converter de Spring Data → Jackson) frente al
+ * raw-source (copia del _source con RawItemsConverter). Los hits se generan con CatalogGenerator,
+ * con el _source que devuelve Elasticsearch en cada modo (completo, o filtrado a los campos de Items).
+ *
+ * Por cada tamaño de página informa de ns por respuesta, respuestas por segundo y bytes reservados
+ * por respuesta (contador de asignación del hilo de la JVM).
+ */
+@Slf4j
+public class RawSourceBenchmark {
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final MappingElasticsearchConverter converter;
+    private final RawItemsConverter rawConverter = new RawItemsConverter(json);
+    private final CatalogGenerator generator;
+
+    public RawSourceBenchmark(long seed) {
+        this.converter = new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        this.converter.afterPropertiesSet();
+        this.generator = new CatalogGenerator(seed);
+    }
+
+    public void run(List<Integer> pageSizes, int iterations) throws IOException {
+        for (int pageSize : pageSizes) {
+            SearchHit[] fullHits = hits(pageSize, true);
+            SearchHit[] rawHits = hits(pageSize, false);
+
+            Result mapped = measure(iterations, out -> {
+                List<Items> items = new ArrayList<>(fullHits.length);
+                for (SearchHit hit : fullHits) {
+                    items.add(converter.read(Items.class, DocumentAdapters.from(hit)));
+                }
+                json.writeValue(out, new ResponseItems(items, false));
+            });
+            Result raw = measure(iterations, out -> rawConverter.write(new RawResponseItems(rawHits, false), out));
+
+            log.info("page={} mapped: {} ns/op, {} ops/s, {} B/op, {} B/response", pageSize,
+                    mapped.nanosPerOp, mapped.opsPerSecond, mapped.allocatedPerOp, mapped.bytesPerOp);
+            log.info("page={} raw:    {} ns/op, {} ops/s, {} B/op, {} B/response ({}x throughput, {}% allocation)", pageSize,
+                    raw.nanosPerOp, raw.opsPerSecond, raw.allocatedPerOp, raw.bytesPerOp,
+                    String.format("%.1f", (double) raw.opsPerSecond / Math.max(1, mapped.opsPerSecond)),
+                    mapped.allocatedPerOp == 0 ? 0 : raw.allocatedPerOp * 100 / mapped.allocatedPerOp);
+        }
+    }
+
+    /**
+     * Página de hits con el _source que devolvería Elasticsearch: completo (id y _class incluidos,
+     * como lo escribe Spring Data) o filtrado a los campos de Items
+     */
+    private SearchHit[] hits(int pageSize, boolean fullSource) throws IOException {
+        SearchHit[] hits = new SearchHit[pageSize];
+        for (int i = 0; i < pageSize; i++) {
+            ItemsDto item = generator.item(i);
+            Map<String, Object> source = new LinkedHashMap<>();
+            if (fullSource) {
+                source.put("_class", Items.class.getName());
+                source.put(Consts.ID, item.getId());
+            }
+            source.put(Consts.PRODUCT, item.getProduct());
+            source.put(Consts.COLOR, item.getColor());
+            source.put(Consts.CATEGORY, item.getCategory());
+            source.put(Consts.PRICE, item.getPrice());
+            source.put(Consts.MANUFACTURER, item.getManufacturer());
+            source.put(Consts.TOTAL, item.getTotal());
+
+            SearchHit hit = new SearchHit(i, item.getId(), null, Map.of(), Map.of());
+            hit.sourceRef(new BytesArray(json.writeValueAsBytes(source)));
+            hits[i] = hit;
+        }
+        return hits;
+    }
+
+    private static Result measure(int iterations, Body body) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        CountingStream out = new CountingStream();
+
+        // Calentamiento del JIT con el mismo número de iteraciones
+        for (int i = 0; i < iterations; i++) {
+            body.write(out);
+        }
+
+        out.count = 0;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            body.write(out);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        Result result = new Result();
+        result.nanosPerOp = elapsed / iterations;
+        result.opsPerSecond = (long) (iterations / (elapsed / 1e9));
+        result.allocatedPerOp = allocated / iterations;
+        result.bytesPerOp = out.count / iterations;
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static class Result {
+        private long nanosPerOp;
+        private long opsPerSecond;
+        private long allocatedPerOp;
+        private long bytesPerOp;
+    }
+
+    /**
+     * Descarta lo escrito y solo cuenta los bytes, para no medir el coste de un buffer
+     */
+    private static class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
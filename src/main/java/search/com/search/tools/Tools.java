@@ -0,0 +1,205 @@
+package search.com.search.tools;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+
+import lombok.extern.slf4j.Slf4j;
+import search.com.search.repository.ItemsRouting;
+import search.com.search.service.ItemsMapper;
+
+/**
+ * Herramientas de línea de comandos empaquetadas en el mismo jar que el servicio.
+ *
+ * java -jar search.jar &lt;herramienta&gt; [argumentos] [--opcion=valor ...]
+ *
+ * Las que trabajan contra Elasticsearch arrancan un contexto de Spring mínimo ({@link ToolsConfig}), con
+ * la misma configuración que el servicio pero sin servidor web, Eureka ni el resto de componentes;
+ * loadgen solo habla HTTP con una instancia y bench-raw y bench-federation no necesitan ninguna de las
+ * dos cosas.
+ */
+@Slf4j
+public final class Tools {
+
+    private static final List<String> NAMES = List.of("import", "loadgen", "generate", "bench-raw", "bench-federation");
+
+    private Tools() {
+    }
+
+    public static boolean isTool(String name) {
+        return NAMES.contains(name);
+    }
+
+    public static int run(String[] args) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--") && args[i].contains("=")) {
+                options.put(args[i].substring(2, args[i].indexOf('=')), args[i].substring(args[i].indexOf('=') + 1));
+            } else {
+                positional.add(args[i]);
+            }
+        }
+
+        if (args[0].equals("loadgen")) {
+            return loadgen(options);
+        }
+        if (args[0].equals("bench-raw")) {
+            return benchRaw(options);
+        }
+        if (args[0].equals("bench-federation")) {
+            return benchFederation(options);
+        }
+        if (args[0].equals("generate") && !Boolean.parseBoolean(options.get("index"))) {
+            return generate(options, null);
+        }
+
+        // En desarrollo, devtools relanzaría main() sin argumentos y arrancaría el servicio completo
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ToolsConfig.class)
+                .web(WebApplicationType.NONE)
+                .run()) {
+
+            switch (args[0]) {
+                case "import":
+                    if (positional.isEmpty()) {
+                        log.error("Usage: import <file> [--format=csv|ndjson] [--workers=4] [--batch=1000]");
+                        return 2;
+                    }
+                    Path file = Path.of(positional.get(0));
+                    String format = options.getOrDefault("format",
+                            file.getFileName().toString().toLowerCase().endsWith(".csv") ? "csv" : "ndjson");
+                    new ItemsImport(context.getBean(RestHighLevelClient.class), context.getBean(ElasticsearchOperations.class),
+                            context.getBean(ItemsMapper.class), context.getBean(ItemsRouting.class))
+                            .run(file, format, Integer.parseInt(options.getOrDefault("workers", "4")),
+                                    Integer.parseInt(options.getOrDefault("batch", "1000")));
+                    return 0;
+                case "generate":
+                    return generate(options, new ItemsImport(context.getBean(RestHighLevelClient.class),
+                            context.getBean(ElasticsearchOperations.class), context.getBean(ItemsMapper.class),
+                            context.getBean(ItemsRouting.class)));
+                default:
+                    return 2;
+            }
+        } catch (Exception e) {
+            log.error("{} failed", args[0], e);
+            return 1;
+        }
+    }
+
+    /**
+     * Catálogo sintético a fichero NDJSON (--out) o directamente al índice (--index=true, con importer),
+     * y opcionalmente un fichero de consultas sobre él (--queries)
+     */
+    private static int generate(Map<String, String> options, ItemsImport importer) {
+        if (!options.containsKey("count") || (importer == null && !options.containsKey("out") && !options.containsKey("queries"))) {
+            log.error("Usage: generate --count=10k|1M|50M [--seed=42] [--out=catalog.ndjson | --index=true] "
+                    + "[--queries=queries.ndjson] [--query-count=100k] [--workers=4] [--batch=1000]");
+            return 2;
+        }
+        try {
+            long count = parseCount(options.get("count"));
+            CatalogGenerator generator = new CatalogGenerator(Long.parseLong(options.getOrDefault("seed", "42")));
+            if (options.containsKey("out")) {
+                generator.writeItems(Path.of(options.get("out")), count);
+            }
+            if (importer != null) {
+                importer.run(count, generator::item, Integer.parseInt(options.getOrDefault("workers", "4")),
+                        Integer.parseInt(options.getOrDefault("batch", "1000")));
+            }
+            if (options.containsKey("queries")) {
+                generator.writeWorkload(Path.of(options.get("queries")), count,
+                        parseCount(options.getOrDefault("query-count", "100k")));
+            }
+            return 0;
+        } catch (Exception e) {
+            log.error("generate failed", e);
+            return 1;
+        }
+    }
+
+    private static long parseCount(String value) {
+        String number = value.trim().toLowerCase();
+        long multiplier = 1;
+        if (number.endsWith("k")) {
+            multiplier = 1_000;
+        } else if (number.endsWith("m")) {
+            multiplier = 1_000_000;
+        }
+        if (multiplier > 1) {
+            number = number.substring(0, number.length() - 1);
+        }
+        return Long.parseLong(number) * multiplier;
+    }
+
+    private static int benchRaw(Map<String, String> options) {
+        try {
+            new RawSourceBenchmark(Long.parseLong(options.getOrDefault("seed", "42"))).run(
+                    Stream.of(options.getOrDefault("page-sizes", "10,100,1000").split(",")).map(String::trim).map(Integer::valueOf).toList(),
+                    Integer.parseInt(options.getOrDefault("iterations", "20000")));
+            return 0;
+        } catch (Exception e) {
+            log.error("bench-raw failed", e);
+            return 1;
+        }
+    }
+
+    private static int benchFederation(Map<String, String> options) {
+        try {
+            new FederationBenchmark(
+                    Integer.parseInt(options.getOrDefault("docs", "2000")),
+                    Long.parseLong(options.getOrDefault("latency-ms", "20")),
+                    Double.parseDouble(options.getOrDefault("slow-fraction", "0.01")),
+                    Long.parseLong(options.getOrDefault("slow-ms", "1000")),
+                    Long.parseLong(options.getOrDefault("timeout-ms", "300"))).run(
+                    Stream.of(options.getOrDefault("clusters", "1,2,4,8,16").split(",")).map(String::trim).map(Integer::valueOf).toList(),
+                    Integer.parseInt(options.getOrDefault("searches", "2000")),
+                    Integer.parseInt(options.getOrDefault("concurrency", "8")));
+            return 0;
+        } catch (Exception e) {
+            log.error("bench-federation failed", e);
+            return 1;
+        }
+    }
+
+    private static int loadgen(Map<String, String> options) {
+        if (!options.containsKey("target")) {
+            log.error("Usage: loadgen --target=http://host:port [--rates=50,100,200] [--duration=60] [--warmup=10] "
+                    + "[--mix=suggest:40,search:25,advanced:15,facets:15,stock:5] [--slo-ms=250] [--report=file.json] "
+                    + "[--baseline=file.json] [--workload=queries.ndjson]");
+            return 2;
+        }
+        try {
+            LoadGenerator generator = new LoadGenerator(URI.create(options.get("target")),
+                    LoadGenerator.parseMix(options.getOrDefault("mix", "suggest:40,search:25,advanced:15,facets:15,stock:5")),
+                    Long.parseLong(options.getOrDefault("seed", "42")),
+                    Duration.ofMillis(Long.parseLong(options.getOrDefault("timeout-ms", "10000"))),
+                    Integer.parseInt(options.getOrDefault("max-in-flight", "1000")));
+            if (options.containsKey("workload")) {
+                generator.loadWorkload(Path.of(options.get("workload")));
+            }
+            generator.run(
+                    Stream.of(options.getOrDefault("rates", "50").split(",")).map(String::trim).map(Integer::valueOf).toList(),
+                    Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60"))),
+                    Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10"))),
+                    Double.parseDouble(options.getOrDefault("slo-ms", "250")),
+                    options.containsKey("report") ? Path.of(options.get("report")) : null,
+                    options.containsKey("baseline") ? Path.of(options.get("baseline")) : null);
+            return 0;
+        } catch (Exception e) {
+            log.error("loadgen failed", e);
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package search.com.search.tools;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import search.com.search.config.ElasticsearchConfig;
+import search.com.search.repository.ItemsRouting;
+import search.com.search.service.ItemsMapper;
+
+/**
+ * Contexto mínimo de las herramientas que escriben en Elasticsearch: el cliente, las operaciones y lo
+ * que usa la importación. Sin autoconfiguración ni escaneo de componentes, así que no arrancan el
+ * mantenimiento del índice, los hilos de heavy hitters, el replay del journal ni el registro en Eureka.
+ */
+@Configuration
+@Import({ ElasticsearchConfig.class, ItemsMapper.class, ItemsRouting.class })
+class ToolsConfig {
+}
@@ -0,0 +1,65 @@
+package search.com.search.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+    private static final int VIRTUAL_NODES = 128;
+
+    @Test
+    void emptyRingHasNoOwner() {
+        assertNull(new ConsistentHashRing(List.of(), VIRTUAL_NODES).owner("search?q=tv"));
+    }
+
+    @Test
+    void ownerDoesNotDependOnMemberOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES);
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of("c", "a", "b"), VIRTUAL_NODES);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring.owner(key(i)), reordered.owner(key(i)));
+        }
+    }
+
+    @Test
+    void spreadsKeysAcrossMembers() {
+        List<String> members = List.of("a", "b", "c", "d");
+        ConsistentHashRing ring = new ConsistentHashRing(members, VIRTUAL_NODES);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owned.merge(ring.owner(key(i)), 1, Integer::sum);
+        }
+
+        assertEquals(members.size(), owned.size());
+        double fair = (double) KEYS / members.size();
+        owned.values().forEach(count -> assertTrue(Math.abs(count - fair) < fair * 0.25, "share " + count));
+    }
+
+    @Test
+    void joiningMemberOnlyTakesKeysFromOthers() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), VIRTUAL_NODES);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String previous = before.owner(key(i));
+            String current = after.owner(key(i));
+            if (!previous.equals(current)) {
+                assertEquals("d", current);
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS * 0.15 && moved < KEYS * 0.35, "moved " + moved);
+    }
+
+    private static String key(int i) {
+        return "search?page=1&q=query-" + i;
+    }
+}
@@ -0,0 +1,147 @@
+package search.com.search.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.mock.env.MockEnvironment;
+
+import search.com.search.model.consts.ItemChangeType;
+import search.com.search.model.dto.IndexGenerationEvent;
+import search.com.search.model.dto.ItemChangeEvent;
+import search.com.search.model.dto.JournalAppliedEvent;
+import search.com.search.resilience.TimeBudgets;
+
+class PeerCacheTest {
+
+    private static final String KEY = "search?q=tv";
+
+    // Lo que ven las búsquedas: cambia con el refresh, no con la escritura
+    private final AtomicReference<String> visible = new AtomicReference<>("stock=5");
+    private final AtomicInteger loads = new AtomicInteger();
+    private PeerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment env = new MockEnvironment().withProperty("app.peer-cache.enabled", "true");
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        cache = new PeerCache(env, beans.getBeanProvider(DiscoveryClient.class), beans.getBeanProvider(Registration.class),
+                new TimeBudgets(env));
+        cache.register(key -> {
+            loads.incrementAndGet();
+            return new PeerCache.Loaded(visible.get().getBytes(StandardCharsets.UTF_8), Set.of(PeerCache.itemTag("i1")), true);
+        });
+    }
+
+    @Test
+    void reloadBetweenWriteAndRefreshIsInvalidatedOnNextGeneration() throws InterruptedException {
+        assertEquals("stock=5", get());
+
+        cache.onItemChange(change(ItemChangeType.UPDATED, "i1"));
+        // Recarga antes del refresh: lee y guarda el valor anterior a la escritura
+        assertEquals("stock=5", get());
+        assertEquals("stock=5", get());
+        assertEquals(2, loads.get());
+
+        Thread.sleep(2);
+        visible.set("stock=4");
+        cache.onGeneration(new IndexGenerationEvent("g2", System.currentTimeMillis()));
+
+        assertEquals("stock=4", get());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void generationReadBeforeTheWriteDoesNotSettleIt() throws InterruptedException {
+        long before = System.currentTimeMillis() - 1;
+        get();
+        cache.onItemChange(change(ItemChangeType.UPDATED, "i1"));
+        get();
+
+        cache.onGeneration(new IndexGenerationEvent("g1", before));
+        get();
+        assertEquals(2, loads.get());
+
+        Thread.sleep(2);
+        cache.onGeneration(new IndexGenerationEvent("g2", System.currentTimeMillis()));
+        get();
+        assertEquals(3, loads.get());
+
+        // Ya resuelta: otra generación no vuelve a invalidar
+        Thread.sleep(2);
+        cache.onGeneration(new IndexGenerationEvent("g3", System.currentTimeMillis()));
+        get();
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void journalApplyInvalidatesAgain() throws InterruptedException {
+        get();
+        cache.onItemChange(change(ItemChangeType.UPDATED, "i1"));
+        get();
+        Thread.sleep(2);
+        cache.onGeneration(new IndexGenerationEvent("g2", System.currentTimeMillis()));
+        get();
+        assertEquals(3, loads.get());
+
+        // El journal lo aplica después: se invalida al aplicarlo y otra vez tras el refresh siguiente
+        cache.onJournalApplied(new JournalAppliedEvent(List.of("i1"), false));
+        get();
+        assertEquals(4, loads.get());
+        visible.set("stock=4");
+        Thread.sleep(2);
+        cache.onGeneration(new IndexGenerationEvent("g3", System.currentTimeMillis()));
+        assertEquals("stock=4", get());
+    }
+
+    @Test
+    void fullCacheAdmitsOnlyHotKeys() {
+        MockEnvironment env = new MockEnvironment().withProperty("app.peer-cache.enabled", "true")
+                .withProperty("app.peer-cache.max-entries", "2");
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        PeerCache small = new PeerCache(env, beans.getBeanProvider(DiscoveryClient.class), beans.getBeanProvider(Registration.class),
+                new TimeBudgets(env));
+        small.register(key -> {
+            loads.incrementAndGet();
+            return new PeerCache.Loaded(key.getBytes(StandardCharsets.UTF_8), Set.of(), true, key.contains("hot"));
+        });
+
+        // Con sitio se admite todo
+        small.get("search?q=rare1");
+        small.get("search?q=hot1");
+        assertEquals(2, small.stats().get("entries"));
+
+        // Llena: una clave fría no desaloja a nadie ni se guarda
+        small.get("search?q=rare2");
+        small.get("search?q=rare2");
+        assertEquals(4, loads.get());
+        assertEquals(2L, small.stats().get("notAdmitted"));
+        small.get("search?q=hot1");
+        small.get("search?q=rare1");
+        assertEquals(4, loads.get());
+
+        // Una caliente se admite y desaloja por LRU
+        small.get("search?q=hot2");
+        small.get("search?q=hot2");
+        assertEquals(5, loads.get());
+        assertEquals(2, small.stats().get("entries"));
+        assertEquals(1L, small.stats().get("evicted"));
+    }
+
+    private String get() {
+        return new String(cache.get(KEY), StandardCharsets.UTF_8);
+    }
+
+    private static ItemChangeEvent change(ItemChangeType type, String itemId) {
+        return ItemChangeEvent.builder().type(type).itemId(itemId).build();
+    }
+}
@@ -0,0 +1,71 @@
+package search.com.search.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.FilterChain;
+import search.com.search.resilience.TimeBudgets;
+import search.com.search.service.AccessLog;
+import search.com.search.service.HeavyHitters;
+import search.com.search.service.HotQueries;
+import search.com.search.service.SlowQueryLog;
+
+class RequestContextFilterTest {
+
+    private RequestContextFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("app.warmup.record", "false")
+                .withProperty("app.heavy-hitters.enabled", "false");
+        SlowQueryLog slowQueryLog = new SlowQueryLog(env);
+        filter = new RequestContextFilter(new TimeBudgets(env), slowQueryLog, new AccessLog(env, slowQueryLog),
+                new HotQueries(env), new HeavyHitters(env));
+    }
+
+    @Test
+    void profiledResponseCarriesSerializationInServerTiming() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/search");
+        request.setParameter("profile", "true");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Lo que hacen el controlador (abre y cierra el perfil) y el conversor (escribe el cuerpo)
+        FilterChain chain = (req, res) -> {
+            RequestContext context = RequestContext.current();
+            context.enableProfile().record("httpWait", 2_000_000);
+            context.markResponseWrite();
+            res.getOutputStream().write("{\"items\":[]}".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+        };
+        filter.doFilter(request, response, chain);
+
+        String timing = response.getHeader(RequestContextFilter.SERVER_TIMING);
+        assertTrue(timing.startsWith("httpWait;dur=2.000, responseSerialization;dur="), timing);
+        assertEquals("{\"items\":[]}", response.getContentAsString());
+    }
+
+    @Test
+    void unprofiledResponseIsNotBuffered() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/search");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            res.getOutputStream().write('x');
+            res.flushBuffer();
+            assertTrue(res.isCommitted());
+        });
+
+        assertNull(response.getHeader(RequestContextFilter.SERVER_TIMING));
+        assertEquals("x", response.getContentAsString());
+    }
+}
@@ -0,0 +1,263 @@
+package search.com.search.federation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchResponseSections;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.range.ParsedRange;
+import org.elasticsearch.search.aggregations.bucket.range.Range;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.ParsedStats;
+import org.elasticsearch.search.aggregations.metrics.Stats;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.search.suggest.SortBy;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.search.suggest.term.TermSuggestion;
+import org.junit.jupiter.api.Test;
+
+class ResponseMergerTest {
+
+    @Test
+    void ordersByScoreAndCutsRequestedPage() throws IOException {
+        SearchResponse first = response(hits(10, scored("a1", 9f), scored("a2", 5f), scored("a3", 1f)), null, null);
+        SearchResponse second = response(hits(4, scored("b1", 7f), scored("b2", 3f)), null, null);
+
+        SearchResponse merged = ResponseMerger.merge(List.of(first, second), 1, 3, List.of(), false, 2, 12);
+
+        assertArrayEquals(new String[] { "b1", "a2", "b2" }, ids(merged));
+        assertEquals(14, merged.getHits().getTotalHits().value);
+        assertEquals(TotalHits.Relation.EQUAL_TO, merged.getHits().getTotalHits().relation);
+        assertEquals(9f, merged.getHits().getMaxScore());
+        assertEquals(12, merged.getTook().millis());
+    }
+
+    @Test
+    void ordersBySortValues() throws IOException {
+        SearchResponse first = response(hits(2, sorted("a1", 10.0, "x"), sorted("a2", 30.0, "x")), null, null);
+        SearchResponse second = response(hits(3, sorted("b1", 20.0, "x"), sorted("b2", 30.0, "a"), sorted("b3", null, "a")), null, null);
+        List<SortBuilder<?>> sorts = List.of(SortBuilders.fieldSort("price").order(SortOrder.DESC),
+                SortBuilders.fieldSort("name").order(SortOrder.ASC));
+
+        SearchResponse merged = ResponseMerger.merge(List.of(first, second), 0, 10, sorts, false, 2, 1);
+
+        assertArrayEquals(new String[] { "b2", "a2", "b1", "a1", "b3" }, ids(merged));
+    }
+
+    @Test
+    void pageBeyondResultsIsEmpty() throws IOException {
+        SearchResponse only = response(hits(1, scored("a1", 1f)), null, null);
+
+        SearchResponse merged = ResponseMerger.merge(List.of(only), 5, 10, List.of(), false, 1, 1);
+
+        assertEquals(0, merged.getHits().getHits().length);
+        assertEquals(1, merged.getHits().getTotalHits().value);
+    }
+
+    @Test
+    void lowerBoundTotalStaysLowerBound() throws IOException {
+        SearchHits bounded = new SearchHits(new SearchHit[0], new TotalHits(10_000, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO), Float.NaN);
+        SearchResponse merged = ResponseMerger.merge(List.of(response(bounded, null, null), response(hits(5), null, null)),
+                0, 10, List.of(), false, 2, 1);
+
+        assertEquals(10_005, merged.getHits().getTotalHits().value);
+        assertEquals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO, merged.getHits().getTotalHits().relation);
+    }
+
+    @Test
+    void sumsTermsBucketsAndKeepsLargestSize() throws IOException {
+        Aggregations first = new Aggregations(List.of(terms("categories",
+                "{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":4,"
+                        + "\"buckets\":[{\"key\":\"tv\",\"doc_count\":5},{\"key\":\"audio\",\"doc_count\":3}]}")));
+        Aggregations second = new Aggregations(List.of(terms("categories",
+                "{\"doc_count_error_upper_bound\":1,\"sum_other_doc_count\":0,"
+                        + "\"buckets\":[{\"key\":\"gaming\",\"doc_count\":6},{\"key\":\"audio\",\"doc_count\":4}]}")));
+
+        SearchResponse merged = ResponseMerger.merge(List.of(response(hits(8), first, null), response(hits(10), second, null)),
+                0, 10, List.of(), false, 2, 1);
+
+        Terms categories = merged.getAggregations().get("categories");
+        Map<String, Long> counts = categories.getBuckets().stream()
+                .collect(Collectors.toMap(Terms.Bucket::getKeyAsString, Terms.Bucket::getDocCount, (a, b) -> a, LinkedHashMap::new));
+        assertEquals(Map.of("audio", 7L, "gaming", 6L), counts);
+        assertEquals(List.of("audio", "gaming"), List.copyOf(counts.keySet()));
+        // tv (5) no cabe en el tamaño recibido y pasa a sum_other_doc_count
+        assertEquals(9, categories.getSumOfOtherDocCounts());
+        assertEquals(1, categories.getDocCountError());
+    }
+
+    @Test
+    void sumsRangesAndCombinesStats() throws IOException {
+        Aggregations first = new Aggregations(List.of(
+                range("price_ranges", "{\"buckets\":[{\"key\":\"cheap\",\"to\":50.0,\"doc_count\":2},"
+                        + "{\"key\":\"expensive\",\"from\":50.0,\"doc_count\":1}]}"),
+                stats("price_stats", "{\"count\":3,\"min\":10.0,\"max\":80.0,\"avg\":40.0,\"sum\":120.0}")));
+        Aggregations second = new Aggregations(List.of(
+                range("price_ranges", "{\"buckets\":[{\"key\":\"cheap\",\"to\":50.0,\"doc_count\":1},"
+                        + "{\"key\":\"expensive\",\"from\":50.0,\"doc_count\":4}]}"),
+                stats("price_stats", "{\"count\":1,\"min\":5.0,\"max\":5.0,\"avg\":5.0,\"sum\":5.0}")));
+        Aggregations empty = new Aggregations(List.of(
+                stats("price_stats", "{\"count\":0,\"min\":null,\"max\":null,\"avg\":null,\"sum\":0.0}")));
+
+        SearchResponse merged = ResponseMerger.merge(List.of(response(hits(3), first, null),
+                response(hits(5), second, null), response(hits(0), empty, null)), 0, 10, List.of(), false, 3, 1);
+
+        Range ranges = merged.getAggregations().get("price_ranges");
+        assertEquals(2, ranges.getBuckets().size());
+        assertEquals("cheap", ranges.getBuckets().get(0).getKeyAsString());
+        assertEquals(3, ranges.getBuckets().get(0).getDocCount());
+        assertEquals(50.0, ((Number) ranges.getBuckets().get(0).getTo()).doubleValue());
+        assertEquals(5, ranges.getBuckets().get(1).getDocCount());
+        assertEquals(50.0, ((Number) ranges.getBuckets().get(1).getFrom()).doubleValue());
+
+        Stats stats = merged.getAggregations().get("price_stats");
+        assertEquals(4, stats.getCount());
+        assertEquals(5.0, stats.getMin());
+        assertEquals(80.0, stats.getMax());
+        assertEquals(125.0, stats.getSum());
+        assertEquals(31.25, stats.getAvg());
+    }
+
+    @Test
+    void mergesTermSuggestionOptions() throws IOException {
+        Suggest first = suggest(SortBy.SCORE, "televisoin",
+                new TermSuggestion.Entry.Option(new Text("television"), 5, 0.9f),
+                new TermSuggestion.Entry.Option(new Text("televisor"), 2, 0.8f));
+        Suggest second = suggest(SortBy.SCORE, "televisoin",
+                new TermSuggestion.Entry.Option(new Text("televisor"), 7, 0.8f),
+                new TermSuggestion.Entry.Option(new Text("televisiones"), 1, 0.8f));
+
+        SearchResponse merged = ResponseMerger.merge(List.of(response(hits(0), null, first), response(hits(0), null, second)),
+                0, 10, List.of(), false, 2, 1);
+
+        TermSuggestion suggestion = merged.getSuggest().getSuggestion("spelling");
+        assertEquals(1, suggestion.getEntries().size());
+        TermSuggestion.Entry entry = suggestion.getEntries().get(0);
+        assertEquals("televisoin", entry.getText().string());
+        List<TermSuggestion.Entry.Option> options = entry.getOptions();
+        // Tamaño: el mayor recibido (2); a igualdad de score gana la frecuencia sumada
+        assertEquals(2, options.size());
+        assertEquals("television", options.get(0).getText().string());
+        assertEquals("televisor", options.get(1).getText().string());
+        assertEquals(9, options.get(1).getFreq());
+    }
+
+    @Test
+    void ordersTermSuggestionByFrequencyWhenRequested() throws IOException {
+        Suggest first = suggest(SortBy.FREQUENCY, "movil",
+                new TermSuggestion.Entry.Option(new Text("mobil"), 3, 0.9f));
+        Suggest second = suggest(SortBy.FREQUENCY, "movil",
+                new TermSuggestion.Entry.Option(new Text("movill"), 8, 0.6f));
+
+        SearchResponse merged = ResponseMerger.merge(List.of(response(hits(0), null, first), response(hits(0), null, second)),
+                0, 10, List.of(), false, 2, 1);
+
+        TermSuggestion suggestion = merged.getSuggest().getSuggestion("spelling");
+        List<TermSuggestion.Entry.Option> options = suggestion.getEntries().get(0).getOptions();
+        // Cada clúster pidió una opción: se queda la más frecuente aunque tenga menos score
+        assertEquals(1, options.size());
+        assertEquals("movill", options.get(0).getText().string());
+    }
+
+    @Test
+    void countsSkippedClustersAndShards() throws IOException {
+        SearchResponse merged = ResponseMerger.merge(List.of(response(hits(1), null, null), response(hits(2), null, null)),
+                0, 10, List.of(), true, 3, 1);
+
+        assertTrue(merged.isTimedOut());
+        assertEquals(3, merged.getClusters().getTotal());
+        assertEquals(2, merged.getClusters().getSuccessful());
+        assertEquals(1, merged.getClusters().getSkipped());
+        assertEquals(2, merged.getTotalShards());
+        assertEquals(2, merged.getSuccessfulShards());
+        assertNull(merged.getAggregations());
+        assertNull(merged.getSuggest());
+    }
+
+    private static SearchResponse response(SearchHits hits, Aggregations aggregations, Suggest suggest) {
+        SearchResponseSections sections = new SearchResponseSections(hits, aggregations, suggest, false, null, null, 1);
+        return new SearchResponse(sections, null, 1, 1, 0, 5, ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+    }
+
+    private static SearchHits hits(long total, SearchHit... hits) {
+        float maxScore = (float) Arrays.stream(hits).mapToDouble(SearchHit::getScore).filter(score -> !Double.isNaN(score))
+                .max().orElse(Double.NaN);
+        return new SearchHits(hits, new TotalHits(total, TotalHits.Relation.EQUAL_TO), maxScore);
+    }
+
+    private static SearchHit scored(String id, float score) {
+        SearchHit hit = new SearchHit(0, id, new Text("_doc"), Map.of(), Map.of());
+        hit.score(score);
+        return hit;
+    }
+
+    private static SearchHit sorted(String id, Object... values) {
+        SearchHit hit = new SearchHit(0, id, new Text("_doc"), Map.of(), Map.of());
+        DocValueFormat[] formats = new DocValueFormat[values.length];
+        Arrays.fill(formats, DocValueFormat.RAW);
+        hit.sortValues(values, formats);
+        return hit;
+    }
+
+    private static String[] ids(SearchResponse response) {
+        return Arrays.stream(response.getHits().getHits()).map(SearchHit::getId).toArray(String[]::new);
+    }
+
+    private static Suggest suggest(SortBy sort, String text, TermSuggestion.Entry.Option... options) {
+        TermSuggestion suggestion = new TermSuggestion("spelling", options.length, sort);
+        TermSuggestion.Entry entry = new TermSuggestion.Entry(new Text(text), 0, text.length());
+        Arrays.stream(options).forEach(entry::addOption);
+        suggestion.addTerm(entry);
+        return new Suggest(new ArrayList<>(List.of(suggestion)));
+    }
+
+    private static Aggregation terms(String name, String json) throws IOException {
+        try (XContentParser parser = parser(json)) {
+            return ParsedStringTerms.fromXContent(parser, name);
+        }
+    }
+
+    private static Aggregation range(String name, String json) throws IOException {
+        try (XContentParser parser = parser(json)) {
+            return ParsedRange.fromXContent(parser, name);
+        }
+    }
+
+    private static Aggregation stats(String name, String json) throws IOException {
+        try (XContentParser parser = parser(json)) {
+            return ParsedStats.fromXContent(parser, name);
+        }
+    }
+
+    private static XContentParser parser(String json) throws IOException {
+        XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json);
+        parser.nextToken();
+        return parser;
+    }
+}
@@ -0,0 +1,64 @@
+package search.com.search.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class JournalMarksTest {
+
+    @Test
+    void interleavedJournalsDoNotSuppressEachOther() {
+        // A va muy por delante en su numeración; B empieza de cero
+        Map<String, Object> doc = JournalMarks.index(null, item(10), "a", 1000);
+        doc = JournalMarks.decrement(doc, "b", List.of(11L), List.of(2));
+        doc = JournalMarks.decrement(doc, "a", List.of(1001L), List.of(1));
+        doc = JournalMarks.decrement(doc, "b", List.of(12L, 13L), List.of(1, 1));
+
+        assertEquals(5L, ((Number) doc.get("total")).longValue());
+        assertEquals(Map.of("a", 1001L, "b", 13L), doc.get(JournalMarks.FIELD));
+    }
+
+    @Test
+    void replayOfAppliedRecordsIsIgnoredPerJournal() {
+        Map<String, Object> doc = JournalMarks.index(null, item(10), "a", 5);
+        doc = JournalMarks.decrement(doc, "b", List.of(3L), List.of(4));
+
+        assertNull(JournalMarks.index(doc, item(10), "a", 5));
+        assertNull(JournalMarks.decrement(doc, "b", List.of(2L, 3L), List.of(1, 4)));
+        // Un lote con descuentos ya aplicados y otros nuevos solo aplica los nuevos
+        Map<String, Object> replayed = JournalMarks.decrement(doc, "b", List.of(3L, 4L), List.of(4, 1));
+        assertEquals(5L, ((Number) replayed.get("total")).longValue());
+    }
+
+    @Test
+    void reindexKeepsOtherJournalsMarks() {
+        Map<String, Object> doc = JournalMarks.decrement(JournalMarks.index(null, item(10), "a", 7), "b", List.of(2L), List.of(1));
+
+        Map<String, Object> replaced = JournalMarks.index(doc, item(20), "a", 8);
+
+        assertEquals(20, replaced.get("total"));
+        assertEquals(Map.of("a", 8L, "b", 2L), replaced.get(JournalMarks.FIELD));
+    }
+
+    @Test
+    void freshJournalAppliesWithLowerSequence() {
+        // Réplica reiniciada con el volumen vacío: journal nuevo, numeración desde 1
+        Map<String, Object> doc = JournalMarks.index(null, item(10), "old", 500);
+
+        Map<String, Object> updated = JournalMarks.decrement(doc, "new", List.of(1L), List.of(3));
+
+        assertEquals(7L, ((Number) updated.get("total")).longValue());
+    }
+
+    private static Map<String, Object> item(int total) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", "i1");
+        item.put("total", total);
+        return item;
+    }
+}
@@ -0,0 +1,144 @@
+package search.com.search.journal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteAheadJournalTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+    private static final int HEADER_BYTES = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackDurableRecordsInOrder() throws Exception {
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            append(journal, "a", "b", "c");
+
+            List<WriteAheadJournal.Entry> entries = journal.read(new WriteAheadJournal.Cursor(2), 10);
+            assertEquals(2, entries.size());
+            assertEquals(2, entries.get(0).getSeq());
+            assertArrayEquals(bytes("b"), entries.get(0).getPayload());
+            assertEquals(3, entries.get(1).getSeq());
+        }
+    }
+
+    @Test
+    void truncatesTornTailOnRecovery() throws Exception {
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            append(journal, "a", "b", "c");
+        }
+        // Caída a mitad del registro 4: cabecera con longitud pero sin CRC ni payload válidos
+        try (RandomAccessFile file = new RandomAccessFile(segment().toFile(), "rw")) {
+            file.seek(3 * (HEADER_BYTES + 1));
+            file.writeInt(5);
+            file.writeInt(0);
+            file.writeLong(4);
+            file.write(new byte[] { 1, 2 });
+        }
+
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(3, journal.lastSeq());
+            assertEquals(4, append(journal, "d"));
+        }
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            List<WriteAheadJournal.Entry> entries = journal.read(new WriteAheadJournal.Cursor(1), 10);
+            assertEquals(4, entries.size());
+            assertArrayEquals(bytes("d"), entries.get(3).getPayload());
+        }
+    }
+
+    @Test
+    void stopsAtRecordWithCrcMismatch() throws Exception {
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            append(journal, "a", "b", "c");
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment().toFile(), "rw")) {
+            file.seek((HEADER_BYTES + 1) + HEADER_BYTES);
+            file.write('x');
+        }
+
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(1, journal.lastSeq());
+            assertEquals(1, journal.read(new WriteAheadJournal.Cursor(1), 10).size());
+        }
+    }
+
+    @Test
+    void checkpointSurvivesRestartAndKeepsNumbering() throws Exception {
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            append(journal, "a", "b", "c");
+            journal.writeCheckpoint(3);
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".wal")).toList()) {
+                Files.delete(file);
+            }
+        }
+
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            assertEquals(3, journal.readCheckpoint());
+            assertEquals(3, journal.lastSeq());
+            assertEquals(4, append(journal, "d"));
+        }
+    }
+
+    @Test
+    void deletesOnlyFullyAppliedSegments() throws Exception {
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, 64)) {
+            // 40 bytes por registro: uno por segmento
+            append(journal, "x".repeat(24), "y".repeat(24), "z".repeat(24));
+            assertEquals(3, journal.segmentCount());
+
+            assertEquals(1, journal.deleteAppliedSegments(1));
+            assertEquals(2, journal.segmentCount());
+            List<WriteAheadJournal.Entry> entries = journal.read(new WriteAheadJournal.Cursor(1), 10);
+            assertEquals(2, entries.get(0).getSeq());
+        }
+    }
+
+    @Test
+    void idSurvivesRestartAndDiffersPerDirectory(@TempDir Path other) throws Exception {
+        String id;
+        try (WriteAheadJournal journal = new WriteAheadJournal(dir, SEGMENT_BYTES)) {
+            id = journal.id();
+        }
+        try (WriteAheadJournal reopened = new WriteAheadJournal(dir, SEGMENT_BYTES);
+                WriteAheadJournal fresh = new WriteAheadJournal(other, SEGMENT_BYTES)) {
+            assertEquals(id, reopened.id());
+            assertNotEquals(id, fresh.id());
+        }
+    }
+
+    private static long append(WriteAheadJournal journal, String... payloads) throws Exception {
+        long seq = 0;
+        for (String payload : payloads) {
+            seq = journal.append(bytes(payload));
+        }
+        journal.awaitDurable(seq, 5000);
+        return seq;
+    }
+
+    private Path segment() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.toString().endsWith(".wal")).sorted().findFirst().orElseThrow();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
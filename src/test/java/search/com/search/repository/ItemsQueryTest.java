@@ -0,0 +1,72 @@
+package search.com.search.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.junit.jupiter.api.Test;
+
+import search.com.search.model.consts.Consts;
+
+class ItemsQueryTest {
+
+    @Test
+    void emptyQueryMatchesAll() {
+        QueryBuilder query = ItemsQuery.create()
+                .term(Consts.CATEGORY_NORMALIZED, " ")
+                .range(Consts.PRICE, null, null)
+                .build();
+
+        assertInstanceOf(MatchAllQueryBuilder.class, query);
+    }
+
+    @Test
+    void termsArePlainLowercaseFilters() {
+        BoolQueryBuilder query = (BoolQueryBuilder) ItemsQuery.create()
+                .term(Consts.CATEGORY_NORMALIZED, " Laptops ")
+                .build();
+
+        assertTrue(query.must().isEmpty());
+        assertEquals(1, query.filter().size());
+        TermQueryBuilder term = (TermQueryBuilder) query.filter().get(0);
+        assertEquals(Consts.CATEGORY_NORMALIZED, term.fieldName());
+        assertEquals("laptops", term.value());
+        assertFalse(term.caseInsensitive());
+    }
+
+    @Test
+    void onlyTextIsScored() {
+        BoolQueryBuilder query = (BoolQueryBuilder) ItemsQuery.create()
+                .text(QueryBuilders.matchQuery(Consts.PRODUCT, "phone"))
+                .range(Consts.PRICE, 10.0, null)
+                .build();
+
+        assertEquals(1, query.must().size());
+        RangeQueryBuilder range = (RangeQueryBuilder) query.filter().get(0);
+        assertEquals(10.0, range.from());
+        assertEquals(null, range.to());
+    }
+
+    @Test
+    void filterOrderDoesNotChangeTheBody() {
+        QueryBuilder first = ItemsQuery.create()
+                .term(Consts.MANUFACTURER_NORMALIZED, "Apple")
+                .term(Consts.CATEGORY_NORMALIZED, "phones")
+                .range(Consts.PRICE, 100.0, 500.0)
+                .build();
+        QueryBuilder second = ItemsQuery.create()
+                .range(Consts.PRICE, 100.0, 500.0)
+                .term(Consts.CATEGORY_NORMALIZED, "PHONES")
+                .term(Consts.MANUFACTURER_NORMALIZED, "apple")
+                .build();
+
+        assertEquals(first.toString(), second.toString());
+    }
+}
@@ -0,0 +1,86 @@
+package search.com.search.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveLimiterTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void rejectsAboveLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 2, 1, 10, 2.0);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1L, limiter.stats().get("rejected"));
+
+        limiter.release(10 * MS, false);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void growsWhileLatencyIsStableAndTheLimitIsUsed() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 4, 1, 100, 2.0);
+        for (int round = 0; round < 50; round++) {
+            int limit = limit(limiter);
+            for (int i = 0; i < limit; i++) {
+                assertTrue(limiter.tryAcquire());
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.release(10 * MS, false);
+            }
+        }
+        assertTrue(limit(limiter) > 4, "limit should grow: " + limit(limiter));
+    }
+
+    @Test
+    void doesNotGrowWhenMostlyIdle() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 10, 1, 100, 2.0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(10 * MS, false);
+        }
+        assertEquals(10, limit(limiter));
+    }
+
+    @Test
+    void backsOffOnDropsDownToMinimum() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 20, 3, 100, 2.0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(10 * MS, true);
+        }
+        assertEquals(3, limit(limiter));
+    }
+
+    @Test
+    void shrinksWhenLatencyRises() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 20, 1, 100, 1.0);
+        // Media lenta con latencia baja
+        saturate(limiter, 10 * MS, 20);
+        int before = limit(limiter);
+        // La latencia se multiplica por 10 con el límite en uso
+        saturate(limiter, 100 * MS, 20);
+        assertTrue(limit(limiter) < before, before + " -> " + limit(limiter));
+    }
+
+    private static void saturate(AdaptiveLimiter limiter, long rttNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int limit = limit(limiter);
+            for (int i = 0; i < limit; i++) {
+                limiter.tryAcquire();
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.release(rttNanos, false);
+            }
+        }
+    }
+
+    private static int limit(AdaptiveLimiter limiter) {
+        return (Integer) limiter.stats().get("limit");
+    }
+}
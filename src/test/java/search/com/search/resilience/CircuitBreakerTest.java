@@ -0,0 +1,104 @@
+package search.com.search.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import search.com.search.resilience.CircuitBreaker.State;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    @Test
+    void opensWhenFailureRateIsReached() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 4, 0.5, OPEN_MILLIS);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onSuccess();
+        }
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(State.CLOSED, breaker.state());
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+
+        assertEquals(State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void closesAfterSuccessfulTrials() throws InterruptedException {
+        CircuitBreaker breaker = trippedBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onSuccess();
+        }
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void failedTrialReopens() throws InterruptedException {
+        CircuitBreaker breaker = trippedBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void ignoredTrialFreesItsSlot() throws InterruptedException {
+        CircuitBreaker breaker = trippedBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+        }
+        assertFalse(breaker.allowRequest());
+        breaker.onIgnored();
+        assertTrue(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.state());
+    }
+
+    @Test
+    void trialsThatNeverReportDoNotBlockForever() throws InterruptedException {
+        CircuitBreaker breaker = trippedBreaker();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        // Tres pruebas que nunca llaman a onSuccess ni a onFailure
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+        }
+        assertFalse(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.state());
+
+        // Pasado openMillis se vuelve a abrir y después admite nuevas pruebas
+        Thread.sleep(OPEN_MILLIS + 10);
+        assertFalse(breaker.allowRequest());
+        assertEquals(State.OPEN, breaker.state());
+        Thread.sleep(OPEN_MILLIS + 10);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    private static CircuitBreaker trippedBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 2, 0.5, OPEN_MILLIS);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+        assertEquals(State.OPEN, breaker.state());
+        return breaker;
+    }
+}
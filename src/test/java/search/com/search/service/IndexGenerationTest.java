@@ -0,0 +1,95 @@
+package search.com.search.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class IndexGenerationTest {
+
+    private static final long NOW = 1_000_000;
+
+    @Test
+    void publishesNewSeqNoOnlyAfterARefresh() {
+        IndexGeneration generation = new IndexGeneration(null, event -> { });
+        generation.advance("a", 10, 100, NOW);
+        String initial = generation.token(NOW);
+        assertTrue(initial.endsWith(".10"));
+
+        // Escrituras vistas, pero sin refresh posterior: el token no cambia
+        generation.advance("a", 12, 100, NOW);
+        assertEquals(initial, generation.token(NOW));
+        generation.advance("a", 12, 100, NOW);
+        assertEquals(initial, generation.token(NOW));
+
+        generation.advance("a", 12, 101, NOW);
+        assertTrue(generation.token(NOW).endsWith(".12"));
+    }
+
+    @Test
+    void keepsAdvancingUnderContinuousWrites() {
+        IndexGeneration generation = new IndexGeneration(null, event -> { });
+        generation.advance("a", 10, 100, NOW);
+        generation.advance("a", 12, 100, NOW);
+        generation.advance("a", 15, 101, NOW);
+        assertTrue(generation.token(NOW).endsWith(".12"));
+        generation.advance("a", 18, 102, NOW);
+        assertTrue(generation.token(NOW).endsWith(".15"));
+    }
+
+    @Test
+    void publishesLowerSeqNoAfterAliasSwap() {
+        IndexGeneration generation = new IndexGeneration(null, event -> { });
+        generation.advance("old-uuid", 5000, 400, NOW);
+        String before = generation.token(NOW);
+
+        // El índice nuevo tiene menos secuencias y sus propios contadores de refresh
+        generation.advance("new-uuid", 40, 3, NOW);
+        assertEquals(before, generation.token(NOW));
+        generation.advance("new-uuid", 40, 4, NOW);
+
+        String after = generation.token(NOW);
+        assertNotEquals(before, after);
+        assertTrue(after.endsWith(".40"));
+    }
+
+    @Test
+    void sameSeqNoOnAnotherIndexIsAnotherGeneration() {
+        IndexGeneration first = new IndexGeneration(null, event -> { });
+        first.advance("a", 10, 1, NOW);
+        IndexGeneration second = new IndexGeneration(null, event -> { });
+        second.advance("b", 10, 1, NOW);
+
+        assertNotEquals(first.token(NOW), second.token(NOW));
+    }
+
+    @Test
+    void noEtagUntilFirstSuccessfulRefresh() {
+        IndexGeneration generation = new IndexGeneration(null, event -> { });
+        assertNull(generation.token(NOW));
+        assertNull(generation.etag("items", "Books"));
+    }
+
+    @Test
+    void stopsEtagsWhenRefreshKeepsFailing() {
+        IndexGeneration generation = new IndexGeneration(null, event -> { });
+        generation.advance("a", 10, 100, NOW);
+        assertNotNull(generation.token(NOW + 15_000));
+
+        // Sin lecturas buenas desde hace más de app.etag.max-stale-ms (15 s por defecto)
+        assertNull(generation.token(NOW + 15_001));
+
+        generation.advance("a", 10, 100, NOW + 20_000);
+        assertNotNull(generation.token(NOW + 20_000));
+    }
+
+    @Test
+    void etagDependsOnNormalizedParameters() {
+        assertEquals(IndexGeneration.etagFor("t", "facets", null, "Books", ""), IndexGeneration.etagFor("t", "facets", "", " Books ", null));
+        assertNotEquals(IndexGeneration.etagFor("t", "facets", null, "Books", null), IndexGeneration.etagFor("t", "facets", null, "Toys", null));
+        assertNull(IndexGeneration.etagFor(null, "facets", "Books"));
+    }
+}
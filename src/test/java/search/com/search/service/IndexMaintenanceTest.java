@@ -0,0 +1,16 @@
+package search.com.search.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class IndexMaintenanceTest {
+
+    @Test
+    void bulkRefreshIntervalIsNeverRestored() {
+        assertNull(IndexMaintenance.restorable("-1"));
+        assertNull(IndexMaintenance.restorable(null));
+        assertEquals("30s", IndexMaintenance.restorable("30s"));
+    }
+}
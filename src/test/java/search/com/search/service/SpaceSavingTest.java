@@ -0,0 +1,79 @@
+package search.com.search.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class SpaceSavingTest {
+
+    @Test
+    void countsExactlyBelowCapacity() {
+        HeavyHitters.SpaceSaving summary = new HeavyHitters.SpaceSaving(4);
+        offer(summary, "a", "b", "a", "c", "a", "b");
+
+        Map<String, HeavyHitters.Counter> counters = byKey(summary);
+        assertEquals(3, counters.size());
+        assertEquals(3, counters.get("a").getCount());
+        assertEquals(2, counters.get("b").getCount());
+        assertEquals(1, counters.get("c").getCount());
+        counters.values().forEach(counter -> assertEquals(0, counter.getError()));
+    }
+
+    @Test
+    void newKeyInheritsMinimumAsError() {
+        HeavyHitters.SpaceSaving summary = new HeavyHitters.SpaceSaving(2);
+        offer(summary, "a", "a", "a", "b", "b", "c");
+
+        Map<String, HeavyHitters.Counter> counters = byKey(summary);
+        assertEquals(2, counters.size());
+        assertEquals(3, counters.get("a").getCount());
+        assertEquals(3, counters.get("c").getCount());
+        assertEquals(2, counters.get("c").getError());
+    }
+
+    @Test
+    void keepsBoundsAndHeavyKeysOnSkewedStream() {
+        int capacity = 32;
+        HeavyHitters.SpaceSaving summary = new HeavyHitters.SpaceSaving(capacity);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        int total = 20_000;
+        for (int i = 0; i < total; i++) {
+            String key = random.nextInt(4) == 0 ? "hot" + random.nextInt(3) : "k" + random.nextInt(2000);
+            summary.offer(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        List<HeavyHitters.Counter> counters = summary.counters();
+        assertEquals(capacity, counters.size());
+        assertEquals(total, counters.stream().mapToLong(HeavyHitters.Counter::getCount).sum());
+        for (HeavyHitters.Counter counter : counters) {
+            long actual = exact.get(counter.getKey());
+            assertTrue(counter.getCount() >= actual, counter.getKey());
+            assertTrue(counter.getCount() - counter.getError() <= actual, counter.getKey());
+        }
+        Map<String, HeavyHitters.Counter> kept = byKey(summary);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(kept.containsKey("hot" + i));
+        }
+    }
+
+    private static void offer(HeavyHitters.SpaceSaving summary, String... keys) {
+        for (String key : keys) {
+            summary.offer(key);
+        }
+    }
+
+    private static Map<String, HeavyHitters.Counter> byKey(HeavyHitters.SpaceSaving summary) {
+        return summary.counters().stream()
+                .collect(Collectors.toMap(HeavyHitters.Counter::getKey, Function.identity()));
+    }
+}
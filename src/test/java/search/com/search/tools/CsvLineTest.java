@@ -0,0 +1,35 @@
+package search.com.search.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CsvLineTest {
+
+    @Test
+    void splitsPlainFields() {
+        assertEquals(List.of("Laptop", "black", "laptops", "999.5"), CsvLine.parse("Laptop,black,laptops,999.5"));
+    }
+
+    @Test
+    void keepsEmptyFields() {
+        assertEquals(List.of("", "a", "", ""), CsvLine.parse(",a,,"));
+    }
+
+    @Test
+    void quotedFieldsMayContainSeparators() {
+        assertEquals(List.of("Monitor 27\", 4K", "dell"), CsvLine.parse("\"Monitor 27\"\", 4K\",dell"));
+    }
+
+    @Test
+    void doubledQuotesAreUnescaped() {
+        assertEquals(List.of("say \"hi\""), CsvLine.parse("\"say \"\"hi\"\"\""));
+    }
+
+    @Test
+    void emptyLineIsOneEmptyField() {
+        assertEquals(List.of(""), CsvLine.parse(""));
+    }
+}